@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.HelpFormatter;
@@ -93,6 +94,14 @@ public class Main
     private long runtimeLimit = GenestackerConstants.NO_RUNTIME_LIMIT;
     private boolean minimizePopSizeOnly;
     private int numThreads;
+    private int numCrossThreads = 1;
+    private long cacheMemory = SeedLotCache.UNBOUNDED;
+    private CacheEvictionPolicy cacheEvictionPolicy = CacheEvictionPolicy.LRU;
+    private File cacheDir = null;
+    private boolean compressLoci = false;
+    private double maxCompressedBlockLength;
+    private SchemeQueuePolicy schemeQueuePolicy = SchemeQueuePolicy.FIFO;
+    private int pipelineDepth = 1;
     private boolean writeIntermediateOutput;
     private boolean useMCTS = false;
     
@@ -330,6 +339,64 @@ public class Main
                                                   .withDescription("specifies the number of threads used for extension of a partial scheme through crossings, by default this value is read "
                                                                     + "from the environment variable OMP_NUM_THREADS, if set, else it defaults to the number of available threads on the machine")
                                                   .create("thr");
+        Option numCrossThreadsOption = OptionBuilder.withLongOpt("num-cross-threads")
+                                                  .hasArg()
+                                                  .withArgName("n")
+                                                  .withDescription("specifies the number of threads used to construct the seed lot obtained from a single crossing, "
+                                                                    + "which are shared by all threads specified with -thr,--num-threads; large seed lots are then "
+                                                                    + "constructed in parallel, by default all seed lots are constructed sequentially (n = 1)")
+                                                  .create("cthr");
+        Option cacheMemoryOption = OptionBuilder.withLongOpt("cache-memory")
+                                                  .hasArg()
+                                                  .withArgName("mb")
+                                                  .withDescription("maximum amount of memory (in MB, integer value) used to cache seed lots, gametes and diploid chromosomes "
+                                                                    + "during the search; one quarter of this budget is reserved for gametes and diploid chromosomes, the remainder "
+                                                                    + "for seed lots, which are evicted from the cache when their budget is exceeded (see -cep,--cache-eviction-policy), "
+                                                                    + "by default the caches are unbounded")
+                                                  .create("cm");
+        Option cacheEvictionPolicyOption = OptionBuilder.withLongOpt("cache-eviction-policy")
+                                                  .hasArg()
+                                                  .withArgName("p")
+                                                  .withDescription("policy used to evict seed lots from the cache when the budget set with -cm,--cache-memory is exceeded: "
+                                                                    + "lru (least recently used) or cost (prefer to keep seed lots that were expensive to construct), defaults to lru")
+                                                  .create("cep");
+        Option cacheDirOption = OptionBuilder.withLongOpt("cache-dir")
+                                                  .hasArg()
+                                                  .withArgName("dir")
+                                                  .withDescription("directory of a persistent cache in which constructed gametes and seed lots are stored, so that they "
+                                                                    + "can be reused in later runs with the same genetic map, mapping function and seed lot construction "
+                                                                    + "heuristics (h5, h5c, -mco); the directory is created if it does not exist, by default no persistent "
+                                                                    + "cache is used")
+                                                  .create("cd");
+        Option compressLociOption = OptionBuilder.withLongOpt("compress-loci")
+                                                  .hasArg()
+                                                  .withArgName("cM")
+                                                  .withDescription("merge blocks of adjacent loci that are inherited identically by all initial plants and the ideotype "
+                                                                    + "into a single locus during the search, where merged blocks span at most the given distance (in cM); "
+                                                                    + "with 0 only loci at the same position are merged and the search is exact, else crossovers within "
+                                                                    + "merged blocks are ignored during the search so that the results are approximate (reported crossing "
+                                                                    + "schemes are always expanded and evaluated with respect to all original loci)")
+                                                  .create("cl");
+        Option schemeQueueOption = OptionBuilder.withLongOpt("scheme-queue")
+                                                  .hasArg()
+                                                  .withArgName("q")
+                                                  .withDescription("order in which partial schemes are extended by the Branch and Bound engine: fifo (in order "
+                                                                    + "of creation), best (lowest bounds on population size, number of generations and linkage "
+                                                                    + "phase ambiguity first), depth (plants closest to the ideotype first, to quickly find "
+                                                                    + "complete solutions) or hybrid (alternate between best and depth), defaults to fifo; "
+                                                                    + "finding good solutions early on enables more pruning, which is especially useful "
+                                                                    + "in combination with a runtime limit")
+                                                  .create("sq");
+        Option pipelineDepthOption = OptionBuilder.withLongOpt("pipeline-depth")
+                                                  .hasArg()
+                                                  .withArgName("n")
+                                                  .withDescription("maximum number of partial schemes that are extended concurrently by the Branch and Bound "
+                                                                    + "engine, where the next schemes are already extended while the results of previous "
+                                                                    + "extensions are being processed; this reduces idle time when using multiple threads "
+                                                                    + "(see -thr,--num-threads) but may cause more partial schemes to be constructed "
+                                                                    + "because of less effective pruning, by default each scheme is completely processed "
+                                                                    + "before extending the next scheme (n = 1)")
+                                                  .create("pd");
         Option versionOption = new Option("version", "version", false, "print Gene Stacker version (ignores other options)");
         Option helpOption = new Option("help", "help", false, "print help (overrides -version, ignores other options)");
         Option intOutputOption = new Option("int", "intermediate-output", false, "create and update intermediate ZIP package whenever the current Pareto frontier has changed,"
@@ -350,6 +417,13 @@ public class Main
         miscOptions.addOption(runtimeLimitOption);
         miscOptions.addOption(minPopSizeOnlyOption);
         miscOptions.addOption(numThreadsOption);
+        miscOptions.addOption(numCrossThreadsOption);
+        miscOptions.addOption(cacheMemoryOption);
+        miscOptions.addOption(cacheEvictionPolicyOption);
+        miscOptions.addOption(cacheDirOption);
+        miscOptions.addOption(compressLociOption);
+        miscOptions.addOption(schemeQueueOption);
+        miscOptions.addOption(pipelineDepthOption);
         miscOptions.addOption(versionOption);
         miscOptions.addOption(helpOption);
         miscOptions.addOption(intOutputOption);
@@ -849,6 +923,94 @@ public class Main
             }
         }
         
+        // set num threads to be used for parallel seed lot construction
+        if(cmd.hasOption("num-cross-threads")){
+            try {
+                numCrossThreads = Integer.parseInt(cmd.getOptionValue("num-cross-threads"));
+                if(!(numCrossThreads > 0)){
+                    throw new NumberFormatException();
+                }
+            } catch(NumberFormatException ex){
+                throw new ParseException("Parameter -cthr,--num-cross-threads should be a positive integer.");
+            }
+        }
+        
+        // set memory budget of seed lot and chromosome caches
+        if(cmd.hasOption("cache-memory")){
+            try {
+                long mb = Long.parseLong(cmd.getOptionValue("cache-memory"));
+                if(!(mb > 0)){
+                    throw new NumberFormatException();
+                }
+                cacheMemory = mb*1024*1024;
+            } catch(NumberFormatException ex){
+                throw new ParseException("Parameter -cm,--cache-memory should be a positive integer.");
+            }
+        }
+        
+        // set cache eviction policy
+        if(cmd.hasOption("cache-eviction-policy")){
+            String policy = cmd.getOptionValue("cache-eviction-policy");
+            switch(policy){
+                case "lru": cacheEvictionPolicy = CacheEvictionPolicy.LRU;
+                    break;
+                case "cost": cacheEvictionPolicy = CacheEvictionPolicy.COST_AWARE;
+                    break;
+                default:
+                    throw new ParseException("Parameter -cep,--cache-eviction-policy should be either lru or cost.");
+            }
+        }
+        
+        // set directory of persistent seed lot cache
+        if(cmd.hasOption("cache-dir")){
+            cacheDir = new File(cmd.getOptionValue("cache-dir"));
+            if(cacheDir.exists() && !cacheDir.isDirectory()){
+                throw new ParseException("Parameter -cd,--cache-dir should be a directory.");
+            }
+        }
+        
+        // set maximum length of compressed locus blocks
+        if(cmd.hasOption("compress-loci")){
+            try {
+                maxCompressedBlockLength = Double.parseDouble(cmd.getOptionValue("compress-loci"));
+                if(!(maxCompressedBlockLength >= 0.0)){
+                    throw new NumberFormatException();
+                }
+                compressLoci = true;
+            } catch(NumberFormatException ex){
+                throw new ParseException("Parameter -cl,--compress-loci should be a non-negative number.");
+            }
+        }
+        
+        // set scheme queue policy
+        if(cmd.hasOption("scheme-queue")){
+            String policy = cmd.getOptionValue("scheme-queue");
+            switch(policy){
+                case "fifo": schemeQueuePolicy = SchemeQueuePolicy.FIFO;
+                    break;
+                case "best": schemeQueuePolicy = SchemeQueuePolicy.BEST_FIRST;
+                    break;
+                case "depth": schemeQueuePolicy = SchemeQueuePolicy.DEPTH_FIRST;
+                    break;
+                case "hybrid": schemeQueuePolicy = SchemeQueuePolicy.HYBRID;
+                    break;
+                default:
+                    throw new ParseException("Parameter -sq,--scheme-queue should be one of fifo, best, depth or hybrid.");
+            }
+        }
+        
+        // set pipeline depth
+        if(cmd.hasOption("pipeline-depth")){
+            try {
+                pipelineDepth = Integer.parseInt(cmd.getOptionValue("pipeline-depth"));
+                if(!(pipelineDepth > 0)){
+                    throw new NumberFormatException();
+                }
+            } catch(NumberFormatException ex){
+                throw new ParseException("Parameter -pd,--pipeline-depth should be a positive integer.");
+            }
+        }
+        
         // check for intermediate-output
         writeIntermediateOutput = cmd.hasOption("intermediate-output");
         
@@ -900,6 +1062,24 @@ public class Main
             logger.info("Using Kosambi mapping function (instead of default: Haldane)");
         }
         
+        // compress blocks of identically inherited loci
+        LocusBlockCompression compression = null;
+        if(compressLoci){
+            compression = new LocusBlockCompression(input, maxCompressedBlockLength);
+            if(compression.isEffective()){
+                logger.info("Compressed {} loci into {} blocks", compression.getNrOfOriginalLoci(), compression.getNrOfCompressedLoci());
+                if(!compression.isExact()){
+                    logger.warn("Option -cl,--compress-loci merged blocks of positive length: crossovers within these blocks are ignored "
+                                + "during the search, so that the reported Pareto frontier may be incomplete or infeasible; expanded schemes "
+                                + "that violate the constraints are discarded");
+                }
+                input = compression.getCompressedInput();
+            } else {
+                logger.info("No blocks of identically inherited loci found to compress");
+                compression = null;
+            }
+        }
+        
         /************************/
         /* RUN BRANCH AND BOUND */
         /************************/
@@ -909,6 +1089,11 @@ public class Main
         // run B&B
         ParetoFrontier frontier = runBranchAndBound(input, runtimeLimit);
         
+        // expand schemes to original loci
+        if(compression != null){
+            frontier = compression.expand(frontier, constraints, numSeeds);
+        }
+        
         // print total runtime
         logger.info("Total runtime = {}", TimeFormatting.formatTime(totalRuntime));
         
@@ -916,7 +1101,7 @@ public class Main
         output(frontier, fullOutputPath);
     }
     
-    private ParetoFrontier runBranchAndBound(GenestackerInput input, long timeLimit) throws GenestackerException{
+    private ParetoFrontier runBranchAndBound(GenestackerInput input, long timeLimit) throws GenestackerException, IOException{
         // Check if MCTS is requested
         if (useMCTS) {
             logger.info("Running MCTS engine ...");
@@ -976,7 +1161,7 @@ public class Main
         
         Heuristics heuristics = new Heuristics(heurList);
         
-        SeedLotConstructor seedLotConstructor;
+        DefaultSeedLotConstructor seedLotConstructor;
         if(h5 || h5c){
             // heuristic seed lot constructor
             if(h5){
@@ -994,74 +1179,119 @@ public class Main
             // default seed lot constructor
             seedLotConstructor = new DefaultSeedLotConstructor(input.getGeneticMap());
         }
-        
-        // initialize population size tools
-        PopulationSizeTools popSizeTools = new DefaultPopulationSizeTools(successProb);
-        
-        // initialize heuristic population size bound if applied
-        if(h6){
-            heuristics.addHeuristic(new HeuristicPopulationSizeBound(input.getInitialPlants(), input.getIdeotype(), input.getGeneticMap(), popSizeTools));
+        ForkJoinPool crossPool = null;
+        if(numCrossThreads > 1){
+            // construct large seed lots in parallel
+            logger.info("Constructing large seed lots in parallel using {} threads", numCrossThreads);
+            crossPool = new ForkJoinPool(numCrossThreads);
+            seedLotConstructor.setForkJoinPool(crossPool);
         }
-
-        // create B&B engine
-        BranchAndBound engine = new BranchAndBound(input, graphFileFormat, graphColorScheme, popSizeTools, constraints, numSeeds, heuristics,
-                                                    seedLotFilters, initialPlantFilter, seedLotConstructor, dominatesRelation, homozygousIdeotypeParents);
-        // write intermediate output files ?
-        if(writeIntermediateOutput){
-            engine.enableIntermediateOutput(getIntermediateOutputFileName());
-        }
-        // run B&B engine
+        // reuse gametes and seed lots stored in previous runs ?
+        SeedLotStore seedLotStore = null;
         ParetoFrontier frontier;
-        if(!dualRun()){
-            
-            // ### single run  ###
-            
-            frontier = engine.search(timeLimit, numThreads);
-            totalRuntime += engine.getStop() - engine.getStart();
+        try {
+            if(cacheDir != null){
+                seedLotStore = new SeedLotStore(cacheDir, seedLotConstructor);
+                logger.info("Using persistent seed lot cache {} ({} records stored)", seedLotStore.getFile(), seedLotStore.size());
+                seedLotConstructor.setSeedLotStore(seedLotStore);
+            }
             
-        } else {
+            // initialize population size tools
+            PopulationSizeTools popSizeTools = new DefaultPopulationSizeTools(successProb);
             
-            // two consecutive runs: first with h3, second without h3 (two possible versions; h3s1 or h3s2)
-                        
-            // first run: enable h3 heuristic
-            Heuristic h3heur = new OptimalSubschemeHeuristic(dominatesRelation);
-            heuristics.addHeuristic(h3heur);
-            h3 = true;
-            engine.setHeuristics(heuristics);
-                                    
-            // run search
-            logger.info("Run 1 {} ...", formatActivatedHeuristicsInfo(true, ""));
-            frontier = engine.search(timeLimit, numThreads);
-            long run1time = engine.getStop() - engine.getStart();
-            totalRuntime += run1time;
+            // initialize heuristic population size bound if applied
+            if(h6){
+                heuristics.addHeuristic(new HeuristicPopulationSizeBound(input.getInitialPlants(), input.getIdeotype(), input.getGeneticMap(), popSizeTools));
+            }
 
-            // check if time left for second run
-            boolean timeLeft = true;
-            long run2timeLimit = GenestackerConstants.NO_RUNTIME_LIMIT;
-            if(timeLimit != GenestackerConstants.NO_RUNTIME_LIMIT){
-                run2timeLimit = timeLimit - run1time;
-                timeLeft = run2timeLimit > 0;
+            // create B&B engine
+            BranchAndBound engine = new BranchAndBound(input, graphFileFormat, graphColorScheme, popSizeTools, constraints, numSeeds, heuristics,
+                                                        seedLotFilters, initialPlantFilter, seedLotConstructor, dominatesRelation, homozygousIdeotypeParents);
+            // bound memory used for caching seed lots ?
+            if(cacheMemory != SeedLotCache.UNBOUNDED){
+                // reserve one quarter of the budget for cached gametes and diploid chromosomes
+                long chromosomeCacheMemory = cacheMemory/4;
+                long seedLotCacheMemory = cacheMemory - chromosomeCacheMemory;
+                logger.info("Seed lot cache limited to {} MB ({} eviction)", seedLotCacheMemory/(1024*1024), cacheEvictionPolicy);
+                logger.info("Chromosome cache limited to {} MB", chromosomeCacheMemory/(1024*1024));
+                engine.setSeedLotCache(new SeedLotCache(seedLotConstructor.getGenotypePool(), seedLotCacheMemory, cacheEvictionPolicy));
+                seedLotConstructor.getChromosomeCache().setMaxMemory(chromosomeCacheMemory);
+            }
+            // set order in which partial schemes are extended
+            if(schemeQueuePolicy != SchemeQueuePolicy.FIFO){
+                logger.info("Scheme queue policy: {}", schemeQueuePolicy);
+            }
+            engine.setSchemeQueuePolicy(schemeQueuePolicy);
+            // set number of schemes extended concurrently
+            if(pipelineDepth > 1){
+                logger.info("Pipeline depth: {}", pipelineDepth);
+            }
+            engine.setPipelineDepth(pipelineDepth);
+            // write intermediate output files ?
+            if(writeIntermediateOutput){
+                engine.enableIntermediateOutput(getIntermediateOutputFileName());
             }
-            if(timeLeft){
-                // second run:  disable h3
-                heuristics.removeHeuristic(h3heur);
-                h3 = false;
+            // run B&B engine
+            if(!dualRun()){
+                
+                // ### single run  ###
+                
+                frontier = engine.search(timeLimit, numThreads);
+                totalRuntime += engine.getStop() - engine.getStart();
+                
+            } else {
+                
+                // two consecutive runs: first with h3, second without h3 (two possible versions; h3s1 or h3s2)
+                            
+                // first run: enable h3 heuristic
+                Heuristic h3heur = new OptimalSubschemeHeuristic(dominatesRelation);
+                heuristics.addHeuristic(h3heur);
+                h3 = true;
                 engine.setHeuristics(heuristics);
-                // in case of h3s2 only: add extra seed lot filter based on haplotypes occurring in the solutions found in the first run
-                if(h3s2){
-                    // gather occurring haplotypes
-                    List<Set<Haplotype>> haplotypes = gatherHaplotypes(input, frontier);
-                    // set additional filter
-                    seedLotFilters.add(new RestrictedHaplotypesSeedLotFilter(haplotypes));
-                    engine.setSeedLotFilters(seedLotFilters); // note: this will (and should!) clear the engine's seed lot cache as a side effect
+                                        
+                // run search
+                logger.info("Run 1 {} ...", formatActivatedHeuristicsInfo(true, ""));
+                frontier = engine.search(timeLimit, numThreads);
+                long run1time = engine.getStop() - engine.getStart();
+                totalRuntime += run1time;
+
+                // check if time left for second run
+                boolean timeLeft = true;
+                long run2timeLimit = GenestackerConstants.NO_RUNTIME_LIMIT;
+                if(timeLimit != GenestackerConstants.NO_RUNTIME_LIMIT){
+                    run2timeLimit = timeLimit - run1time;
+                    timeLeft = run2timeLimit > 0;
+                }
+                if(timeLeft){
+                    // second run:  disable h3
+                    heuristics.removeHeuristic(h3heur);
+                    h3 = false;
+                    engine.setHeuristics(heuristics);
+                    // in case of h3s2 only: add extra seed lot filter based on haplotypes occurring in the solutions found in the first run
+                    if(h3s2){
+                        // gather occurring haplotypes
+                        List<Set<Haplotype>> haplotypes = gatherHaplotypes(input, frontier);
+                        // set additional filter
+                        seedLotFilters.add(new RestrictedHaplotypesSeedLotFilter(haplotypes));
+                        engine.setSeedLotFilters(seedLotFilters); // note: this will (and should!) clear the engine's filtered seed lots as a side effect
+                    }
+                    // set initial Pareto frontier
+                    engine.setInitialFrontier(frontier);
+                    // second run
+                    logger.info("Run 2 {} ...", formatActivatedHeuristicsInfo(true, h3s2 ? " + extra seed lot filtering" : ""));
+                    frontier = engine.search(run2timeLimit, numThreads);
+                    long run2time = engine.getStop() - engine.getStart();
+                    totalRuntime += run2time;
                 }
-                // set initial Pareto frontier
-                engine.setInitialFrontier(frontier);
-                // second run
-                logger.info("Run 2 {} ...", formatActivatedHeuristicsInfo(true, h3s2 ? " + extra seed lot filtering" : ""));
-                frontier = engine.search(run2timeLimit, numThreads);
-                long run2time = engine.getStop() - engine.getStart();
-                totalRuntime += run2time;
+            }
+        } finally {
+            if(crossPool != null){
+                // release worker threads used to construct seed lots
+                crossPool.shutdown();
+            }
+            if(seedLotStore != null){
+                // flush and release persistent cache (also if the search fails)
+                seedLotStore.close();
             }
         }
         
@@ -47,6 +47,10 @@ public class MainController {
     @FXML
     private TextField populationField;
     
+    // Memory budget of seed lot cache (MB)
+    @FXML
+    private TextField cacheMemoryField;
+    
     // Checkbox
     @FXML
     private CheckBox homozygousIdeotypeParentsCheckbox;
@@ -296,6 +300,11 @@ public class MainController {
                 argsList.add("-hip");
             }
             
+            if (!cacheMemoryField.getText().isEmpty()) {
+                argsList.add("--cache-memory");
+                argsList.add(cacheMemoryField.getText());
+            }
+            
             // Add heuristic strategy parameters
             // Preset modes
             if ("quality".equals(presetMode)) {
@@ -15,9 +15,11 @@
 package org.ugent.caagt.genestacker;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
- * Chromosome containing one or more target genes.
+ * Chromosome containing one or more target genes. The haplotypes of a chromosome
+ * should not be modified after it has been created, as its hash code is cached.
  *
  * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
  */
@@ -25,6 +27,19 @@ public abstract class Chromosome {
     
     // haplotypes
     protected Haplotype[] haplotypes;
+    
+    // cached hash code (0 if not yet computed)
+    private int hash;
+    
+    // pool in which this chromosome is the canonical instance, null if not interned
+    private GenotypePool pool;
+    
+    // id assigned by the pool, -1 if not interned
+    private volatile int id = -1;
+    
+    // used to assign the id atomically
+    private static final AtomicIntegerFieldUpdater<Chromosome> ID_UPDATER
+                                = AtomicIntegerFieldUpdater.newUpdater(Chromosome.class, "id");
 
     public int nrOfLoci(){
         return haplotypes[0].nrOfLoci();
@@ -42,6 +57,23 @@ public abstract class Chromosome {
         return haplotypes;
     }
     
+    GenotypePool getPool(){
+        return pool;
+    }
+    
+    void setPool(GenotypePool pool){
+        this.pool = pool;
+    }
+    
+    int getId(){
+        return id;
+    }
+    
+    // assign the given id, unless an id has already been assigned (returns true if assigned)
+    boolean assignId(int id){
+        return ID_UPDATER.compareAndSet(this, -1, id);
+    }
+    
     @Override
     public String toString(){
         StringBuilder str = new StringBuilder();
@@ -56,19 +88,29 @@ public abstract class Chromosome {
     
     @Override
     public boolean equals(Object c){
+        if(this == c){
+            return true;
+        }
         boolean equal = false;
         if(c instanceof Chromosome){
             Chromosome cc = (Chromosome) c;
-            equal = Arrays.equals(haplotypes, cc.haplotypes);
+            // distinct canonical instances from the same pool are never equal
+            equal = hashCode() == cc.hashCode()
+                    && (pool == null || pool != cc.pool)
+                    && Arrays.equals(haplotypes, cc.haplotypes);
         }
         return equal;
     }
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 97 * hash + Arrays.hashCode(haplotypes);
-        return hash;
+        int h = hash;
+        if(h == 0){
+            h = 7;
+            h = 97 * h + Arrays.hashCode(haplotypes);
+            hash = h;
+        }
+        return h;
     }
     
 }
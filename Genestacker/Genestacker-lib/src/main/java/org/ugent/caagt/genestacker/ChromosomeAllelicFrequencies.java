@@ -25,7 +25,7 @@ import java.util.Arrays;
 public class ChromosomeAllelicFrequencies {
     
     // state
-    private AllelicFrequency[] freqs;
+    private final AllelicFrequency[] freqs;
     
     /**
      * Create new instance, given the array of allelic frequencies.
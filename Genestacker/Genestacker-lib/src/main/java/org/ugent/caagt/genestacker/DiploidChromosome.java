@@ -17,12 +17,29 @@ package org.ugent.caagt.genestacker;
 import org.ugent.caagt.genestacker.exceptions.IncompatibleHaplotypesException;
 
 /**
- * Diploid chromosome (two haplotypes).
+ * Diploid chromosome (two haplotypes). Upon creation, the allelic frequencies are
+ * computed once and stored as two bitmasks, packed in long words in the same way as
+ * the targets of a haplotype: the target mask has a bit set at each locus where the
+ * target allele occurs at least once, and the heterozygous mask has a bit set at each
+ * locus where it occurs exactly once. The indices of the heterozygous loci are also stored
+ * as a sorted array, so that routines in which only heterozygous loci play a role (e.g. the
+ * construction of gametes) can skip the homozygous background, which is shared by all
+ * gametes produced by the chromosome.
  * 
  * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
  */
 public class DiploidChromosome extends Chromosome {
-
+    
+    // allelic frequency masks
+    private final long[] targetMask;
+    private final long[] heterozygousMask;
+    
+    // sorted indices of heterozygous loci
+    private final int[] heterozygousLoci;
+    
+    // allelic frequencies (computed lazily)
+    private ChromosomeAllelicFrequencies allelicFreqs;
+    
     /**
      * Create a new diploid chromosome. Because ordering of haplotypes is arbitrary
      * in nature, hap1 and hap2 are automatically reordered so that the first haplotype
@@ -41,7 +58,7 @@ public class DiploidChromosome extends Chromosome {
                                                         +"(different number of loci: " + hap1.nrOfLoci() + " <-> " + hap2.nrOfLoci() +")");
         }
         haplotypes = new Haplotype[2];
-
+        
         if(hap1.compareTo(hap2) <= 0){
             haplotypes[0] = hap1;
             haplotypes[1] = hap2;
@@ -49,6 +66,96 @@ public class DiploidChromosome extends Chromosome {
             haplotypes[0] = hap2;
             haplotypes[1] = hap1;
         }
+        
+        // compute allelic frequency masks
+        targetMask = new long[hap1.nrOfWords()];
+        heterozygousMask = new long[hap1.nrOfWords()];
+        for(int w=0; w<targetMask.length; w++){
+            targetMask[w] = hap1.getWord(w) | hap2.getWord(w);
+            heterozygousMask[w] = hap1.getWord(w) ^ hap2.getWord(w);
+        }
+        
+        // collect heterozygous loci
+        int nrOfHet = 0;
+        for(long het : heterozygousMask){
+            nrOfHet += Long.bitCount(het);
+        }
+        heterozygousLoci = new int[nrOfHet];
+        int j = 0;
+        for(int w=0; w<heterozygousMask.length; w++){
+            long het = heterozygousMask[w];
+            while(het != 0){
+                heterozygousLoci[j++] = (w << 6) + Long.numberOfTrailingZeros(het);
+                het &= het - 1;
+            }
+        }
+    }
+    
+    /**
+     * Shallow copy constructor: haplotypes and masks are shared with the given chromosome
+     * (these are never modified after creation). The copy is not interned in any pool.
+     * 
+     * @param chrom chromosome to copy
+     */
+    DiploidChromosome(DiploidChromosome chrom){
+        haplotypes = chrom.haplotypes.clone();
+        targetMask = chrom.targetMask;
+        heterozygousMask = chrom.heterozygousMask;
+        heterozygousLoci = chrom.heterozygousLoci;
+        allelicFreqs = chrom.allelicFreqs;
+    }
+    
+    /**
+     * Get word w of the target mask, in which a bit is set for each locus where the
+     * target allele is present at least once (frequency ONCE or TWICE).
+     * 
+     * @param w word index
+     * @return word w of the target mask
+     */
+    public long getTargetMask(int w){
+        return targetMask[w];
+    }
+    
+    /**
+     * Get word w of the heterozygous mask, in which a bit is set for each locus where the
+     * target allele is present exactly once (frequency ONCE).
+     * 
+     * @param w word index
+     * @return word w of the heterozygous mask
+     */
+    public long getHeterozygousMask(int w){
+        return heterozygousMask[w];
+    }
+    
+    /**
+     * Get word w of the homozygous background, in which a bit is set for each locus where the
+     * target allele is present twice (frequency TWICE). The alleles at these loci are shared by
+     * all gametes produced by this chromosome.
+     * 
+     * @param w word index
+     * @return word w of the homozygous background
+     */
+    public long getHomozygousTargets(int w){
+        return targetMask[w] & ~heterozygousMask[w];
+    }
+    
+    /**
+     * Get the indices of all heterozygous loci, in ascending order. The returned array is
+     * shared with this chromosome and should not be modified.
+     * 
+     * @return sorted indices of heterozygous loci
+     */
+    public int[] getHeterozygousLoci(){
+        return heterozygousLoci;
+    }
+    
+    /**
+     * Get the number of heterozygous loci.
+     * 
+     * @return number of heterozygous loci
+     */
+    public int nrOfHeterozygousLoci(){
+        return heterozygousLoci.length;
     }
     
     /**
@@ -58,7 +165,7 @@ public class DiploidChromosome extends Chromosome {
      * @return <code>true</code> if this chromosome is homozygous at the given locus
      */
     public boolean isHomozygousAtLocus(int targetLocus){
-        return (haplotypes[0].targetPresent(targetLocus) == haplotypes[1].targetPresent(targetLocus));
+        return (heterozygousMask[targetLocus >>> 6] & (1L << targetLocus)) == 0;
     }
     
     /**
@@ -67,13 +174,7 @@ public class DiploidChromosome extends Chromosome {
      * @return <code>true</code> if this chromosome is homozygous at all considered loci
      */
     public boolean isHomozygousAtAllContainedLoci(){
-        boolean homozygous = true;
-        int l=0;
-        while(homozygous && l<nrOfLoci()){
-            homozygous = isHomozygousAtLocus(l);
-            l++;
-        }
-        return homozygous;
+        return heterozygousLoci.length == 0;
     }
     
     /**
@@ -87,24 +188,59 @@ public class DiploidChromosome extends Chromosome {
     }
     
     /**
-     * Compute the allelic frequencies at all considered loci of this diploid chromosome.
+     * Get the allelic frequency at a specific target locus.
+     * 
+     * @param targetLocus considered locus
+     * @return allelic frequency at the given locus
+     */
+    public AllelicFrequency getAllelicFrequency(int targetLocus){
+        long bit = 1L << targetLocus;
+        int w = targetLocus >>> 6;
+        if((heterozygousMask[w] & bit) != 0){
+            return AllelicFrequency.ONCE;
+        } else if((targetMask[w] & bit) != 0){
+            return AllelicFrequency.TWICE;
+        } else {
+            return AllelicFrequency.NONE;
+        }
+    }
+    
+    /**
+     * Check whether this chromosome may produce the given haplotype as a gamete, for some
+     * sequence of crossovers. This is the case if and only if the haplotype has a target at
+     * each locus where this chromosome is homozygous for the target, and does not have
+     * a target at any locus where this chromosome does not carry the target allele.
+     * 
+     * @param hap haplotype with the same number of loci as this chromosome
+     * @return <code>true</code> if the given haplotype can be produced by this chromosome
+     */
+    public boolean mayProduceGamete(Haplotype hap){
+        for(int w=0; w<targetMask.length; w++){
+            long h = hap.getWord(w);
+            if((h & ~targetMask[w]) != 0 || (~h & targetMask[w] & ~heterozygousMask[w]) != 0){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Get the allelic frequencies at all considered loci of this diploid chromosome.
      * In practice, it is hard to reveal the linkage phase of a chromosome, so that usually
-     * only allelic frequencies are available.
+     * only allelic frequencies are available. The frequencies are computed once and
+     * then reused, so the returned object should not be modified.
      * 
      * @return allelic frequencies of this chromosome, regardless of the linkage phase
      */
     public ChromosomeAllelicFrequencies getAllelicFrequencies(){
-        AllelicFrequency[] state = new AllelicFrequency[nrOfLoci()];
-        for(int i=0; i<nrOfLoci(); i++){
-            if(!haplotypes[0].targetPresent(i) && !haplotypes[1].targetPresent(i)){
-                state[i] = AllelicFrequency.NONE;
-            } else if(haplotypes[0].targetPresent(i) && haplotypes[1].targetPresent(i)){
-                state[i] = AllelicFrequency.TWICE;
-            } else {
-                state[i] = AllelicFrequency.ONCE;
+        if(allelicFreqs == null){
+            AllelicFrequency[] state = new AllelicFrequency[nrOfLoci()];
+            for(int i=0; i<nrOfLoci(); i++){
+                state[i] = getAllelicFrequency(i);
             }
+            allelicFreqs = new ChromosomeAllelicFrequencies(state);
         }
-        return new ChromosomeAllelicFrequencies(state);
+        return allelicFreqs;
     }
-        
+
 }
@@ -14,6 +14,9 @@
 
 package org.ugent.caagt.genestacker;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * Represents a genetic map that indicates the distance between any pair of genetic
  * markers on the genotype.
@@ -25,15 +28,16 @@ public class GeneticMap {
     // distances between targets per chromosome, in centimorgans (cM)
     private double[][] distances;
     
-    // recombination probabilities inferred from the distance map
-    // 3D array:
-    //  - first dimension represents different chromosomes
-    //  - second and third dimension represent recombination probabilities
-    //    between any pair of markers on a specific chromosome
-    private double[][][] r;
+    // cumulative positions of the targets per chromosome, in centimorgans (cM),
+    // relative to the first target of the chromosome
+    private double[][] positions;
+    
+    // map function and the recombination probabilities inferred from it (replaced
+    // as a whole when the map function is changed)
+    private volatile RecombinationProbabilities recombProbs;
     
-    // map function: distances -> recombination fractions
-    private DistanceMapFunction mapFunction;
+    // compute recombination probabilities on demand, per chromosome
+    private final boolean lazy;
     
     /**
      * Create a new genetic map with given distances between markers, per
@@ -53,57 +57,140 @@ public class GeneticMap {
      * @param mapFunction mapping function applied to convert distances to recombination rates
      */
     public GeneticMap(double[][] distances, DistanceMapFunction mapFunction){
+        this(distances, mapFunction, false);
+    }
+    
+    /**
+     * Create a new genetic map with given distances between markers, per chromosome (in cM units).
+     * If <code>lazy</code> is <code>true</code>, the recombination probabilities of a chromosome
+     * are only computed when first requested, and then remembered, which is useful for dense maps
+     * with many loci of which only some chromosomes are ever queried.
+     * 
+     * @param distances 2D array of distances between subsequent loci per chromosome
+     * @param mapFunction mapping function applied to convert distances to recombination rates
+     * @param lazy compute recombination probabilities on demand
+     */
+    public GeneticMap(double[][] distances, DistanceMapFunction mapFunction, boolean lazy){
         this.distances = distances;
-        this.mapFunction = mapFunction;
-        computeRecombinationProbabilities();
+        this.lazy = lazy;
+        computePositions();
+        computeRecombinationProbabilities(mapFunction);
     }
     
     /**
-     * Compute and store recombination probabilities from given distances.
+     * Compute cumulative positions of the targets from given distances.
      */
-    private void computeRecombinationProbabilities(){
-        r = new double[distances.length][][];
-        // loop over chromosomes
+    private void computePositions(){
+        positions = new double[distances.length][];
         for(int i=0; i<distances.length; i++){
             double[] d = distances[i];
-            r[i] = new double[d.length][];
-            // loop over all distinct pairs of targets in chromosome
+            double[] pos = new double[d.length+1];
             for(int j=0; j<d.length; j++){
-                r[i][j] = new double[j+1];
-                for(int k=0; k<=j; k++){
-                    // compute total distance between targets
-                    double dist = 0;
-                    for(int l=k; l<=j; l++){
-                        dist += d[l];
-                    }
-                    // convert distance to probability
-                    double pr = mapFunction.computeRecombinationFraction(dist);
-                    // store probability
-                    r[i][j][k] = pr;
-                }
+                pos[j+1] = pos[j] + d[j];
+            }
+            positions[i] = pos;
+        }
+    }
+    
+    /**
+     * Compute and store recombination probabilities from given distances using the given
+     * map function (or reset the stored probabilities, if they are computed on demand).
+     * 
+     * @param mapFunction mapping function applied to convert distances to recombination rates
+     */
+    private void computeRecombinationProbabilities(DistanceMapFunction mapFunction){
+        RecombinationProbabilities newProbs = new RecombinationProbabilities(mapFunction, distances.length);
+        if(!lazy){
+            for(int i=0; i<distances.length; i++){
+                newProbs.r.set(i, computeRecombinationProbabilities(i, mapFunction));
+            }
+        }
+        // publish map function together with the corresponding probabilities
+        recombProbs = newProbs;
+    }
+    
+    /**
+     * Compute recombination probabilities between all pairs of targets on the given chromosome,
+     * in a flat lower triangular array.
+     * 
+     * @param chromIndex chromosome index
+     * @param mapFunction mapping function applied to convert distances to recombination rates
+     * @return recombination probabilities of the chromosome
+     */
+    private double[] computeRecombinationProbabilities(int chromIndex, DistanceMapFunction mapFunction){
+        double[] pos = positions[chromIndex];
+        int n = pos.length;
+        double[] probs = new double[(n-1)*n/2];
+        int idx = 0;
+        // loop over all distinct pairs of targets in chromosome
+        for(int l=1; l<n; l++){
+            for(int k=0; k<l; k++){
+                // convert total distance between targets to probability
+                probs[idx++] = mapFunction.computeRecombinationFraction(pos[l] - pos[k]);
             }
         }
+        return probs;
+    }
+    
+    // get (possibly lazily computed) recombination probabilities of the given chromosome
+    private double[] getChromosomeRecombinationProbabilities(int chromIndex){
+        RecombinationProbabilities cur = recombProbs;
+        double[] chromProbs = cur.r.get(chromIndex);
+        if(chromProbs == null){
+            // compute on demand (concurrent computations yield the same result)
+            chromProbs = computeRecombinationProbabilities(chromIndex, cur.mapFunction);
+            cur.r.set(chromIndex, chromProbs);
+        }
+        return chromProbs;
     }
     
+    /**
+     * Set the map function used to convert distances to recombination rates. All
+     * recombination probabilities are recomputed accordingly.
+     * 
+     * @param mapFunction mapping function applied to convert distances to recombination rates
+     */
     public void setDistanceMapFunction(DistanceMapFunction mapFunction){
-        this.mapFunction = mapFunction;
+        computeRecombinationProbabilities(mapFunction);
+    }
+    
+    public DistanceMapFunction getDistanceMapFunction(){
+        return recombProbs.mapFunction;
     }
     
     public double[][] getDistances(){
         return distances;
     }
     
+    /**
+     * Get the recombination probabilities between all pairs of targets, as a 3D array in which the first
+     * dimension represents the chromosomes, and where the probability between targets k &lt; l of a chromosome
+     * is found at position [l-1][k] of the respective 2D array. The returned array is a copy of the stored
+     * probabilities.
+     * 
+     * @return recombination probabilities between all pairs of targets
+     */
     public double[][][] getRecombinationProbabilities(){
-        return r;
+        double[][][] probs = new double[distances.length][][];
+        for(int i=0; i<distances.length; i++){
+            double[] chromProbs = getChromosomeRecombinationProbabilities(i);
+            probs[i] = new double[distances[i].length][];
+            int idx = 0;
+            for(int j=0; j<distances[i].length; j++){
+                probs[i][j] = Arrays.copyOfRange(chromProbs, idx, idx+j+1);
+                idx += j+1;
+            }
+        }
+        return probs;
     }
     
     public double getRecombinationProbability(int chromosomeIndex, int targetLocus1, int targetLocus2){
         if(targetLocus1 == targetLocus2){
             return 0;
         } else {
-            int j = Math.max(targetLocus1, targetLocus2)-1;
+            int l = Math.max(targetLocus1, targetLocus2);
             int k = Math.min(targetLocus1, targetLocus2);
-            return r[chromosomeIndex][j][k];
+            return getChromosomeRecombinationProbabilities(chromosomeIndex)[(l-1)*l/2 + k];
         }
     }
     
@@ -131,4 +218,23 @@ public class GeneticMap {
         return str.toString();
     }
     
+    /**
+     * Map function together with the recombination probabilities inferred from it, per chromosome;
+     * stored in flat lower triangular arrays where the probability between targets k &lt; l is found
+     * at index (l-1)*l/2 + k (computed on demand if lazy).
+     */
+    private static final class RecombinationProbabilities {
+        
+        // map function: distances -> recombination fractions
+        private final DistanceMapFunction mapFunction;
+        // recombination probabilities per chromosome
+        private final AtomicReferenceArray<double[]> r;
+        
+        public RecombinationProbabilities(DistanceMapFunction mapFunction, int nrOfChromosomes){
+            this.mapFunction = mapFunction;
+            r = new AtomicReferenceArray<>(nrOfChromosomes);
+        }
+    
+    }
+    
 }
@@ -15,6 +15,7 @@
 package org.ugent.caagt.genestacker;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 /**
  * Represents a diploid plant genotype w.r.t. the target genes.
@@ -26,9 +27,22 @@ public class Genotype {
     // chromosomes containing target genes
     private List<DiploidChromosome> chromosomes;
     
-    // observable allelic frequencies
+    // observable allelic frequencies (computed when first requested)
     private GenotypeAllelicFrequencies allelicFreqs;
     
+    // cached hash code (0 if not yet computed)
+    private int hash;
+    
+    // pool in which this genotype is the canonical instance, null if not interned
+    private GenotypePool pool;
+    
+    // dense id assigned by the pool, -1 if not interned
+    private volatile int id = -1;
+    
+    // used to assign the id atomically
+    private static final AtomicIntegerFieldUpdater<Genotype> ID_UPDATER
+                                = AtomicIntegerFieldUpdater.newUpdater(Genotype.class, "id");
+    
     /**
      * Create genotype with given chromosomes.
      * 
@@ -36,7 +50,6 @@ public class Genotype {
      */
     public Genotype(List<DiploidChromosome> chromosomes){
         this.chromosomes = chromosomes;
-        allelicFreqs = new GenotypeAllelicFrequencies(this);
     }
     
     /**
@@ -45,7 +58,12 @@ public class Genotype {
      * @return observed genotype scores (allelic frequencies)
      */
     public GenotypeAllelicFrequencies getAllelicFrequencies(){
-        return allelicFreqs;
+        GenotypeAllelicFrequencies freqs = allelicFreqs;
+        if(freqs == null){
+            freqs = new GenotypeAllelicFrequencies(this);
+            allelicFreqs = freqs;
+        }
+        return freqs;
     }
     
     /**
@@ -74,6 +92,23 @@ public class Genotype {
         return chromosomes;
     }
     
+    GenotypePool getPool(){
+        return pool;
+    }
+    
+    void setPool(GenotypePool pool){
+        this.pool = pool;
+    }
+    
+    int getId(){
+        return id;
+    }
+    
+    // assign the given id, unless an id has already been assigned (returns true if assigned)
+    boolean assignId(int id){
+        return ID_UPDATER.compareAndSet(this, -1, id);
+    }
+    
     public int nrOfTargetsPresent(){
         int numTargets = 0;
         for(DiploidChromosome c : chromosomes){
@@ -133,19 +168,29 @@ public class Genotype {
     
     @Override
     public boolean equals(Object g){
+        if(this == g){
+            return true;
+        }
         boolean equal = false;
         if(g instanceof Genotype){
             Genotype gg = (Genotype) g;
-            equal = chromosomes.equals(gg.chromosomes);
+            // distinct canonical instances from the same pool are never equal
+            equal = hashCode() == gg.hashCode()
+                    && (pool == null || pool != gg.pool)
+                    && chromosomes.equals(gg.chromosomes);
         }
         return equal;
     }
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 53 * hash + (chromosomes != null ? chromosomes.hashCode() : 0);
-        return hash;
+        int h = hash;
+        if(h == 0){
+            h = 7;
+            h = 53 * h + (chromosomes != null ? chromosomes.hashCode() : 0);
+            hash = h;
+        }
+        return h;
     }
 
 }
@@ -15,17 +15,27 @@
 package org.ugent.caagt.genestacker;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Represents the observable genotype scores (allelic frequencies) of a certain diploid genotype.
+ * Besides the allelic frequencies per chromosome, a packed key is stored with 2 bits per locus
+ * (loci of all chromosomes concatenated) together with its precomputed hash code, so that
+ * instances can be used efficiently as keys in hash based collections.
  * 
  * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
  */
 public class GenotypeAllelicFrequencies {
     
     // allelic frequencies per chromosome
-    private List<ChromosomeAllelicFrequencies> chromFreqs;
+    private final List<ChromosomeAllelicFrequencies> chromFreqs;
+    
+    // packed key: 2 bits per locus (00 = NONE, 01 = TWICE, 11 = ONCE)
+    private final long[] key;
+    
+    // precomputed hash code
+    private final int hash;
 
     /**
      * Create a new instance for a given genotype.
@@ -37,6 +47,26 @@ public class GenotypeAllelicFrequencies {
         for(int i=0; i<genotype.nrOfChromosomes(); i++){
             chromFreqs.add(genotype.getChromosomes().get(i).getAllelicFrequencies());
         }
+        // pack key
+        int nrOfLoci = 0;
+        for(DiploidChromosome chrom : genotype.getChromosomes()){
+            nrOfLoci += chrom.nrOfLoci();
+        }
+        key = new long[(2*nrOfLoci + 63) >>> 6];
+        int pos = 0;
+        for(DiploidChromosome chrom : genotype.getChromosomes()){
+            for(int l=0; l<chrom.nrOfLoci(); l++){
+                long target = (chrom.getTargetMask(l >>> 6) >>> l) & 1L;
+                long heterozygous = (chrom.getHeterozygousMask(l >>> 6) >>> l) & 1L;
+                key[pos >>> 6] |= (target | (heterozygous << 1)) << pos;
+                pos += 2;
+            }
+        }
+        // compute hash code
+        int h = 7;
+        h = 37 * h + chromFreqs.size();
+        h = 37 * h + Arrays.hashCode(key);
+        hash = h;
     }
     
     /**
@@ -57,15 +87,26 @@ public class GenotypeAllelicFrequencies {
         boolean equal = false;
         if(s instanceof GenotypeAllelicFrequencies){
             GenotypeAllelicFrequencies ss = (GenotypeAllelicFrequencies) s;
-            equal = (chromFreqs.equals(ss.getChromosomeAllelicFrequencies()));
+            equal = (hash == ss.hash && Arrays.equals(key, ss.key) && sameStructure(ss));
         }
         return equal;
     }
+    
+    // check whether the number of loci per chromosome corresponds
+    private boolean sameStructure(GenotypeAllelicFrequencies ss){
+        if(chromFreqs.size() != ss.chromFreqs.size()){
+            return false;
+        }
+        for(int c=0; c<chromFreqs.size(); c++){
+            if(chromFreqs.get(c).nrOfLoci() != ss.chromFreqs.get(c).nrOfLoci()){
+                return false;
+            }
+        }
+        return true;
+    }
 
     @Override
     public int hashCode() {
-        int hash = 7;
-        hash = 37 * hash + (this.chromFreqs != null ? this.chromFreqs.hashCode() : 0);
         return hash;
     }
     
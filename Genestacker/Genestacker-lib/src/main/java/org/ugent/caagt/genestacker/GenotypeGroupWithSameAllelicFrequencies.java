@@ -20,7 +20,9 @@ import java.util.Set;
 /**
  * Represents a collection of ambiguous phase-known genotypes, i.e genotypes having
  * the same allelic frequencies (0,1,2 per locus) but perhaps a different linkage phase,
- * as part of a seed lot.
+ * as part of a seed lot. Groups that belong to a seed lot are views of a contiguous range
+ * of genotypes stored in the seed lot; standalone groups, created with the public constructor,
+ * are backed by the given map and are only used to construct seed lots.
  * 
  * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
  */
@@ -32,11 +34,17 @@ public class GenotypeGroupWithSameAllelicFrequencies {
     // probability of obtaining any genotype with these allelic frequencies
     private double prob;
     
-    // (absolute) probabilities of obtaining a specific phase-known genotype with these allelic frequencies
+    // seed lot and range of positions [start, end) occupied by this group (null for standalone group)
+    private SeedLot seedLot;
+    private int start, end;
+    // number of remaining genotypes in seed lot
+    private int remaining;
+    
+    // (absolute) probabilities of obtaining a specific phase-known genotype (standalone group only)
     private Map<Genotype, Double> genotypeProbs;
     
     /**
-     * Create a new instance.
+     * Create a new standalone instance.
      * 
      * @param prob probability of obtaining any genotype with the given allelic frequencies
      * @param allelicFreqs allelic frequencies
@@ -49,20 +57,76 @@ public class GenotypeGroupWithSameAllelicFrequencies {
         this.genotypeProbs = genotypeProbs;
     }
     
+    /**
+     * Create a view of the genotypes with the given allelic frequencies, stored in positions [start, end)
+     * of the given seed lot.
+     * 
+     * @param seedLot seed lot
+     * @param prob probability of obtaining any genotype with the given allelic frequencies
+     * @param allelicFreqs allelic frequencies
+     * @param start first position (inclusive)
+     * @param end last position (exclusive)
+     */
+    GenotypeGroupWithSameAllelicFrequencies(SeedLot seedLot, double prob, GenotypeAllelicFrequencies allelicFreqs,
+                                            int start, int end){
+        this.seedLot = seedLot;
+        this.prob = prob;
+        this.allelicFreqs = allelicFreqs;
+        this.start = start;
+        this.end = end;
+        remaining = end - start;
+    }
+    
     public GenotypeAllelicFrequencies getAllelicFrequencies(){
         return allelicFreqs;
     }
     
     public Set<Genotype> getGenotypes(){
-        return genotypeProbs.keySet();
+        if(seedLot == null){
+            return genotypeProbs.keySet();
+        }
+        return seedLot.getGenotypes(start, end, this);
+    }
+    
+    // get position of given genotype in seed lot, if contained in this group and not filtered (else -1)
+    private int positionOf(Genotype g){
+        int i = seedLot.indexOf(g);
+        if(i >= start && i < end && seedLot.isPresent(i)){
+            return i;
+        }
+        return -1;
     }
     
     public boolean contains(Genotype g){
-        return genotypeProbs.containsKey(g);
+        if(seedLot == null){
+            return genotypeProbs.containsKey(g);
+        }
+        return positionOf(g) >= 0;
     }
     
     public boolean filterGenotype(Genotype g){
-        return genotypeProbs.remove(g) != null;
+        if(seedLot == null){
+            return genotypeProbs.remove(g) != null;
+        }
+        int i = positionOf(g);
+        return i >= 0 && seedLot.filterGenotype(i);
+    }
+    
+    /**
+     * Create a view of the same range of genotypes in another seed lot that shares
+     * its arrays with the seed lot of this group.
+     * 
+     * @param other other seed lot
+     * @return group view in the other seed lot, with the same number of remaining genotypes
+     */
+    GenotypeGroupWithSameAllelicFrequencies viewIn(SeedLot other){
+        GenotypeGroupWithSameAllelicFrequencies view = new GenotypeGroupWithSameAllelicFrequencies(other, prob, allelicFreqs, start, end);
+        view.remaining = remaining;
+        return view;
+    }
+    
+    void decrementRemaining(){
+        remaining--;
     }
     
     /**
@@ -81,11 +145,12 @@ public class GenotypeGroupWithSameAllelicFrequencies {
      * @return respective probability
      */
     public double getProbabilityOfPhaseKnownGenotype(Genotype g){
-        if(genotypeProbs.containsKey(g)){
-            return genotypeProbs.get(g);
-        } else {
-            return 0.0;
+        if(seedLot == null){
+            Double p = genotypeProbs.get(g);
+            return p == null ? 0.0 : p;
         }
+        int i = positionOf(g);
+        return i >= 0 ? seedLot.getProbabilityOfPhaseKnownGenotype(i) : 0.0;
     }
     
     /**
@@ -95,11 +160,21 @@ public class GenotypeGroupWithSameAllelicFrequencies {
      * @return linkage phase ambiguity
      */
     public Double getLinkagePhaseAmbiguity(Genotype g){
+        if(seedLot != null){
+            int i = positionOf(g);
+            if(i >= 0){
+                // precomputed
+                return seedLot.getLinkagePhaseAmbiguity(i);
+            }
+        }
         return 1.0 - getProbabilityOfPhaseKnownGenotype(g)/prob;
     }
     
     public int nrOfGenotypes(){
-        return genotypeProbs.size();
+        if(seedLot == null){
+            return genotypeProbs.size();
+        }
+        return remaining;
     }
     
 }
@@ -0,0 +1,291 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Interning pool of canonical genotypes and diploid chromosomes. Each distinct genotype or chromosome
+ * that is interned in the same pool is represented by exactly one instance, so that two canonical
+ * instances from the same pool are equal if and only if they are the same object. Equality checks
+ * between such instances then reduce to a reference check, and hash codes are computed only once.
+ * Instances that have not been interned (or that belong to a different pool) are still compared
+ * based on their content.
+ * <p>
+ * Every canonical genotype is also assigned a small integer id that can be used as a compact key in primitive
+ * collections, see {@link #getId(Genotype)} and {@link #pairKey(Genotype, Genotype)}. Ids are assigned in
+ * increasing order (0, 1, 2, ...), where an id is only skipped if an equal genotype is interned concurrently
+ * by several threads. Canonical chromosomes are assigned small integer ids as well, see
+ * {@link #getId(DiploidChromosome)}. A pool is created per search, so that ids remain small.
+ * <p>
+ * Interning does not lock: new canonical instances are registered with an atomic put-if-absent operation.
+ * 
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class GenotypePool {
+    
+    // canonical chromosomes (use concurrent hash maps: accessed in parallel by different cross workers)
+    private final Map<DiploidChromosome, DiploidChromosome> chromosomes;
+    // canonical genotypes
+    private final Map<Genotype, Genotype> genotypes;
+    // genotypes indexed by id, stored in chunks of increasing size (chunk k holds ids
+    // 2^(k+6)-64 up to 2^(k+7)-65), which are created when first needed
+    private static final int FIRST_CHUNK_BITS = 6;
+    private final AtomicReferenceArray<AtomicReferenceArray<Genotype>> byId;
+    // next genotype id
+    private final AtomicInteger nextId;
+    // next chromosome id
+    private final AtomicInteger nextChromId;
+    
+    public GenotypePool(){
+        chromosomes = new ConcurrentHashMap<>();
+        genotypes = new ConcurrentHashMap<>();
+        byId = new AtomicReferenceArray<>(32 - FIRST_CHUNK_BITS);
+        nextId = new AtomicInteger();
+        nextChromId = new AtomicInteger();
+    }
+    
+    /**
+     * Get the canonical instance of the given chromosome. If no equal chromosome has been interned before,
+     * the given chromosome becomes the canonical instance.
+     * 
+     * @param chrom diploid chromosome
+     * @return canonical instance of the given chromosome
+     */
+    public DiploidChromosome intern(DiploidChromosome chrom){
+        if(chrom.getPool() == this){
+            // already canonical
+            return chrom;
+        }
+        DiploidChromosome canonical = chromosomes.get(chrom);
+        if(canonical != null){
+            return canonical;
+        }
+        if(chrom.getPool() != null){
+            // canonical in other pool: register a copy
+            chrom = new DiploidChromosome(chrom);
+        }
+        // assign id before publishing (ids of candidates that are not registered are simply skipped,
+        // and a candidate that is interned concurrently by several threads retains the first id)
+        if(chrom.getId() < 0){
+            chrom.assignId(nextChromId.getAndIncrement());
+        }
+        canonical = chromosomes.putIfAbsent(chrom, chrom);
+        if(canonical == null){
+            // new canonical instance (only flagged after it has been registered)
+            chrom.setPool(this);
+            canonical = chrom;
+        }
+        return canonical;
+    }
+    
+    /**
+     * Get the canonical instance of the given genotype, consisting of canonical chromosomes. If no equal
+     * genotype has been interned before, the given genotype becomes the canonical instance, unless some of
+     * its chromosomes are not canonical, in which case a new genotype is created from the canonical versions
+     * of these chromosomes.
+     * 
+     * @param genotype genotype
+     * @return canonical instance of the given genotype
+     */
+    public Genotype intern(Genotype genotype){
+        if(genotype.getPool() == this){
+            // already canonical
+            return genotype;
+        }
+        Genotype canonical = genotypes.get(genotype);
+        if(canonical == null){
+            // make sure that the new canonical genotype consists of canonical chromosomes
+            Genotype candidate = genotype;
+            if(genotype.getPool() != null || !hasCanonicalChromosomes(genotype)){
+                // (create new instance if given genotype is canonical in another pool)
+                List<DiploidChromosome> chroms = new ArrayList<>(genotype.nrOfChromosomes());
+                for(DiploidChromosome chrom : genotype.getChromosomes()){
+                    chroms.add(intern(chrom));
+                }
+                candidate = new Genotype(chroms);
+            }
+            canonical = register(candidate);
+        }
+        return canonical;
+    }
+    
+    // register new canonical genotype and assign the next id (unless an equal genotype was registered concurrently)
+    private Genotype register(Genotype candidate){
+        // assign id before publishing (ids of candidates that are not registered are simply skipped,
+        // and a candidate that is registered concurrently by several threads retains the first id)
+        if(candidate.getId() < 0){
+            candidate.assignId(nextId.getAndIncrement());
+        }
+        setGenotype(candidate.getId(), candidate);
+        Genotype canonical = genotypes.putIfAbsent(candidate, candidate);
+        if(canonical == null){
+            // new canonical instance (only flagged after it has been registered)
+            candidate.setPool(this);
+            canonical = candidate;
+        }
+        return canonical;
+    }
+    
+    // store genotype with the given id
+    private void setGenotype(int id, Genotype genotype){
+        int n = id + (1 << FIRST_CHUNK_BITS);
+        int bits = 31 - Integer.numberOfLeadingZeros(n);
+        int k = bits - FIRST_CHUNK_BITS;
+        AtomicReferenceArray<Genotype> chunk = byId.get(k);
+        if(chunk == null){
+            // create chunk (unless created concurrently)
+            byId.compareAndSet(k, null, new AtomicReferenceArray<Genotype>(1 << bits));
+            chunk = byId.get(k);
+        }
+        chunk.set(n - (1 << bits), genotype);
+    }
+    
+    /**
+     * Get the dense id of the given genotype, interning it if necessary.
+     * 
+     * @param genotype genotype
+     * @return id of the canonical instance of the given genotype
+     */
+    public int getId(Genotype genotype){
+        return intern(genotype).getId();
+    }
+    
+    /**
+     * Get the id of the given chromosome, interning it if necessary. Chromosome ids are small
+     * non-negative integers, distinct for all canonical chromosomes in this pool, but not
+     * necessarily consecutive.
+     * 
+     * @param chrom diploid chromosome
+     * @return id of the canonical instance of the given chromosome
+     */
+    public int getId(DiploidChromosome chrom){
+        return intern(chrom).getId();
+    }
+    
+    /**
+     * Get the canonical genotype with the given id.
+     * 
+     * @param id genotype id, as obtained from {@link #getId(Genotype)}
+     * @return canonical genotype with this id
+     */
+    public Genotype getGenotype(int id){
+        int n = id + (1 << FIRST_CHUNK_BITS);
+        int bits = 31 - Integer.numberOfLeadingZeros(n);
+        return byId.get(bits - FIRST_CHUNK_BITS).get(n - (1 << bits));
+    }
+    
+    /**
+     * Get the id of the canonical instance of the given chromosome, without interning it.
+     * 
+     * @param chrom diploid chromosome
+     * @return id of the canonical instance of the given chromosome, -1 if it has not been interned
+     */
+    public int lookupId(DiploidChromosome chrom){
+        if(chrom.getPool() == this){
+            return chrom.getId();
+        }
+        DiploidChromosome canonical = chromosomes.get(chrom);
+        return canonical == null ? -1 : canonical.getId();
+    }
+    
+    /**
+     * Get the id of the canonical instance of the given genotype, without interning it.
+     * 
+     * @param genotype genotype
+     * @return id of the canonical instance of the given genotype, -1 if it has not been interned
+     */
+    public int lookupId(Genotype genotype){
+        if(genotype.getPool() == this){
+            return genotype.getId();
+        }
+        Genotype canonical = genotypes.get(genotype);
+        return canonical == null ? -1 : canonical.getId();
+    }
+    
+    /**
+     * Get a key for the unordered pair of the given genotypes, which is the same regardless of the order
+     * in which the genotypes are specified. The key combines the ids of both genotypes (smallest id in the
+     * upper 32 bits).
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @return symmetric pair key
+     */
+    public long pairKey(Genotype g1, Genotype g2){
+        return pairKey(getId(g1), getId(g2));
+    }
+    
+    /**
+     * Get the key for the unordered pair of the given genotypes (see {@link #pairKey(Genotype, Genotype)}),
+     * without interning them. Intended for lookups: genotypes that have not been interned can not be part
+     * of any stored pair.
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @return symmetric pair key, -1 if any of both genotypes has not been interned
+     */
+    public long lookupPairKey(Genotype g1, Genotype g2){
+        int id1 = lookupId(g1);
+        int id2 = lookupId(g2);
+        return id1 < 0 || id2 < 0 ? -1 : pairKey(id1, id2);
+    }
+    
+    /**
+     * Get a key for the unordered pair of genotypes with the given ids.
+     * 
+     * @param id1 id of genotype 1
+     * @param id2 id of genotype 2
+     * @return symmetric pair key
+     */
+    public static long pairKey(int id1, int id2){
+        int min = Math.min(id1, id2);
+        int max = Math.max(id1, id2);
+        return ((long) min << 32) | (max & 0xFFFFFFFFL);
+    }
+    
+    private boolean hasCanonicalChromosomes(Genotype genotype){
+        for(DiploidChromosome chrom : genotype.getChromosomes()){
+            if(chrom.getPool() != this){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Get the number of distinct genotypes in this pool.
+     * 
+     * @return number of canonical genotypes
+     */
+    public int nrOfGenotypes(){
+        return genotypes.size();
+    }
+    
+    /**
+     * Get the number of distinct diploid chromosomes in this pool.
+     * 
+     * @return number of canonical chromosomes
+     */
+    public int nrOfChromosomes(){
+        return chromosomes.size();
+    }
+    
+}
@@ -14,30 +14,63 @@
 
 package org.ugent.caagt.genestacker;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import org.ugent.caagt.genestacker.exceptions.EmptyHaplotypeException;
 
 /**
- * Represents a haplotype.
+ * Represents a haplotype. Targets are packed as bits in an array of long words,
+ * where locus i is stored at bit (i mod 64) of word (i div 64). Unused bits of
+ * the last word are always 0, so that word-level equality and hashing can be
+ * applied directly.
  * 
  * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
  */
 public class Haplotype implements Comparable<Haplotype> {
 
-    // targets (true = present, false = not present)
-    private List<Boolean> targets;
+    // targets packed in long words (bit set = present, bit not set = not present)
+    private long[] words;
+    
+    // number of loci
+    private int nrOfLoci;
     
     public Haplotype(List<Boolean> targets) throws EmptyHaplotypeException{
-        setTargets(targets);
+        checkNrOfLoci(targets == null ? 0 : targets.size());
+        nrOfLoci = targets.size();
+        words = new long[nrOfWords(nrOfLoci)];
+        for(int i=0; i<nrOfLoci; i++){
+            if(targets.get(i)){
+                words[i >>> 6] |= 1L << i;
+            }
+        }
     }
     
     public Haplotype(boolean[] targets) throws EmptyHaplotypeException{
-        List<Boolean> targetList = new ArrayList<>(targets.length);
-        for(int i=0; i<targets.length; i++){
-            targetList.add(targets[i]);
+        checkNrOfLoci(targets == null ? 0 : targets.length);
+        nrOfLoci = targets.length;
+        words = new long[nrOfWords(nrOfLoci)];
+        for(int i=0; i<nrOfLoci; i++){
+            if(targets[i]){
+                words[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+    
+    /**
+     * Create a haplotype from targets packed in long words (see {@link #getWord(int)}).
+     * The given words are copied, and unused bits of the last word are cleared.
+     * 
+     * @param words packed targets
+     * @param nrOfLoci number of loci
+     * @throws EmptyHaplotypeException if the number of loci is 0
+     */
+    public Haplotype(long[] words, int nrOfLoci) throws EmptyHaplotypeException{
+        checkNrOfLoci(nrOfLoci);
+        this.nrOfLoci = nrOfLoci;
+        this.words = Arrays.copyOf(words, nrOfWords(nrOfLoci));
+        if((nrOfLoci & 63) != 0){
+            this.words[this.words.length-1] &= (1L << nrOfLoci) - 1;
         }
-        setTargets(targetList);
     }
     
     /**
@@ -47,31 +80,50 @@ public class Haplotype implements Comparable<Haplotype> {
      * @throws EmptyHaplotypeException if the given haplotype is empty, i.e. has 0 loci
      */
     public Haplotype(Haplotype h) throws EmptyHaplotypeException{
-        List<Boolean> targetList = new ArrayList<>(h.nrOfLoci());
-        for(int i=0; i<h.nrOfLoci(); i++){
-            targetList.add(h.targetPresent(i));
-        }
-        setTargets(targetList);
+        checkNrOfLoci(h.nrOfLoci);
+        nrOfLoci = h.nrOfLoci;
+        words = h.words.clone();
     }
     
-    private void setTargets(List<Boolean> targets) throws EmptyHaplotypeException{
+    private static void checkNrOfLoci(int nrOfLoci) throws EmptyHaplotypeException{
         // check for empty targets
-        if(targets == null || targets.isEmpty()){
+        if(nrOfLoci == 0){
             throw(new EmptyHaplotypeException("Attempted to construct an empty haplotype with 0 loci"));
         }
-        this.targets = targets;
+    }
+    
+    /**
+     * Get the number of long words required to store the given number of loci.
+     * 
+     * @param nrOfLoci number of loci
+     * @return number of 64 bit words required to pack the given number of loci
+     */
+    public static int nrOfWords(int nrOfLoci){
+        return (nrOfLoci + 63) >>> 6;
     }
     
     public int nrOfLoci(){
-        return targets.size();
+        return nrOfLoci;
+    }
+    
+    public int nrOfWords(){
+        return words.length;
+    }
+    
+    /**
+     * Get the packed targets of loci 64*w up to 64*w+63 (unused bits are 0).
+     * 
+     * @param w word index
+     * @return word containing the targets of the corresponding loci
+     */
+    public long getWord(int w){
+        return words[w];
     }
     
     public int nrOfTargetsPresent(){
         int numTargets = 0;
-        for(Boolean t : targets){
-            if(t){
-                numTargets++;
-            }
+        for(long w : words){
+            numTargets += Long.bitCount(w);
         }
         return numTargets;
     }
@@ -83,19 +135,26 @@ public class Haplotype implements Comparable<Haplotype> {
      * @return <code>true</code> if the target allele is present at this locus
      */
     public boolean targetPresent(int locus){
-        return targets.get(locus);
+        return (words[locus >>> 6] & (1L << locus)) != 0;
     }
     
     public void setTargetPresent(int locus, boolean present){
-        targets.set(locus, present);
+        if(locus < 0 || locus >= nrOfLoci){
+            throw new IndexOutOfBoundsException("Locus " + locus + " out of bounds for haplotype with " + nrOfLoci + " loci");
+        }
+        if(present){
+            words[locus >>> 6] |= 1L << locus;
+        } else {
+            words[locus >>> 6] &= ~(1L << locus);
+        }
     }
     
     @Override
     public String toString(){
         StringBuilder str = new StringBuilder("[");
-        for(int i=0; i<targets.size(); i++){
-            str.append(targets.get(i) ? 1:0);
-            if(i<targets.size()-1){
+        for(int i=0; i<nrOfLoci; i++){
+            str.append(targetPresent(i) ? 1:0);
+            if(i<nrOfLoci-1){
                 str.append(" ");
             } else {
                 str.append("]");
@@ -109,7 +168,7 @@ public class Haplotype implements Comparable<Haplotype> {
         boolean equal = false;
         if(h instanceof Haplotype){
             Haplotype hh = (Haplotype) h;
-            equal = targets.equals(hh.targets);
+            equal = nrOfLoci == hh.nrOfLoci && Arrays.equals(words, hh.words);
         }
         return equal;
     }
@@ -117,12 +176,16 @@ public class Haplotype implements Comparable<Haplotype> {
     @Override
     public int hashCode() {
         int hash = 3;
-        hash = 47 * hash + (targets != null ? targets.hashCode() : 0);
+        hash = 47 * hash + nrOfLoci;
+        for(long w : words){
+            // spread bits of packed targets over the entire word before folding
+            hash = 47 * hash + Long.hashCode(w * 0x9E3779B97F4A7C15L);
+        }
         return hash;
     }
     
     /**
-     * Haplotype h1 is smaller than h2 if and only if h1 has fewer targets or h1
+     * Haplotype h1 is smaller than h2 if and only if h1 has fewer loci or h1
      * has a 0 at the first locus where h1 and h2 differ (h2 has a 1 at this locus).
      * If no such locus exists h1 and h2 are equal.
      * 
@@ -132,17 +195,17 @@ public class Haplotype implements Comparable<Haplotype> {
      */
     @Override
     public int compareTo(Haplotype h) {
-        if(nrOfLoci() < h.nrOfLoci()){
+        if(nrOfLoci < h.nrOfLoci){
             return -1;
-        } else if(nrOfLoci() > h.nrOfLoci()){
+        } else if(nrOfLoci > h.nrOfLoci){
             return 1;
         } else {
-            // equal nr of targets, compare them
-            for(int i=0; i<nrOfLoci(); i++){
-                if(!targets.get(i) && h.targets.get(i)){
-                    return -1;
-                } else if(targets.get(i) && !h.targets.get(i)){
-                    return 1;
+            // equal nr of loci, compare words (first differing locus = lowest differing bit)
+            for(int w=0; w<words.length; w++){
+                long diff = words[w] ^ h.words[w];
+                if(diff != 0){
+                    long firstDiff = diff & -diff;
+                    return (words[w] & firstDiff) == 0 ? -1 : 1;
                 }
             }
             // all targets equal
@@ -14,104 +14,465 @@
 
 package org.ugent.caagt.genestacker;
 
+import java.util.AbstractSet;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 /**
+ * <p>
  * Represents a seed lot modelling all possible offspring of a crossing and the probability with
  * which each specific genotype is obtained.
- * 
+ * </p>
+ * <p>
+ * Genotypes are stored in parallel arrays (genotype, probability of the phase-known genotype, index of its
+ * genotype group and linkage phase ambiguity), where genotypes with the same allelic frequencies occupy a
+ * contiguous range. Filtered genotypes are marked in a bitmask, so that they are skipped during iteration.
+ * Genotypes can be iterated without any allocations:
+ * </p>
+ * <pre>
+ * for(int i = seedLot.nextGenotypeIndex(0); i &gt;= 0; i = seedLot.nextGenotypeIndex(i+1)){
+ *     Genotype g = seedLot.getGenotype(i);
+ *     double p = seedLot.getProbabilityOfPhaseKnownGenotype(i);
+ *     ...
+ * }
+ * </pre>
+ * <p>
+ * All other methods (sets of genotypes, genotype groups) are views backed by these arrays.
+ * </p>
+ * <p>
+ * Several seed lots can share the same arrays, each with their own bitmask of filtered genotypes,
+ * see {@link #createView()}. This allows to filter the same unfiltered seed lot in different ways,
+ * without copying any of the genotypes.
+ * </p>
+ *
  * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
  */
 public class SeedLot {
     
-    // map: allelic frequencies -> genotype group
+    // rough memory estimates (bytes) used by estimateMemoryUsage()
+    private static final long BYTES_PER_GENOTYPE_ENTRY = 8 + 8 + 4 + 8;   // genotype ref, prob, group index, lpa
+    private static final long BYTES_PER_GENOTYPE_OBJECT = 80;             // genotype object and chromosome list
+    private static final long BYTES_PER_CHROMOSOME_REF = 8;
+    private static final long BYTES_PER_GROUP = 64;                       // group object and map entry
+    
+    // genotypes, grouped by allelic frequencies
+    private Genotype[] genotypes;
+    // probability of each phase-known genotype
+    private double[] probs;
+    // index of genotype group of each genotype
+    private int[] groupIndex;
+    // linkage phase ambiguity of each genotype
+    private double[] lpa;
+    
+    // genotype groups (by index)
+    private GenotypeGroupWithSameAllelicFrequencies[] groups;
+    
+    // map: allelic frequencies -> genotype group (non empty groups only)
     private Map<GenotypeAllelicFrequencies, GenotypeGroupWithSameAllelicFrequencies> genotypeGroups;
     
+    // remaining genotypes (bit set = not filtered)
+    private long[] present;
+    private int nrOfPresent;
+    
+    // open addressing hash index: genotype -> array position + 1 (0 = empty slot)
+    private int[] index;
+    
     // flags uniform seed lots
     private boolean uniform;
     
+    // flags views that share all arrays with another seed lot
+    private boolean view;
+    
     /**
      * Create a new seed lot with the given genotype groups. Note that not all genotypes have necessarily been created,
      * in case heuristics have been applied to omit non-promising genotypes. However, probabilities are available for
-     * all constructed genotypes.
-     * 
+     * all constructed genotypes. The given genotype groups are copied into the seed lot and are not modified.
+     *
      * @param uniform indicates whether the seed lot is uniform (i.e. whether the parents are both homozygous)
      * @param genotypeGroups genotype groups (grouped by overlapping allelic frequencies)
      */
     public SeedLot(boolean uniform, Map<GenotypeAllelicFrequencies, GenotypeGroupWithSameAllelicFrequencies> genotypeGroups){
-        this.genotypeGroups = genotypeGroups;
         this.uniform = uniform;
+        // count genotypes
+        int n = 0;
+        for(GenotypeGroupWithSameAllelicFrequencies group : genotypeGroups.values()){
+            n += group.nrOfGenotypes();
+        }
+        allocate(n, genotypeGroups.size());
+        // copy groups
+        int pos = 0;
+        int gi = 0;
+        for(GenotypeGroupWithSameAllelicFrequencies group : genotypeGroups.values()){
+            int start = pos;
+            for(Genotype g : group.getGenotypes()){
+                genotypes[pos] = g;
+                probs[pos] = group.getProbabilityOfPhaseKnownGenotype(g);
+                pos++;
+            }
+            registerGroup(gi, group.getProbabilityOfGenotypeWithArbitraryLinkagePhase(), group.getAllelicFrequencies(), start, pos);
+            gi++;
+        }
+        buildIndex();
+    }
+    
+    /**
+     * Create a new seed lot containing the given genotypes, obtained with the given probabilities. Genotypes are grouped
+     * according to their allelic frequencies, and the probability of each group is computed as the sum of the probabilities
+     * of the contained genotypes. It is therefore required that for every given genotype, all genotypes with the same
+     * allelic frequencies that may be obtained from the crossing are included as well.
+     *
+     * @param uniform indicates whether the seed lot is uniform (i.e. whether the parents are both homozygous)
+     * @param genotypes distinct genotypes
+     * @param genotypeProbs probability of each genotype
+     */
+    public SeedLot(boolean uniform, Genotype[] genotypes, double[] genotypeProbs){
+        this(uniform, genotypes, genotypeProbs, null);
+    }
+    
+    /**
+     * Create a new seed lot containing the given genotypes, obtained with the given probabilities, where the probability
+     * of each group of genotypes with the same allelic frequencies is given explicitly. Not all genotypes of a group have
+     * to be included then, e.g. if genotypes with a low probability have been omitted during construction of the seed lot,
+     * while linkage phase ambiguities are still computed correctly. If <code>groupProbs</code> is <code>null</code>, the
+     * probability of each group is computed as the sum of the probabilities of the contained genotypes.
+     *
+     * @param uniform indicates whether the seed lot is uniform (i.e. whether the parents are both homozygous)
+     * @param genotypes distinct genotypes
+     * @param genotypeProbs probability of each genotype
+     * @param groupProbs probability of the allelic frequencies of each genotype, i.e. the total probability of all
+     *                   genotypes with the same allelic frequencies that may be obtained from the crossing (may be
+     *                   <code>null</code>)
+     */
+    public SeedLot(boolean uniform, Genotype[] genotypes, double[] genotypeProbs, double[] groupProbs){
+        this.uniform = uniform;
+        int n = genotypes.length;
+        // assign group indices and count genotypes per group
+        Map<GenotypeAllelicFrequencies, Integer> groupIndices = new HashMap<>();
+        int[] groupOfGenotype = new int[n];
+        int[] groupSizes = new int[n];
+        GenotypeAllelicFrequencies[] groupFreqs = new GenotypeAllelicFrequencies[n];
+        for(int i=0; i<n; i++){
+            GenotypeAllelicFrequencies state = genotypes[i].getAllelicFrequencies();
+            Integer gi = groupIndices.get(state);
+            if(gi == null){
+                gi = groupIndices.size();
+                groupIndices.put(state, gi);
+                groupFreqs[gi] = state;
+            }
+            groupOfGenotype[i] = gi;
+            groupSizes[gi]++;
+        }
+        int numGroups = groupIndices.size();
+        allocate(n, numGroups);
+        // compute start of each group
+        int[] next = new int[numGroups];
+        for(int gi=1; gi<numGroups; gi++){
+            next[gi] = next[gi-1] + groupSizes[gi-1];
+        }
+        int[] starts = next.clone();
+        // fill arrays and compute group probabilities (if not given)
+        double[] probOfGroup = new double[numGroups];
+        for(int i=0; i<n; i++){
+            int gi = groupOfGenotype[i];
+            int pos = next[gi]++;
+            this.genotypes[pos] = genotypes[i];
+            probs[pos] = genotypeProbs[i];
+            if(groupProbs == null){
+                probOfGroup[gi] += genotypeProbs[i];
+            } else {
+                probOfGroup[gi] = groupProbs[i];
+            }
+        }
+        for(int gi=0; gi<numGroups; gi++){
+            registerGroup(gi, probOfGroup[gi], groupFreqs[gi], starts[gi], next[gi]);
+        }
+        buildIndex();
     }
+    
     /**
      * Create a new uniform seed lot with only one single genotype, with probability 1.0.
-     * 
+     *
      * @param genotype the single genotype in this seed lot
      */
     public SeedLot(Genotype genotype){
-        Map<Genotype, Double> genotypes = new HashMap<>();
-        genotypes.put(genotype, 1.0);
-        genotypeGroups = new HashMap<>();
-        genotypeGroups.put(genotype.getAllelicFrequencies(), new GenotypeGroupWithSameAllelicFrequencies(1.0, genotype.getAllelicFrequencies(), genotypes));
         uniform = true;
+        allocate(1, 1);
+        genotypes[0] = genotype;
+        probs[0] = 1.0;
+        registerGroup(0, 1.0, genotype.getAllelicFrequencies(), 0, 1);
+        buildIndex();
+    }
+    
+    /**
+     * Create a view of the given seed lot, sharing all genotypes, probabilities and linkage phase ambiguities.
+     * 
+     * @param base seed lot of which a view is created
+     */
+    private SeedLot(SeedLot base){
+        uniform = base.uniform;
+        view = true;
+        genotypes = base.genotypes;
+        probs = base.probs;
+        groupIndex = base.groupIndex;
+        lpa = base.lpa;
+        index = base.index;
+        // own filter mask
+        present = base.present.clone();
+        nrOfPresent = base.nrOfPresent;
+        // own group views (with own number of remaining genotypes)
+        groups = new GenotypeGroupWithSameAllelicFrequencies[base.groups.length];
+        genotypeGroups = new LinkedHashMap<>();
+        for(int gi=0; gi<groups.length; gi++){
+            groups[gi] = base.groups[gi].viewIn(this);
+            if(groups[gi].nrOfGenotypes() > 0){
+                genotypeGroups.put(groups[gi].getAllelicFrequencies(), groups[gi]);
+            }
+        }
+    }
+    
+    /**
+     * Create a lightweight view of this seed lot, which shares all genotypes, probabilities and linkage phase
+     * ambiguities with this seed lot, but keeps its own record of filtered genotypes. Initially, the view contains
+     * all genotypes that currently remain in this seed lot. Filtering genotypes from the view does not affect this
+     * seed lot, and vice versa.
+     * 
+     * @return view of this seed lot that can be filtered independently
+     */
+    public SeedLot createView(){
+        return new SeedLot(this);
     }
     
     /**
-     * Get the remaining genotypes, after possible filtering(s).
+     * Estimate the amount of memory (in bytes) occupied by this seed lot. For a seed lot that owns its arrays, the
+     * estimate is proportional to the number of contained genotypes (including filtered genotypes), accounting for
+     * the parallel arrays, the hash index and the genotype objects, where the chromosomes of these genotypes are
+     * assumed to be shared with other genotypes. The genotype objects are owned by the seed lot, as offspring are
+     * not interned in any genotype pool unless they are used as parents in a later crossing. For a view (see
+     * {@link #createView()}), only the filter mask and the group views are taken into account, as all other data
+     * is shared with the underlying seed lot.
      * 
+     * @return estimated memory usage in bytes
+     */
+    public long estimateMemoryUsage(){
+        // filter mask and genotype groups
+        long bytes = 8L * present.length + BYTES_PER_GROUP * groups.length;
+        if(!view){
+            long n = genotypes.length;
+            int nrOfChromosomes = n > 0 ? genotypes[0].nrOfChromosomes() : 0;
+            // arrays and hash index
+            bytes += n * BYTES_PER_GENOTYPE_ENTRY + 4L * index.length;
+            // genotypes
+            bytes += n * (BYTES_PER_GENOTYPE_OBJECT + BYTES_PER_CHROMOSOME_REF * nrOfChromosomes);
+        }
+        return bytes;
+    }
+    
+    private void allocate(int nrOfGenotypes, int nrOfGroups){
+        genotypes = new Genotype[nrOfGenotypes];
+        probs = new double[nrOfGenotypes];
+        groupIndex = new int[nrOfGenotypes];
+        lpa = new double[nrOfGenotypes];
+        groups = new GenotypeGroupWithSameAllelicFrequencies[nrOfGroups];
+        genotypeGroups = new LinkedHashMap<>();
+        // initially, all genotypes are present
+        present = new long[(nrOfGenotypes + 63) >>> 6];
+        for(int i=0; i<nrOfGenotypes; i++){
+            present[i >>> 6] |= 1L << i;
+        }
+        nrOfPresent = nrOfGenotypes;
+    }
+    
+    // register group occupying positions [start, end) and precompute linkage phase ambiguities
+    private void registerGroup(int gi, double groupProb, GenotypeAllelicFrequencies freqs, int start, int end){
+        GenotypeGroupWithSameAllelicFrequencies group = new GenotypeGroupWithSameAllelicFrequencies(this, groupProb, freqs, start, end);
+        groups[gi] = group;
+        for(int i=start; i<end; i++){
+            groupIndex[i] = gi;
+            lpa[i] = 1.0 - probs[i]/groupProb;
+        }
+        if(end > start){
+            genotypeGroups.put(freqs, group);
+        }
+    }
+    
+    private void buildIndex(){
+        int capacity = 2;
+        while(capacity < 2*genotypes.length){
+            capacity *= 2;
+        }
+        index = new int[capacity];
+        for(int i=0; i<genotypes.length; i++){
+            int s = slot(genotypes[i]);
+            if(index[s] == 0){
+                index[s] = i+1;
+            }
+        }
+    }
+    
+    // find slot of given genotype in index, or empty slot where it would be stored
+    private int slot(Genotype g){
+        int mask = index.length - 1;
+        // spread hash bits (multiplicative hashing) to avoid clustering of similar hash codes
+        int h = g.hashCode() * 0x9E3779B9;
+        int s = (h ^ (h >>> 16)) & mask;
+        while(index[s] != 0 && !genotypes[index[s]-1].equals(g)){
+            s = (s + 1) & mask;
+        }
+        return s;
+    }
+    
+    /**
+     * Get the position of the given genotype in this seed lot (regardless of whether it has been filtered).
+     *
+     * @param g genotype
+     * @return position of the genotype, -1 if not contained in this seed lot
+     */
+    int indexOf(Genotype g){
+        return index[slot(g)] - 1;
+    }
+    
+    boolean isPresent(int i){
+        return (present[i >>> 6] & (1L << i)) != 0;
+    }
+    
+    /**
+     * Get the index of the first remaining genotype at or after the given position, after possible filtering(s).
+     * Used to iterate over all remaining genotypes without allocating any objects.
+     *
+     * @param from position from which to start searching (inclusive)
+     * @return index of the next remaining genotype, -1 if none
+     */
+    public int nextGenotypeIndex(int from){
+        return nextPresent(from, genotypes.length);
+    }
+    
+    // get next remaining genotype in [from, to), -1 if none
+    int nextPresent(int from, int to){
+        if(from >= to){
+            return -1;
+        }
+        int w = from >>> 6;
+        long word = present[w] & (-1L << from);
+        while(true){
+            if(word != 0){
+                int i = (w << 6) + Long.numberOfTrailingZeros(word);
+                return i < to ? i : -1;
+            }
+            w++;
+            if(w << 6 >= to){
+                return -1;
+            }
+            word = present[w];
+        }
+    }
+    
+    /**
+     * Get the genotype at the given position.
+     *
+     * @param i position, as obtained from {@link #nextGenotypeIndex(int)}
+     * @return genotype at this position
+     */
+    public Genotype getGenotype(int i){
+        return genotypes[i];
+    }
+    
+    /**
+     * Get the probability of obtaining the phase-known genotype at the given position.
+     *
+     * @param i position, as obtained from {@link #nextGenotypeIndex(int)}
+     * @return probability of the genotype at this position
+     */
+    public double getProbabilityOfPhaseKnownGenotype(int i){
+        return probs[i];
+    }
+    
+    /**
+     * Get the linkage phase ambiguity of the genotype at the given position.
+     *
+     * @param i position, as obtained from {@link #nextGenotypeIndex(int)}
+     * @return linkage phase ambiguity of the genotype at this position
+     */
+    public double getLinkagePhaseAmbiguity(int i){
+        return lpa[i];
+    }
+    
+    /**
+     * Get the group of the genotype at the given position.
+     *
+     * @param i position, as obtained from {@link #nextGenotypeIndex(int)}
+     * @return genotype group containing the genotype at this position
+     */
+    public GenotypeGroupWithSameAllelicFrequencies getGenotypeGroup(int i){
+        return groups[groupIndex[i]];
+    }
+    
+    /**
+     * Get the remaining genotypes, after possible filtering(s). The returned set is a view backed
+     * by this seed lot, which reflects later filtering; it is allowed to filter genotypes from the
+     * seed lot while iterating over this set.
+     *
      * @return set of (remaining) genotypes
      */
     public Set<Genotype> getGenotypes(){
-        Set<Genotype> genotypes = new HashSet<>();
-        for(GenotypeGroupWithSameAllelicFrequencies group : genotypeGroups.values()){
-            genotypes.addAll(group.getGenotypes());
-        }
-        return genotypes;
+        return new GenotypeView(0, genotypes.length, null);
+    }
+    
+    // view of remaining genotypes in positions [from, to)
+    Set<Genotype> getGenotypes(int from, int to, GenotypeGroupWithSameAllelicFrequencies group){
+        return new GenotypeView(from, to, group);
     }
     
     /**
      * Removes a genotype from the seed lot.
-     * 
+     *
      * @param g genotype to be removed
      * @return <code>true</code> if the given genotype has been successfully removed
      */
     public boolean filterGenotype(Genotype g){
-        GenotypeGroupWithSameAllelicFrequencies group = genotypeGroups.get(g.getAllelicFrequencies());
-        if(group == null){
-            // genotype's alleic frequencies not present
+        int i = indexOf(g);
+        return i >= 0 && filterGenotype(i);
+    }
+    
+    /**
+     * Removes the genotype at the given position from the seed lot.
+     *
+     * @param i position, as obtained from {@link #nextGenotypeIndex(int)}
+     * @return <code>true</code> if the genotype has been removed, <code>false</code> if it
+     *         had already been removed before
+     */
+    public boolean filterGenotype(int i){
+        if(!isPresent(i)){
             return false;
-        } else {
-            // remove genotype from its group
-            boolean removed = group.filterGenotype(g);
-            // if the group is now empty, remove it as well
-            if(group.nrOfGenotypes() == 0){
-                genotypeGroups.remove(g.getAllelicFrequencies());
-            }
-            return removed;
         }
+        present[i >>> 6] &= ~(1L << i);
+        nrOfPresent--;
+        GenotypeGroupWithSameAllelicFrequencies group = groups[groupIndex[i]];
+        group.decrementRemaining();
+        // if the group is now empty, remove it as well
+        if(group.nrOfGenotypes() == 0){
+            genotypeGroups.remove(group.getAllelicFrequencies());
+        }
+        return true;
     }
     
     /**
      * Check whether a given genotype is contained in this seed lot.
-     * 
+     *
      * @param g considered genotype
      * @return <code>true</code> if the considered genotype is contained in this seed lot
      */
     public boolean contains(Genotype g){
-        if(!genotypeGroups.containsKey(g.getAllelicFrequencies())){
-            // observable state not obtainable, so genotype definitely not obtainable
-            return false;
-        } else {
-            // observable state is obtainable, check for specific genotype
-            return genotypeGroups.get(g.getAllelicFrequencies()).contains(g);
-        }
+        int i = indexOf(g);
+        return i >= 0 && isPresent(i);
     }
     
     /**
      * Get the allelic frequencies of all genotypes contained in this seed lot.
-     * 
+     *
      * @return set of allelic frequencies
      */
     public Set<GenotypeAllelicFrequencies> getAllelicFrequencies(){
@@ -120,7 +481,7 @@ public class SeedLot {
     
     /**
      * Get the group of genotypes with the given allelic frequencies.
-     * 
+     *
      * @param freqs allelic frequencies
      * @return genotype group containing all genotypes from this seed lot with the given allelic frequencies
      */
@@ -130,28 +491,25 @@ public class SeedLot {
     
     /**
      * Get the current number of genotypes, after possible filtering(s).
-     * 
+     *
      * @return number of (remaining) genotypes
      */
     public int nrOfGenotypes(){
-        int nr = 0;
-        for(GenotypeGroupWithSameAllelicFrequencies group : genotypeGroups.values()){
-            nr += group.nrOfGenotypes();
-        }
-        return nr;
+        return nrOfPresent;
     }
     
     /**
      * Get number of genotypes with specific allelic frequencies, after possible
      * filtering(s).
-     * 
+     *
      * @param freqs allelic frequencies
      * @return number of (remaining) genotypes with the given allelic frequencies
      */
     public int nrOfGenotypes(GenotypeAllelicFrequencies freqs){
         int nr = 0;
-        if(genotypeGroups.containsKey(freqs)){
-            nr = genotypeGroups.get(freqs).nrOfGenotypes();
+        GenotypeGroupWithSameAllelicFrequencies group = genotypeGroups.get(freqs);
+        if(group != null){
+            nr = group.nrOfGenotypes();
         }
         return nr;
     }
@@ -159,11 +517,76 @@ public class SeedLot {
     /**
      * Check whether this seed lot is uniform, i.e whether it has been obtained by
      * crossing two homozygous genotypes so that the offspring is fixed to a single possibility.
-     * 
+     *
      * @return <code>true</code> if this seed lot is uniform
      */
     public boolean isUniform(){
         return uniform;
     }
     
+    /**
+     * Set view of the remaining genotypes in a range of positions.
+     */
+    private class GenotypeView extends AbstractSet<Genotype> {
+        
+        private final int from, to;
+        // group corresponding to this range, null for entire seed lot
+        private final GenotypeGroupWithSameAllelicFrequencies group;
+        
+        public GenotypeView(int from, int to, GenotypeGroupWithSameAllelicFrequencies group){
+            this.from = from;
+            this.to = to;
+            this.group = group;
+        }
+        
+        @Override
+        public Iterator<Genotype> iterator() {
+            return new Iterator<Genotype>() {
+                
+                private int next = nextPresent(from, to);
+                private int last = -1;
+                
+                @Override
+                public boolean hasNext() {
+                    return next >= 0;
+                }
+                
+                @Override
+                public Genotype next() {
+                    if(next < 0){
+                        throw new NoSuchElementException();
+                    }
+                    last = next;
+                    next = nextPresent(next+1, to);
+                    return genotypes[last];
+                }
+                
+                @Override
+                public void remove() {
+                    if(last < 0){
+                        throw new IllegalStateException();
+                    }
+                    filterGenotype(last);
+                    last = -1;
+                }
+            
+            };
+        }
+        
+        @Override
+        public boolean contains(Object o){
+            if(!(o instanceof Genotype)){
+                return false;
+            }
+            int i = indexOf((Genotype) o);
+            return i >= from && i < to && isPresent(i);
+        }
+        
+        @Override
+        public int size() {
+            return group == null ? nrOfPresent : group.nrOfGenotypes();
+        }
+    
+    }
+
 }
@@ -0,0 +1,37 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search;
+
+/**
+ * Policy used to select the seed lots that are evicted from a bounded seed lot cache
+ * when its memory budget is exceeded (see {@link SeedLotCache}).
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public enum CacheEvictionPolicy {
+    
+    /**
+     * Evict the least recently used seed lot.
+     */
+    LRU,
+    
+    /**
+     * Evict the seed lot with the lowest construction cost per byte, aged so that seed lots which have
+     * not been used for a long time are eventually evicted as well (GreedyDual-Size). Seed lots that
+     * were expensive to construct are retained longer than cheap seed lots of the same size.
+     */
+    COST_AWARE;
+
+}
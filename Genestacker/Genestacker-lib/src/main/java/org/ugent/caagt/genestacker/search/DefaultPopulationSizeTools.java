@@ -46,8 +46,13 @@ public class DefaultPopulationSizeTools extends PopulationSizeTools {
     
     @Override
     public double computeTargetProbLowerBound(SeedLot seedLot, int maxPopSizePerGen){
+        return computeTargetProbLowerBound(maxPopSizePerGen); // same for any seed lot
+    }
+    
+    @Override
+    public double computeTargetProbLowerBound(int maxPopSizePerGen){
         // lower bound based on gamma instead of gamma'; still holds as gamma' >= gamma
-        return 1 - Math.pow(1-getGlobalSuccessRate(), 1.0/maxPopSizePerGen); // same for any seed lot
+        return 1 - Math.pow(1-getGlobalSuccessRate(), 1.0/maxPopSizePerGen);
     }
     
     /**
@@ -14,14 +14,21 @@
 
 package org.ugent.caagt.genestacker.search;
 
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.Set;
 
 /**
  * Represents a generic, abstract Pareto frontier. Objects are compared based on
  * special descriptor objects that are inferred from these objects.
+ * <p>
+ * The frontier is stored as an immutable snapshot of the registered objects and their descriptors,
+ * which is replaced as a whole whenever the frontier changes (copy-on-write). Queries never lock
+ * and always see a consistent snapshot, while updates are serialized. This is efficient when, as
+ * during a search, the frontier is queried concurrently far more often than it is updated. The
+ * descriptor of each object is inferred once, upon registration.
  * 
  * @param <T> type of objects to be stored in the Pareto frontier
  * @param <D> type of inferred descriptor objects to be used for comparison
@@ -29,12 +36,12 @@ import java.util.Set;
  * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
  */
 public abstract class GenericParetoFrontier<T,D> {
-
+    
     // dominates relation
     private DominatesRelation<D> dominatesRelation;
     
-    // objects currently in Pareto frontier
-    private Set<T> frontier;
+    // current snapshot of the Pareto frontier (replaced upon each update)
+    private volatile Snapshot<T,D> snapshot;
     
     /**
      * Create a new Pareto frontier with given dominates relation.
@@ -43,16 +50,21 @@ public abstract class GenericParetoFrontier<T,D> {
      */
     public GenericParetoFrontier(DominatesRelation<D> dominatesRelation){
         this.dominatesRelation = dominatesRelation;
-        frontier = new HashSet<>();
+        snapshot = new Snapshot<>(new Object[0], new Object[0]);
+    }
+    
+    public DominatesRelation<D> getDominatesRelation(){
+        return dominatesRelation;
     }
     
     /**
-     * Return the current objects contained in the Pareto frontier.
+     * Return the current objects contained in the Pareto frontier. The returned set is an
+     * unmodifiable snapshot that is not affected by later updates of the frontier.
      * 
      * @return set of objects in the current Pareto frontier
      */
     public Set<T> getFrontier(){
-        return frontier;
+        return snapshot.getObjectSet();
     }
     
     /**
@@ -61,7 +73,7 @@ public abstract class GenericParetoFrontier<T,D> {
      * @return current Pareto frontier size
      */
     public int getNumSchemes(){
-        return frontier.size();
+        return snapshot.objects.length;
     }
     
     /**
@@ -71,7 +83,7 @@ public abstract class GenericParetoFrontier<T,D> {
      * @return <code>true</code> if the given object is currently contained in the Pareto frontier
      */
     public boolean contains(T obj){
-        return frontier.contains(obj);
+        return snapshot.getObjectSet().contains(obj);
     }
     
     /**
@@ -91,23 +103,53 @@ public abstract class GenericParetoFrontier<T,D> {
      * @return <code>true</code> if the newly presented object is included in the Pareto frontier
      */
     public synchronized boolean register(T newObject){
+        Snapshot<T,D> cur = snapshot;
         D newDescriptor = inferDescriptor(newObject);
+        // retain objects not dominated by the new object
+        Object[] objects = new Object[cur.objects.length+1];
+        Object[] descriptors = new Object[cur.objects.length+1];
+        int n = 0;
         boolean dominated = false;
-        Iterator<T> it = frontier.iterator();
-        while(!dominated && it.hasNext()){
-            D otherDescriptor = inferDescriptor(it.next());
+        boolean present = false;
+        int i = 0;
+        while(!dominated && i < cur.objects.length){
+            // check if new object is already present (avoids building the object set of the snapshot)
+            present = present || newObject.equals(cur.objects[i]);
+            D otherDescriptor = cur.getDescriptor(i);
             // check if dominated by other
             dominated = dominatesRelation.dominates(otherDescriptor, newDescriptor);
             // conversely: if new object dominates other, remove other
-            if(dominatesRelation.dominates(newDescriptor, otherDescriptor)){
-                it.remove();
+            if(!dominatesRelation.dominates(newDescriptor, otherDescriptor)){
+                objects[n] = cur.objects[i];
+                descriptors[n] = otherDescriptor;
+                n++;
             }
+            i++;
         }
         if(!dominated){
             // register new object (if not already present)
-            return frontier.add(newObject);
+            if(!present){
+                objects[n] = newObject;
+                descriptors[n] = newDescriptor;
+                n++;
+            }
+            // publish new snapshot (if changed)
+            if(n != cur.objects.length || !present){
+                snapshot = new Snapshot<>(Arrays.copyOf(objects, n), Arrays.copyOf(descriptors, n));
+            }
+            return !present;
         } else {
-            return false; // dominated by existing solution, not added
+            // dominated by existing solution, not added (but dominated objects that were
+            // encountered before, if any, are still removed)
+            if(n < i){
+                for(; i < cur.objects.length; i++){
+                    objects[n] = cur.objects[i];
+                    descriptors[n] = cur.descriptors[i];
+                    n++;
+                }
+                snapshot = new Snapshot<>(Arrays.copyOf(objects, n), Arrays.copyOf(descriptors, n));
+            }
+            return false;
         }
     }
     
@@ -137,20 +179,62 @@ public abstract class GenericParetoFrontier<T,D> {
     
     /**
      * Check whether a given object is already dominated by a registered object, based
-     * on its inferred descriptor.
+     * on its inferred descriptor. Does not block, even if the frontier is being updated
+     * concurrently, in which case the check is performed against the frontier as it was
+     * before the update.
      * 
      * @param desc descriptor of object
      * @return <code>true</code> if the object with the given descriptor is dominated by
      *         another object currently contained in the Pareto frontier
      */
-    public synchronized boolean dominatedByRegisteredObject(D desc){
+    public boolean dominatedByRegisteredObject(D desc){
+        Snapshot<T,D> cur = snapshot;
         boolean dominated = false;
-        Iterator<T> it = frontier.iterator();
-        while(!dominated && it.hasNext()){
-            D otherDescriptor = inferDescriptor(it.next());
-            dominated = dominatesRelation.dominates(otherDescriptor, desc);
+        int i = 0;
+        while(!dominated && i < cur.descriptors.length){
+            dominated = dominatesRelation.dominates(cur.getDescriptor(i), desc);
+            i++;
         }
         return dominated;
     }
     
+    /**
+     * Immutable snapshot of the Pareto frontier, consisting of the registered objects and their
+     * descriptors (at corresponding positions).
+     */
+    private static final class Snapshot<T,D> {
+        
+        // registered objects
+        private final Object[] objects;
+        // corresponding descriptors
+        private final Object[] descriptors;
+        // unmodifiable set view (created when first requested)
+        private volatile Set<T> objectSet;
+        
+        public Snapshot(Object[] objects, Object[] descriptors){
+            this.objects = objects;
+            this.descriptors = descriptors;
+        }
+        
+        @SuppressWarnings("unchecked")
+        public D getDescriptor(int i){
+            return (D) descriptors[i];
+        }
+        
+        @SuppressWarnings("unchecked")
+        public Set<T> getObjectSet(){
+            Set<T> set = objectSet;
+            if(set == null){
+                Set<T> created = new HashSet<>();
+                for(Object obj : objects){
+                    created.add((T) obj);
+                }
+                set = Collections.unmodifiableSet(created);
+                objectSet = set;
+            }
+            return set;
+        }
+    
+    }
+
 }
@@ -0,0 +1,397 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ugent.caagt.genestacker.DiploidChromosome;
+import org.ugent.caagt.genestacker.GeneticMap;
+import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.Haplotype;
+import org.ugent.caagt.genestacker.Plant;
+import org.ugent.caagt.genestacker.SeedLot;
+import org.ugent.caagt.genestacker.exceptions.GenestackerException;
+import org.ugent.caagt.genestacker.io.GenestackerInput;
+import org.ugent.caagt.genestacker.search.bb.DefaultSeedLotConstructor;
+import org.ugent.caagt.genestacker.search.bb.OffspringProbability;
+import org.ugent.caagt.genestacker.search.bb.SeedLotConstructor;
+import org.ugent.caagt.genestacker.search.constraints.Constraint;
+import org.ugent.caagt.genestacker.search.constraints.NumberOfSeedsPerCrossing;
+
+/**
+ * Preprocessing stage that merges blocks of adjacent loci which are inherited identically by all initial plants
+ * and the ideotype, i.e. where every haplotype of these genotypes carries the same allele at all loci of the block.
+ * Each block is replaced by a single super-locus, positioned at the midpoint of the block, so that the search can
+ * be executed on a reduced instance. Constructed crossing schemes are afterwards expanded back to the original
+ * loci, in which case all seed lots are recomputed so that the population sizes and linkage phase ambiguities of
+ * the expanded schemes are exact for the original instance.
+ * <p>
+ * If all merged blocks have length 0 cM, the compressed instance is equivalent to the original instance, as
+ * recombination never occurs within a block. Merging blocks of positive length is an approximation, as crossovers
+ * that break up a block are then ignored during the search; see {@link #isExact()}.
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class LocusBlockCompression {
+    
+    private Logger logger = LogManager.getLogger(LocusBlockCompression.class);
+    
+    // original input
+    private GenestackerInput originalInput;
+    
+    // compressed input
+    private GenestackerInput compressedInput;
+    
+    // index of block containing each original locus, per chromosome
+    private int[][] blockOf;
+    
+    // number of blocks per chromosome
+    private int[] nrOfBlocks;
+    
+    // indicates whether the compression is exact
+    private boolean exact;
+    
+    // seed lot constructor used to recompute seed lots of expanded schemes
+    private SeedLotConstructor seedLotConstructor;
+    
+    // expanded genotypes (memoized)
+    private Map<Genotype, Genotype> expandedGenotypes;
+    
+    /**
+     * Compress the given input by merging blocks of adjacent, identically inherited loci that span a distance of at
+     * most the given maximum block length. If the maximum block length is 0 cM, only loci located at the exact same
+     * position are merged and the compression is exact.
+     *
+     * @param input original input
+     * @param maxBlockLength maximum length of a merged block (in cM)
+     * @throws GenestackerException if anything goes wrong while constructing the compressed input
+     */
+    public LocusBlockCompression(GenestackerInput input, double maxBlockLength) throws GenestackerException{
+        if(maxBlockLength < 0.0){
+            throw new IllegalArgumentException("Maximum block length should be non-negative.");
+        }
+        this.originalInput = input;
+        // collect genotypes that have to be preserved
+        List<Genotype> genotypes = new ArrayList<>();
+        for(Plant p : input.getInitialPlants()){
+            genotypes.add(p.getGenotype());
+        }
+        genotypes.add(input.getIdeotype());
+        // detect blocks
+        GeneticMap map = input.getGeneticMap();
+        double[][] distances = map.getDistances();
+        int nrOfChromosomes = map.nrOfChromosomes();
+        blockOf = new int[nrOfChromosomes][];
+        nrOfBlocks = new int[nrOfChromosomes];
+        double[][] compressedDistances = new double[nrOfChromosomes][];
+        exact = true;
+        for(int c=0; c<nrOfChromosomes; c++){
+            int nrOfLoci = map.nrOfLociOnChromosome(c);
+            blockOf[c] = new int[nrOfLoci];
+            // length of each block
+            List<Double> blockLengths = new ArrayList<>();
+            // distance between the end of each block and the start of the next block
+            List<Double> gaps = new ArrayList<>();
+            int block = 0;
+            double length = 0.0;
+            for(int l=1; l<nrOfLoci; l++){
+                double d = distances[c][l-1];
+                if(length + d <= maxBlockLength && identicallyInherited(genotypes, c, l-1, l)){
+                    // extend current block
+                    length += d;
+                } else {
+                    // start new block
+                    blockLengths.add(length);
+                    gaps.add(d);
+                    block++;
+                    length = 0.0;
+                }
+                blockOf[c][l] = block;
+            }
+            blockLengths.add(length);
+            nrOfBlocks[c] = block+1;
+            // compute distances between block midpoints
+            compressedDistances[c] = new double[block];
+            for(int b=0; b<block; b++){
+                compressedDistances[c][b] = blockLengths.get(b)/2 + gaps.get(b) + blockLengths.get(b+1)/2;
+            }
+            for(double l : blockLengths){
+                if(l > 0.0){
+                    exact = false;
+                }
+            }
+        }
+        // create compressed input
+        GeneticMap compressedMap = new GeneticMap(compressedDistances, map.getDistanceMapFunction());
+        List<Plant> compressedPlants = new ArrayList<>();
+        for(Plant p : input.getInitialPlants()){
+            compressedPlants.add(new Plant(compress(p.getGenotype())));
+        }
+        compressedInput = new GenestackerInput(compressedPlants, compress(input.getIdeotype()), compressedMap);
+        seedLotConstructor = new DefaultSeedLotConstructor(map);
+        expandedGenotypes = new HashMap<>();
+    }
+    
+    /**
+     * Check whether all given genotypes carry the same allele at both given loci of the given chromosome,
+     * on each haplotype.
+     */
+    private boolean identicallyInherited(List<Genotype> genotypes, int chromIndex, int locus1, int locus2){
+        for(Genotype g : genotypes){
+            for(Haplotype hap : g.getChromosomes().get(chromIndex).getHaplotypes()){
+                if(hap.targetPresent(locus1) != hap.targetPresent(locus2)){
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+    
+    public GenestackerInput getOriginalInput(){
+        return originalInput;
+    }
+    
+    public GenestackerInput getCompressedInput(){
+        return compressedInput;
+    }
+    
+    /**
+     * Check whether the compression is exact, i.e. whether all merged blocks have length 0 cM. Else, the search
+     * on the compressed instance ignores crossovers within merged blocks, so that it only approximates the search
+     * on the original instance. Expanded schemes are always evaluated exactly, regardless of this flag.
+     *
+     * @return <code>true</code> if the compressed instance is equivalent to the original instance
+     */
+    public boolean isExact(){
+        return exact;
+    }
+    
+    /**
+     * Get the total number of loci in the original instance.
+     *
+     * @return number of original loci
+     */
+    public int getNrOfOriginalLoci(){
+        int n = 0;
+        for(int[] b : blockOf){
+            n += b.length;
+        }
+        return n;
+    }
+    
+    /**
+     * Get the total number of (super-)loci in the compressed instance.
+     *
+     * @return number of compressed loci
+     */
+    public int getNrOfCompressedLoci(){
+        int n = 0;
+        for(int b : nrOfBlocks){
+            n += b;
+        }
+        return n;
+    }
+    
+    /**
+     * Check whether any loci have been merged.
+     *
+     * @return <code>true</code> if the compressed instance contains less loci than the original instance
+     */
+    public boolean isEffective(){
+        return getNrOfCompressedLoci() < getNrOfOriginalLoci();
+    }
+    
+    /**
+     * Compress the given genotype of the original instance, by retaining a single locus per block. Only
+     * genotypes that are inherited identically at all loci of each block can be compressed without loss
+     * of information.
+     *
+     * @param genotype genotype of the original instance
+     * @return compressed genotype
+     * @throws GenestackerException if the compressed genotype can not be constructed
+     */
+    public Genotype compress(Genotype genotype) throws GenestackerException{
+        List<DiploidChromosome> chromosomes = new ArrayList<>();
+        for(int c=0; c<blockOf.length; c++){
+            Haplotype[] haps = genotype.getChromosomes().get(c).getHaplotypes();
+            boolean[][] targets = new boolean[2][nrOfBlocks[c]];
+            for(int l=blockOf[c].length-1; l>=0; l--){
+                // value at first locus of each block
+                targets[0][blockOf[c][l]] = haps[0].targetPresent(l);
+                targets[1][blockOf[c][l]] = haps[1].targetPresent(l);
+            }
+            chromosomes.add(new DiploidChromosome(new Haplotype(targets[0]), new Haplotype(targets[1])));
+        }
+        return new Genotype(chromosomes);
+    }
+    
+    /**
+     * Expand the given genotype of the compressed instance to the original loci, by copying the allele of each
+     * super-locus to all loci of the respective block.
+     *
+     * @param genotype genotype of the compressed instance
+     * @return expanded genotype
+     * @throws GenestackerException if the expanded genotype can not be constructed
+     */
+    public Genotype expand(Genotype genotype) throws GenestackerException{
+        Genotype expanded = expandedGenotypes.get(genotype);
+        if(expanded == null){
+            List<DiploidChromosome> chromosomes = new ArrayList<>();
+            for(int c=0; c<blockOf.length; c++){
+                Haplotype[] haps = genotype.getChromosomes().get(c).getHaplotypes();
+                boolean[][] targets = new boolean[2][blockOf[c].length];
+                for(int l=0; l<blockOf[c].length; l++){
+                    targets[0][l] = haps[0].targetPresent(blockOf[c][l]);
+                    targets[1][l] = haps[1].targetPresent(blockOf[c][l]);
+                }
+                chromosomes.add(new DiploidChromosome(new Haplotype(targets[0]), new Haplotype(targets[1])));
+            }
+            expanded = new Genotype(chromosomes);
+            expandedGenotypes.put(genotype, expanded);
+        }
+        return expanded;
+    }
+    
+    /**
+     * Expand the given crossing scheme, constructed for the compressed instance, to the original loci. The returned
+     * scheme is a copy with the same structure, in which all plants are expanded and all seed lots are recomputed
+     * using the genetic map of the original instance. The population sizes and linkage phase ambiguity of the
+     * expanded scheme are therefore exact, also if the compression is not.
+     *
+     * @param scheme crossing scheme constructed for the compressed instance
+     * @return expanded crossing scheme
+     * @throws GenestackerException if anything goes wrong while expanding the scheme
+     */
+    public CrossingScheme expand(CrossingScheme scheme) throws GenestackerException{
+        PlantNode finalPlant = scheme.getFinalPlantNode().deepUpwardsCopy();
+        // collect all plant and seed lot nodes of the copy
+        Set<PlantNode> plants = new HashSet<>();
+        Set<SeedLotNode> seedLots = new HashSet<>();
+        LinkedList<PlantNode> queue = new LinkedList<>();
+        plants.add(finalPlant);
+        queue.add(finalPlant);
+        while(!queue.isEmpty()){
+            SeedLotNode sl = queue.poll().getParent();
+            if(sl != null && seedLots.add(sl)){
+                for(Set<PlantNode> children : sl.getChildren().values()){
+                    for(PlantNode child : children){
+                        if(plants.add(child)){
+                            queue.add(child);
+                        }
+                    }
+                }
+                if(!sl.isInitialSeedLot()){
+                    CrossingNode crossing = sl.getParentCrossing();
+                    if(plants.add(crossing.getParent1())){
+                        queue.add(crossing.getParent1());
+                    }
+                    if(plants.add(crossing.getParent2())){
+                        queue.add(crossing.getParent2());
+                    }
+                }
+            }
+        }
+        // expand plants
+        for(PlantNode plant : plants){
+            if(!plant.isDummy()){
+                plant.setPlant(new Plant(expand(plant.getPlant().getGenotype())));
+            }
+        }
+        // recompute seed lots
+        for(SeedLotNode sl : seedLots){
+            if(sl.isInitialSeedLot()){
+                sl.setSeedLot(new SeedLot(expand(sl.getSeedLot().getGenotypes().iterator().next())));
+            } else {
+                Genotype parent1 = sl.getParentCrossing().getParent1().getPlant().getGenotype();
+                Genotype parent2 = sl.getParentCrossing().getParent2().getPlant().getGenotype();
+                // distinct genotypes grown from this seed lot
+                Set<Genotype> children = new HashSet<>();
+                for(Set<PlantNode> gen : sl.getChildren().values()){
+                    for(PlantNode child : gen){
+                        if(!child.isDummy()){
+                            children.add(child.getPlant().getGenotype());
+                        }
+                    }
+                }
+                Genotype[] genotypes = children.toArray(new Genotype[children.size()]);
+                double[] probs = new double[genotypes.length];
+                double[] groupProbs = new double[genotypes.length];
+                for(int i=0; i<genotypes.length; i++){
+                    OffspringProbability p = seedLotConstructor.probabilityOf(parent1, parent2, genotypes[i]);
+                    probs[i] = p.getProbabilityOfPhaseKnownGenotype();
+                    groupProbs[i] = p.getProbabilityOfAllelicFrequencies();
+                }
+                boolean uniform = parent1.isHomozygousAtAllContainedLoci() && parent2.isHomozygousAtAllContainedLoci();
+                sl.setSeedLot(new SeedLot(uniform, genotypes, probs, groupProbs));
+            }
+        }
+        CrossingScheme expanded = new CrossingScheme(scheme.getPopulationSizeTools(), finalPlant);
+        return expanded;
+    }
+    
+    /**
+     * Expand all crossing schemes of the given Pareto frontier, constructed for the compressed instance, and
+     * register them in a new Pareto frontier with the same dominates relation. If the compression is not exact,
+     * the recomputed population sizes and linkage phase ambiguities may differ from those of the compressed
+     * schemes, so that an expanded scheme may violate the constraints of the search. Each expanded scheme is
+     * therefore validated again: schemes that violate any of the given constraints, or in which more seeds are
+     * taken from a seed lot than the number of seeds produced by the corresponding crossings, are discarded.
+     * Expanded schemes that turn out to be dominated are discarded as well.
+     *
+     * @param frontier Pareto frontier constructed for the compressed instance
+     * @param constraints constraints imposed during the search, <code>null</code> if none
+     * @param numSeedsPerCrossing number of seeds produced from one crossing, <code>null</code> if unlimited
+     * @return Pareto frontier with expanded crossing schemes
+     * @throws GenestackerException if anything goes wrong while expanding the schemes
+     */
+    public ParetoFrontier expand(ParetoFrontier frontier, List<Constraint> constraints,
+                                 NumberOfSeedsPerCrossing numSeedsPerCrossing) throws GenestackerException{
+        ParetoFrontier expanded = new ParetoFrontier(frontier.getDominatesRelation());
+        int numDiscarded = 0;
+        for(CrossingScheme scheme : frontier.getFrontier()){
+            CrossingScheme s = expand(scheme);
+            if(isValid(s, constraints, numSeedsPerCrossing)){
+                expanded.register(s);
+            } else {
+                numDiscarded++;
+            }
+        }
+        if(numDiscarded > 0){
+            logger.warn("Discarded {} expanded crossing schemes that violate the constraints for the original loci", numDiscarded);
+        }
+        return expanded;
+    }
+    
+    // check whether an expanded scheme satisfies all constraints and does not contain depleted seed lots
+    private boolean isValid(CrossingScheme scheme, List<Constraint> constraints, NumberOfSeedsPerCrossing numSeedsPerCrossing){
+        if(constraints != null){
+            CrossingSchemeDescriptor desc = scheme.getDescriptor();
+            for(Constraint c : constraints){
+                if(!c.isSatisfied(desc)){
+                    return false;
+                }
+            }
+        }
+        return numSeedsPerCrossing == null || numSeedsPerCrossing.getDepletedSeedLots(scheme).isEmpty();
+    }
+
+}
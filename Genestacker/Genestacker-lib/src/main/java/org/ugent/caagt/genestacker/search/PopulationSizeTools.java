@@ -67,6 +67,17 @@ public abstract class PopulationSizeTools {
      */
     public abstract double computeTargetProbLowerBound(SeedLot seedLot, int maxPopSizePerGen);
     
+    /**
+     * Computes a necessary lower bound for the probability to obtain any target among the offspring
+     * of any seed lot, taking into account the maximum allowed population size per generation. This
+     * bound does not depend on the seed lot, so that it can be applied during construction of seed lots.
+     * It should never exceed the bound computed for a specific seed lot.
+     * 
+     * @param maxPopSizePerGen maximum population size per generation
+     * @return necessary lower bound for probability of any desired target genotype to fall within the constraints
+     */
+    public abstract double computeTargetProbLowerBound(int maxPopSizePerGen);
+    
     /**
      * Compute the required number of seeds taken from this seed lot per generation in which
      * plants are grown from this seed lot. Returns a map indicating how many seeds are taken
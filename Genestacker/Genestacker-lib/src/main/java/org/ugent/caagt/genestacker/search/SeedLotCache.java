@@ -14,63 +14,488 @@
 
 package org.ugent.caagt.genestacker.search;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
 import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.GenotypePool;
 import org.ugent.caagt.genestacker.SeedLot;
+import org.ugent.caagt.genestacker.exceptions.GenotypeException;
+import org.ugent.caagt.genestacker.util.ConcurrentLongObjectMap;
 
 /**
- * Used to cache seed lots created by crossing two specific genotypes.
- * 
+ * Used to cache seed lots created by crossing two specific genotypes. Seed lots are
+ * indexed by a primitive key composed of the ids of both parental genotypes, as assigned
+ * by a genotype pool (see {@link GenotypePool#pairKey(Genotype, Genotype)}), so that
+ * crossings g1 x g2 and g2 x g1 share the same entry.
+ * <p>
+ * Two kinds of seed lots are cached separately: the unfiltered seed lots obtained from the
+ * seed lot constructor, which do not depend on the applied filters and constraints, and the
+ * filtered seed lots, which are views of the unfiltered seed lots (see {@link SeedLot#createView()})
+ * obtained for the current filter configuration. When this configuration changes, only the
+ * filtered seed lots should be cleared (see {@link #clearFiltered()}). A filtered seed lot is
+ * only cached as long as the corresponding unfiltered seed lot is cached.
+ * <p>
+ * The cache keeps track of the estimated memory usage of all cached seed lots (see
+ * {@link SeedLot#estimateMemoryUsage()}). If a memory budget is specified, unfiltered seed lots
+ * (together with the corresponding filtered seed lot) are evicted according to the chosen
+ * {@link CacheEvictionPolicy} whenever the budget is exceeded. By default, the cache is unbounded.
+ * Lookups never lock the cache: the priority of an accessed seed lot is only recorded in its entry,
+ * and the entry is repositioned when it is about to be evicted, so that seed lots are still evicted
+ * in the exact order defined by the eviction policy.
+ * The number of hits, misses and evictions is recorded, where a hit means that a filtered or
+ * unfiltered seed lot was found so that no new seed lot has to be constructed, and a miss
+ * means that no unfiltered seed lot was found.
+ * <p>
+ * Unfiltered seed lots can be obtained atomically with {@link #getOrComputeUnfiltered(Genotype, Genotype, SeedLotComputation)}:
+ * if several threads concurrently request the same missing seed lot (in any order of the parents), only one of them
+ * constructs it, while the others wait for and share the result.
+ *
  * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
  */
 public class SeedLotCache {
-
-    private Map<Genotype, Map<Genotype, SeedLot>> cache;
+    
+    // memory budget of an unbounded cache
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+    
+    // pool used to assign genotype ids
+    private final GenotypePool pool;
+    
+    // memory budget (bytes) and eviction policy
+    private final long maxMemory;
+    private final CacheEvictionPolicy policy;
+    
+    // filtered seed lots indexed by genotype pair key
+    private final ConcurrentLongObjectMap<SeedLot> cache;
+    
+    // unfiltered seed lot entries indexed by genotype pair key
+    private final ConcurrentLongObjectMap<Entry> unfiltered;
+    
+    // unfiltered seed lots currently being constructed, indexed by genotype pair key
+    private final ConcurrentLongObjectMap<CompletableFuture<SeedLot>> inFlight;
+    
+    // unfiltered seed lot entries in eviction order (guarded by the lock on this cache)
+    private final TreeSet<Entry> evictionOrder;
+    // estimated memory usage of all cached seed lots (guarded)
+    private long memory;
+    // logical clock used for LRU eviction
+    private final AtomicLong clock;
+    // priority of the last evicted entry, used for cost-aware eviction (only updated while holding the lock)
+    private volatile double inflation;
+    // entry sequence number, used to break ties (guarded)
+    private long nextSeq;
+    
+    // statistics
+    private final AtomicLong hits, misses, evictions;
     
     public SeedLotCache(){
-        // use concurrent hash map (parallel access by cross workers)
-        cache = new ConcurrentHashMap<>();
+        this(new GenotypePool());
+    }
+    
+    /**
+     * Create an unbounded seed lot cache using the ids of the given genotype pool. Preferably,
+     * the genotypes that will be looked up in the cache are canonical instances from this pool.
+     *
+     * @param pool genotype pool
+     */
+    public SeedLotCache(GenotypePool pool){
+        this(pool, UNBOUNDED, CacheEvictionPolicy.LRU);
     }
     
     /**
-     * Get the cached seed lot obtained from crossing genotype g1 with genotype g2
+     * Create a seed lot cache using the ids of the given genotype pool, with the given memory budget
+     * and eviction policy.
+     *
+     * @param pool genotype pool
+     * @param maxMemory memory budget in bytes, {@link #UNBOUNDED} for an unbounded cache
+     * @param policy eviction policy applied when the memory budget is exceeded
+     */
+    public SeedLotCache(GenotypePool pool, long maxMemory, CacheEvictionPolicy policy){
+        this.pool = pool;
+        this.maxMemory = maxMemory;
+        this.policy = policy;
+        // use concurrent maps (parallel access by cross workers)
+        cache = new ConcurrentLongObjectMap<>();
+        unfiltered = new ConcurrentLongObjectMap<>();
+        inFlight = new ConcurrentLongObjectMap<>();
+        evictionOrder = new TreeSet<>(new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2){
+                int c = Double.compare(e1.priority, e2.priority);
+                return c != 0 ? c : Long.compare(e1.seq, e2.seq);
+            }
+        });
+        memory = 0;
+        clock = new AtomicLong();
+        inflation = 0.0;
+        nextSeq = 0;
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        evictions = new AtomicLong();
+    }
+    
+    /**
+     * Get the cached filtered seed lot obtained from crossing genotype g1 with genotype g2
      * (possibly equal in case of a selfing). If this seed lot is not yet present
      * in the cache, null is returned.
-     * 
+     *
      * @param g1 genotype 1
      * @param g2 genotype 2
      * @return cached seed lot obtained from crossing the given genotypes, <code>null</code>
      *         if this seed lot is not yet present in the cache
      */
     public SeedLot getCachedSeedLot(Genotype g1, Genotype g2){
-        SeedLot seedlot = null;
-        // check if present in cache
-        if(cache.containsKey(g1) && cache.get(g1).containsKey(g2)){
-            seedlot = cache.get(g1).get(g2);
-        } else if (cache.containsKey(g2) && cache.get(g2).containsKey(g1)){
-            seedlot = cache.get(g2).get(g1);
+        // genotypes that have not been interned can not be part of any cached crossing
+        long key = pool.lookupPairKey(g1, g2);
+        if(key < 0){
+            return null;
         }
-        return seedlot;
+        SeedLot sl = cache.get(key);
+        if(sl != null){
+            hits.incrementAndGet();
+            touch(unfiltered.get(key));
+        }
+        return sl;
     }
     
     /**
-     * Store the seed lot obtained from crossing genotype g1 with genotype g2 in the cache.
-     * 
+     * Store the filtered seed lot obtained from crossing genotype g1 with genotype g2 in the cache, unless
+     * another filtered seed lot has already been stored concurrently for the same crossing, in which case that
+     * seed lot is returned so that all threads share the same instance. The seed lot is not stored if the
+     * corresponding unfiltered seed lot is not (or no longer) cached.
+     *
      * @param g1 genotype 1
      * @param g2 genotype 2
      * @param seedlot seed lot obtained by crossing the given genotypes
+     * @return the cached filtered seed lot if it was already present, else the given seed lot
+     */
+    public SeedLot cache(Genotype g1, Genotype g2, SeedLot seedlot){
+        long key = pool.pairKey(g1, g2);
+        synchronized(this){
+            SeedLot prev = cache.get(key);
+            if(prev != null){
+                return prev;
+            }
+            Entry e = unfiltered.get(key);
+            if(e != null){
+                long size = seedlot.estimateMemoryUsage();
+                memory += size;
+                e.filteredMemory = size;
+                cache.put(key, seedlot);
+                evict();
+            }
+            return seedlot;
+        }
+    }
+    
+    /**
+     * Get the cached unfiltered seed lot obtained from crossing genotype g1 with genotype g2
+     * (possibly equal in case of a selfing). The returned seed lot should never be filtered
+     * directly; instead, filters should be applied to a view of this seed lot.
+     *
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @return cached unfiltered seed lot, <code>null</code> if not present in the cache
+     */
+    public SeedLot getCachedUnfilteredSeedLot(Genotype g1, Genotype g2){
+        long key = pool.lookupPairKey(g1, g2);
+        Entry e = key < 0 ? null : unfiltered.get(key);
+        if(e == null){
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        touch(e);
+        return e.seedLot;
+    }
+    
+    /**
+     * Store the unfiltered seed lot obtained from crossing genotype g1 with genotype g2 in the cache.
+     * The construction cost of the seed lot is assumed to be proportional to its size.
+     *
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param seedlot unfiltered seed lot obtained by crossing the given genotypes
+     */
+    public void cacheUnfiltered(Genotype g1, Genotype g2, SeedLot seedlot){
+        cacheUnfiltered(g1, g2, seedlot, seedlot.estimateMemoryUsage());
+    }
+    
+    /**
+     * Store the unfiltered seed lot obtained from crossing genotype g1 with genotype g2 in the cache,
+     * where the given cost (e.g. the construction time in nanoseconds) is taken into account by the
+     * cost-aware eviction policy.
+     *
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param seedlot unfiltered seed lot obtained by crossing the given genotypes
+     * @param cost cost of constructing the seed lot (positive)
+     */
+    public void cacheUnfiltered(Genotype g1, Genotype g2, SeedLot seedlot, long cost){
+        long key = pool.pairKey(g1, g2);
+        synchronized(this){
+            // replace previous entry, if any
+            Entry prev = unfiltered.get(key);
+            if(prev != null){
+                remove(prev);
+            }
+            Entry e = new Entry(key, seedlot, seedlot.estimateMemoryUsage(), Math.max(cost, 1), nextSeq++);
+            e.priority = computePriority(e);
+            e.pendingPriority.set(Double.doubleToLongBits(e.priority));
+            evictionOrder.add(e);
+            unfiltered.put(key, e);
+            memory += e.memory;
+            evict();
+        }
+    }
+    
+    /**
+     * Get the unfiltered seed lot obtained from crossing genotype g1 with genotype g2, computing and caching it
+     * if it is not yet present. Computation is single-flight: if the same seed lot (with any order of the parents)
+     * is already being computed by another thread, the calling thread waits for this computation to complete and
+     * returns the same seed lot (counted as a hit). If the computation fails, the exception is thrown in all waiting
+     * threads, and no seed lot is cached. The construction time is used as cost for cost-aware eviction.
+     *
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param computation computes the unfiltered seed lot in case it is not present in the cache
+     * @return unfiltered seed lot obtained from crossing the given genotypes
+     * @throws GenotypeException if the computation fails
+     */
+    public SeedLot getOrComputeUnfiltered(Genotype g1, Genotype g2, SeedLotComputation computation) throws GenotypeException{
+        long key = pool.pairKey(g1, g2);
+        Entry e = unfiltered.get(key);
+        if(e != null){
+            hits.incrementAndGet();
+            touch(e);
+            return e.seedLot;
+        }
+        // register computation, unless already in progress
+        CompletableFuture<SeedLot> future = new CompletableFuture<>();
+        CompletableFuture<SeedLot> running = inFlight.putIfAbsent(key, future);
+        if(running != null){
+            // wait for result computed by other thread
+            hits.incrementAndGet();
+            return await(running);
+        }
+        try {
+            // check again: might have been cached in the meantime by a computation that completed already
+            e = unfiltered.get(key);
+            if(e != null){
+                hits.incrementAndGet();
+                touch(e);
+                future.complete(e.seedLot);
+                return e.seedLot;
+            }
+            misses.incrementAndGet();
+            long start = System.nanoTime();
+            SeedLot seedlot = computation.compute();
+            cacheUnfiltered(g1, g2, seedlot, System.nanoTime() - start);
+            future.complete(seedlot);
+            return seedlot;
+        } catch (GenotypeException | RuntimeException ex){
+            future.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+    
+    // wait for result of a computation performed by another thread
+    private SeedLot await(CompletableFuture<SeedLot> future) throws GenotypeException{
+        try {
+            return future.join();
+        } catch (CompletionException ex){
+            Throwable cause = ex.getCause();
+            if(cause instanceof GenotypeException){
+                throw (GenotypeException) cause;
+            } else if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            } else {
+                throw ex;
+            }
+        }
+    }
+    
+    // update priority of an accessed entry (only relevant for bounded caches); does not lock: the
+    // new priority is only recorded in the entry and taken into account when the entry is about to
+    // be evicted (see evict()); the recorded priority never decreases, also if priorities computed
+    // concurrently by several threads are recorded in a different order
+    private void touch(Entry e){
+        if(e != null && maxMemory != UNBOUNDED){
+            double p = computePriority(e);
+            long cur = e.pendingPriority.get();
+            while(Double.longBitsToDouble(cur) < p
+                    && !e.pendingPriority.compareAndSet(cur, Double.doubleToLongBits(p))){
+                cur = e.pendingPriority.get();
+            }
+        }
+    }
+    
+    // compute priority of an entry upon insertion or access (entries with lowest priority are evicted first)
+    private double computePriority(Entry e){
+        if(policy == CacheEvictionPolicy.COST_AWARE){
+            // GreedyDual-Size: cost per byte, aged by the priority of the last evicted entry
+            return inflation + (double) e.cost / e.memory;
+        } else {
+            // LRU
+            return clock.incrementAndGet();
+        }
+    }
+    
+    // evict entries until the memory budget is respected (called while holding the lock)
+    private void evict(){
+        while(memory > maxMemory && !evictionOrder.isEmpty()){
+            Entry victim = evictionOrder.first();
+            double pending = Double.longBitsToDouble(victim.pendingPriority.get());
+            if(pending > victim.priority){
+                // accessed since it was (re)inserted: reposition according to its current priority
+                // (priorities only increase, so that entries are still evicted in the exact order)
+                evictionOrder.remove(victim);
+                victim.priority = pending;
+                evictionOrder.add(victim);
+                continue;
+            }
+            if(policy == CacheEvictionPolicy.COST_AWARE){
+                inflation = victim.priority;
+            }
+            remove(victim);
+            evictions.incrementAndGet();
+        }
+    }
+    
+    // remove an entry together with the corresponding filtered seed lot (called while holding the lock)
+    private void remove(Entry e){
+        evictionOrder.remove(e);
+        unfiltered.remove(e.key);
+        cache.remove(e.key);
+        memory -= e.memory + e.filteredMemory;
+    }
+    
+    /**
+     * Clear all filtered seed lots, retaining the unfiltered seed lots.
      */
-    public void cache(Genotype g1, Genotype g2, SeedLot seedlot){
-        if(!cache.containsKey(g1)){
-            // use concurrent hash map
-            cache.put(g1, new ConcurrentHashMap<Genotype, SeedLot>());
+    public synchronized void clearFiltered(){
+        cache.clear();
+        for(Entry e : evictionOrder){
+            memory -= e.filteredMemory;
+            e.filteredMemory = 0;
         }
-        cache.get(g1).put(g2, seedlot);
     }
     
-    public void clear(){
+    /**
+     * Clear all filtered and unfiltered seed lots. Statistics are retained.
+     */
+    public synchronized void clear(){
         cache.clear();
+        unfiltered.clear();
+        evictionOrder.clear();
+        memory = 0;
+        inflation = 0.0;
+    }
+    
+    /**
+     * Get the memory budget of this cache.
+     *
+     * @return memory budget in bytes, {@link #UNBOUNDED} if the cache is unbounded
+     */
+    public long getMaxMemory(){
+        return maxMemory;
+    }
+    
+    public CacheEvictionPolicy getEvictionPolicy(){
+        return policy;
+    }
+    
+    /**
+     * Get the estimated memory usage of all cached seed lots.
+     *
+     * @return estimated memory usage in bytes
+     */
+    public synchronized long getMemoryUsage(){
+        return memory;
+    }
+    
+    /**
+     * Get the number of cached unfiltered seed lots.
+     *
+     * @return number of cached unfiltered seed lots
+     */
+    public synchronized int size(){
+        return evictionOrder.size();
+    }
+    
+    public long getNumHits(){
+        return hits.get();
+    }
+    
+    public long getNumMisses(){
+        return misses.get();
+    }
+    
+    public long getNumEvictions(){
+        return evictions.get();
+    }
+    
+    /**
+     * Reset the number of hits, misses and evictions.
+     */
+    public void resetStatistics(){
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+    
+    /**
+     * Computes an unfiltered seed lot that is not yet present in the cache.
+     */
+    public interface SeedLotComputation {
+        
+        /**
+         * Compute the unfiltered seed lot.
+         * 
+         * @return unfiltered seed lot
+         * @throws GenotypeException if anything goes wrong while creating the seed lot
+         */
+        public SeedLot compute() throws GenotypeException;
+    
     }
     
+    /**
+     * Cached unfiltered seed lot.
+     */
+    private static final class Entry {
+        
+        // genotype pair key
+        private final long key;
+        // unfiltered seed lot
+        private final SeedLot seedLot;
+        // estimated memory usage of unfiltered seed lot
+        private final long memory;
+        // construction cost
+        private final long cost;
+        // sequence number
+        private final long seq;
+        // estimated memory usage of corresponding filtered seed lot, if cached
+        private long filteredMemory;
+        // eviction priority, determines the position in the eviction order (guarded)
+        private double priority;
+        // priority after the last access, which is not smaller than the current priority
+        // (stored as raw bits, so that it can be raised atomically)
+        private final AtomicLong pendingPriority;
+        
+        public Entry(long key, SeedLot seedLot, long memory, long cost, long seq){
+            this.key = key;
+            this.seedLot = seedLot;
+            this.memory = memory;
+            this.cost = cost;
+            this.seq = seq;
+            filteredMemory = 0;
+            pendingPriority = new AtomicLong();
+        }
+    
+    }
+
 }
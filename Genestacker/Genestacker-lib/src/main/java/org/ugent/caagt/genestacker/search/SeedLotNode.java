@@ -275,6 +275,16 @@ public class SeedLotNode {
         return seedLot;
     }
     
+    /**
+     * Replace the seed lot represented by this node, e.g. when expanding a scheme constructed for a
+     * compressed instance (see {@link LocusBlockCompression}).
+     * 
+     * @param seedLot new seed lot
+     */
+    void setSeedLot(SeedLot seedLot){
+        this.seedLot = seedLot;
+    }
+    
     public long getID(){
         return ID;
     }
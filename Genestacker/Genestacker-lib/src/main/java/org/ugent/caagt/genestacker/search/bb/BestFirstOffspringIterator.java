@@ -0,0 +1,141 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search.bb;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import org.ugent.caagt.genestacker.DiploidChromosome;
+import org.ugent.caagt.genestacker.Genotype;
+
+/**
+ * Iterates over all combinations of possible diploid chromosomes (i.e. over all child genotypes of a crossing)
+ * in order of decreasing probability, without generating the entire cartesian product. The options for each
+ * chromosome index are sorted by decreasing probability, so that a combination is never more probable than
+ * the combination obtained by decrementing one of its option indices. Combinations are then expanded best-first
+ * using a priority queue, where each combination is generated from exactly one predecessor (obtained by decrementing
+ * its last nonzero option index). The size of the queue is bounded by the number of returned genotypes times the
+ * number of chromosomes.
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+class BestFirstOffspringIterator implements Iterator<Map.Entry<Genotype, Double>> {
+    
+    // possible chromosomes per chromosome index, sorted by decreasing probability
+    private final DiploidChromosome[][] chromOptions;
+    private final double[][] chromProbs;
+    
+    // queue of generated combinations that have not yet been returned
+    private final PriorityQueue<Combination> queue;
+    
+    public BestFirstOffspringIterator(List<Map<DiploidChromosome, Double>> possibleChromosomes){
+        int n = possibleChromosomes.size();
+        chromOptions = new DiploidChromosome[n][];
+        chromProbs = new double[n][];
+        boolean empty = false;
+        for(int c=0; c<n; c++){
+            // sort options by decreasing probability
+            List<Map.Entry<DiploidChromosome, Double>> options = new ArrayList<>(possibleChromosomes.get(c).entrySet());
+            options.sort(new Comparator<Map.Entry<DiploidChromosome, Double>>() {
+                @Override
+                public int compare(Map.Entry<DiploidChromosome, Double> o1, Map.Entry<DiploidChromosome, Double> o2){
+                    return Double.compare(o2.getValue(), o1.getValue());
+                }
+            });
+            chromOptions[c] = new DiploidChromosome[options.size()];
+            chromProbs[c] = new double[options.size()];
+            for(int i=0; i<options.size(); i++){
+                chromOptions[c][i] = options.get(i).getKey();
+                chromProbs[c][i] = options.get(i).getValue();
+            }
+            empty = empty || options.isEmpty();
+        }
+        queue = new PriorityQueue<>();
+        if(!empty){
+            // start with most probable combination
+            queue.add(new Combination(new int[n], 0));
+        }
+    }
+    
+    @Override
+    public boolean hasNext(){
+        return !queue.isEmpty();
+    }
+    
+    @Override
+    public Map.Entry<Genotype, Double> next(){
+        Combination comb = queue.poll();
+        if(comb == null){
+            throw new NoSuchElementException();
+        }
+        // generate successors by incrementing an option index at or after the last incremented index
+        for(int c=comb.last; c<comb.choice.length; c++){
+            if(comb.choice[c] + 1 < chromOptions[c].length){
+                int[] choice = Arrays.copyOf(comb.choice, comb.choice.length);
+                choice[c]++;
+                queue.add(new Combination(choice, c));
+            }
+        }
+        // create genotype (not interned)
+        List<DiploidChromosome> chroms = new ArrayList<>(comb.choice.length);
+        for(int c=0; c<comb.choice.length; c++){
+            chroms.add(chromOptions[c][comb.choice[c]]);
+        }
+        return new AbstractMap.SimpleImmutableEntry<>(new Genotype(chroms), comb.prob);
+    }
+    
+    @Override
+    public void remove(){
+        throw new UnsupportedOperationException("Cannot remove offspring from a crossing.");
+    }
+    
+    /**
+     * Combination of one option per chromosome index.
+     */
+    private final class Combination implements Comparable<Combination> {
+        
+        // selected option per chromosome index
+        private final int[] choice;
+        // last incremented chromosome index
+        private final int last;
+        // probability of the combination
+        private final double prob;
+        
+        public Combination(int[] choice, int last){
+            this.choice = choice;
+            this.last = last;
+            // multiply probabilities in chromosome order (consistent with full seed lot construction)
+            double p = 1.0;
+            for(int c=0; c<choice.length; c++){
+                p *= chromProbs[c][choice[c]];
+            }
+            prob = p;
+        }
+        
+        // most probable combination first
+        @Override
+        public int compareTo(Combination other){
+            return Double.compare(other.prob, prob);
+        }
+    
+    }
+
+}
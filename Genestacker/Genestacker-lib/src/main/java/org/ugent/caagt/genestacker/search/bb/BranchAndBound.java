@@ -23,14 +23,10 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import org.apache.commons.compress.archivers.ArchiveException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -38,6 +34,7 @@ import org.apache.logging.log4j.Marker;
 import org.apache.logging.log4j.MarkerManager;
 import org.ugent.caagt.genestacker.GeneticMap;
 import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.GenotypePool;
 import org.ugent.caagt.genestacker.Plant;
 import org.ugent.caagt.genestacker.SeedLot;
 import org.ugent.caagt.genestacker.exceptions.*;
@@ -64,18 +61,25 @@ public class BranchAndBound extends SearchEngine {
         VERY_VERBOSE.setParents(VERBOSE);
     }
     
-    // previously considered schemes (grouped by alternatives of the same scheme)
-    private List<CrossingSchemeAlternatives> previousSchemes;
+    // previously considered schemes (grouped by alternatives of the same scheme),
+    // indexed to efficiently retrieve candidate crossing partners
+    private CrossingPartnerIndex previousSchemes;
     // previously considered schemes (all alternatives individually contained)
     private Set<CrossingScheme> previousSchemeAlternatives;
     // queue schemes to be considered later
-    private Queue<CrossingSchemeAlternatives> schemeQueue;
+    private SchemeQueue schemeQueue;
+    // policy of scheme queue (default: FIFO)
+    private SchemeQueuePolicy schemeQueuePolicy = SchemeQueuePolicy.FIFO;
+    // maximum number of dequeued schemes that are extended concurrently (default: 1)
+    private int pipelineDepth = 1;
     
     // dominates relation used by the Pareto frontier
     private DominatesRelation<CrossingSchemeDescriptor> dominatesRelation;
     
     // seed lot cache
     private SeedLotCache seedLotCache;
+    // minimum genotype probability applied when constructing the cached unfiltered seed lots
+    private double unfilteredMinProb = 0.0;
     
     // seed lot constructor
     private SeedLotConstructor seedLotConstructor;
@@ -154,7 +158,46 @@ public class BranchAndBound extends SearchEngine {
         this.seedLotConstructor = seedLotConstructor;
         this.dominatesRelation = dominatesRelation;
         this.homozygousIdeotypeParents = homozygousIdeotypeParents;
-        seedLotCache = new SeedLotCache();
+        seedLotCache = new SeedLotCache(seedLotConstructor.getGenotypePool());
+    }
+    
+    /**
+     * Set the policy that determines the order in which queued partial schemes are extended. The
+     * policy does not affect the completeness of the search, but may strongly affect how soon good
+     * solutions are found, and thus the amount of pruning.
+     * 
+     * @param policy scheme queue policy
+     */
+    public void setSchemeQueuePolicy(SchemeQueuePolicy policy){
+        this.schemeQueuePolicy = policy;
+    }
+    
+    public SchemeQueuePolicy getSchemeQueuePolicy(){
+        return schemeQueuePolicy;
+    }
+    
+    /**
+     * Set the maximum number of dequeued schemes that are extended concurrently. By default, each dequeued
+     * scheme is completely extended, and the obtained schemes are registered, before dequeueing the next
+     * scheme. With a larger depth, the next schemes are dequeued and extended while the schemes obtained
+     * from earlier extensions are being registered, so that threads do not become idle at the end of each
+     * extension. Each scheme is crossed with all previously dequeued schemes, including those that are still
+     * being extended, so that the search remains complete. However, schemes that are dequeued ahead are
+     * pruned based on an older Pareto frontier, and are not crossed with schemes that were obtained in the
+     * meantime until these are dequeued themselves, which may increase the total number of constructed schemes.
+     * 
+     * @param depth maximum number of schemes extended concurrently, at least 1
+     * @throws IllegalArgumentException if <code>depth</code> is smaller than 1
+     */
+    public void setPipelineDepth(int depth){
+        if(depth < 1){
+            throw new IllegalArgumentException("Pipeline depth should be at least 1.");
+        }
+        this.pipelineDepth = depth;
+    }
+    
+    public int getPipelineDepth(){
+        return pipelineDepth;
     }
     
     public void setHeuristics(Heuristics heur){
@@ -163,28 +206,46 @@ public class BranchAndBound extends SearchEngine {
     
     public void setSeedLotFilters(List<SeedLotFilter> filters){
         this.seedLotFilters = filters;
-        // IMPORTANT: upon changing the seed lot filters, the seed lot cache of this
-        //            engine is cleared because it is no longer up to date
-        seedLotCache.clear();
+        // IMPORTANT: upon changing the seed lot filters, the filtered seed lots cached
+        //            by this engine are cleared because these are no longer up to date
+        //            (unfiltered seed lots are retained and will be filtered again)
+        seedLotCache.clearFiltered();
     }
     
     public void setConstraints(List<Constraint> constraints){
         this.constraints = constraints;
-        // IMPORTANT: upon changing the constraints, the seed lot cache of this
-        //            engine is cleared because it is no longer up to date
+        // IMPORTANT: upon changing the constraints, the filtered seed lots cached by
+        //            this engine are cleared because these are no longer up to date
         //            (basic filtering is based constraints, e.g. max linkage phase ambiguity
-        //                                                      & max pop size per gen)
-        seedLotCache.clear();
+        //                                                      & max pop size per gen);
+        //            unfiltered seed lots pruned with a too high minimum probability
+        //            are cleared when starting the next search
+        seedLotCache.clearFiltered();
     }
     
     public void setPopulationSizeTools(PopulationSizeTools popSizeTools){
         this.popSizeTools = popSizeTools;
         // IMPORTANT: upon changing the population size tools,
-        //            the seed lot cache of this search engine is
-        //            cleared because it is no longer up to date
-        //            (basic filtering of seed lots is based on the
-        //            population size tools)
-        seedLotCache.clear();
+        //            the filtered seed lots cached by this search
+        //            engine are cleared because these are no longer
+        //            up to date (basic filtering of seed lots is based
+        //            on the population size tools)
+        seedLotCache.clearFiltered();
+    }
+    
+    /**
+     * Set the cache in which seed lots are stored by this engine, e.g. to limit the amount of memory used for
+     * caching seed lots. By default, an unbounded cache is used. The given cache should use the genotype pool
+     * of the seed lot constructor of this engine. Any seed lots cached in the previous cache are discarded.
+     * 
+     * @param cache seed lot cache
+     */
+    public void setSeedLotCache(SeedLotCache cache){
+        this.seedLotCache = cache;
+    }
+    
+    public SeedLotCache getSeedLotCache(){
+        return seedLotCache;
     }
     
     public void setInitialFrontier(ParetoFrontier frontier){
@@ -210,26 +271,23 @@ public class BranchAndBound extends SearchEngine {
     
     @Override
     public ParetoFrontier runSearch(long runtimeLimit, int numThreads) throws GenestackerException {
-
-        // create list to store previously generated schemes
-        previousSchemes = new ArrayList<>();
+        
         // create set to store previously generated scheme alternatives
         previousSchemeAlternatives = new HashSet<>();
-        // create queue for schemes to be considered
-        schemeQueue = new LinkedList<>();
-        
         // reset ids
         SeedLotNode.resetIDs();
         PlantNode.resetIDs();
         CrossingNode.resetIDs();
         CrossingSchemeAlternatives.resetIDs();
         
-        // create thread pool and completion service for scheme extension
+        // create work-stealing thread pool for scheme extension
         
-        // inform user about number of cross workers used (verbose)
+        // inform user about number of threads used (verbose)
         logger.info(VERBOSE, "Number of threads used for extending partial schemes: {}", numThreads);
-        ExecutorService extPool = Executors.newFixedThreadPool(numThreads);
-        CompletionService<List<CrossingSchemeAlternatives>> extCompletionService = new ExecutorCompletionService<>(extPool);
+        
+        // use canonical instance of the ideotype (interned in the same pool as the crossed parents)
+        GenotypePool pool = seedLotConstructor.getGenotypePool();
+        ideotype = pool.intern(ideotype);
         
         // initialize solution manager
         BranchAndBoundSolutionManager solutionManager = new BranchAndBoundSolutionManager(dominatesRelation, ideotype, popSizeTools,
@@ -239,9 +297,24 @@ public class BranchAndBound extends SearchEngine {
             solutionManager.setFrontier(initialFrontier);
         }
         
+        // create index to store previously generated schemes
+        previousSchemes = new CrossingPartnerIndex(solutionManager);
+        // create queue for schemes to be considered
+        schemeQueue = new SchemeQueue(schemeQueuePolicy, solutionManager);
+        logger.info(VERBOSE, "Scheme queue policy: {}", schemeQueuePolicy);
+        
+        // seed lots are constructed without genotypes that are too improbable to satisfy the constraint
+        // on the maximum population size per generation: clear the cache if previously constructed seed
+        // lots have been pruned with a higher threshold than the current one
+        double minProb = solutionManager.getMinProbabilityOfPhaseKnownGenotype();
+        if(minProb < unfilteredMinProb){
+            seedLotCache.clear();
+        }
+        unfilteredMinProb = minProb;
+        
         // apply initial plant filter, if any
         if(initialPlantFilter != null){
-
+            
             // verbose
             logger.info(VERBOSE, "Filtering initial plants ...");
             
@@ -252,18 +325,19 @@ public class BranchAndBound extends SearchEngine {
             for(Plant p : initialPlants){
                 logger.info(VERBOSE, "\n{}", p);
             }
-            
+        
         }
         
         // create initial partial schemes from initial plants
         List<CrossingSchemeAlternatives> initialParentSchemes = new ArrayList<>();
         for(Plant p : initialPlants){
-            // create uniform seed lot
-            SeedLot sl = new SeedLot(p.getGenotype());
+            // create uniform seed lot (with canonical genotype)
+            Genotype g = pool.intern(p.getGenotype());
+            SeedLot sl = new SeedLot(g);
             // create seedlot node
             SeedLotNode sln = new SeedLotNode(sl, 0);
             // create and attach plant node
-            PlantNode pn = new PlantNode(p, 0, sln);
+            PlantNode pn = new PlantNode(new Plant(g), 0, sln);
             // create partial crossing scheme
             CrossingScheme s = new CrossingScheme(popSizeTools, pn);
             initialParentSchemes.add(new CrossingSchemeAlternatives(s));
@@ -271,96 +345,106 @@ public class BranchAndBound extends SearchEngine {
         registerNewSchemes(initialParentSchemes, solutionManager);
         
         // now iteratively cross schemes with previous schemes to create larger schemes,
-        // until all solutions have been inspected or pruned
-        while(!runtimeLimitExceeded() && !schemeQueue.isEmpty()){
-            
-            // get next scheme from queue
-            CrossingSchemeAlternatives cur = schemeQueue.poll();
-            
-            // fire progression message (verbose)
-            logger.info(VERBOSE, "num solutions: {} ### prog: {} ({}) ### cur scheme: {} - T = {}",
-                                 solutionManager.getFrontier().getNumSchemes(),
-                                 previousSchemes.size(),
-                                 schemeQueue.size(),
-                                 cur,
-                                 TimeFormatting.formatTime(System.currentTimeMillis()-getStart()));
-            // debug: create diagram of current scheme (all alternatives)
-            if(logger.isDebugEnabled()){
-                for(int i=0; i<cur.nrOfAlternatives(); i++){
-                    logger.debug("Cur scheme (alternative {}): {}", i+1, writeDiagram(cur.getAlternatives().get(i)));
+        // until all solutions have been inspected or pruned; up to pipelineDepth dequeued
+        // schemes are extended concurrently, and the results of the oldest extension are
+        // registered while the other extensions are still in progress
+        ForkJoinPool extPool = new ForkJoinPool(numThreads);
+        try {
+            LinkedList<SchemeExtension> inProgress = new LinkedList<>();
+            while(!inProgress.isEmpty() || !runtimeLimitExceeded() && !schemeQueue.isEmpty()){
+                
+                if(inProgress.size() >= pipelineDepth || schemeQueue.isEmpty() || runtimeLimitExceeded()){
+                    // complete oldest extension
+                    completeExtension(inProgress.poll(), solutionManager);
+                    continue;
                 }
-                // wait for enter
-                DebugUtils.waitForEnter();
-            }
-            
-            // delete possible pruned alternatives
-            Iterator<CrossingScheme> it = cur.iterator();
-            int numForCrossing = 0;
-            int numForSelfing = 0;
-            while(it.hasNext()){
-                CrossingScheme alt = it.next();
-                // check if alternative should be removed
-                if(previousSchemeAlternatives.contains(alt)){
-                    // equivalent scheme alternative generated before, delete current alternative
-                    it.remove();
-                } else if (solutionManager.pruneDequeueScheme(alt)){
-                    // prune dequeued scheme (e.g. by the optimal subscheme heuristic)
-                    it.remove();
-                } else {
-                    // check pruning for crossing/selfing
-                    boolean pruneCross = solutionManager.pruneCrossCurrentScheme(alt);
-                    boolean pruneSelf = solutionManager.pruneSelfCurrentScheme(alt);
-                    if(pruneCross && pruneSelf){
-                        // alternative not useful anymore
+                
+                // get next scheme from queue
+                CrossingSchemeAlternatives cur = schemeQueue.poll();
+                
+                // fire progression message (verbose)
+                logger.info(VERBOSE, "num solutions: {} ### prog: {} ({}) ### cur scheme: {} - T = {}",
+                                     solutionManager.getFrontier().getNumSchemes(),
+                                     previousSchemes.size(),
+                                     schemeQueue.size(),
+                                     cur,
+                                     TimeFormatting.formatTime(System.currentTimeMillis()-getStart()));
+                // debug: create diagram of current scheme (all alternatives)
+                if(logger.isDebugEnabled()){
+                    for(int i=0; i<cur.nrOfAlternatives(); i++){
+                        logger.debug("Cur scheme (alternative {}): {}", i+1, writeDiagram(cur.getAlternatives().get(i)));
+                    }
+                    // wait for enter
+                    DebugUtils.waitForEnter();
+                }
+                
+                // delete possible pruned alternatives
+                Iterator<CrossingScheme> it = cur.iterator();
+                int numForCrossing = 0;
+                int numForSelfing = 0;
+                while(it.hasNext()){
+                    CrossingScheme alt = it.next();
+                    // check if alternative should be removed
+                    if(previousSchemeAlternatives.contains(alt)){
+                        // equivalent scheme alternative generated before, delete current alternative
+                        it.remove();
+                    } else if (solutionManager.pruneDequeueScheme(alt)){
+                        // prune dequeued scheme (e.g. by the optimal subscheme heuristic)
                         it.remove();
                     } else {
-                        // count nr of alternatives useful for crossing or selfing
-                        if(!pruneCross){
-                            numForCrossing++;
-                        }
-                        if(!pruneSelf){
-                            numForSelfing++;
+                        // check pruning for crossing/selfing
+                        boolean pruneCross = solutionManager.pruneCrossCurrentScheme(alt);
+                        boolean pruneSelf = solutionManager.pruneSelfCurrentScheme(alt);
+                        if(pruneCross && pruneSelf){
+                            // alternative not useful anymore
+                            it.remove();
+                        } else {
+                            // count nr of alternatives useful for crossing or selfing
+                            if(!pruneCross){
+                                numForCrossing++;
+                            }
+                            if(!pruneSelf){
+                                numForSelfing++;
+                            }
                         }
                     }
                 }
-            }
-            
-            if(cur.nrOfAlternatives() > 0){
                 
-                // if useful, self current scheme
-                if(numForSelfing > 0){
-                    registerNewSchemes(selfScheme(cur, map, solutionManager), solutionManager);
-                }
-
-                // if useful, cross with previous schemes
-                if(numForCrossing > 0){
-                    // launch workers to combine with previous schemes
-                    Iterator<CrossingSchemeAlternatives> previousSchemesIterator = previousSchemes.iterator();
-                    for(int w=0; w<numThreads; w++){
-                        // submit worker
-                        extCompletionService.submit(new CrossWorker(previousSchemesIterator, cur, solutionManager, map));
-                        // very verbose
-                        logger.info(VERY_VERBOSE, "Launched cross worker {} of {}", w+1, numThreads);
+                if(cur.nrOfAlternatives() > 0){
+                    
+                    // register scheme alternatives (already done upon dequeueing so that equivalent
+                    // alternatives dequeued while the current scheme is being extended are removed)
+                    previousSchemeAlternatives.addAll(cur.getAlternatives());
+                    
+                    SchemeExtension ext = new SchemeExtension(cur);
+                    
+                    // if useful, self current scheme
+                    if(numForSelfing > 0){
+                        ext.selfTask = new SelfTask(cur, solutionManager, map);
+                        extPool.execute(ext.selfTask);
                     }
-                    // handle results of completed workers in the order in which they complete
-                    for(int w=0; w<numThreads; w++){
-                        try {
-                            // wait for next worker to complete and register its solutions
-                            registerNewSchemes(extCompletionService.take().get(), solutionManager);
-                            // very verbose
-                            logger.info(VERY_VERBOSE, "{}/{} cross workers finished", w+1, numThreads);
-                        } catch (InterruptedException | ExecutionException ex) {
-                            // something went wrong with the cross workers
-                            throw new SearchException("An error occured while extending the current scheme.", ex);
+                    
+                    // if useful, concurrently cross with previous schemes (skipping schemes for which all
+                    // combinations are pruned based on the index) and with all schemes that are still being
+                    // extended, which have not yet been added to the index (each pair of dequeued schemes
+                    // is thus crossed exactly once, when extending the scheme that was dequeued last)
+                    if(numForCrossing > 0){
+                        List<CrossingSchemeAlternatives> partners = previousSchemes.getCandidatePartners(cur);
+                        for(SchemeExtension other : inProgress){
+                            partners.add(other.scheme);
                         }
+                        ext.crossTask = new CrossTask(cur, partners, 0, partners.size(), solutionManager, map);
+                        extPool.execute(ext.crossTask);
+                        // very verbose
+                        logger.info(VERY_VERBOSE, "Crossing current scheme with {} previous schemes", partners.size());
                     }
+                    
+                    inProgress.add(ext);
                 }
-                
-                // put the scheme in the sorted set with previously considered schemes (only done if useful for later crossings)
-                previousSchemes.add(cur);
-                // register scheme alternatives
-                previousSchemeAlternatives.addAll(cur.getAlternatives());
             }
+        } finally {
+            // shutdown thread pool (also cancels pending extensions if the search fails)
+            extPool.shutdownNow();
         }
         
         if(runtimeLimitExceeded()){
@@ -368,12 +452,60 @@ public class BranchAndBound extends SearchEngine {
             logger.info("Runtime limit exceeded");
         }
         
-        // shutdown thread pool
-        extPool.shutdownNow();
+        // verbose: seed lot cache statistics
+        logger.info(VERBOSE, "Seed lot cache: {} hits, {} misses, {} evictions, {} seed lots cached (~{} MB)",
+                                seedLotCache.getNumHits(), seedLotCache.getNumMisses(), seedLotCache.getNumEvictions(),
+                                seedLotCache.size(), seedLotCache.getMemoryUsage() / (1024*1024));
+        SeedLotStore store = seedLotConstructor.getSeedLotStore();
+        if(store != null){
+            // verbose: persistent store statistics
+            logger.info(VERBOSE, "Seed lot store: {} hits, {} misses, {} records stored",
+                                    store.getNumHits(), store.getNumMisses(), store.size());
+        }
         
         return solutionManager.getFrontier();
     }
     
+    /**
+     * Wait for the given extension of a dequeued scheme to complete, register the obtained schemes, and
+     * add the extended scheme to the index of previously considered schemes.
+     * 
+     * @param ext extension of a dequeued scheme
+     * @param solManager solution manager
+     * @throws GenestackerException if anything goes wrong while extending the scheme or while
+     *                              registering the obtained schemes
+     */
+    private void completeExtension(SchemeExtension ext, BranchAndBoundSolutionManager solManager) throws GenestackerException{
+        
+        // wait for completion of both tasks
+        List<CrossingSchemeAlternatives> selfed = null;
+        List<CrossingSchemeAlternatives> crossed = null;
+        try {
+            if(ext.selfTask != null){
+                selfed = ext.selfTask.join();
+            }
+            if(ext.crossTask != null){
+                crossed = ext.crossTask.join();
+            }
+        } catch (RuntimeException ex){
+            // something went wrong while extending the current scheme
+            throw new SearchException("An error occured while extending the current scheme.", ex);
+        }
+        
+        // register new schemes (first obtained by selfing, then by crossing)
+        if(selfed != null){
+            registerNewSchemes(selfed, solManager);
+        }
+        if(crossed != null){
+            registerNewSchemes(crossed, solManager);
+        }
+        
+        // put the scheme in the index of previously considered schemes (candidate partners
+        // for later crossings are selected from this index)
+        previousSchemes.add(ext.scheme);
+    
+    }
+    
     /**
      * Register new schemes in the Pareto frontier.
      * 
@@ -434,7 +566,7 @@ public class BranchAndBound extends SearchEngine {
                 }
             }
         }
-
+    
     }
     
     protected String writeDiagram(CrossingScheme scheme) throws GenestackerException {
@@ -459,28 +591,62 @@ public class BranchAndBound extends SearchEngine {
     protected SeedLot constructSeedLot(int generation, Plant p1, Plant p2, GeneticMap map, BranchAndBoundSolutionManager solManager) throws GenotypeException{
         SeedLot sl;
         if(solManager.finalGenerationReached(generation)){
-            // create partial seed lot containing the ideotype only
-            Set<Genotype> s = new HashSet<>();
-            s.add(solManager.getIdeotype());
-            sl = seedLotConstructor.partialCross(p1.getGenotype(), p2.getGenotype(), s);
+            // directly compute probability of the ideotype, without constructing the seed lot
+            Genotype ideotype = solManager.getIdeotype();
+            OffspringProbability op = seedLotConstructor.probabilityOf(p1.getGenotype(), p2.getGenotype(), ideotype);
+            // create partial seed lot containing the ideotype only (if obtainable)
+            boolean uniform = p1.getGenotype().isHomozygousAtAllContainedLoci()
+                                && p2.getGenotype().isHomozygousAtAllContainedLoci();
+            if(op.isPossible()){
+                sl = new SeedLot(uniform,
+                                 new Genotype[]{seedLotConstructor.getGenotypePool().intern(ideotype)},
+                                 new double[]{op.getProbabilityOfPhaseKnownGenotype()},
+                                 new double[]{op.getProbabilityOfAllelicFrequencies()});
+            } else {
+                sl = new SeedLot(uniform, new Genotype[0], new double[0], new double[0]);
+            }
             // very verbose
-            logger.info(VERY_VERBOSE, "|-- Generated new partial seed lot (ideotype only)");
+            logger.info(VERY_VERBOSE, "|-- Computed probability of ideotype: {}", op.getProbabilityOfPhaseKnownGenotype());
             // note: do not cache this partial seed lot (not general)
         }  else {
-            // lookup full seed lot in cache
+            // lookup filtered seed lot in cache
             sl = seedLotCache.getCachedSeedLot(p1.getGenotype(), p2.getGenotype());
             if(sl == null){
-                // not yet present in cache, create full seed lot
-                sl = seedLotConstructor.cross(p1.getGenotype(), p2.getGenotype());
-                int unfiltered = sl.nrOfGenotypes();
-                // very verbose
-                logger.info(VERY_VERBOSE, "|-- Generated new seed lot: {}", unfiltered);
-                // apply seed lot filters
-                sl = solManager.filterSeedLot(sl);
+                // not yet present in cache: get unfiltered seed lot, which is created and cached
+                // (never filtered itself) if not yet present; concurrent requests for the same
+                // seed lot wait for a single construction
+                final Genotype g1 = p1.getGenotype();
+                final Genotype g2 = p2.getGenotype();
+                final double minProb = solManager.getMinProbabilityOfPhaseKnownGenotype();
+                SeedLot full = seedLotCache.getOrComputeUnfiltered(g1, g2, new SeedLotCache.SeedLotComputation() {
+                    @Override
+                    public SeedLot compute() throws GenotypeException {
+                        // load from persistent store, if any
+                        SeedLotStore store = seedLotConstructor.getSeedLotStore();
+                        SeedLot created = store != null ? store.getSeedLot(g1, g2, minProb) : null;
+                        if(created != null){
+                            // very verbose
+                            logger.info(VERY_VERBOSE, "|-- Loaded stored seed lot: {}", created.nrOfGenotypes());
+                        } else {
+                            // create full seed lot (omitting genotypes that would always be filtered because of their low probability)
+                            created = seedLotConstructor.cross(g1, g2, minProb);
+                            // very verbose
+                            logger.info(VERY_VERBOSE, "|-- Generated new seed lot: {}", created.nrOfGenotypes());
+                            // save in persistent store, if any
+                            if(store != null){
+                                store.storeSeedLot(g1, g2, minProb, created);
+                            }
+                        }
+                        return created;
+                    }
+                });
+                int unfiltered = full.nrOfGenotypes();
+                // apply seed lot filters to a view of the unfiltered seed lot
+                sl = solManager.filterSeedLot(full.createView());
                 // very verbose
                 logger.info(VERY_VERBOSE, "|-- Filtered seed lot: {} --> {}", unfiltered, sl.nrOfGenotypes());
-                // store in cache
-                seedLotCache.cache(p1.getGenotype(), p2.getGenotype(), sl);
+                // store in cache (or share seed lot filtered concurrently by another thread)
+                sl = seedLotCache.cache(g1, g2, sl);
             } else {
                 // found seed lot in cache
                 // very verbose
@@ -508,19 +674,19 @@ public class BranchAndBound extends SearchEngine {
         
         List<CrossingSchemeAlternatives> newSchemes = new ArrayList<>();
         SeedLot sl = constructSeedLot(scheme.getMinNumGen()+1, scheme.getFinalPlant(), scheme.getFinalPlant(), map, solManager);
-
+        
         // create new schemes for each possible genotype resulting from seedlot,
         // attached to each alternative of the given scheme
         long[] seedLotNodeIDs = new long[scheme.nrOfAlternatives()];
         for(int i=0; i<seedLotNodeIDs.length; i++){
             seedLotNodeIDs[i] = SeedLotNode.genNextID();
         }
-        for(Genotype g : sl.getGenotypes()){
-            Plant p = new Plant(g);
+        for(int gi = sl.nextGenotypeIndex(0); gi >= 0; gi = sl.nextGenotypeIndex(gi+1)){
+            Plant p = new Plant(sl.getGenotype(gi));
             PlantDescriptor pdesc = new PlantDescriptor(
                         p,
-                        sl.getGenotypeGroup(g.getAllelicFrequencies()).getProbabilityOfPhaseKnownGenotype(g),
-                        sl.getGenotypeGroup(g.getAllelicFrequencies()).getLinkagePhaseAmbiguity(g),
+                        sl.getProbabilityOfPhaseKnownGenotype(gi),
+                        sl.getLinkagePhaseAmbiguity(gi),
                         sl.isUniform()
                     );
             if(!solManager.pruneGrowPlantFromAncestors(scheme.getAncestorDescriptors(), pdesc)){
@@ -582,56 +748,66 @@ public class BranchAndBound extends SearchEngine {
         
         // run scheme merger
         return new MergeFirstSchemeMerger(scheme1, scheme2, map, solManager, sl).combineSchemes();
-        
+    
     }
     
     /**
-     * Private implementation of a cross worker which is responsible for combining the currently considered
-     * scheme with previously considered schemes, through an additional crossing. All cross workers operate
-     * and synchronize on a shared iterator that iterates over the previously considered schemes.
+     * Extension of a dequeued scheme, consisting of an optional selfing task and an optional crossing task.
      */
-    private final class CrossWorker implements Callable<List<CrossingSchemeAlternatives>>{
+    private static final class SchemeExtension {
         
-        // iterator of previous schemes collection
-        private final Iterator<CrossingSchemeAlternatives> previousSchemesIterator;
+        // extended scheme
+        private final CrossingSchemeAlternatives scheme;
+        // selfing task (null if selfing is pruned)
+        private SelfTask selfTask = null;
+        // crossing task (null if crossing is pruned)
+        private CrossTask crossTask = null;
+        
+        public SchemeExtension(CrossingSchemeAlternatives scheme){
+            this.scheme = scheme;
+        }
+    
+    }
+    
+    /**
+     * Fork/join task that combines the currently considered scheme with a range of candidate partners among the
+     * previously considered schemes, through an additional crossing. The range is recursively split until a single
+     * partner remains, so that each combination forms a separate unit of work that can be stolen by idle threads.
+     * The obtained schemes are returned in the order of the candidate partners.
+     */
+    @SuppressWarnings("serial")
+    private final class CrossTask extends RecursiveTask<List<CrossingSchemeAlternatives>>{
         
         // current scheme
-        private CrossingSchemeAlternatives curScheme;
+        private final CrossingSchemeAlternatives curScheme;
+        
+        // candidate partners, of which those in [from, to) are handled by this task
+        private final List<CrossingSchemeAlternatives> partners;
+        private final int from;
+        private final int to;
         
         // solution manager
-        private BranchAndBoundSolutionManager solManager;
+        private final BranchAndBoundSolutionManager solManager;
         
         // genetic map
-        private GeneticMap map;
+        private final GeneticMap map;
         
-        public CrossWorker(Iterator<CrossingSchemeAlternatives> previousSchemesIterator, CrossingSchemeAlternatives curScheme,
+        public CrossTask(CrossingSchemeAlternatives curScheme, List<CrossingSchemeAlternatives> partners, int from, int to,
                             BranchAndBoundSolutionManager solManager, GeneticMap map){
-            this.previousSchemesIterator = previousSchemesIterator;
             this.curScheme = curScheme;
+            this.partners = partners;
+            this.from = from;
+            this.to = to;
             this.solManager = solManager;
             this.map = map;
         }
-
+        
         @Override
-        public List<CrossingSchemeAlternatives> call() throws Exception {
-            // cross the current scheme with previous schemes in a synchronized
-            // fashion so that each previous scheme will be considered by one
-            // cross worker only
-            List<CrossingSchemeAlternatives> newSchemes = new ArrayList<>();
-            boolean cont = true;
-            while(cont){
-                // poll next previous scheme (synchronized)
-                CrossingSchemeAlternatives toExtend;
-                synchronized(previousSchemesIterator){
-                    if(previousSchemesIterator.hasNext()){
-                        toExtend = previousSchemesIterator.next();
-                    } else {
-                        toExtend = null;
-                        cont = false;
-                    }
-                }
-                // cross with previous scheme
-                if(toExtend != null){
+        protected List<CrossingSchemeAlternatives> compute() {
+            if(to - from <= 1){
+                List<CrossingSchemeAlternatives> newSchemes = new ArrayList<>();
+                if(to > from){
+                    CrossingSchemeAlternatives toExtend = partners.get(from);
                     // check pruning (if all combinations are pruned, we can
                     // save some time by not constructing the obtained seed lot)
                     boolean prune = true;
@@ -646,13 +822,59 @@ public class BranchAndBound extends SearchEngine {
                     }
                     // create new schemes
                     if(!prune){
-                        newSchemes.addAll(combineSchemes(curScheme, toExtend, map, solManager));
+                        try {
+                            newSchemes.addAll(combineSchemes(curScheme, toExtend, map, solManager));
+                        } catch (GenotypeException | CrossingSchemeException ex){
+                            throw new CompletionException(ex);
+                        }
                     }
                 }
+                return newSchemes;
+            } else {
+                // split range: fork first half, compute second half in current thread
+                int mid = (from + to) >>> 1;
+                CrossTask first = new CrossTask(curScheme, partners, from, mid, solManager, map);
+                first.fork();
+                List<CrossingSchemeAlternatives> second = new CrossTask(curScheme, partners, mid, to, solManager, map).compute();
+                List<CrossingSchemeAlternatives> newSchemes = first.join();
+                newSchemes.addAll(second);
+                return newSchemes;
             }
-            return newSchemes;
+        }
+    
+    }
+    
+    /**
+     * Fork/join task that extends the currently considered scheme by selfing its final plant,
+     * executed concurrently with the crossings of the same scheme.
+     */
+    @SuppressWarnings("serial")
+    private final class SelfTask extends RecursiveTask<List<CrossingSchemeAlternatives>>{
+        
+        // current scheme
+        private final CrossingSchemeAlternatives curScheme;
+        
+        // solution manager
+        private final BranchAndBoundSolutionManager solManager;
+        
+        // genetic map
+        private final GeneticMap map;
+        
+        public SelfTask(CrossingSchemeAlternatives curScheme, BranchAndBoundSolutionManager solManager, GeneticMap map){
+            this.curScheme = curScheme;
+            this.solManager = solManager;
+            this.map = map;
         }
         
+        @Override
+        protected List<CrossingSchemeAlternatives> compute() {
+            try {
+                return selfScheme(curScheme, map, solManager);
+            } catch (GenotypeException | CrossingSchemeException ex){
+                throw new CompletionException(ex);
+            }
+        }
+    
     }
 
 }
@@ -22,8 +22,6 @@ import java.util.Set;
 import org.ugent.caagt.genestacker.DiploidChromosome;
 import org.ugent.caagt.genestacker.Genotype;
 import org.ugent.caagt.genestacker.Haplotype;
-import org.ugent.caagt.genestacker.AllelicFrequency;
-import org.ugent.caagt.genestacker.GenotypeAllelicFrequencies;
 import org.ugent.caagt.genestacker.Plant;
 import org.ugent.caagt.genestacker.SeedLot;
 import org.ugent.caagt.genestacker.exceptions.DuplicateConstraintException;
@@ -311,6 +309,22 @@ public class BranchAndBoundSolutionManager implements PruningCriterion {
         }
     }
     
+    /**
+     * Get a lower bound on the probability of any phase-known genotype that can ever be used
+     * without violating the constraint on the maximum population size per generation, regardless
+     * of the seed lot from which it is taken. Genotypes with a lower probability are always removed
+     * by {@link #filterSeedLot(SeedLot)}, so that they need not be generated when crossing plants.
+     * If no such constraint has been set, 0.0 is returned.
+     * 
+     * @return lower bound on the probability of any useful phase-known genotype
+     */
+    public double getMinProbabilityOfPhaseKnownGenotype(){
+        if(maxPopSizePerGen == null){
+            return 0.0;
+        }
+        return popSizeTools.computeTargetProbLowerBound(maxPopSizePerGen.getMaxPopSizePerGen());
+    }
+    
     /**
      * <p>
      * Filter the given seed lot. First, some basic filters are applied based on the constraints
@@ -327,18 +341,20 @@ public class BranchAndBoundSolutionManager implements PruningCriterion {
      */
     public SeedLot filterSeedLot(SeedLot seedlot){
         // apply basic filters (non-heuristic)
-        for(Genotype g : seedlot.getGenotypes()){
-            GenotypeAllelicFrequencies state = g.getAllelicFrequencies();
+        double minProb = 0.0;
+        if(maxPopSizePerGen != null){
+            minProb = popSizeTools.computeTargetProbLowerBound(seedlot, maxPopSizePerGen.getMaxPopSizePerGen());
+        }
+        for(int i = seedlot.nextGenotypeIndex(0); i >= 0; i = seedlot.nextGenotypeIndex(i+1)){
             if(maxLinkagePhaseAmbiguity != null
-                    && seedlot.getGenotypeGroup(state).getLinkagePhaseAmbiguity(g)
+                    && seedlot.getLinkagePhaseAmbiguity(i)
                             > maxLinkagePhaseAmbiguity.getMaxLinkagePhaseAmbiguity()){
                 // linkage phase ambiguity is definitely too high
-                seedlot.filterGenotype(g);
+                seedlot.filterGenotype(i);
             } else if (maxPopSizePerGen != null
-                        && seedlot.getGenotypeGroup(state).getProbabilityOfPhaseKnownGenotype(g)
-                            < popSizeTools.computeTargetProbLowerBound(seedlot, maxPopSizePerGen.getMaxPopSizePerGen())){
+                        && seedlot.getProbabilityOfPhaseKnownGenotype(i) < minProb){
                 // probability of genotype is so small that it would definitely violate the maximum population size per generation
-                seedlot.filterGenotype(g);
+                seedlot.filterGenotype(i);
             }
         }
         // apply heuristic filters
@@ -680,6 +696,25 @@ public class BranchAndBoundSolutionManager implements PruningCriterion {
         }
     }
     
+    /**
+     * Get lower bounds for the descriptor of any solution obtained by extending the given scheme. If the given
+     * scheme is not yet a solution, at least one additional generation and crossing are required to obtain the
+     * ideotype. Any heuristic bound extensions are applied as well.
+     * 
+     * @param scheme partial scheme
+     * @return lower bounds for the descriptor of any solution extending the given scheme
+     */
+    public CrossingSchemeDescriptor getLowerBounds(CrossingScheme scheme){
+        CrossingSchemeDescriptor desc = scheme.getDescriptor();
+        if(isSolution(scheme)){
+            return heuristics.extendBoundsForCurrentScheme(desc, scheme);
+        } else {
+            desc.setNumGenerations(desc.getNumGenerations()+1); // at least 1 extra generation
+            desc.setNumCrossings(desc.getNumCrossings()+1); // at least 1 extra crossing
+            return heuristics.extendBoundsUponCrossing(desc, scheme);
+        }
+    }
+    
     @Override
     public boolean pruneCurrentScheme(CrossingScheme scheme){
         if(heuristics.pruneCurrentScheme(scheme)){
@@ -786,17 +821,7 @@ public class BranchAndBoundSolutionManager implements PruningCriterion {
     }
     
     private boolean haplotypeObtainable(Haplotype hap, DiploidChromosome chrom){
-        boolean obtainable = true;
-        int l = 0;
-        // go through loci in chromosome
-        AllelicFrequency[] targetStates = chrom.getAllelicFrequencies().getAllelicFrequencies();
-        while(obtainable && l < chrom.nrOfLoci()){
-            // check locus l
-            obtainable = (hap.targetPresent(l) && (targetStates[l] == AllelicFrequency.ONCE || targetStates[l] == AllelicFrequency.TWICE))
-                      || (!hap.targetPresent(l) && (targetStates[l] == AllelicFrequency.NONE || targetStates[l] == AllelicFrequency.ONCE));
-            l++;
-        }
-        return obtainable;
+        return chrom.mayProduceGamete(hap);
     }
     
     /**
@@ -0,0 +1,323 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search.bb;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.ugent.caagt.genestacker.DiploidChromosome;
+import org.ugent.caagt.genestacker.GenotypePool;
+import org.ugent.caagt.genestacker.Haplotype;
+import org.ugent.caagt.genestacker.util.ConcurrentLongObjectMap;
+
+/**
+ * Caches the possible gametes produced by individual chromosomes, and the possible diploid chromosomes
+ * obtained by combining the gametes of two chromosomes, per chromosome index. Entries are indexed by the
+ * ids of the chromosomes as assigned by a genotype pool (see {@link GenotypePool#getId(DiploidChromosome)}),
+ * where the diploid chromosomes obtained from chromosomes A x B and B x A share the same entry. Because
+ * genotypes considered during a search usually share most of their chromosomes with their ancestors,
+ * crossing two new genotypes then only requires to recompute the chromosome indices at which one of
+ * both parents carries a chromosome that has not been crossed before.
+ * <p>
+ * Cached maps are shared between all crossings in which they occur and should therefore never be modified.
+ * <p>
+ * By default, the cache is unbounded. If a memory budget is set (see {@link #setMaxMemory(long)}), entries
+ * are evicted according to the CLOCK policy (an approximation of LRU) as soon as the estimated memory usage
+ * exceeds the budget: entries are visited in order of insertion, where entries that have been accessed since
+ * they were last visited are given a second chance. Lookups only set a flag in the accessed entry and never lock.
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class ChromosomeCache {
+    
+    // value used to indicate that the cache is unbounded
+    public static final long UNBOUNDED = Long.MAX_VALUE;
+    
+    // rough memory estimates (bytes) used to account for cached entries
+    private static final long BYTES_PER_ENTRY = 64;              // entry object, table slots and queue node
+    private static final long BYTES_PER_MAP = 64;                // hash map object and table
+    private static final long BYTES_PER_MAP_ENTRY = 48;          // hash map node and boxed probability
+    private static final long BYTES_PER_HAPLOTYPE = 40;          // haplotype object and word array (excluding words)
+    private static final long BYTES_PER_CHROMOSOME = 96;         // chromosome object, haplotype array and allelic frequencies
+    
+    // pool used to assign chromosome ids
+    private final GenotypePool pool;
+    
+    // caches per chromosome index (grown on demand, only while holding the lock on this cache)
+    private volatile IndexCache[] caches;
+    
+    // memory budget (bytes)
+    private volatile long maxMemory;
+    // estimated memory usage (bytes) and number of cached entries
+    private final AtomicLong memory;
+    private final AtomicInteger size;
+    // cached entries in the order in which they are visited for eviction
+    private final ConcurrentLinkedQueue<Entry> clock;
+    // only one thread evicts entries at a time
+    private final ReentrantLock evictionLock;
+    
+    public ChromosomeCache(GenotypePool pool){
+        this(pool, UNBOUNDED);
+    }
+    
+    /**
+     * Create a chromosome cache with the given memory budget.
+     * 
+     * @param pool pool used to assign chromosome ids
+     * @param maxMemory memory budget (in bytes), {@link #UNBOUNDED} if the cache is not bounded
+     */
+    public ChromosomeCache(GenotypePool pool, long maxMemory){
+        this.pool = pool;
+        this.maxMemory = maxMemory;
+        caches = new IndexCache[0];
+        memory = new AtomicLong();
+        size = new AtomicInteger();
+        clock = new ConcurrentLinkedQueue<>();
+        evictionLock = new ReentrantLock();
+    }
+    
+    /**
+     * Set the memory budget of this cache. Entries are evicted as soon as the estimated memory usage of
+     * all cached gametes and diploid chromosomes exceeds the budget.
+     * 
+     * @param maxMemory memory budget (in bytes), {@link #UNBOUNDED} if the cache is not bounded
+     * @throws IllegalArgumentException if the budget is not strictly positive
+     */
+    public void setMaxMemory(long maxMemory){
+        if(maxMemory <= 0){
+            throw new IllegalArgumentException("Memory budget should be strictly positive.");
+        }
+        this.maxMemory = maxMemory;
+        evict();
+    }
+    
+    public long getMaxMemory(){
+        return maxMemory;
+    }
+    
+    /**
+     * Get the estimated amount of memory (in bytes) occupied by the cached entries.
+     * 
+     * @return estimated memory usage in bytes
+     */
+    public long getMemoryUsage(){
+        return memory.get();
+    }
+    
+    /**
+     * Get the number of cached entries (gametes and diploid chromosomes at any chromosome index).
+     * 
+     * @return number of cached entries
+     */
+    public int size(){
+        return size.get();
+    }
+    
+    // get cache for the given chromosome index
+    private IndexCache getIndexCache(int chromIndex){
+        IndexCache[] cur = caches;
+        if(chromIndex < cur.length){
+            return cur[chromIndex];
+        }
+        synchronized(this){
+            cur = caches;
+            if(chromIndex >= cur.length){
+                cur = Arrays.copyOf(cur, chromIndex+1);
+                for(int c=caches.length; c<cur.length; c++){
+                    cur[c] = new IndexCache();
+                }
+                caches = cur;
+            }
+            return cur[chromIndex];
+        }
+    }
+    
+    // get value of the given entry (if any), marking the entry as recently used
+    private static Object hit(Entry e){
+        if(e == null){
+            return null;
+        }
+        // avoid writing to shared memory if already marked
+        if(!e.referenced){
+            e.referenced = true;
+        }
+        return e.value;
+    }
+    
+    // store the given value unless another value has been stored concurrently, returns the cached value
+    private Object store(ConcurrentLongObjectMap<Entry> map, long key, Object value, long bytes){
+        Entry e = new Entry(map, key, value, BYTES_PER_ENTRY + bytes);
+        Entry prev = map.putIfAbsent(key, e);
+        if(prev != null){
+            return hit(prev);
+        }
+        clock.add(e);
+        size.incrementAndGet();
+        if(memory.addAndGet(e.memory) > maxMemory){
+            evict();
+        }
+        return value;
+    }
+    
+    // evict entries until the memory usage no longer exceeds the budget (skipped if another thread is already evicting)
+    private void evict(){
+        if(memory.get() <= maxMemory || !evictionLock.tryLock()){
+            return;
+        }
+        try {
+            // give each entry at most one second chance during a single call
+            int chances = size.get();
+            Entry e;
+            while(memory.get() > maxMemory && (e = clock.poll()) != null){
+                if(e.referenced && chances-- > 0){
+                    // recently used: second chance
+                    e.referenced = false;
+                    clock.add(e);
+                } else if(e.map.remove(e.key, e)){
+                    memory.addAndGet(-e.memory);
+                    size.decrementAndGet();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+    
+    /**
+     * Get the cached gametes produced by the given chromosome, located at the given chromosome index.
+     *
+     * @param chromIndex chromosome index
+     * @param chrom diploid chromosome
+     * @return cached gametes and their probabilities, <code>null</code> if not present in the cache
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Haplotype, Double> getCachedGametes(int chromIndex, DiploidChromosome chrom){
+        // chromosomes that have not been interned can not be present in the cache
+        int id = pool.lookupId(chrom);
+        return id < 0 ? null : (Map<Haplotype, Double>) hit(getIndexCache(chromIndex).gametes.get(id));
+    }
+    
+    /**
+     * Store the gametes produced by the given chromosome, located at the given chromosome index, unless
+     * these gametes have already been stored concurrently. The cached instance is returned.
+     *
+     * @param chromIndex chromosome index
+     * @param chrom diploid chromosome
+     * @param gametes gametes and their probabilities
+     * @return cached gametes, which are either the given gametes or previously stored gametes
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Haplotype, Double> cacheGametes(int chromIndex, DiploidChromosome chrom, Map<Haplotype, Double> gametes){
+        long bytes = BYTES_PER_MAP;
+        for(Haplotype h : gametes.keySet()){
+            bytes += BYTES_PER_MAP_ENTRY + BYTES_PER_HAPLOTYPE + 8L * h.nrOfWords();
+        }
+        return (Map<Haplotype, Double>) store(getIndexCache(chromIndex).gametes, pool.getId(chrom), gametes, bytes);
+    }
+    
+    /**
+     * Get the cached diploid chromosomes obtained by crossing the two given chromosomes, located
+     * at the given chromosome index (in any order).
+     *
+     * @param chromIndex chromosome index
+     * @param chrom1 diploid chromosome of parent 1
+     * @param chrom2 diploid chromosome of parent 2
+     * @return cached diploid chromosomes and their probabilities, <code>null</code> if not present in the cache
+     */
+    @SuppressWarnings("unchecked")
+    public Map<DiploidChromosome, Double> getCachedDiploidChromosomes(int chromIndex, DiploidChromosome chrom1, DiploidChromosome chrom2){
+        int id1 = pool.lookupId(chrom1);
+        int id2 = pool.lookupId(chrom2);
+        return id1 < 0 || id2 < 0 ? null
+                : (Map<DiploidChromosome, Double>) hit(getIndexCache(chromIndex).diploidChroms.get(GenotypePool.pairKey(id1, id2)));
+    }
+    
+    /**
+     * Store the diploid chromosomes obtained by crossing the two given chromosomes, located at the given
+     * chromosome index, unless these have already been stored concurrently. The cached instance is returned.
+     *
+     * @param chromIndex chromosome index
+     * @param chrom1 diploid chromosome of parent 1
+     * @param chrom2 diploid chromosome of parent 2
+     * @param diploidChroms diploid chromosomes and their probabilities
+     * @return cached diploid chromosomes, which are either the given chromosomes or previously stored chromosomes
+     */
+    @SuppressWarnings("unchecked")
+    public Map<DiploidChromosome, Double> cacheDiploidChromosomes(int chromIndex, DiploidChromosome chrom1, DiploidChromosome chrom2,
+                                                                  Map<DiploidChromosome, Double> diploidChroms){
+        long key = GenotypePool.pairKey(pool.getId(chrom1), pool.getId(chrom2));
+        // haplotypes of the diploid chromosomes are shared with the cached gametes of both parents
+        long bytes = BYTES_PER_MAP + diploidChroms.size() * (BYTES_PER_MAP_ENTRY + BYTES_PER_CHROMOSOME);
+        return (Map<DiploidChromosome, Double>) store(getIndexCache(chromIndex).diploidChroms, key, diploidChroms, bytes);
+    }
+    
+    /**
+     * Clear all cached gametes and diploid chromosomes.
+     */
+    public void clear(){
+        evictionLock.lock();
+        try {
+            for(IndexCache c : caches){
+                c.gametes.clear();
+                c.diploidChroms.clear();
+            }
+            clock.clear();
+            memory.set(0);
+            size.set(0);
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+    
+    /**
+     * Cached gametes and diploid chromosomes at a single chromosome index.
+     */
+    private static final class IndexCache {
+        
+        // gametes indexed by chromosome id
+        private final ConcurrentLongObjectMap<Entry> gametes = new ConcurrentLongObjectMap<>();
+        // diploid chromosomes indexed by chromosome pair key
+        private final ConcurrentLongObjectMap<Entry> diploidChroms = new ConcurrentLongObjectMap<>();
+    
+    }
+    
+    /**
+     * Cached gametes or diploid chromosomes, together with their location and estimated memory usage.
+     */
+    private static final class Entry {
+        
+        // map in which the entry is stored, and its key
+        private final ConcurrentLongObjectMap<Entry> map;
+        private final long key;
+        // cached map
+        private final Object value;
+        // estimated memory usage (bytes)
+        private final long memory;
+        // set when accessed, cleared when given a second chance during eviction
+        private volatile boolean referenced;
+        
+        public Entry(ConcurrentLongObjectMap<Entry> map, long key, Object value, long memory){
+            this.map = map;
+            this.key = key;
+            this.value = value;
+            this.memory = memory;
+        }
+    
+    }
+
+}
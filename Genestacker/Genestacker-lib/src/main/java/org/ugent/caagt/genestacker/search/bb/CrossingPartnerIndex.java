@@ -0,0 +1,184 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search.bb;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.ugent.caagt.genestacker.DiploidChromosome;
+import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.search.CrossingSchemeAlternatives;
+
+/**
+ * Index of previously considered schemes, used to enumerate the schemes that may be crossed with a given scheme
+ * without inspecting all previous schemes. Schemes are grouped by their minimum number of generations and by a
+ * signature of their final genotype, indicating for each chromosome which haplotypes of the ideotype may be
+ * produced. Groups of which all schemes would be pruned when crossed with the given scheme because of the
+ * maximum number of generations, or because the ideotype can not be obtained from the crossing when only one
+ * generation remains (see {@link BranchAndBoundSolutionManager#pruneCrossCurrentSchemeWithSpecificOther}),
+ * are skipped entirely. Other schemes are enumerated in the order in which they have been added to the index.
+ * <p>
+ * This class is not thread safe: schemes should not be added while enumerating candidate partners.
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class CrossingPartnerIndex {
+    
+    // solution manager
+    private final BranchAndBoundSolutionManager solManager;
+    
+    // indexed schemes: min number of generations --> signature --> schemes (in insertion order)
+    private Map<Integer, Map<BitSet, List<Entry>>> schemes;
+    
+    // signatures of final genotypes (memoized)
+    private Map<Genotype, BitSet> signatures;
+    
+    // number of indexed schemes
+    private int size;
+    
+    /**
+     * Create an empty index. The ideotype and the maximum number of generations are obtained
+     * from the given solution manager.
+     *
+     * @param solManager solution manager
+     */
+    public CrossingPartnerIndex(BranchAndBoundSolutionManager solManager){
+        this.solManager = solManager;
+        schemes = new LinkedHashMap<>();
+        signatures = new HashMap<>();
+        size = 0;
+    }
+    
+    /**
+     * Add a scheme to the index.
+     *
+     * @param scheme previously considered scheme
+     */
+    public void add(CrossingSchemeAlternatives scheme){
+        int gen = scheme.getMinNumGen();
+        Map<BitSet, List<Entry>> groups = schemes.get(gen);
+        if(groups == null){
+            groups = new LinkedHashMap<>();
+            schemes.put(gen, groups);
+        }
+        BitSet sig = getSignature(scheme.getFinalPlant().getGenotype());
+        List<Entry> group = groups.get(sig);
+        if(group == null){
+            group = new ArrayList<>();
+            groups.put(sig, group);
+        }
+        group.add(new Entry(scheme, size++));
+    }
+    
+    public int size(){
+        return size;
+    }
+    
+    /**
+     * Get all indexed schemes that may be crossed with the given scheme, in the order in which they have been added.
+     * Schemes that are omitted would be pruned for any pair of alternatives.
+     *
+     * @param scheme current scheme
+     * @return candidate crossing partners
+     */
+    public List<CrossingSchemeAlternatives> getCandidatePartners(CrossingSchemeAlternatives scheme){
+        int curGen = scheme.getMinNumGen();
+        BitSet curSig = getSignature(scheme.getFinalPlant().getGenotype());
+        List<Entry> candidates = new ArrayList<>();
+        for(Map.Entry<Integer, Map<BitSet, List<Entry>>> genGroups : schemes.entrySet()){
+            // minimum number of generations of any pair of alternatives
+            int gen = Math.max(curGen, genGroups.getKey());
+            if(!solManager.finalGenerationReached(gen)){
+                boolean penultimate = solManager.penultimateGenerationReached(gen);
+                for(Map.Entry<BitSet, List<Entry>> group : genGroups.getValue().entrySet()){
+                    // ideotype should be obtainable in next generation if only one generation remains
+                    if(!penultimate || compatible(curSig, group.getKey())){
+                        candidates.addAll(group.getValue());
+                    }
+                }
+            }
+        }
+        // restore insertion order
+        Collections.sort(candidates, INSERTION_ORDER);
+        List<CrossingSchemeAlternatives> partners = new ArrayList<>(candidates.size());
+        for(Entry e : candidates){
+            partners.add(e.scheme);
+        }
+        return partners;
+    }
+    
+    /**
+     * Compute the signature of a genotype: for each chromosome c, bit 2c (resp. 2c+1) is set if the chromosome
+     * may produce the first (resp. second) haplotype of the corresponding chromosome of the ideotype.
+     */
+    private BitSet getSignature(Genotype genotype){
+        BitSet sig = signatures.get(genotype);
+        if(sig == null){
+            Genotype ideotype = solManager.getIdeotype();
+            sig = new BitSet(2*genotype.nrOfChromosomes());
+            for(int c=0; c<genotype.nrOfChromosomes(); c++){
+                DiploidChromosome chrom = genotype.getChromosomes().get(c);
+                DiploidChromosome ideoChrom = ideotype.getChromosomes().get(c);
+                sig.set(2*c, chrom.mayProduceGamete(ideoChrom.getHaplotypes()[0]));
+                sig.set(2*c+1, chrom.mayProduceGamete(ideoChrom.getHaplotypes()[1]));
+            }
+            signatures.put(genotype, sig);
+        }
+        return sig;
+    }
+    
+    /**
+     * Check whether crossing genotypes with the given signatures may yield the ideotype, i.e. whether for each
+     * chromosome, the first parent may produce one of the haplotypes of the ideotype and the second parent the other.
+     */
+    private boolean compatible(BitSet sig1, BitSet sig2){
+        int nrOfChromosomes = solManager.getIdeotype().nrOfChromosomes();
+        boolean comp = true;
+        int c = 0;
+        while(comp && c < nrOfChromosomes){
+            comp = sig1.get(2*c) && sig2.get(2*c+1) || sig1.get(2*c+1) && sig2.get(2*c);
+            c++;
+        }
+        return comp;
+    }
+    
+    // order of insertion
+    private static final Comparator<Entry> INSERTION_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            return Integer.compare(e1.seq, e2.seq);
+        }
+    };
+    
+    // indexed scheme
+    private static class Entry {
+        
+        private final CrossingSchemeAlternatives scheme;
+        // insertion order
+        private final int seq;
+        
+        public Entry(CrossingSchemeAlternatives scheme, int seq){
+            this.scheme = scheme;
+            this.seq = seq;
+        }
+    
+    }
+
+}
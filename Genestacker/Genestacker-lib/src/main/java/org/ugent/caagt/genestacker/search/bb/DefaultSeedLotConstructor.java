@@ -15,17 +15,23 @@
 package org.ugent.caagt.genestacker.search.bb;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import org.ugent.caagt.genestacker.DiploidChromosome;
 import org.ugent.caagt.genestacker.GeneticMap;
 import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.GenotypePool;
 import org.ugent.caagt.genestacker.Haplotype;
-import org.ugent.caagt.genestacker.GenotypeGroupWithSameAllelicFrequencies;
 import org.ugent.caagt.genestacker.ChromosomeAllelicFrequencies;
 import org.ugent.caagt.genestacker.AllelicFrequency;
 import org.ugent.caagt.genestacker.GenotypeAllelicFrequencies;
@@ -38,132 +44,178 @@ import org.ugent.caagt.genestacker.exceptions.IncompatibleGenotypesException;
  * Default seed lot constructor that creates the seed lot obtained from
  * a given crossing or selfing, containing all possible child genotypes
  * with their respective probability and linkage phase ambiguity.
+ * <p>
+ * Optionally, a fork-join pool can be set to construct large seed lots in parallel
+ * (see {@link #setForkJoinPool(ForkJoinPool)}).
  * 
  * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
  */
 public class DefaultSeedLotConstructor extends SeedLotConstructor {
     
+    // minimum number of chromosome combinations for which offspring genotypes are created in parallel
+    private static final long PARALLEL_THRESHOLD = 4096;
+    
+    // maximum number of chromosome combinations handled sequentially by a single parallel task
+    private static final long PARALLEL_CHUNK_SIZE = 1024;
+    
+    // maximum initial capacity of the shared offspring map used for parallel construction (grows when needed)
+    private static final int MAX_INITIAL_OFFSPRING_CAPACITY = 1 << 16;
+    
+    // relative margin applied to the minimum probability when pruning partial genotypes (rounding errors)
+    private static final double PRUNING_MARGIN = 1e-9;
+    
+    // fork-join pool used for parallel seed lot construction (null: sequential construction)
+    private ForkJoinPool forkJoinPool = null;
+    
     public DefaultSeedLotConstructor(GeneticMap map){
         super(map);
     }
     
-    private void checkCompatibility(Genotype g1, Genotype g2) throws IncompatibleGenotypesException, IncompatibleGeneticMapException{
-        // check if genotypes are compatible for crossing
-        if(!g1.compatibleWith(g2)){
-            throw new IncompatibleGenotypesException("Attempted to cross incompatible genotypes");
-        }
-        // check compatibility with genetic map
-        boolean compatibleWithMap = (g1.nrOfChromosomes() == map.nrOfChromosomes());
-        int i=0;
-        while(compatibleWithMap && i<g1.nrOfChromosomes()){
-            compatibleWithMap = (g1.getChromosomes().get(i).nrOfLoci() == map.nrOfLociOnChromosome(i));
-            i++;
-        }
-        if(!compatibleWithMap){
-            throw new IncompatibleGeneticMapException("Given genetic map is not compatible with genotype structure");
-        }
+    public DefaultSeedLotConstructor(GeneticMap map, GenotypePool pool){
+        super(map, pool);
     }
     
     /**
-     * Recursively generate all haplotypes that can be produced by a single chromosome of a given genotype.
+     * Set a fork-join pool used to construct large seed lots in parallel. If set, the possible diploid chromosomes
+     * obtained from a crossing are generated concurrently for all chromosomes, and if the number of combinations
+     * of these chromosomes reaches {@value #PARALLEL_THRESHOLD}, the offspring genotypes are created by splitting
+     * this cartesian product into independent ranges. This speeds up single crossings that produce large seed lots,
+     * independently of any parallel extension of partial schemes performed by the search engine. By default, no
+     * pool is set and all seed lots are constructed sequentially.
+     * 
+     * @param forkJoinPool fork-join pool, <code>null</code> for sequential seed lot construction
+     */
+    public void setForkJoinPool(ForkJoinPool forkJoinPool){
+        this.forkJoinPool = forkJoinPool;
+    }
+    
+    public ForkJoinPool getForkJoinPool(){
+        return forkJoinPool;
+    }
+    
+    /**
+     * Generate all haplotypes that can be produced by a single chromosome of a given genotype. Choices are only
+     * enumerated at the heterozygous loci of the chromosome, where the haplotype (0/1) that passes on its allele
+     * is encoded as a bit of an integer mask; alleles at homozygous loci are copied at once from the packed words
+     * of the chromosome. Masks are enumerated by counting so that only a suffix of the picked haplotypes changes
+     * from one gamete to the next, reusing the probabilities computed for the unchanged prefix.
+     * <p>
+     * If no desired allelic frequencies are specified, the generated gametes are cached per chromosome
+     * (see {@link ChromosomeCache}), so that overriding implementations should then only depend on the
+     * considered chromosome of the parent and its index.
      * 
      * @param parent parental genotype
-     * @param chromIndex index of chromosome for which the possible gametes have to be computed
-     * @param haplotypes currently constructed haplotypes, extended during recursion
-     * @param curHaplotype current haplotype under construction, extended during recursion
-     * @param curP current probability of gamete under construction, updated during recursion
-     * @param locus index of current considered locus in chromosome
-     * @param previousHeterozygousLocus index of last heterozygous locus before the current locus, -1 if none
-     * @param previousHaplotypePicked index of haplotype (0/1) of the considered chromosome that passed on its
-     *                                allele to the constructed gamete at the last heterozygous locus before the
-     *                                current locus, -1 if none
-     * @param desiredAllelicFreqs optional: only construct gametes that may yield the desired allelic frequencies
-     *                            when crossing <code>parent</code> with <code>otherParent</code>; may be null
      * @param otherParent optional: other genotype with which <code>parent</code> will be crossed; should
      *                    only be provided if <code>desiredAllelicFreqs</code> is stated, and will then be
      *                    used to skip options that cannot yield the desired allelic frequencies when crossing
      *                    with this other genotype
+     * @param desiredAllelicFreqs optional: only construct gametes that may yield the desired allelic frequencies
+     *                            when crossing <code>parent</code> with <code>otherParent</code>; may be null
+     * @param chromIndex index of chromosome for which the possible gametes have to be computed
+     * @param haplotypes map in which the generated haplotypes are stored, together with their probabilities
      * @throws GenotypeException if anything goes wrong when construction the haplotypes of the generated gametes
+     *                           or if more than 63 heterozygous loci can be freely combined
      */
     protected void genChromosomeGametes(Genotype parent, Genotype otherParent, GenotypeAllelicFrequencies desiredAllelicFreqs,
-                                        int chromIndex, Map<Haplotype, Double> haplotypes, LinkedList<Boolean> curHaplotype,
-                                        double curP, int locus, int previousHeterozygousLocus, int previousHaplotypePicked)
-                                            throws GenotypeException{
+                                        int chromIndex, Map<Haplotype, Double> haplotypes) throws GenotypeException{
         
         DiploidChromosome chrom = parent.getChromosomes().get(chromIndex);
+        Haplotype top = chrom.getHaplotypes()[0];
+        int nrOfLoci = chrom.nrOfLoci();
+        int nrOfWords = Haplotype.nrOfWords(nrOfLoci);
         
-        // check if construction complete
-        if(locus >= chrom.nrOfLoci()){
-            // store completed gamete (copy haplotype !!)
-            List<Boolean> hapCopy = new ArrayList<>(curHaplotype);
-            haplotypes.put(new Haplotype(hapCopy), curP);
-            return;
+        // initialize gamete with alleles at homozygous loci (immune for recombination)
+        long[] words = new long[nrOfWords];
+        for(int w=0; w<nrOfWords; w++){
+            words[w] = chrom.getHomozygousTargets(w);
         }
+        // heterozygous loci
+        int[] loci = chrom.getHeterozygousLoci();
+        int nrOfHet = loci.length;
+        int j;
         
-        // continue construction: extend currently constructed part of gamete in all possible ways
-        
-        if(chrom.isHomozygousAtLocus(locus)){
-            
-            // homozygous target is immune for recombination!
-
-            // extend current targets with the only possible option
-            curHaplotype.add(chrom.getHaplotypes()[0].targetPresent(locus));
-            // recursion (probability does not change)
-            genChromosomeGametes(parent, otherParent, desiredAllelicFreqs, chromIndex, haplotypes, curHaplotype, curP, locus+1,
-                                    previousHeterozygousLocus, previousHaplotypePicked);
-            // backtracking: remove target
-            curHaplotype.removeLast();
-        } else {
-                        
-            // heterozygous target: create both possible extended gametes
-            // (if desired observation is given, one option might be ignored)
-            
-            for(int haplotypePicked=0; haplotypePicked <= 1; haplotypePicked++){
-                
-                // check if currently considered option can lead to the desired observation, if any,
-                // through a crossing of the considered genotype with the given other genotype
-                if(desiredAllelicFreqs == null
-                        || canYieldDesiredObservation(
-                                desiredAllelicFreqs.getChromosomeAllelicFrequencies().get(chromIndex)
-                                                   .getAllelicFrequencies()[locus],
-                                otherParent.getAllelicFrequencies().getChromosomeAllelicFrequencies()
-                                           .get(chromIndex).getAllelicFrequencies()[locus],
-                                chrom.getHaplotypes()[haplotypePicked].targetPresent(locus)
-                        )){
-                
-                    // extend current targets with the selected option
-                    curHaplotype.add(chrom.getHaplotypes()[haplotypePicked].targetPresent(locus));
-
-                    // update probability: depends on recombination factors
-                    double r, newP;
-
-                    if(previousHeterozygousLocus == -1){
-                        // first heterozygous locus in chromosome
-                        r = 0.5;
-                    } else {
-                        r = map.getRecombinationProbability(chromIndex, previousHeterozygousLocus, locus);
-                    }
-
-                    if(previousHaplotypePicked == haplotypePicked){
-                        // previous haplotype same as current choice (no partialCross-over in between)
-                        newP = curP * (1-r);
-                    } else {
-                        // other haplotype picked (partialCross-over)
-                        newP = curP * r;
-                    }
-
-                    // recursion
-                    genChromosomeGametes(parent, otherParent, desiredAllelicFreqs, chromIndex, haplotypes,
-                                                        curHaplotype, newP, locus+1, locus, haplotypePicked);
-                    // backtracking: remove last target
-                    curHaplotype.removeLast();
-                
+        // check which haplotype may be picked at each heterozygous locus, if desired allelic frequencies
+        // are given (-1: free choice, 0/1: fixed choice); free loci are mapped to bits of the mask, where
+        // the last free locus corresponds to the least significant bit
+        int[] fixed = new int[nrOfHet];
+        int[] maskBit = new int[nrOfHet];
+        int[] free = new int[nrOfHet];
+        int nrOfFree = 0;
+        for(j=0; j<nrOfHet; j++){
+            fixed[j] = -1;
+            if(desiredAllelicFreqs != null){
+                AllelicFrequency desired = desiredAllelicFreqs.getChromosomeAllelicFrequencies().get(chromIndex)
+                                                              .getAllelicFrequencies()[loci[j]];
+                AllelicFrequency other = otherParent.getChromosomes().get(chromIndex).getAllelicFrequency(loci[j]);
+                boolean topAllele = top.targetPresent(loci[j]);
+                boolean pick0 = canYieldDesiredObservation(desired, other, topAllele);
+                boolean pick1 = canYieldDesiredObservation(desired, other, !topAllele);
+                if(!pick0 && !pick1){
+                    // desired allelic frequencies can not be obtained
+                    return;
+                } else if(!pick1){
+                    fixed[j] = 0;
+                } else if(!pick0){
+                    fixed[j] = 1;
                 }
-                
             }
-            
+            if(fixed[j] == -1){
+                free[nrOfFree++] = j;
+            }
+        }
+        // free loci are enumerated as the bits of a long mask
+        if(nrOfFree >= Long.SIZE){
+            throw new GenotypeException("Can not enumerate gametes with " + nrOfFree + " free heterozygous loci "
+                                        + "on chromosome " + chromIndex + " (at most " + (Long.SIZE-1) + " supported)");
+        }
+        for(int f=0; f<nrOfFree; f++){
+            maskBit[free[f]] = nrOfFree-1-f;
+        }
+        
+        // recombination probabilities between subsequent heterozygous loci
+        // (0.5 for the first heterozygous locus, where both haplotypes are equally likely)
+        double[] r = new double[nrOfHet];
+        for(j=0; j<nrOfHet; j++){
+            r[j] = (j == 0) ? 0.5 : map.getRecombinationProbability(chromIndex, loci[j-1], loci[j]);
         }
         
+        // enumerate all masks, keeping track of picked haplotypes and probabilities of gamete prefixes
+        int[] picked = new int[nrOfHet];
+        double[] p = new double[nrOfHet];
+        long mask = 0;
+        int changed = 0;
+        while(true){
+            // update gamete from first heterozygous locus where the picked haplotype may have changed
+            for(j=changed; j<nrOfHet; j++){
+                int l = loci[j];
+                picked[j] = fixed[j] != -1 ? fixed[j] : (int) (mask >>> maskBit[j]) & 1;
+                // alleles of both haplotypes differ at heterozygous loci
+                if(top.targetPresent(l) == (picked[j] == 0)){
+                    words[l >>> 6] |= 1L << l;
+                } else {
+                    words[l >>> 6] &= ~(1L << l);
+                }
+                // update probability: depends on recombination factors
+                double prevP = (j == 0) ? 1.0 : p[j-1];
+                if(j > 0 && picked[j-1] == picked[j]){
+                    // previous haplotype same as current choice (no cross-over in between)
+                    p[j] = prevP * (1-r[j]);
+                } else {
+                    // other haplotype picked (cross-over)
+                    p[j] = prevP * r[j];
+                }
+            }
+            // store completed gamete
+            haplotypes.put(new Haplotype(words, nrOfLoci), nrOfHet == 0 ? 1.0 : p[nrOfHet-1]);
+            // next mask
+            mask++;
+            if(mask >>> nrOfFree != 0){
+                return;
+            }
+            // trailing bits flipped by incrementing the mask correspond to a suffix of the free loci
+            changed = free[nrOfFree-1-Long.numberOfTrailingZeros(mask)];
+        }
+    
     }
     
     /**
@@ -201,7 +253,7 @@ public class DefaultSeedLotConstructor extends SeedLotConstructor {
     protected boolean canYieldDesiredObservation(AllelicFrequency desiredAllelicFrequency,
                                                  AllelicFrequency otherParentAllelicFrequency,
                                                  boolean selectedAllele){
-                
+        
         return   ( desiredAllelicFrequency == AllelicFrequency.TWICE && selectedAllele
                 || desiredAllelicFrequency == AllelicFrequency.NONE && !selectedAllele
                 || desiredAllelicFrequency == AllelicFrequency.ONCE &&
@@ -210,9 +262,9 @@ public class DefaultSeedLotConstructor extends SeedLotConstructor {
                         || otherParentAllelicFrequency == AllelicFrequency.NONE && selectedAllele
                         || otherParentAllelicFrequency == AllelicFrequency.ONCE
                     ));
-        
+    
     }
-        
+    
     /**
      * Recursively combine possible chromosomes to create the set of all possible genotypes, with their respective
      * probability. If the map with complete genotypes already contains some entries upon calling this method, these
@@ -229,7 +281,7 @@ public class DefaultSeedLotConstructor extends SeedLotConstructor {
                                         LinkedList<DiploidChromosome> curGenotype, Map<Genotype, Double> completeGenotypes){
         // check if complete
         if(chromIndex >= possibleChromosomes.size()){
-            // create genotype
+            // create genotype (not interned: only genotypes that are later used as parents are interned)
             List<DiploidChromosome> chroms = new ArrayList<>(curGenotype);
             Genotype g = new Genotype(chroms);
             completeGenotypes.put(g, curP);
@@ -248,6 +300,36 @@ public class DefaultSeedLotConstructor extends SeedLotConstructor {
         }
     }
     
+    /**
+     * Combine the possible gametes produced by the respective chromosomes of two parental genotypes into all
+     * possible diploid chromosomes, with their respective probability (taking into account possible symmetry
+     * when both haplotypes of a chromosome may have been produced by both parents).
+     * 
+     * @param gametes1 possible gametes produced by the chromosome of the first parent, with their probabilities
+     * @param gametes2 possible gametes produced by the chromosome of the second parent, with their probabilities
+     * @return possible diploid chromosomes with their probabilities
+     * @throws GenotypeException if anything goes wrong while creating the diploid chromosomes
+     */
+    protected Map<DiploidChromosome, Double> combineGametes(Map<Haplotype, Double> gametes1, Map<Haplotype, Double> gametes2)
+                                                                                                    throws GenotypeException{
+        Map<DiploidChromosome, Double> diploidChroms = new HashMap<>();
+        for(Map.Entry<Haplotype, Double> h1 : gametes1.entrySet()){
+            for(Map.Entry<Haplotype, Double> h2 : gametes2.entrySet()){
+                DiploidChromosome dipChrom = new DiploidChromosome(h1.getKey(), h2.getKey());
+                // compute probability of this new combination
+                double newP = h1.getValue() * h2.getValue();
+                if(diploidChroms.containsKey(dipChrom)){
+                    // symmetric version already occured: increase prob
+                    diploidChroms.put(dipChrom, diploidChroms.get(dipChrom) + newP);
+                } else {
+                    // first occurence: set prob
+                    diploidChroms.put(dipChrom, newP);
+                }
+            }
+        }
+        return diploidChroms;
+    }
+    
     /**
      * Creates the seed lot containing all generated genotypes by grouping them according to their allelic
      * frequencies, and computes all probabilities and linkage phase ambiguities (per group). This assumes
@@ -264,34 +346,72 @@ public class DefaultSeedLotConstructor extends SeedLotConstructor {
      */
     protected SeedLot genSeedLotFromGenotypes(Genotype parent1, Genotype parent2, Map<Genotype, Double> genotypes){
         
-        // group genotypes by observable state and compute probability of each genotype group:
-        Map<GenotypeAllelicFrequencies, Map<Genotype, Double>> groups = new HashMap<>();
-        Map<GenotypeAllelicFrequencies, Double> observableStateProbs = new HashMap<>();
-        for(Genotype g : genotypes.keySet()){
-            GenotypeAllelicFrequencies state = g.getAllelicFrequencies();
-            if(groups.containsKey(state)){
-                // group already registered
-                groups.get(state).put(g, genotypes.get(g));
-                observableStateProbs.put(state, observableStateProbs.get(state) + genotypes.get(g));
-            } else {
-                // first genotype from group
-                Map<Genotype, Double> genotypeMap = new HashMap<>();
-                genotypeMap.put(g, genotypes.get(g));
-                groups.put(state, genotypeMap);
-                observableStateProbs.put(state, genotypes.get(g));
+        // flatten genotypes and probabilities (grouped by observable state in the seed lot)
+        Genotype[] offspring = new Genotype[genotypes.size()];
+        double[] probs = new double[genotypes.size()];
+        int i = 0;
+        for(Map.Entry<Genotype, Double> e : genotypes.entrySet()){
+            offspring[i] = e.getKey();
+            probs[i] = e.getValue();
+            i++;
+        }
+        // uniform seed lot if both parents are fully homozygous
+        boolean uniform = parent1.isHomozygousAtAllContainedLoci() && parent2.isHomozygousAtAllContainedLoci();
+        return new SeedLot(uniform, offspring, probs);
+    
+    }
+    
+    /**
+     * Creates the seed lot containing the given genotypes, where not all genotypes with the same allelic
+     * frequencies have to be included. The probability of each group of genotypes sharing the same allelic
+     * frequencies is computed as the product of the probabilities with which the respective allelic frequencies
+     * are observed at each chromosome index, based on all possible diploid chromosomes obtained from the crossing.
+     * This is used for seed lots from which improbable genotypes have been omitted during construction, see
+     * {@link #cross(Genotype, Genotype, double)}.
+     * 
+     * @param parent1 parental genotype 1
+     * @param parent2 parental genotype 2
+     * @param genotypes genotypes (and corresponding probabilities) to be included in the seed lot
+     * @param possibleChromosomes all possible diploid chromosomes (and corresponding probabilities) per
+     *                            chromosome index, obtained by crossing the given parental genotypes
+     * @return a seed lot containing the given genotypes, grouped according to shared allelic frequencies,
+     *         including all probabilities and linkage phase ambiguities
+     */
+    protected SeedLot genSeedLotFromGenotypes(Genotype parent1, Genotype parent2, Map<Genotype, Double> genotypes,
+                                                List<Map<DiploidChromosome, Double>> possibleChromosomes){
+        
+        // compute observation probabilities per chromosome index
+        List<Map<ChromosomeAllelicFrequencies, Double>> obsProbs = new ArrayList<>();
+        for(Map<DiploidChromosome, Double> chroms : possibleChromosomes){
+            Map<ChromosomeAllelicFrequencies, Double> chromObsProbs = new HashMap<>();
+            for(Map.Entry<DiploidChromosome, Double> e : chroms.entrySet()){
+                ChromosomeAllelicFrequencies obs = e.getKey().getAllelicFrequencies();
+                Double p = chromObsProbs.get(obs);
+                chromObsProbs.put(obs, p == null ? e.getValue() : p + e.getValue());
             }
+            obsProbs.add(chromObsProbs);
         }
         
-        // create seed lot
-        Map<GenotypeAllelicFrequencies, GenotypeGroupWithSameAllelicFrequencies> genotypeGroups = new HashMap<>();
-        for(GenotypeAllelicFrequencies state : groups.keySet()){
-            // pack genotype group for registration in seed lot
-            genotypeGroups.put(state, new GenotypeGroupWithSameAllelicFrequencies(observableStateProbs.get(state), state, groups.get(state)));
+        // flatten genotypes and probabilities, and compute group probabilities
+        Genotype[] offspring = new Genotype[genotypes.size()];
+        double[] probs = new double[genotypes.size()];
+        double[] groupProbs = new double[genotypes.size()];
+        int i = 0;
+        for(Map.Entry<Genotype, Double> e : genotypes.entrySet()){
+            offspring[i] = e.getKey();
+            probs[i] = e.getValue();
+            double groupP = 1.0;
+            List<DiploidChromosome> chroms = e.getKey().getChromosomes();
+            for(int c=0; c<chroms.size(); c++){
+                groupP *= obsProbs.get(c).get(chroms.get(c).getAllelicFrequencies());
+            }
+            groupProbs[i] = groupP;
+            i++;
         }
         // uniform seed lot if both parents are fully homozygous
         boolean uniform = parent1.isHomozygousAtAllContainedLoci() && parent2.isHomozygousAtAllContainedLoci();
-        return new SeedLot(uniform, genotypeGroups);
-        
+        return new SeedLot(uniform, offspring, probs, groupProbs);
+    
     }
     
     /**
@@ -327,17 +447,111 @@ public class DefaultSeedLotConstructor extends SeedLotConstructor {
         // generate chromosome gametes
         for(int c=0; c<parent.nrOfChromosomes(); c++){
             // generate gametes of chromosome c of g1
-            LinkedList<Boolean> curTargets = new LinkedList<>();
             Map<Haplotype, Double> chromGametes = new HashMap<>();
-            // recursive backtracking
-            genChromosomeGametes(parent, otherParent, desiredAllelicFreqs, c, chromGametes, curTargets, 1.0, 0, -1, -1);
+            genChromosomeGametes(parent, otherParent, desiredAllelicFreqs, c, chromGametes);
             // store chromosome gametes
             gametesPerChromosome.add(chromGametes);
         }
         // return chromosome gametes
         return gametesPerChromosome;
     }
+    
+    /**
+     * Generate the possible diploid chromosomes (with their probabilities) at each chromosome index of the offspring
+     * obtained by crossing two given genotypes. The gametes produced by each parental chromosome, and the diploid
+     * chromosomes obtained by combining them, are cached per chromosome index (see {@link ChromosomeCache}), so that
+     * only those chromosome indices are recomputed where one of both parents carries a chromosome that has not been
+     * crossed before with the respective chromosome of the other parent. The returned maps are shared with the cache
+     * and should not be modified.
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @return possible diploid chromosomes and their probabilities, per chromosome index
+     * @throws GenotypeException if the genotypes can not be crossed or anything goes wrong while
+     *                           creating the diploid chromosomes
+     */
+    @Override
+    protected List<Map<DiploidChromosome, Double>> genDiploidChromosomes(Genotype g1, Genotype g2) throws GenotypeException{
+        
+        checkCompatibility(g1, g2);
+        
+        // use canonical parents (consisting of canonical chromosomes)
+        g1 = pool.intern(g1);
+        g2 = pool.intern(g2);
+        
+        // create possible diploid chromosomes by comining respective haplotypes per chromosome
+        // (take into account possible symmetry when both haplotypes of a chromosome may have been
+        // produced by both parents)
         
+        List<Map<DiploidChromosome, Double>> diploidChromsList;
+        if(forkJoinPool != null && g1.nrOfChromosomes() > 1){
+            // fork-join: one task per chromosome
+            diploidChromsList = forkJoinPool.invoke(new CombineGametesTask(g1, g2));
+        } else {
+            diploidChromsList = new ArrayList<>();
+            for(int c=0; c<g1.nrOfChromosomes(); c++){
+                // create all possible combinations for chromosome at index c
+                diploidChromsList.add(genDiploidChromosomes(g1, g2, c));
+            }
+        }
+        return diploidChromsList;
+    
+    }
+    
+    /**
+     * Generate the possible diploid chromosomes (with their probabilities) at the given chromosome index of the
+     * offspring obtained by crossing two given (canonical) genotypes, using the cached diploid chromosomes and gametes
+     * for the respective chromosomes of both genotypes, if available.
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param chromIndex chromosome index
+     * @return possible diploid chromosomes and their probabilities
+     * @throws GenotypeException if anything goes wrong while creating the diploid chromosomes
+     */
+    private Map<DiploidChromosome, Double> genDiploidChromosomes(Genotype g1, Genotype g2, int chromIndex) throws GenotypeException{
+        DiploidChromosome chrom1 = g1.getChromosomes().get(chromIndex);
+        DiploidChromosome chrom2 = g2.getChromosomes().get(chromIndex);
+        Map<DiploidChromosome, Double> diploidChroms = chromosomeCache.getCachedDiploidChromosomes(chromIndex, chrom1, chrom2);
+        if(diploidChroms == null){
+            // combine gametes of both chromosomes
+            diploidChroms = combineGametes(getChromosomeGametes(g1, chromIndex), getChromosomeGametes(g2, chromIndex));
+            // store in cache
+            diploidChroms = chromosomeCache.cacheDiploidChromosomes(chromIndex, chrom1, chrom2, diploidChroms);
+        }
+        return diploidChroms;
+    }
+    
+    /**
+     * Get the (cached) gametes produced by the chromosome of the given parent at the given index.
+     * 
+     * @param parent parental genotype
+     * @param chromIndex chromosome index
+     * @return gametes and their probabilities, shared with the cache (should not be modified)
+     * @throws GenotypeException if anything goes wrong while creating the gametes
+     */
+    protected Map<Haplotype, Double> getChromosomeGametes(Genotype parent, int chromIndex) throws GenotypeException{
+        DiploidChromosome chrom = parent.getChromosomes().get(chromIndex);
+        Map<Haplotype, Double> gametes = chromosomeCache.getCachedGametes(chromIndex, chrom);
+        if(gametes == null){
+            // load from persistent store, if any
+            if(store != null){
+                gametes = store.getGametes(chromIndex, chrom);
+            }
+            if(gametes == null){
+                gametes = new HashMap<>();
+                genChromosomeGametes(parent, null, null, chromIndex, gametes);
+                // save in persistent store, if any
+                if(store != null){
+                    store.storeGametes(chromIndex, chrom, gametes);
+                }
+            }
+            // store in cache
+            gametes = chromosomeCache.cacheGametes(chromIndex, chrom, gametes);
+        }
+        return gametes;
+    }
+    
     /**
      * Generate entire seed lot obtained by crossing two given genotypes.
      * 
@@ -349,56 +563,145 @@ public class DefaultSeedLotConstructor extends SeedLotConstructor {
     @Override
     public SeedLot cross(Genotype g1, Genotype g2) throws GenotypeException {
         
-        checkCompatibility(g1, g2);
+        // create possible diploid chromosomes per chromosome index
+        List<Map<DiploidChromosome, Double>> diploidChromsList = genDiploidChromosomes(g1, g2);
         
-        // get possible haplotypes per chromosome of g1
-        List<Map<Haplotype, Double>> gametesPerChromosome1 = cachedGametesPerChrom.get(g1);
-        if(gametesPerChromosome1 == null){
-            gametesPerChromosome1 = genGametesPerChromosome(g1);
-            // store in cache
-            cachedGametesPerChrom.put(g1, gametesPerChromosome1);
+        // finally combine chromosomes to create possible genotypes
+        Map<Genotype, Double> offspring;
+        long numCombinations = 1;
+        for(Map<DiploidChromosome, Double> diploidChroms : diploidChromsList){
+            try {
+                numCombinations = Math.multiplyExact(numCombinations, diploidChroms.size());
+            } catch (ArithmeticException ex){
+                throw new GenotypeException("Number of offspring genotypes obtained by crossing " + g1 + " and " + g2
+                                            + " exceeds " + Long.MAX_VALUE);
+            }
         }
-        // repeat for g2
-        List<Map<Haplotype, Double>> gametesPerChromosome2 = cachedGametesPerChrom.get(g2);
-        if(gametesPerChromosome2 == null){
-            gametesPerChromosome2 = genGametesPerChromosome(g2);
-            // store in cache
-            cachedGametesPerChrom.put(g2, gametesPerChromosome2);
+        if(forkJoinPool != null && numCombinations >= PARALLEL_THRESHOLD){
+            // partition cartesian product of possible chromosomes over parallel tasks
+            offspring = new ConcurrentHashMap<>((int) Math.min(numCombinations, MAX_INITIAL_OFFSPRING_CAPACITY));
+            forkJoinPool.invoke(new CombineChromosomesTask(diploidChromsList, 0, numCombinations, offspring));
+        } else {
+            offspring = new HashMap<>();
+            combineChromosomes(diploidChromsList, 0, 1.0, new LinkedList<DiploidChromosome>(), offspring);
         }
         
-        // create possible diploid chromosomes by comining respective haplotypes per chromosome
-        // (take into account possible symmetry when both haplotypes of a chromosome may have been
-        // produced by both parents)
+        // generate seed lot from these genotypes
+        return genSeedLotFromGenotypes(g1, g2, offspring);
+    
+    }
+    
+    /**
+     * Generate the seed lot obtained by crossing two given genotypes, without the child genotypes that are
+     * obtained with a probability strictly below the given minimum probability. The possible diploid chromosomes
+     * at each chromosome index are sorted by decreasing probability and combined in a depth-first way, where
+     * the remaining options for the current chromosome index are skipped as soon as the probability of the
+     * partial genotype, multiplied with the maximum probability of the remaining chromosomes, drops below
+     * the minimum probability. The probability of each group of genotypes with the same allelic frequencies
+     * is computed from the per-chromosome observation probabilities, so that linkage phase ambiguities of the
+     * retained genotypes are not affected by omitting improbable genotypes.
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param minProb minimum probability of retained child genotypes
+     * @return seed lot obtained by crossing the given genotypes, without improbable genotypes
+     * @throws GenotypeException if anything goes wrong while creating the seed lot
+     */
+    @Override
+    public SeedLot cross(Genotype g1, Genotype g2, double minProb) throws GenotypeException {
         
-        List<Map<DiploidChromosome, Double>> diploidChromsList = new ArrayList<>();
-        for(int c=0; c<g1.nrOfChromosomes(); c++){
-            // create all possible combinations for chromosome at index c
-            Map<DiploidChromosome, Double> diploidChroms = new HashMap<>();
-            for(Map.Entry<Haplotype, Double> h1 : gametesPerChromosome1.get(c).entrySet()){
-                for(Map.Entry<Haplotype, Double> h2 : gametesPerChromosome2.get(c).entrySet()){
-                    DiploidChromosome dipChrom = new DiploidChromosome(h1.getKey(), h2.getKey());
-                    // compute probability of this new combination
-                    double newP = h1.getValue() * h2.getValue();
-                    if(diploidChroms.containsKey(dipChrom)){
-                        // symmetric version already occured: increase prob
-                        diploidChroms.put(dipChrom, diploidChroms.get(dipChrom) + newP);
-                    } else {
-                        // first occurence: set prob
-                        diploidChroms.put(dipChrom, newP);
-                    }                    
+        if(minProb <= 0.0){
+            // nothing to prune
+            return cross(g1, g2);
+        }
+        
+        // create possible diploid chromosomes per chromosome index
+        List<Map<DiploidChromosome, Double>> diploidChromsList = genDiploidChromosomes(g1, g2);
+        
+        // sort options per chromosome index by decreasing (exact) probability
+        int n = diploidChromsList.size();
+        DiploidChromosome[][] chromOptions = new DiploidChromosome[n][];
+        double[][] chromProbs = new double[n][];
+        for(int c=0; c<n; c++){
+            List<Map.Entry<DiploidChromosome, Double>> options
+                    = new ArrayList<>(getExactChromosomeProbabilities(g1, g2, c, diploidChromsList.get(c)).entrySet());
+            options.sort(new Comparator<Map.Entry<DiploidChromosome, Double>>() {
+                @Override
+                public int compare(Map.Entry<DiploidChromosome, Double> o1, Map.Entry<DiploidChromosome, Double> o2){
+                    return Double.compare(o2.getValue(), o1.getValue());
                 }
+            });
+            chromOptions[c] = new DiploidChromosome[options.size()];
+            chromProbs[c] = new double[options.size()];
+            for(int i=0; i<options.size(); i++){
+                chromOptions[c][i] = options.get(i).getKey();
+                chromProbs[c][i] = options.get(i).getValue();
             }
-            // store map in list
-            diploidChromsList.add(diploidChroms);
+        }
+        // compute maximum probability of any combination of the chromosomes following each index
+        double[] maxRest = new double[n+1];
+        maxRest[n] = 1.0;
+        for(int c=n-1; c>=0; c--){
+            maxRest[c] = chromProbs[c].length > 0 ? chromProbs[c][0] * maxRest[c+1] : 0.0;
         }
         
-        // finally combine chromosomes to create possible genotypes
+        // combine chromosomes, pruning improbable partial genotypes
         Map<Genotype, Double> offspring = new HashMap<>();
-        combineChromosomes(diploidChromsList, 0, 1.0, new LinkedList<DiploidChromosome>(), offspring);
+        combineChromosomes(chromOptions, chromProbs, maxRest, minProb, 0, 1.0,
+                            new DiploidChromosome[n], offspring);
         
         // generate seed lot from these genotypes
-        return genSeedLotFromGenotypes(g1, g2, offspring);
-        
+        return genSeedLotFromGenotypes(g1, g2, offspring, diploidChromsList);
+    
+    }
+    
+    /**
+     * Get the exact probabilities of the given possible diploid chromosomes at the given chromosome index of the
+     * offspring obtained by crossing two genotypes, used to prune improbable offspring when constructing a seed lot
+     * with a minimum probability (see {@link #cross(Genotype, Genotype, double)}). By default, the probabilities
+     * obtained by combining the gametes of both parents are returned, which are exact as all gametes are generated.
+     * Subclasses that only generate some of the gametes should override this method, so that offspring of which
+     * the exact probability is not below the minimum probability are never omitted.
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param chromIndex chromosome index
+     * @param diploidChroms generated diploid chromosomes at the given index, with their probabilities
+     * @return exact probabilities of the generated diploid chromosomes
+     */
+    protected Map<DiploidChromosome, Double> getExactChromosomeProbabilities(Genotype g1, Genotype g2, int chromIndex,
+                                                                             Map<DiploidChromosome, Double> diploidChroms){
+        return diploidChroms;
+    }
+    
+    // depth-first combination of chromosomes sorted by decreasing probability, skipping all combinations
+    // with a probability below the given minimum (probabilities multiplied in chromosome order, as in
+    // the unpruned construction, so that retained genotypes are assigned the exact same probability)
+    private void combineChromosomes(DiploidChromosome[][] chromOptions, double[][] chromProbs, double[] maxRest,
+                                    double minProb, int chromIndex, double curP, DiploidChromosome[] curGenotype,
+                                    Map<Genotype, Double> completeGenotypes){
+        // check if complete
+        if(chromIndex >= chromOptions.length){
+            if(curP >= minProb){
+                // create genotype (not interned)
+                List<DiploidChromosome> chroms = new ArrayList<>(Arrays.asList(curGenotype));
+                completeGenotypes.put(new Genotype(chroms), curP);
+            }
+            return;
+        }
+        // consider options in order of decreasing probability
+        boolean stop = false;
+        for(int i=0; !stop && i<chromOptions[chromIndex].length; i++){
+            double p = curP * chromProbs[chromIndex][i];
+            // allow small margin for rounding errors in bound
+            if(p * maxRest[chromIndex+1] < minProb * (1.0 - PRUNING_MARGIN)){
+                // all remaining options are less probable
+                stop = true;
+            } else {
+                curGenotype[chromIndex] = chromOptions[chromIndex][i];
+                combineChromosomes(chromOptions, chromProbs, maxRest, minProb, chromIndex+1, p, curGenotype, completeGenotypes);
+            }
+        }
     }
     
     /**
@@ -418,9 +721,9 @@ public class DefaultSeedLotConstructor extends SeedLotConstructor {
     public SeedLot partialCross(Genotype g1, Genotype g2, Set<Genotype> childGenotypes) throws GenotypeException {
         
         // NOTE: do not use the cache here! (not general)
-
+        
         checkCompatibility(g1, g2);
-
+        
         // convert to set of genotype observations
         Set<GenotypeAllelicFrequencies> observations = new HashSet<>();
         for(Genotype g : childGenotypes){
@@ -442,10 +745,10 @@ public class DefaultSeedLotConstructor extends SeedLotConstructor {
                 // go through haplotype options of g1 at chrom c and compute complementary haplotype of g2
                 for(Map.Entry<Haplotype, Double> h1 : gametesPerChromosome1.get(c).entrySet()){
                     // compute complementary haplotype from g2
-                    List<Boolean> complementaryHaplotype = new ArrayList<>();
+                    long[] complementaryHaplotype = new long[h1.getKey().nrOfWords()];
                     double h2p = createComplementaryHaplotype(c, h1.getKey(), obs.getChromosomeAllelicFrequencies().get(c), g2, complementaryHaplotype);
                     // combine haplotypes to create diploid chromosome
-                    DiploidChromosome dipChrom = new DiploidChromosome(h1.getKey(), new Haplotype(complementaryHaplotype));
+                    DiploidChromosome dipChrom = new DiploidChromosome(h1.getKey(), new Haplotype(complementaryHaplotype, h1.getKey().nrOfLoci()));
                     // compute probability of this new combination
                     double newP = h1.getValue() * h2p;
                     if(diploidChroms.containsKey(dipChrom)){
@@ -466,76 +769,195 @@ public class DefaultSeedLotConstructor extends SeedLotConstructor {
         
         // generate seed lot from these genotypes
         return genSeedLotFromGenotypes(g1, g2, offspring);
-        
+    
     }
     
     /**
      * Create a new haplotype from the indicated chromosome of the given parent genotype, which is complementary to
      * the given haplotype (produced by the other parent), in the sense that the combination of both haplotypes gives
-     * the desired allelic frequencies. The list <code>complementaryHaplotype</code> is filled during execution of
+     * the desired allelic frequencies. The words of the complementary haplotype are filled during execution of
      * this method and the probability of obtaining this complementary haplotype is returned. It is assumed that
      * the desired observation can indeed be created from a combination of the already constructed haplotype and
-     * a complementary haplotype produced by this parent; else, the behaviour of this method is undefined.
+     * a complementary haplotype produced by this parent; else, the behaviour of this method is undefined. Only
+     * the heterozygous loci of the parent's chromosome are traversed, as the alleles at homozygous loci are fixed.
      * 
      * @param parent parent genotype
      * @param chromIndex index of considered chromosome of parent genotype, from which a haplotype is produced
      * @param curHap already obtained haplotype, produced by the other parent
      * @param desiredAllelicFreqs desired allelic frequencies when combining <code>curHap</code> with the haplotype
      *                            produced by this method, from the considered chromosome of the given genotype
-     * @param complementaryHaplotype produced complementary haplotype, filled during execution of this method
+     * @param complementaryHaplotype words of the produced complementary haplotype, filled during execution of this method
      * @return probability with which the constructed complementary haplotype is produced
      */
     private double createComplementaryHaplotype(int chromIndex, Haplotype curHap, ChromosomeAllelicFrequencies desiredAllelicFreqs,
-                                                            Genotype parent, List<Boolean> complementaryHaplotype){
+                                                            Genotype parent, long[] complementaryHaplotype){
         double p = 1.0;
         DiploidChromosome parentChrom = parent.getChromosomes().get(chromIndex);
-        // go through loci on chromosome
+        Haplotype top = parentChrom.getHaplotypes()[0];
+        // homozygous loci: simply copy targets
+        for(int w=0; w<complementaryHaplotype.length; w++){
+            complementaryHaplotype[w] = parentChrom.getHomozygousTargets(w);
+        }
+        // go through heterozygous loci on chromosome
         int prevHeterozygousLocus = -1;
         int prevHaplotypePicked = -1;
-        for(int l=0; l<parentChrom.nrOfLoci(); l++){
-            // add next target to gamete chromosome
-            if(parentChrom.isHomozygousAtLocus(l)){
-                // homozygous: simply add next target
-                complementaryHaplotype.add(parentChrom.getHaplotypes()[0].targetPresent(l));
+        for(int l : parentChrom.getHeterozygousLoci()){
+            // compute desired complementary target
+            boolean complementaryTarget = (!curHap.targetPresent(l) && desiredAllelicFreqs.getAllelicFrequencies()[l] == AllelicFrequency.ONCE
+                                        || curHap.targetPresent(l) && desiredAllelicFreqs.getAllelicFrequencies()[l] == AllelicFrequency.TWICE);
+            // select the complementary target from the parent's chromosome (and update probability)
+            if(complementaryTarget){
+                complementaryHaplotype[l >>> 6] |= 1L << l;
+            }
+            double r;
+            if(prevHeterozygousLocus == -1){
+                // first heterozygous locus in chromosome
+                r = 0.5;
             } else {
-                // heterozygous: compute desired complementary target
-                boolean complementaryTarget = (!curHap.targetPresent(l) && desiredAllelicFreqs.getAllelicFrequencies()[l] == AllelicFrequency.ONCE
-                                            || curHap.targetPresent(l) && desiredAllelicFreqs.getAllelicFrequencies()[l] == AllelicFrequency.TWICE);
-                // select the complementary target from the parent's chromosome (and update probability)
-                complementaryHaplotype.add(complementaryTarget);
-                double r;
-                if(prevHeterozygousLocus == -1){
-                    // first heterozygous locus in chromosome
-                    r = 0.5;
-                } else {
-                    r = map.getRecombinationProbability(chromIndex, prevHeterozygousLocus, l);
+                r = map.getRecombinationProbability(chromIndex, prevHeterozygousLocus, l);
+            }
+            // complementary target at upper (0) or lower (1) haplotype of parent
+            int haplotypePicked = top.targetPresent(l) == complementaryTarget ? 0 : 1;
+            if(prevHaplotypePicked == haplotypePicked){
+                // no cross-over
+                p *= (1-r);
+            } else {
+                // cross-over
+                p *= r;
+            }
+            prevHaplotypePicked = haplotypePicked;
+            prevHeterozygousLocus = l;
+        }
+        // return probability
+        return p;
+    }
+    
+    /**
+     * Fork-join task that combines the gametes produced by both parents into possible diploid chromosomes,
+     * where each chromosome is handled by a separate subtask.
+     */
+    @SuppressWarnings("serial")
+    private final class CombineGametesTask extends RecursiveTask<List<Map<DiploidChromosome, Double>>> {
+        
+        // parents (canonical instances)
+        private final Genotype g1, g2;
+        
+        public CombineGametesTask(Genotype g1, Genotype g2){
+            this.g1 = g1;
+            this.g2 = g2;
+        }
+        
+        @Override
+        protected List<Map<DiploidChromosome, Double>> compute(){
+            // fork one subtask per chromosome
+            List<RecursiveTask<Map<DiploidChromosome, Double>>> subtasks = new ArrayList<>();
+            for(int c=0; c<g1.nrOfChromosomes(); c++){
+                final int chromIndex = c;
+                subtasks.add(new RecursiveTask<Map<DiploidChromosome, Double>>() {
+                    @Override
+                    protected Map<DiploidChromosome, Double> compute(){
+                        try {
+                            return genDiploidChromosomes(g1, g2, chromIndex);
+                        } catch (GenotypeException shouldNotHappen){
+                            // should never happen as the compatibility of both parents has already been checked
+                            throw new RuntimeException("[SHOULD NOT HAPPEN] Error while combining gametes (should never happen, this is a bug!)", shouldNotHappen);
+                        }
+                    }
+                });
+            }
+            invokeAll(subtasks);
+            // join results
+            List<Map<DiploidChromosome, Double>> diploidChromsList = new ArrayList<>(subtasks.size());
+            for(RecursiveTask<Map<DiploidChromosome, Double>> subtask : subtasks){
+                diploidChromsList.add(subtask.join());
+            }
+            return diploidChromsList;
+        }
+    
+    }
+    
+    /**
+     * Fork-join task that creates the offspring genotypes corresponding to a range of combinations of the possible
+     * chromosomes (in the cartesian product of the possible chromosomes for each chromosome index, where the last
+     * index varies fastest). Large ranges are split in halves until at most {@value #PARALLEL_CHUNK_SIZE} combinations
+     * remain, which are then enumerated sequentially. Created genotypes are stored in a shared concurrent map.
+     */
+    @SuppressWarnings("serial")
+    private final class CombineChromosomesTask extends RecursiveAction {
+        
+        // possible chromosomes per chromosome index, with their probabilities
+        private final DiploidChromosome[][] chromOptions;
+        private final double[][] chromProbs;
+        
+        // range of combinations [from, to)
+        private final long from, to;
+        
+        // shared map in which offspring genotypes are stored
+        private final Map<Genotype, Double> offspring;
+        
+        public CombineChromosomesTask(List<Map<DiploidChromosome, Double>> possibleChromosomes, long from, long to,
+                                      Map<Genotype, Double> offspring){
+            int n = possibleChromosomes.size();
+            chromOptions = new DiploidChromosome[n][];
+            chromProbs = new double[n][];
+            for(int c=0; c<n; c++){
+                Map<DiploidChromosome, Double> options = possibleChromosomes.get(c);
+                chromOptions[c] = new DiploidChromosome[options.size()];
+                chromProbs[c] = new double[options.size()];
+                int i = 0;
+                for(Map.Entry<DiploidChromosome, Double> option : options.entrySet()){
+                    chromOptions[c][i] = option.getKey();
+                    chromProbs[c][i] = option.getValue();
+                    i++;
                 }
-                if(parentChrom.getHaplotypes()[0].targetPresent(l) == complementaryTarget){
-                    // complementary target at upper haplotype of parent
-                    if(prevHaplotypePicked == 0){
-                        // no cross-over
-                        p *= (1-r);
-                    } else {
-                        // cross-over
-                        p *= r;
+            }
+            this.from = from;
+            this.to = to;
+            this.offspring = offspring;
+        }
+        
+        private CombineChromosomesTask(CombineChromosomesTask parent, long from, long to){
+            chromOptions = parent.chromOptions;
+            chromProbs = parent.chromProbs;
+            this.from = from;
+            this.to = to;
+            offspring = parent.offspring;
+        }
+        
+        @Override
+        protected void compute(){
+            if(to - from > PARALLEL_CHUNK_SIZE){
+                // split range
+                long mid = (from + to) >>> 1;
+                invokeAll(new CombineChromosomesTask(this, from, mid), new CombineChromosomesTask(this, mid, to));
+            } else {
+                // decode first combination of range
+                int n = chromOptions.length;
+                int[] choice = new int[n];
+                long rem = from;
+                for(int c=n-1; c>=0; c--){
+                    choice[c] = (int) (rem % chromOptions[c].length);
+                    rem /= chromOptions[c].length;
+                }
+                for(long k=from; k<to; k++){
+                    // create genotype (not interned), multiplying probabilities in chromosome order
+                    List<DiploidChromosome> chroms = new ArrayList<>(n);
+                    double p = 1.0;
+                    for(int c=0; c<n; c++){
+                        chroms.add(chromOptions[c][choice[c]]);
+                        p *= chromProbs[c][choice[c]];
                     }
-                    prevHaplotypePicked = 0;
-                } else {
-                    // complementary target at lower haplotype
-                    if(prevHaplotypePicked == 1){
-                        // no cross-over
-                        p *= (1-r);
-                    } else {
-                        // cross-over
-                        p *= r;
+                    offspring.put(new Genotype(chroms), p);
+                    // advance to next combination
+                    int c = n-1;
+                    while(c >= 0 && ++choice[c] == chromOptions[c].length){
+                        choice[c] = 0;
+                        c--;
                     }
-                    prevHaplotypePicked = 1;
                 }
-                prevHeterozygousLocus = l;
             }
         }
-        // return probability
-        return p;
-    }
     
+    }
+
 }
@@ -55,16 +55,17 @@ public class MergeFirstSchemeMerger extends SchemeMerger {
         Set<PlantDescriptor> ancestors = new HashSet<>();
         ancestors.addAll(scheme1.getAncestorDescriptors());
         ancestors.addAll(scheme2.getAncestorDescriptors());
-        // compose set of genotypes which are allowed to be grown from with these ancestors
-        Set<Genotype> candidateGenotypes = new HashSet<>();
-        for(Genotype g : seedLot.getGenotypes()){
-            if(!solManager.pruneGrowPlantFromAncestors(ancestors, new PlantDescriptor(
-                        new Plant(g),
-                        seedLot.getGenotypeGroup(g.getAllelicFrequencies()).getProbabilityOfPhaseKnownGenotype(g),
-                        seedLot.getGenotypeGroup(g.getAllelicFrequencies()).getLinkagePhaseAmbiguity(g),
+        // compose list of descriptors of genotypes which are allowed to be grown from with these ancestors
+        List<PlantDescriptor> candidates = new ArrayList<>();
+        for(int i = seedLot.nextGenotypeIndex(0); i >= 0; i = seedLot.nextGenotypeIndex(i+1)){
+            PlantDescriptor pdesc = new PlantDescriptor(
+                        new Plant(seedLot.getGenotype(i)),
+                        seedLot.getProbabilityOfPhaseKnownGenotype(i),
+                        seedLot.getLinkagePhaseAmbiguity(i),
                         seedLot.isUniform()
-                    ))){
-                candidateGenotypes.add(g);
+                    );
+            if(!solManager.pruneGrowPlantFromAncestors(ancestors, pdesc)){
+                candidates.add(pdesc);
             }
         }
         
@@ -72,7 +73,7 @@ public class MergeFirstSchemeMerger extends SchemeMerger {
         boolean[][] pruneCross = new boolean[scheme1.nrOfAlternatives()][scheme2.nrOfAlternatives()];
         boolean pruneAll = true;
         int alt1i, alt2i;
-        Iterator<Genotype> it;
+        Iterator<PlantDescriptor> it;
         alt1i = 0;
         while(alt1i<scheme1.nrOfAlternatives()){
             CrossingScheme alt1 = scheme1.getAlternatives().get(alt1i);
@@ -88,15 +89,9 @@ public class MergeFirstSchemeMerger extends SchemeMerger {
                     // not pruned yet, now check if there is any genotype in the offspring that does not
                     // cause the extension to be pruned anyway when being attached as next target
                     prune = true;
-                    it = candidateGenotypes.iterator();
+                    it = candidates.iterator();
                     while(prune && it.hasNext()){
-                        Genotype g = it.next();
-                        PlantDescriptor pdesc = new PlantDescriptor(
-                            new Plant(g),
-                            seedLot.getGenotypeGroup(g.getAllelicFrequencies()).getProbabilityOfPhaseKnownGenotype(g),
-                            seedLot.getGenotypeGroup(g.getAllelicFrequencies()).getLinkagePhaseAmbiguity(g),
-                            seedLot.isUniform()
-                        );
+                        PlantDescriptor pdesc = it.next();
                         prune = solManager.pruneCrossCurrentSchemeWithSpecificOtherWithSelectedTarget(alt1, alt2, pdesc);
                     }
                     // all candidate genotypes pruned?
@@ -182,9 +177,9 @@ public class MergeFirstSchemeMerger extends SchemeMerger {
             // now we will replace the dummy with each possible real plant grown from the new seedlot, attached
             // to the computed Pareto optimal alternatives resulting from the merging procedure
 
-            it = candidateGenotypes.iterator();
+            it = candidates.iterator();
             while(cont && it.hasNext()){
-                Genotype g = it.next();
+                Genotype g = it.next().getPlant().getGenotype();
                 Plant p = new Plant(g);
                 List<CrossingScheme> newAlts = new ArrayList<>();
                 // consider alternatives resulting from the merging procedure
@@ -0,0 +1,77 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search.bb;
+
+/**
+ * Probability with which a specific genotype is obtained among the offspring of a crossing, together with the
+ * probability of observing its allelic frequencies, from which the linkage phase ambiguity of the genotype follows
+ * (see {@link SeedLotConstructor#probabilityOf(org.ugent.caagt.genestacker.Genotype, org.ugent.caagt.genestacker.Genotype,
+ * org.ugent.caagt.genestacker.Genotype)}). These are the same values as obtained from the seed lot of the crossing,
+ * without having to construct this seed lot.
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class OffspringProbability {
+    
+    // probability of the phase-known genotype
+    private final double prob;
+    
+    // probability of the allelic frequencies of the genotype
+    private final double obsProb;
+    
+    public OffspringProbability(double prob, double obsProb){
+        this.prob = prob;
+        this.obsProb = obsProb;
+    }
+    
+    /**
+     * Get the probability of obtaining the phase-known genotype.
+     *
+     * @return probability of the genotype
+     */
+    public double getProbabilityOfPhaseKnownGenotype(){
+        return prob;
+    }
+    
+    /**
+     * Get the probability of obtaining any genotype with the same allelic frequencies, i.e. of the
+     * genotype with arbitrary linkage phase.
+     *
+     * @return probability of the allelic frequencies of the genotype
+     */
+    public double getProbabilityOfAllelicFrequencies(){
+        return obsProb;
+    }
+    
+    /**
+     * Get the linkage phase ambiguity of the genotype, i.e. the probability that a genotype with the same allelic
+     * frequencies has a different linkage phase. Returns 0.0 if the genotype can not be obtained.
+     *
+     * @return linkage phase ambiguity of the genotype
+     */
+    public double getLinkagePhaseAmbiguity(){
+        return obsProb > 0.0 ? 1.0 - prob/obsProb : 0.0;
+    }
+    
+    /**
+     * Check whether the genotype can be obtained from the crossing.
+     *
+     * @return <code>true</code> if the genotype is obtained with a strictly positive probability
+     */
+    public boolean isPossible(){
+        return prob > 0.0;
+    }
+
+}
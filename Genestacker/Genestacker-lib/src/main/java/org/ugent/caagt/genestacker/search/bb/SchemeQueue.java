@@ -0,0 +1,251 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search.bb;
+
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import org.ugent.caagt.genestacker.DiploidChromosome;
+import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.Haplotype;
+import org.ugent.caagt.genestacker.search.CrossingScheme;
+import org.ugent.caagt.genestacker.search.CrossingSchemeAlternatives;
+import org.ugent.caagt.genestacker.search.CrossingSchemeDescriptor;
+
+/**
+ * Queue of partial schemes that remain to be extended by the branch and bound search engine. The order
+ * in which schemes are polled is determined by the applied {@link SchemeQueuePolicy}. The order does not
+ * affect the completeness of the search, only the amount of pruning: schemes that lead to good solutions
+ * early on yield a tighter Pareto frontier, so that more schemes are pruned later on. The priority of a
+ * scheme is fixed when it is added to the queue. This class is not thread safe.
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class SchemeQueue {
+    
+    // applied policy
+    private final SchemeQueuePolicy policy;
+    
+    // solution manager used to compute lower bounds
+    private final BranchAndBoundSolutionManager solManager;
+    
+    // FIFO queue
+    private Queue<Entry> fifo;
+    // best-first queue
+    private PriorityQueue<Entry> bestFirst;
+    // depth-first queue
+    private PriorityQueue<Entry> depthFirst;
+    
+    // number of schemes in the queue
+    private int size;
+    // number of schemes added so far (insertion order)
+    private long numAdded;
+    // number of schemes polled so far
+    private long numPolled;
+    
+    /**
+     * Create a new scheme queue with given policy. The given solution manager is used to compute the lower
+     * bounds of the queued schemes and provides the ideotype.
+     *
+     * @param policy applied queue policy
+     * @param solManager solution manager
+     */
+    public SchemeQueue(SchemeQueuePolicy policy, BranchAndBoundSolutionManager solManager){
+        this.policy = policy;
+        this.solManager = solManager;
+        switch(policy){
+            case FIFO:
+                fifo = new LinkedList<>();
+                break;
+            case BEST_FIRST:
+                bestFirst = new PriorityQueue<>(11, BEST_FIRST_ORDER);
+                break;
+            case DEPTH_FIRST:
+                depthFirst = new PriorityQueue<>(11, DEPTH_FIRST_ORDER);
+                break;
+            case HYBRID:
+                bestFirst = new PriorityQueue<>(11, BEST_FIRST_ORDER);
+                depthFirst = new PriorityQueue<>(11, DEPTH_FIRST_ORDER);
+                break;
+        }
+        size = 0;
+        numAdded = 0;
+        numPolled = 0;
+    }
+    
+    public SchemeQueuePolicy getPolicy(){
+        return policy;
+    }
+    
+    /**
+     * Add a scheme to the queue.
+     *
+     * @param scheme scheme to be extended later
+     */
+    public void add(CrossingSchemeAlternatives scheme){
+        Entry e = new Entry(scheme, numAdded++);
+        if(bestFirst != null){
+            // compute best lower bounds among all alternatives
+            for(CrossingScheme alt : scheme.getAlternatives()){
+                e.updateBounds(solManager.getLowerBounds(alt));
+            }
+            bestFirst.add(e);
+        }
+        if(depthFirst != null){
+            e.distance = distanceToIdeotype(scheme.getFinalPlant().getGenotype());
+            depthFirst.add(e);
+        }
+        if(fifo != null){
+            fifo.add(e);
+        }
+        size++;
+    }
+    
+    /**
+     * Retrieve and remove the next scheme to be extended.
+     *
+     * @return next scheme, <code>null</code> if the queue is empty
+     */
+    public CrossingSchemeAlternatives poll(){
+        if(size == 0){
+            return null;
+        }
+        Entry e;
+        switch(policy){
+            case FIFO:
+                e = fifo.poll();
+                break;
+            case BEST_FIRST:
+                e = bestFirst.poll();
+                break;
+            case DEPTH_FIRST:
+                e = depthFirst.poll();
+                break;
+            default:
+                // alternate between both queues, skipping schemes already polled from the other queue
+                PriorityQueue<Entry> q = (numPolled % 2 == 0) ? bestFirst : depthFirst;
+                e = q.poll();
+                while(e.polled){
+                    e = q.poll();
+                }
+                e.polled = true;
+                break;
+        }
+        size--;
+        numPolled++;
+        return e.scheme;
+    }
+    
+    public int size(){
+        return size;
+    }
+    
+    public boolean isEmpty(){
+        return size == 0;
+    }
+    
+    /**
+     * Compute the number of target alleles that differ between the given genotype and the ideotype,
+     * considering the best matching of both haplotypes of each chromosome.
+     *
+     * @param genotype given genotype
+     * @return number of differing target alleles
+     */
+    private int distanceToIdeotype(Genotype genotype){
+        Genotype ideotype = solManager.getIdeotype();
+        int dist = 0;
+        for(int c=0; c<genotype.nrOfChromosomes(); c++){
+            DiploidChromosome chrom = genotype.getChromosomes().get(c);
+            Haplotype[] haps = chrom.getHaplotypes();
+            Haplotype[] ideoHaps = ideotype.getChromosomes().get(c).getHaplotypes();
+            int straight = 0;
+            int crossed = 0;
+            for(int w=0; w<haps[0].nrOfWords(); w++){
+                straight += Long.bitCount(haps[0].getWord(w) ^ ideoHaps[0].getWord(w))
+                          + Long.bitCount(haps[1].getWord(w) ^ ideoHaps[1].getWord(w));
+                crossed += Long.bitCount(haps[0].getWord(w) ^ ideoHaps[1].getWord(w))
+                         + Long.bitCount(haps[1].getWord(w) ^ ideoHaps[0].getWord(w));
+            }
+            dist += Math.min(straight, crossed);
+        }
+        return dist;
+    }
+    
+    // best-first: lowest bounds first, oldest scheme first in case of ties
+    private static final Comparator<Entry> BEST_FIRST_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            int c = Long.compare(e1.popSize, e2.popSize);
+            if(c == 0){
+                c = Integer.compare(e1.numGen, e2.numGen);
+            }
+            if(c == 0){
+                c = Double.compare(e1.lpa, e2.lpa);
+            }
+            if(c == 0){
+                c = Long.compare(e1.seq, e2.seq);
+            }
+            return c;
+        }
+    };
+    
+    // depth-first: closest to ideotype first, newest scheme first in case of ties
+    private static final Comparator<Entry> DEPTH_FIRST_ORDER = new Comparator<Entry>() {
+        @Override
+        public int compare(Entry e1, Entry e2) {
+            int c = Integer.compare(e1.distance, e2.distance);
+            if(c == 0){
+                c = Long.compare(e2.seq, e1.seq);
+            }
+            return c;
+        }
+    };
+    
+    // queued scheme with its (fixed) priority
+    private static class Entry {
+        
+        private final CrossingSchemeAlternatives scheme;
+        // insertion order
+        private final long seq;
+        // best lower bounds among all alternatives
+        private long popSize = Long.MAX_VALUE;
+        private int numGen = Integer.MAX_VALUE;
+        private double lpa = Double.MAX_VALUE;
+        // distance of final plant to ideotype
+        private int distance;
+        // indicates whether the scheme has already been polled (hybrid policy)
+        private boolean polled = false;
+        
+        public Entry(CrossingSchemeAlternatives scheme, long seq){
+            this.scheme = scheme;
+            this.seq = seq;
+        }
+        
+        // retain lexicographically smallest bounds
+        public void updateBounds(CrossingSchemeDescriptor desc){
+            long p = desc.getTotalPopSize();
+            int g = desc.getNumGenerations();
+            double a = desc.getLinkagePhaseAmbiguity();
+            if(p < popSize || p == popSize && (g < numGen || g == numGen && a < lpa)){
+                popSize = p;
+                numGen = g;
+                lpa = a;
+            }
+        }
+    
+    }
+
+}
@@ -0,0 +1,48 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search.bb;
+
+/**
+ * Policy used to select the next partial scheme to be extended from the queue of the
+ * branch and bound search engine (see {@link SchemeQueue}).
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public enum SchemeQueuePolicy {
+    
+    /**
+     * Extend schemes in the order in which they have been created (breadth-first).
+     */
+    FIFO,
+    
+    /**
+     * Extend the scheme with the best lower bounds first: lowest total population size,
+     * then lowest number of generations and then lowest linkage phase ambiguity.
+     */
+    BEST_FIRST,
+    
+    /**
+     * Extend the scheme of which the final plant is closest to the ideotype first, preferring
+     * the most recently created scheme in case of ties, so that the search quickly dives towards
+     * complete solutions.
+     */
+    DEPTH_FIRST,
+    
+    /**
+     * Alternately extend the next scheme according to {@link #BEST_FIRST} and {@link #DEPTH_FIRST}.
+     */
+    HYBRID;
+
+}
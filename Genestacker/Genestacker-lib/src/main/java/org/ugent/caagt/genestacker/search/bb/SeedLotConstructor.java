@@ -14,15 +14,23 @@
 
 package org.ugent.caagt.genestacker.search.bb;
 
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import org.ugent.caagt.genestacker.AllelicFrequency;
+import org.ugent.caagt.genestacker.ChromosomeAllelicFrequencies;
+import org.ugent.caagt.genestacker.DiploidChromosome;
 import org.ugent.caagt.genestacker.GeneticMap;
 import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.GenotypeAllelicFrequencies;
+import org.ugent.caagt.genestacker.GenotypePool;
 import org.ugent.caagt.genestacker.Haplotype;
 import org.ugent.caagt.genestacker.SeedLot;
 import org.ugent.caagt.genestacker.exceptions.GenotypeException;
+import org.ugent.caagt.genestacker.exceptions.IncompatibleGeneticMapException;
+import org.ugent.caagt.genestacker.exceptions.IncompatibleGenotypesException;
 
 /**
  * Seed lot constructor interface.
@@ -31,20 +39,364 @@ import org.ugent.caagt.genestacker.exceptions.GenotypeException;
  */
 public abstract class SeedLotConstructor {
     
-    // cached gametes per chromosome for previously considered genotypes
-    protected Map<Genotype, List<Map<Haplotype, Double>> > cachedGametesPerChrom;
+    // cached gametes and diploid chromosomes per chromosome index, for previously considered chromosomes
+    protected ChromosomeCache chromosomeCache;
     
     // genetic map
     protected GeneticMap map;
     
+    // pool in which parental genotypes and chromosomes are interned
+    protected GenotypePool pool;
+    
+    // persistent store of gametes and seed lots (null if not used)
+    protected SeedLotStore store;
+    
     public SeedLotConstructor(GeneticMap map){
+        this(map, new GenotypePool());
+    }
+    
+    public SeedLotConstructor(GeneticMap map, GenotypePool pool){
         this.map = map;
-        // use concurrent hash map for caching (accessed in parallel by different cross workers)
-        cachedGametesPerChrom = new ConcurrentHashMap<>();
+        this.pool = pool;
+        // thread safe cache (accessed in parallel by different cross workers)
+        chromosomeCache = new ChromosomeCache(pool);
+    }
+    
+    /**
+     * Get the pool in which the parents crossed by this constructor are interned. Offspring genotypes are not
+     * interned when they are created, so that the pool only grows with the genotypes that are actually used
+     * as parents (or stored in a seed lot cache), instead of all genotypes ever generated.
+     * 
+     * @return genotype pool
+     */
+    public GenotypePool getGenotypePool(){
+        return pool;
+    }
+    
+    /**
+     * Get the cache of gametes and diploid chromosomes used by this constructor, e.g. to set a memory budget
+     * (see {@link ChromosomeCache#setMaxMemory(long)}).
+     * 
+     * @return chromosome cache
+     */
+    public ChromosomeCache getChromosomeCache(){
+        return chromosomeCache;
     }
     
     public void clearCache(){
-        cachedGametesPerChrom.clear();
+        chromosomeCache.clear();
+    }
+    
+    /**
+     * Set the persistent store in which produced gametes are saved and from which previously produced gametes are
+     * loaded, so that these do not have to be recomputed in later runs. The store is also used by the branch and
+     * bound engine to save and load unfiltered seed lots. Set to <code>null</code> (default) to disable.
+     * 
+     * @param store persistent store, opened for this constructor
+     */
+    public void setSeedLotStore(SeedLotStore store){
+        this.store = store;
+    }
+    
+    public SeedLotStore getSeedLotStore(){
+        return store;
+    }
+    
+    /**
+     * Get a description of the configuration of this constructor, which determines, together with the genetic map,
+     * which gametes and seed lots are produced. Constructors with the same configuration and genetic map produce the
+     * same gametes and seed lots, and can therefore share the same persistent store (see {@link SeedLotStore}).
+     * By default, the configuration consists of the name of the class only; subclasses with additional settings
+     * that affect the produced gametes or seed lots should extend the description accordingly.
+     * 
+     * @return description of the configuration of this constructor
+     */
+    public String describeConfiguration(){
+        return getClass().getName();
+    }
+    
+    /**
+     * Check whether the two given genotypes can be crossed, i.e. whether they have the same structure,
+     * which should also correspond to the structure of the genetic map.
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @throws IncompatibleGenotypesException if the genotypes have a different structure
+     * @throws IncompatibleGeneticMapException if the genotypes are not compatible with the genetic map
+     */
+    protected void checkCompatibility(Genotype g1, Genotype g2) throws IncompatibleGenotypesException, IncompatibleGeneticMapException{
+        // check if genotypes are compatible for crossing
+        if(!g1.compatibleWith(g2)){
+            throw new IncompatibleGenotypesException("Attempted to cross incompatible genotypes");
+        }
+        // check compatibility with genetic map
+        boolean compatibleWithMap = (g1.nrOfChromosomes() == map.nrOfChromosomes());
+        int i=0;
+        while(compatibleWithMap && i<g1.nrOfChromosomes()){
+            compatibleWithMap = (g1.getChromosomes().get(i).nrOfLoci() == map.nrOfLociOnChromosome(i));
+            i++;
+        }
+        if(!compatibleWithMap){
+            throw new IncompatibleGeneticMapException("Given genetic map is not compatible with genotype structure");
+        }
+    }
+    
+    /**
+     * Compute the probability with which the given child genotype is obtained by crossing the two given parental
+     * genotypes, together with the probability of observing its allelic frequencies (and thus its linkage phase
+     * ambiguity), without constructing the seed lot of the crossing. Probabilities are computed in closed form,
+     * chromosome by chromosome: the probability of a child chromosome is obtained from the probabilities with which
+     * each parental chromosome produces either of both child haplotypes, where the probability of a gamete is the
+     * product of the recombination factors between subsequent heterozygous loci of the parental chromosome (as in the
+     * construction of the seed lot). The probability of the allelic frequencies is computed with
+     * {@link #observationProbability(Genotype, Genotype, GenotypeAllelicFrequencies)}.
+     * 
+     * @param parent1 parental genotype 1
+     * @param parent2 parental genotype 2
+     * @param child child genotype
+     * @return probability and observation probability of the child genotype among the offspring
+     * @throws GenotypeException if the given genotypes are not compatible
+     */
+    public OffspringProbability probabilityOf(Genotype parent1, Genotype parent2, Genotype child) throws GenotypeException{
+        checkCompatibility(parent1, parent2);
+        checkCompatibility(parent1, child);
+        double p = 1.0;
+        for(int c=0; p > 0.0 && c<child.nrOfChromosomes(); c++){
+            p *= chromosomeProbability(parent1.getChromosomes().get(c), parent2.getChromosomes().get(c), c,
+                                       child.getChromosomes().get(c));
+        }
+        double obsP = p > 0.0 ? observationProbability(parent1, parent2, child.getAllelicFrequencies()) : 0.0;
+        return new OffspringProbability(p, obsP);
+    }
+    
+    /**
+     * Compute the probability with which any child genotype with the given allelic frequencies is obtained by crossing
+     * the two given parental genotypes, without constructing the seed lot of the crossing. This probability is computed
+     * in closed form, chromosome by chromosome, by traversing the loci while keeping track of the probability of each
+     * combination of haplotypes (0/1) from which both parents passed on the allele at their last heterozygous locus,
+     * retaining only those combinations that yield the desired allelic frequency at each locus.
+     * 
+     * @param parent1 parental genotype 1
+     * @param parent2 parental genotype 2
+     * @param allelicFreqs allelic frequencies of the offspring
+     * @return probability of observing the given allelic frequencies among the offspring
+     * @throws GenotypeException if the given genotypes are not compatible
+     */
+    public double observationProbability(Genotype parent1, Genotype parent2, GenotypeAllelicFrequencies allelicFreqs)
+                                                                                                    throws GenotypeException{
+        checkCompatibility(parent1, parent2);
+        if(allelicFreqs.nrOfChromosomes() != parent1.nrOfChromosomes()){
+            throw new IncompatibleGenotypesException("Allelic frequencies not compatible with parental genotypes");
+        }
+        double p = 1.0;
+        for(int c=0; p > 0.0 && c<parent1.nrOfChromosomes(); c++){
+            ChromosomeAllelicFrequencies chromFreqs = allelicFreqs.getChromosomeAllelicFrequencies().get(c);
+            if(chromFreqs.nrOfLoci() != parent1.getChromosomes().get(c).nrOfLoci()){
+                throw new IncompatibleGenotypesException("Allelic frequencies not compatible with parental genotypes");
+            }
+            p *= observationProbability(parent1.getChromosomes().get(c), parent2.getChromosomes().get(c), c, chromFreqs);
+        }
+        return p;
+    }
+    
+    /**
+     * Compute the probability with which the given diploid chromosome is obtained by crossing the two given
+     * parental chromosomes, located at the given chromosome index.
+     * 
+     * @param chrom1 chromosome of parent 1
+     * @param chrom2 chromosome of parent 2
+     * @param chromIndex chromosome index
+     * @param child chromosome of the child
+     * @return probability of obtaining the child chromosome
+     */
+    protected double chromosomeProbability(DiploidChromosome chrom1, DiploidChromosome chrom2, int chromIndex, DiploidChromosome child){
+        Haplotype h0 = child.getHaplotypes()[0];
+        Haplotype h1 = child.getHaplotypes()[1];
+        double p = gameteProbability(chrom1, chromIndex, h0) * gameteProbability(chrom2, chromIndex, h1);
+        if(!h0.equals(h1)){
+            // both haplotypes may have been produced by both parents
+            p += gameteProbability(chrom1, chromIndex, h1) * gameteProbability(chrom2, chromIndex, h0);
+        }
+        return p;
+    }
+    
+    /**
+     * Compute the probability with which the given parental chromosome, located at the given chromosome index,
+     * produces the given gamete.
+     * 
+     * @param chrom parental chromosome
+     * @param chromIndex chromosome index
+     * @param gamete haplotype of the gamete
+     * @return probability of producing the given gamete, 0.0 if it can not be produced
+     */
+    protected double gameteProbability(DiploidChromosome chrom, int chromIndex, Haplotype gamete){
+        if(!chrom.mayProduceGamete(gamete)){
+            return 0.0;
+        }
+        Haplotype top = chrom.getHaplotypes()[0];
+        double p = 1.0;
+        int prevHeterozygousLocus = -1;
+        boolean prevTop = false;
+        // only heterozygous loci affect the probability
+        for(int l : chrom.getHeterozygousLoci()){
+            // check which haplotype passed on its allele
+            boolean fromTop = gamete.targetPresent(l) == top.targetPresent(l);
+            if(prevHeterozygousLocus == -1){
+                // first heterozygous locus: both haplotypes equally likely
+                p *= 0.5;
+            } else {
+                double r = map.getRecombinationProbability(chromIndex, prevHeterozygousLocus, l);
+                p *= (fromTop == prevTop) ? 1-r : r;
+            }
+            prevHeterozygousLocus = l;
+            prevTop = fromTop;
+        }
+        return p;
+    }
+    
+    /**
+     * Compute the probability with which the given allelic frequencies are observed at the given chromosome index
+     * of the offspring, when crossing the two given parental chromosomes.
+     * 
+     * @param chrom1 chromosome of parent 1
+     * @param chrom2 chromosome of parent 2
+     * @param chromIndex chromosome index
+     * @param allelicFreqs allelic frequencies of the child chromosome
+     * @return probability of observing the given allelic frequencies
+     */
+    protected double observationProbability(DiploidChromosome chrom1, DiploidChromosome chrom2, int chromIndex,
+                                            ChromosomeAllelicFrequencies allelicFreqs){
+        AllelicFrequency[] freqs = allelicFreqs.getAllelicFrequencies();
+        Haplotype[] haps1 = chrom1.getHaplotypes();
+        Haplotype[] haps2 = chrom2.getHaplotypes();
+        // check loci where both parents are homozygous (fixed allelic frequency)
+        for(int l=0; l<chrom1.nrOfLoci(); l++){
+            if(chrom1.isHomozygousAtLocus(l) && chrom2.isHomozygousAtLocus(l)){
+                int count = (haps1[0].targetPresent(l) ? 1 : 0) + (haps2[0].targetPresent(l) ? 1 : 0);
+                if(count != freqs[l].ordinal()){
+                    return 0.0;
+                }
+            }
+        }
+        // probability of each combination of haplotypes picked by both parents (index 2*s1+s2);
+        // before the first heterozygous locus of a parent, its picked haplotype is irrelevant (set to 0)
+        double[] p = new double[]{1.0, 0.0, 0.0, 0.0};
+        double[] next = new double[4];
+        // traverse heterozygous loci of both parents, in order
+        int[] het1 = chrom1.getHeterozygousLoci();
+        int[] het2 = chrom2.getHeterozygousLoci();
+        int i1 = 0, i2 = 0;
+        int prev1 = -1, prev2 = -1;
+        while(i1 < het1.length || i2 < het2.length){
+            int l = Math.min(i1 < het1.length ? het1[i1] : Integer.MAX_VALUE, i2 < het2.length ? het2[i2] : Integer.MAX_VALUE);
+            boolean isHet1 = i1 < het1.length && het1[i1] == l;
+            boolean isHet2 = i2 < het2.length && het2[i2] == l;
+            // probability of switching haplotypes since the previous heterozygous locus of each parent
+            // (0.5 at the first heterozygous locus, where both haplotypes are equally likely)
+            double r1 = !isHet1 ? 0.0 : (prev1 == -1 ? 0.5 : map.getRecombinationProbability(chromIndex, prev1, l));
+            double r2 = !isHet2 ? 0.0 : (prev2 == -1 ? 0.5 : map.getRecombinationProbability(chromIndex, prev2, l));
+            for(int t=0; t<4; t++){
+                next[t] = 0.0;
+                for(int s=0; s<4; s++){
+                    double t1 = ((s >> 1) == (t >> 1)) ? 1-r1 : r1;
+                    double t2 = ((s & 1) == (t & 1)) ? 1-r2 : r2;
+                    next[t] += p[s] * t1 * t2;
+                }
+            }
+            double[] tmp = p;
+            p = next;
+            next = tmp;
+            if(isHet1){
+                prev1 = l;
+                i1++;
+            }
+            if(isHet2){
+                prev2 = l;
+                i2++;
+            }
+            // retain combinations yielding the desired allelic frequency (ordinal = number of target alleles)
+            for(int s=0; s<4; s++){
+                int count = (haps1[s >> 1].targetPresent(l) ? 1 : 0) + (haps2[s & 1].targetPresent(l) ? 1 : 0);
+                if(count != freqs[l].ordinal()){
+                    p[s] = 0.0;
+                }
+            }
+        }
+        return p[0] + p[1] + p[2] + p[3];
+    }
+    
+    /**
+     * Generate the possible diploid chromosomes (with their probabilities) at each chromosome index of the offspring
+     * obtained by crossing the two given genotypes. Every combination of these chromosomes is a possible child genotype,
+     * with a probability equal to the product of the probabilities of the combined chromosomes.
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @return possible diploid chromosomes and their probabilities, per chromosome index
+     * @throws GenotypeException if anything goes wrong while creating the diploid chromosomes
+     */
+    protected abstract List<Map<DiploidChromosome, Double>> genDiploidChromosomes(Genotype g1, Genotype g2) throws GenotypeException;
+    
+    /**
+     * Lazily enumerate the offspring obtained by crossing the two given genotypes, in order of decreasing probability
+     * (of the phase-known genotypes). Offspring are generated on demand by best-first merging of the possible diploid
+     * chromosomes per chromosome index, sorted by probability, so that callers only interested in the most probable
+     * offspring do not have to construct the entire seed lot. Each returned entry contains a child genotype
+     * together with its probability.
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @return iterator over all offspring, in order of decreasing probability
+     * @throws GenotypeException if anything goes wrong while creating the possible diploid chromosomes
+     */
+    public Iterator<Map.Entry<Genotype, Double>> enumerateOffspring(Genotype g1, Genotype g2) throws GenotypeException{
+        return new BestFirstOffspringIterator(genDiploidChromosomes(g1, g2));
+    }
+    
+    /**
+     * Get the k most probable genotypes among the offspring obtained by crossing the two given genotypes
+     * (see {@link #enumerateOffspring(Genotype, Genotype)}).
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param k maximum number of returned genotypes
+     * @return at most k most probable child genotypes and their probabilities, in order of decreasing probability
+     * @throws GenotypeException if anything goes wrong while creating the possible diploid chromosomes
+     */
+    public List<Map.Entry<Genotype, Double>> getMostProbableOffspring(Genotype g1, Genotype g2, int k) throws GenotypeException{
+        List<Map.Entry<Genotype, Double>> offspring = new ArrayList<>();
+        Iterator<Map.Entry<Genotype, Double>> it = enumerateOffspring(g1, g2);
+        while(offspring.size() < k && it.hasNext()){
+            offspring.add(it.next());
+        }
+        return offspring;
+    }
+    
+    /**
+     * Get all genotypes among the offspring obtained by crossing the two given genotypes that are obtained
+     * with at least the given probability (see {@link #enumerateOffspring(Genotype, Genotype)}).
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param minProb minimum probability
+     * @return child genotypes obtained with at least the given probability, in order of decreasing probability
+     * @throws GenotypeException if anything goes wrong while creating the possible diploid chromosomes
+     */
+    public List<Map.Entry<Genotype, Double>> getOffspringWithMinimumProbability(Genotype g1, Genotype g2, double minProb)
+                                                                                                    throws GenotypeException{
+        List<Map.Entry<Genotype, Double>> offspring = new ArrayList<>();
+        Iterator<Map.Entry<Genotype, Double>> it = enumerateOffspring(g1, g2);
+        boolean stop = false;
+        while(!stop && it.hasNext()){
+            Map.Entry<Genotype, Double> child = it.next();
+            if(child.getValue() >= minProb){
+                offspring.add(child);
+            } else {
+                // all remaining offspring are less probable
+                stop = true;
+            }
+        }
+        return offspring;
     }
     
     /**
@@ -57,6 +409,31 @@ public abstract class SeedLotConstructor {
      */
     public abstract SeedLot cross(Genotype g1, Genotype g2) throws GenotypeException;
     
+    /**
+     * Create the seed lot obtained by crossing the two given genotypes, omitting all child genotypes that are
+     * obtained with a probability strictly below the given minimum probability. The probabilities and linkage phase
+     * ambiguities of the retained genotypes are the same as in the entire seed lot. The default implementation
+     * constructs the entire seed lot and then filters the improbable genotypes; subclasses may avoid to generate
+     * these genotypes in the first place.
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param minProb minimum probability of retained child genotypes
+     * @return seed lot obtained by crossing the given genotypes, without improbable genotypes
+     * @throws GenotypeException if anything goes wrong while creating the seed lot
+     */
+    public SeedLot cross(Genotype g1, Genotype g2, double minProb) throws GenotypeException{
+        SeedLot seedLot = cross(g1, g2);
+        if(minProb > 0.0){
+            for(int i = seedLot.nextGenotypeIndex(0); i >= 0; i = seedLot.nextGenotypeIndex(i+1)){
+                if(seedLot.getProbabilityOfPhaseKnownGenotype(i) < minProb){
+                    seedLot.filterGenotype(i);
+                }
+            }
+        }
+        return seedLot;
+    }
+    
     /**
      * Generate PART of the seed lot obtained by crossing two given genotypes, confined to a predefined
      * set of genotypes among the offspring for which properties (LPA, probability) are to be inferred.
@@ -91,5 +468,5 @@ public abstract class SeedLotConstructor {
     public SeedLot partialSelf(Genotype g, Set<Genotype> desiredChildGenotypes) throws GenotypeException{
         return partialCross(g, g, desiredChildGenotypes);
     }
-    
+
 }
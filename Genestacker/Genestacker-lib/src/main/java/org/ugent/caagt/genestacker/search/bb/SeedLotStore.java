@@ -0,0 +1,695 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search.bb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.ugent.caagt.genestacker.DiploidChromosome;
+import org.ugent.caagt.genestacker.GeneticMap;
+import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.Haplotype;
+import org.ugent.caagt.genestacker.SeedLot;
+import org.ugent.caagt.genestacker.exceptions.GenotypeException;
+import org.ugent.caagt.genestacker.util.ConcurrentLongObjectMap;
+
+/**
+ * Persistent store of the gametes produced per chromosome and of the (unfiltered) seed lots constructed by a
+ * seed lot constructor, so that later runs with the same genetic map and seed lot constructor can reuse these
+ * instead of constructing them from scratch. The store is kept in a single file inside a cache directory, named
+ * after a hash of the distances of the genetic map, its map function and the configuration of the seed lot
+ * constructor (see {@link SeedLotConstructor#describeConfiguration()}), so that runs with a different map or
+ * constructor never share stored data.
+ * <p>
+ * The file is an append-only log of records, where a record is identified by a key consisting of the chromosome
+ * index and chromosome (gametes) or both parent genotypes, in any order (seed lots). When the store is opened,
+ * the existing file is memory mapped and indexed; records are only decoded when requested. New records are
+ * appended to the file, up to a maximum file size of 2 GB. Seed lots are stored together with the minimum
+ * probability of the retained genotypes (see {@link SeedLotConstructor#cross(Genotype, Genotype, double)}),
+ * and are only reused for the same or a higher minimum probability.
+ * <p>
+ * Only one process at a time can write to the store: if the file is locked by another process, the store is
+ * opened in read-only mode. Input/output errors during a search never interrupt the search: they are logged,
+ * after which the store stops writing and behaves as if the requested data has not been stored.
+ * <p>
+ * All methods are thread safe.
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class SeedLotStore implements Closeable {
+    
+    // file header
+    private static final int MAGIC = 0x47535354;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    
+    // maximum file size (entire file is memory mapped when opened)
+    private static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+    
+    // extension of store files
+    private static final String FILE_EXTENSION = ".gss";
+    
+    // record types
+    private static final byte GAMETES = 1;
+    private static final byte SEED_LOT = 2;
+    
+    private Logger logger = LogManager.getLogger(SeedLotStore.class);
+    
+    // store file
+    private final File file;
+    private final FileChannel channel;
+    // lock held while writing is allowed (null if read-only)
+    private FileLock lock;
+    
+    // memory mapped records that were present when the store was opened
+    private final ByteBuffer mapped;
+    
+    // index: hash of record key -> record
+    private final ConcurrentLongObjectMap<Record> index;
+    
+    // end of file (position of next record), only accessed while holding the lock on this store
+    private long end;
+    
+    // indicates whether new records can be written
+    private volatile boolean writable;
+    
+    // statistics
+    private final AtomicLong hits, misses;
+    
+    /**
+     * Open the persistent store for the given seed lot constructor, inside the given cache directory, which is
+     * created if it does not yet exist. Loaded genotypes are not interned, just like the genotypes constructed
+     * by the seed lot constructor.
+     * Note that the store is not automatically used by the constructor, see
+     * {@link SeedLotConstructor#setSeedLotStore(SeedLotStore)}.
+     *
+     * @param dir cache directory
+     * @param constructor seed lot constructor of which gametes and seed lots are stored
+     * @throws IOException if the store can not be opened
+     */
+    public SeedLotStore(File dir, SeedLotConstructor constructor) throws IOException{
+        if(!dir.isDirectory() && !dir.mkdirs()){
+            throw new IOException("Cache directory " + dir + " does not exist and can not be created.");
+        }
+        file = new File(dir, computeStoreName(constructor.map, constructor.describeConfiguration()) + FILE_EXTENSION);
+        index = new ConcurrentLongObjectMap<>();
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        // try to acquire exclusive write access
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException ex){
+            // locked by other store in this virtual machine
+            lock = null;
+        }
+        writable = lock != null;
+        if(!writable){
+            logger.warn("Seed lot store {} is in use by another process; opened in read-only mode", file);
+        }
+        // check header
+        long size = channel.size();
+        if(size < HEADER_SIZE || size > MAX_FILE_SIZE || !checkHeader()){
+            if(size > 0){
+                logger.warn("Discarding invalid seed lot store {}", file);
+            }
+            if(writable){
+                // (re)initialize
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                writeFully(header, 0);
+                size = HEADER_SIZE;
+            } else {
+                // unusable
+                size = 0;
+            }
+        }
+        // map and index existing records
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        end = scan(size);
+        if(writable && end < channel.size()){
+            // drop incomplete record (interrupted write)
+            channel.truncate(end);
+        }
+    }
+    
+    // check magic number and version
+    private boolean checkHeader() throws IOException{
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(header, 0);
+        header.flip();
+        return header.getInt() == MAGIC && header.getInt() == VERSION;
+    }
+    
+    // index all complete records in the mapped file, returns end of last complete record
+    private long scan(long size){
+        long pos = size >= HEADER_SIZE ? HEADER_SIZE : size;
+        boolean stop = false;
+        while(!stop && pos + 4 <= size){
+            int length = mapped.getInt((int) pos);
+            if(length < 5 || pos + 4 + length > size){
+                // incomplete or corrupt record
+                stop = true;
+            } else {
+                ByteBuffer body = slice(mapped, (int) pos + 4, length);
+                int keyLength = body.getInt();
+                if(keyLength < 1 || 4 + keyLength > length){
+                    stop = true;
+                } else {
+                    long hash = hash(body, 4, keyLength);
+                    byte type = body.get(4);
+                    double minProb = 0.0;
+                    if(type == SEED_LOT && 4 + keyLength + 8 <= length){
+                        minProb = body.getDouble(4 + keyLength);
+                    }
+                    // later records replace earlier records with the same key
+                    index.put(hash, new Record(pos + 4, length, minProb));
+                    pos += 4 + length;
+                }
+            }
+        }
+        return pos;
+    }
+    
+    /**
+     * Compute the name of the store corresponding to the given genetic map and seed lot constructor configuration,
+     * as a hexadecimal hash of the distances, the map function and the configuration.
+     *
+     * @param map genetic map
+     * @param configuration configuration of the seed lot constructor
+     * @return name of the store
+     */
+    static String computeStoreName(GeneticMap map, String configuration){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buf = ByteBuffer.allocate(8);
+            buf.putInt(VERSION).putInt(map.nrOfChromosomes());
+            digest.update(buf.array());
+            for(double[] chromDistances : map.getDistances()){
+                buf.clear();
+                buf.putInt(chromDistances.length).putInt(0);
+                digest.update(buf.array());
+                for(double d : chromDistances){
+                    buf.clear();
+                    buf.putLong(Double.doubleToLongBits(d));
+                    digest.update(buf.array());
+                }
+            }
+            digest.update(map.getDistanceMapFunction().getClass().getName().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(configuration.getBytes(StandardCharsets.UTF_8));
+            byte[] hash = digest.digest();
+            StringBuilder name = new StringBuilder();
+            for(int i=0; i<16; i++){
+                name.append(String.format("%02x", hash[i]));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException ex){
+            // SHA-256 is available on every Java platform
+            throw new RuntimeException("[SHOULD NOT HAPPEN] SHA-256 not available.", ex);
+        }
+    }
+    
+    /**
+     * Get the stored gametes produced by the given chromosome, located at the given chromosome index.
+     *
+     * @param chromIndex chromosome index
+     * @param chrom diploid chromosome
+     * @return stored gametes and their probabilities, <code>null</code> if not stored
+     */
+    public Map<Haplotype, Double> getGametes(int chromIndex, DiploidChromosome chrom){
+        byte[] key = gametesKey(chromIndex, chrom);
+        ByteBuffer payload = lookup(key);
+        if(payload == null){
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            int n = payload.getInt();
+            Map<Haplotype, Double> gametes = new HashMap<>(2*n);
+            long[] words = new long[Haplotype.nrOfWords(chrom.nrOfLoci())];
+            for(int i=0; i<n; i++){
+                for(int w=0; w<words.length; w++){
+                    words[w] = payload.getLong();
+                }
+                gametes.put(new Haplotype(words, chrom.nrOfLoci()), payload.getDouble());
+            }
+            hits.incrementAndGet();
+            return gametes;
+        } catch (GenotypeException | RuntimeException ex){
+            logger.warn("Failed to load gametes from seed lot store {}: {}", file, ex.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+    
+    /**
+     * Store the gametes produced by the given chromosome, located at the given chromosome index,
+     * unless these gametes have already been stored.
+     *
+     * @param chromIndex chromosome index
+     * @param chrom diploid chromosome
+     * @param gametes gametes and their probabilities
+     */
+    public void storeGametes(int chromIndex, DiploidChromosome chrom, Map<Haplotype, Double> gametes){
+        if(!writable){
+            return;
+        }
+        byte[] key = gametesKey(chromIndex, chrom);
+        if(index.get(hash(key)) != null){
+            // already stored
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(gametes.size());
+            for(Map.Entry<Haplotype, Double> gamete : gametes.entrySet()){
+                writeHaplotype(out, gamete.getKey());
+                out.writeDouble(gamete.getValue());
+            }
+            append(key, bytes.toByteArray(), 0.0);
+        } catch (IOException ex){
+            disable(ex);
+        }
+    }
+    
+    /**
+     * Get the stored seed lot obtained by crossing the two given genotypes (in any order), where all child genotypes
+     * obtained with a probability strictly below the given minimum probability have been omitted, if the seed lot has
+     * been stored for the same or a lower minimum probability. The returned seed lot is never filtered, but it may be
+     * filtered (or viewed) by the caller.
+     *
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param minProb minimum probability of retained child genotypes
+     * @return stored seed lot, <code>null</code> if not stored for the given minimum probability
+     */
+    public SeedLot getSeedLot(Genotype g1, Genotype g2, double minProb){
+        byte[] key = seedLotKey(g1, g2);
+        Record r = index.get(hash(key));
+        if(r == null || r.minProb > minProb){
+            misses.incrementAndGet();
+            return null;
+        }
+        ByteBuffer payload = lookup(key);
+        if(payload == null){
+            misses.incrementAndGet();
+            return null;
+        }
+        try {
+            // skip stored minimum probability
+            payload.getDouble();
+            boolean uniform = payload.get() != 0;
+            // chromosome table
+            int nrOfChroms = payload.getInt();
+            DiploidChromosome[] chroms = new DiploidChromosome[nrOfChroms];
+            for(int c=0; c<nrOfChroms; c++){
+                chroms[c] = readChromosome(payload);
+            }
+            // genotypes
+            int n = payload.getInt();
+            int chromsPerGenotype = payload.getInt();
+            List<Genotype> genotypes = new ArrayList<>(n);
+            List<Double> probs = new ArrayList<>(n);
+            List<Double> groupProbs = new ArrayList<>(n);
+            for(int i=0; i<n; i++){
+                List<DiploidChromosome> genotypeChroms = new ArrayList<>(chromsPerGenotype);
+                for(int c=0; c<chromsPerGenotype; c++){
+                    genotypeChroms.add(chroms[payload.getInt()]);
+                }
+                double p = payload.getDouble();
+                double groupProb = payload.getDouble();
+                // omit genotypes below requested minimum probability
+                if(p >= minProb){
+                    genotypes.add(new Genotype(genotypeChroms));
+                    probs.add(p);
+                    groupProbs.add(groupProb);
+                }
+            }
+            Genotype[] genotypeArray = genotypes.toArray(new Genotype[genotypes.size()]);
+            double[] probArray = new double[genotypeArray.length];
+            double[] groupProbArray = new double[genotypeArray.length];
+            for(int i=0; i<genotypeArray.length; i++){
+                probArray[i] = probs.get(i);
+                groupProbArray[i] = groupProbs.get(i);
+            }
+            hits.incrementAndGet();
+            return new SeedLot(uniform, genotypeArray, probArray, groupProbArray);
+        } catch (GenotypeException | RuntimeException ex){
+            logger.warn("Failed to load seed lot from seed lot store {}: {}", file, ex.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+    }
+    
+    /**
+     * Store the seed lot obtained by crossing the two given genotypes, where all child genotypes obtained with a
+     * probability strictly below the given minimum probability have been omitted. Only the remaining genotypes of
+     * the given seed lot are stored, together with their probability and the probability of their genotype group.
+     * The seed lot is not stored if it has already been stored for the same or a lower minimum probability.
+     *
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param minProb minimum probability of retained child genotypes
+     * @param seedLot seed lot obtained by crossing the given genotypes
+     */
+    public void storeSeedLot(Genotype g1, Genotype g2, double minProb, SeedLot seedLot){
+        if(!writable){
+            return;
+        }
+        byte[] key = seedLotKey(g1, g2);
+        Record r = index.get(hash(key));
+        if(r != null && r.minProb <= minProb){
+            // already stored
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeDouble(minProb);
+            out.writeBoolean(seedLot.isUniform());
+            // collect distinct chromosomes
+            Map<DiploidChromosome, Integer> chromIndices = new HashMap<>();
+            List<DiploidChromosome> chroms = new ArrayList<>();
+            int chromsPerGenotype = 0;
+            for(int i = seedLot.nextGenotypeIndex(0); i >= 0; i = seedLot.nextGenotypeIndex(i+1)){
+                Genotype g = seedLot.getGenotype(i);
+                chromsPerGenotype = g.nrOfChromosomes();
+                for(DiploidChromosome chrom : g.getChromosomes()){
+                    if(!chromIndices.containsKey(chrom)){
+                        chromIndices.put(chrom, chroms.size());
+                        chroms.add(chrom);
+                    }
+                }
+            }
+            out.writeInt(chroms.size());
+            for(DiploidChromosome chrom : chroms){
+                writeChromosome(out, chrom);
+            }
+            // write genotypes
+            out.writeInt(seedLot.nrOfGenotypes());
+            out.writeInt(chromsPerGenotype);
+            for(int i = seedLot.nextGenotypeIndex(0); i >= 0; i = seedLot.nextGenotypeIndex(i+1)){
+                for(DiploidChromosome chrom : seedLot.getGenotype(i).getChromosomes()){
+                    out.writeInt(chromIndices.get(chrom));
+                }
+                out.writeDouble(seedLot.getProbabilityOfPhaseKnownGenotype(i));
+                out.writeDouble(seedLot.getGenotypeGroup(i).getProbabilityOfGenotypeWithArbitraryLinkagePhase());
+            }
+            append(key, bytes.toByteArray(), minProb);
+        } catch (IOException ex){
+            disable(ex);
+        }
+    }
+    
+    // find payload of record with given key, null if not stored
+    private ByteBuffer lookup(byte[] key){
+        Record r = index.get(hash(key));
+        if(r == null){
+            return null;
+        }
+        try {
+            ByteBuffer body = read(r);
+            // verify key (hash collisions)
+            int keyLength = body.getInt();
+            if(keyLength != key.length){
+                return null;
+            }
+            for(byte b : key){
+                if(body.get() != b){
+                    return null;
+                }
+            }
+            return body.slice();
+        } catch (IOException ex){
+            logger.warn("Failed to read from seed lot store {}: {}", file, ex.getMessage());
+            return null;
+        }
+    }
+    
+    // read body of given record
+    private ByteBuffer read(Record r) throws IOException{
+        if(r.offset + r.length <= mapped.limit()){
+            // mapped record
+            return slice(mapped, (int) r.offset, r.length);
+        } else {
+            // record appended after opening the store
+            ByteBuffer body = ByteBuffer.allocate(r.length);
+            readFully(body, r.offset);
+            body.flip();
+            return body;
+        }
+    }
+    
+    // append record with given key and payload
+    private synchronized void append(byte[] key, byte[] payload, double minProb) throws IOException{
+        if(!writable){
+            return;
+        }
+        int length = 4 + key.length + payload.length;
+        if(end + 4 + length > MAX_FILE_SIZE){
+            logger.warn("Seed lot store {} is full; no more data will be stored", file);
+            writable = false;
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(4 + length);
+        record.putInt(length).putInt(key.length).put(key).put(payload).flip();
+        writeFully(record, end);
+        index.put(hash(key), new Record(end + 4, length, minProb));
+        end += 4 + length;
+    }
+    
+    // stop writing after an input/output error
+    private void disable(IOException ex){
+        if(writable){
+            writable = false;
+            logger.warn("Failed to write to seed lot store {}: {}; no more data will be stored", file, ex.getMessage());
+        }
+    }
+    
+    private void readFully(ByteBuffer buf, long position) throws IOException{
+        while(buf.hasRemaining()){
+            if(channel.read(buf, position + buf.position()) < 0){
+                throw new IOException("Unexpected end of file.");
+            }
+        }
+    }
+    
+    private void writeFully(ByteBuffer buf, long position) throws IOException{
+        while(buf.hasRemaining()){
+            channel.write(buf, position + buf.position());
+        }
+    }
+    
+    // create independent buffer for the given range of the given buffer
+    private static ByteBuffer slice(ByteBuffer buf, int from, int length){
+        ByteBuffer dup = buf.duplicate();
+        dup.position(from);
+        dup.limit(from + length);
+        return dup.slice();
+    }
+    
+    private byte[] gametesKey(int chromIndex, DiploidChromosome chrom){
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(GAMETES);
+            out.writeInt(chromIndex);
+            writeChromosome(out, chrom);
+            return bytes.toByteArray();
+        } catch (IOException shouldNotHappen){
+            // in-memory stream
+            throw new RuntimeException("[SHOULD NOT HAPPEN] Failed to encode key.", shouldNotHappen);
+        }
+    }
+    
+    private byte[] seedLotKey(Genotype g1, Genotype g2){
+        try {
+            byte[] e1 = encode(g1);
+            byte[] e2 = encode(g2);
+            // order independent
+            if(compare(e1, e2) > 0){
+                byte[] tmp = e1;
+                e1 = e2;
+                e2 = tmp;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            bytes.write(SEED_LOT);
+            bytes.write(e1);
+            bytes.write(e2);
+            return bytes.toByteArray();
+        } catch (IOException shouldNotHappen){
+            // in-memory stream
+            throw new RuntimeException("[SHOULD NOT HAPPEN] Failed to encode key.", shouldNotHappen);
+        }
+    }
+    
+    private static byte[] encode(Genotype g) throws IOException{
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(g.nrOfChromosomes());
+        for(DiploidChromosome chrom : g.getChromosomes()){
+            writeChromosome(out, chrom);
+        }
+        return bytes.toByteArray();
+    }
+    
+    private static void writeChromosome(DataOutputStream out, DiploidChromosome chrom) throws IOException{
+        out.writeInt(chrom.nrOfLoci());
+        writeHaplotype(out, chrom.getHaplotypes()[0]);
+        writeHaplotype(out, chrom.getHaplotypes()[1]);
+    }
+    
+    private static void writeHaplotype(DataOutputStream out, Haplotype hap) throws IOException{
+        for(int w=0; w<hap.nrOfWords(); w++){
+            out.writeLong(hap.getWord(w));
+        }
+    }
+    
+    private static DiploidChromosome readChromosome(ByteBuffer in) throws GenotypeException{
+        int nrOfLoci = in.getInt();
+        return new DiploidChromosome(readHaplotype(in, nrOfLoci), readHaplotype(in, nrOfLoci));
+    }
+    
+    private static Haplotype readHaplotype(ByteBuffer in, int nrOfLoci) throws GenotypeException{
+        long[] words = new long[Haplotype.nrOfWords(nrOfLoci)];
+        for(int w=0; w<words.length; w++){
+            words[w] = in.getLong();
+        }
+        return new Haplotype(words, nrOfLoci);
+    }
+    
+    // lexicographic comparison of byte arrays
+    private static int compare(byte[] a, byte[] b){
+        int n = Math.min(a.length, b.length);
+        for(int i=0; i<n; i++){
+            if(a[i] != b[i]){
+                return a[i] < b[i] ? -1 : 1;
+            }
+        }
+        return Integer.compare(a.length, b.length);
+    }
+    
+    // 64 bit FNV-1a hash
+    private static long hash(byte[] key){
+        return hash(ByteBuffer.wrap(key), 0, key.length);
+    }
+    
+    private static long hash(ByteBuffer buf, int from, int length){
+        long h = 0xcbf29ce484222325L;
+        for(int i=from; i<from+length; i++){
+            h ^= buf.get(i) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+    
+    /**
+     * Get the file in which this store is kept.
+     *
+     * @return store file
+     */
+    public File getFile(){
+        return file;
+    }
+    
+    /**
+     * Check whether new data can be written to this store.
+     *
+     * @return <code>true</code> if this store is writable
+     */
+    public boolean isWritable(){
+        return writable;
+    }
+    
+    /**
+     * Get the number of stored records (gametes and seed lots).
+     *
+     * @return number of stored records
+     */
+    public int size(){
+        return index.size();
+    }
+    
+    public long getNumHits(){
+        return hits.get();
+    }
+    
+    public long getNumMisses(){
+        return misses.get();
+    }
+    
+    /**
+     * Close the store: all data is flushed to disk and the file lock is released. After closing, nothing
+     * is written to the store anymore and requested data is never found.
+     *
+     * @throws IOException if the store can not be closed properly
+     */
+    @Override
+    public synchronized void close() throws IOException{
+        if(!channel.isOpen()){
+            return;
+        }
+        writable = false;
+        index.clear();
+        try {
+            if(lock != null){
+                channel.force(false);
+                lock.release();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+    
+    /**
+     * Location of a stored record.
+     */
+    private static final class Record {
+        
+        // position and length of record body (key and payload)
+        private final long offset;
+        private final int length;
+        // minimum probability (seed lots only)
+        private final double minProb;
+        
+        public Record(long offset, int length, double minProb){
+            this.offset = offset;
+            this.length = length;
+            this.minProb = minProb;
+        }
+    
+    }
+
+}
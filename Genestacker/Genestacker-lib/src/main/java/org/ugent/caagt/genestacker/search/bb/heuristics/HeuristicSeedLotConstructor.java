@@ -15,9 +15,10 @@
 package org.ugent.caagt.genestacker.search.bb.heuristics;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.ugent.caagt.genestacker.ChromosomeAllelicFrequencies;
 import org.ugent.caagt.genestacker.DiploidChromosome;
 import org.ugent.caagt.genestacker.GeneticMap;
 import org.ugent.caagt.genestacker.Genotype;
@@ -26,7 +27,7 @@ import org.ugent.caagt.genestacker.GenotypeAllelicFrequencies;
 import org.ugent.caagt.genestacker.SeedLot;
 import org.ugent.caagt.genestacker.exceptions.GenotypeException;
 import org.ugent.caagt.genestacker.search.bb.DefaultSeedLotConstructor;
-import org.ugent.caagt.genestacker.search.bb.SeedLotConstructor;
+import org.ugent.caagt.genestacker.search.bb.OffspringProbability;
 import org.ugent.caagt.genestacker.util.GenestackerConstants;
 
 /** 
@@ -52,9 +53,6 @@ public class HeuristicSeedLotConstructor extends DefaultSeedLotConstructor {
     // target genotype
     protected Genotype ideotype;
     
-    // default constructor used for finalization
-    protected SeedLotConstructor defaultConstructor;
-    
     public HeuristicSeedLotConstructor(GeneticMap map, Genotype ideotype){
         this(map, ideotype, GenestackerConstants.UNLIMITED_CROSSOVERS, false);
     }
@@ -62,31 +60,37 @@ public class HeuristicSeedLotConstructor extends DefaultSeedLotConstructor {
     public HeuristicSeedLotConstructor(GeneticMap map, Genotype ideotype, int maxNumCrossovers, boolean consistent){
         super(map);
         this.ideotype = ideotype;
-        this.defaultConstructor = new DefaultSeedLotConstructor(map);
         this.maxNumCrossovers = maxNumCrossovers;
         this.consistent = consistent;
     }
     
     @Override
     protected void genChromosomeGametes(Genotype parent, Genotype otherParent, GenotypeAllelicFrequencies desiredObservation,
-                                        int chromIndex, Map<Haplotype, Double> gametes, LinkedList<Boolean> curTargets,
-                                        double curP, int locus, int previousHeterozygousLocus, int previousHaplotypePicked)
-                                            throws GenotypeException{
+                                        int chromIndex, Map<Haplotype, Double> gametes) throws GenotypeException{
+        // initialize gamete with alleles at homozygous loci (immune for recombination)
+        DiploidChromosome chrom = parent.getChromosomes().get(chromIndex);
+        long[] words = new long[Haplotype.nrOfWords(chrom.nrOfLoci())];
+        for(int w=0; w<words.length; w++){
+            words[w] = chrom.getHomozygousTargets(w);
+        }
         // before the first heterozygous loci is traversed, usefulCrossover is set to true
-        genChromosomeGametes(parent, otherParent, desiredObservation, chromIndex, gametes, curTargets, curP, 
-                locus, previousHeterozygousLocus, previousHaplotypePicked, true, true, true, true, 0);
+        genChromosomeGametes(parent, otherParent, desiredObservation, chromIndex, gametes, words, 1.0, 
+                0, -1, true, true, true, true, 0);
     }
+    
     /**
      * Recursively construct heuristic set of gametes (haplotypes) that can be obtained from the given chromosome,
-     * according to the general description of this heuristic.
+     * according to the general description of this heuristic. Only heterozygous loci are traversed, as the
+     * alleles at homozygous loci are fixed and do not affect the probability nor usefulness of a gamete.
      * 
      * @param parent parental genotype
      * @param chromIndex index of considered chromosome
      * @param haplotypes currently constructed haplotypes, filled during recursion
-     * @param curHaplotype current haplotype under construction, extended during recursion
+     * @param curHaplotype words of the current haplotype under construction, initialized with the alleles at
+     *                     homozygous loci and extended at heterozygous loci during recursion
      * @param curP current probability of obtaining the haplotype under construction, updated during recursion
-     * @param locus currently considered locus where an allele is to be fixed for the constructed haplotype
-     * @param previousHeterozygousLocus index of last heterozygous locus before the current locus, -1 if none
+     * @param hetIndex index (among the heterozygous loci of the chromosome) of the currently considered
+     *                 heterozygous locus where an allele is to be fixed for the constructed haplotype
      * @param previousHaplotypePicked index of haplotype (0/1) of the considered chromosome that passed on its
      *                                allele to the constructed gamete at the last heterozygous locus before the
      *                                current locus, -1 if none
@@ -108,16 +112,17 @@ public class HeuristicSeedLotConstructor extends DefaultSeedLotConstructor {
      * @throws GenotypeException if anything goes wrong while creating the generated haplotypes
      */
     protected void genChromosomeGametes(Genotype parent, Genotype otherParent, GenotypeAllelicFrequencies desiredAllelicFreqs, int chromIndex,
-                                        Map<Haplotype, Double> haplotypes, LinkedList<Boolean> curHaplotype, double curP, int locus,
-                                        int previousHeterozygousLocus, int previousHaplotypePicked, boolean curImprovementWrtUpperTarget,
+                                        Map<Haplotype, Double> haplotypes, long[] curHaplotype, double curP, int hetIndex,
+                                        int previousHaplotypePicked, boolean curImprovementWrtUpperTarget,
                                         boolean consistentImprovementWrtUpperTarget, boolean curImprovementWrtLowerTarget,
                                         boolean consistentImprovementWrtLowerTarget, int curNumCrossovers) throws GenotypeException{
         
         DiploidChromosome chrom = parent.getChromosomes().get(chromIndex);
         DiploidChromosome ichrom = ideotype.getChromosomes().get(chromIndex);
+        int[] loci = chrom.getHeterozygousLoci();
         
         // check if construction complete
-        if(locus >= chrom.nrOfLoci()){
+        if(hetIndex >= loci.length){
             // update consistent improvement indicators based on improvement of final completed stretch
             consistentImprovementWrtUpperTarget = consistentImprovementWrtUpperTarget && curImprovementWrtUpperTarget;
             consistentImprovementWrtLowerTarget = consistentImprovementWrtLowerTarget && curImprovementWrtLowerTarget;
@@ -131,118 +136,103 @@ public class HeuristicSeedLotConstructor extends DefaultSeedLotConstructor {
                 store = curImprovementWrtUpperTarget || curImprovementWrtLowerTarget;
             }
             if(store){
-                // store completed gamete (copy target list !!)
-                List<Boolean> targetsCopy = new ArrayList<>(curHaplotype);
-                haplotypes.put(new Haplotype(targetsCopy), curP);
+                // store completed gamete (words are copied)
+                haplotypes.put(new Haplotype(curHaplotype, chrom.nrOfLoci()), curP);
             }
             return;
         }
         
-        // continue construction: extend currently constructed part of gamete in all possible ways
+        // continue construction: extend currently constructed part of gamete at the next heterozygous locus
         
-        if(chrom.isHomozygousAtLocus(locus)){
-            
-            // homozygous target is immune for recombination!
-
-            // extend current targets with the only possible option
-            curHaplotype.add(chrom.getHaplotypes()[0].targetPresent(locus));
-            // recursion (probability & usefulness of current/previous crossovers do not change)
-            genChromosomeGametes(parent, otherParent, desiredAllelicFreqs, chromIndex, haplotypes, curHaplotype, curP, locus+1,
-                                    previousHeterozygousLocus, previousHaplotypePicked, curImprovementWrtUpperTarget,
-                                    consistentImprovementWrtUpperTarget, curImprovementWrtLowerTarget,
-                                    consistentImprovementWrtLowerTarget, curNumCrossovers);
-            // backtracking: remove target
-            curHaplotype.removeLast();
-        } else {
-                        
-            // heterozygous target: create both possible extended gametes, but in case of a crossover
-            // we check if the stretch created between this crossover and the previous one is useful
-            // compared to the alternative stretch obtained without this pair of crossovers -- if not
-            // useful, further construction is pruned
+        int locus = loci[hetIndex];
+        int previousHeterozygousLocus = (hetIndex == 0) ? -1 : loci[hetIndex-1];
+        
+        // create both possible extended gametes, but in case of a crossover
+        // we check if the stretch created between this crossover and the previous one is useful
+        // compared to the alternative stretch obtained without this pair of crossovers -- if not
+        // useful, further construction is pruned
+        
+        for(int haplotypePicked=0; haplotypePicked <= 1; haplotypePicked++){
             
-            for(int haplotypePicked=0; haplotypePicked <= 1; haplotypePicked++){
+            // check if currently considered option can lead to the desired allelic frequencies, if any
+            if(desiredAllelicFreqs == null
+                    || canYieldDesiredObservation(
+                            desiredAllelicFreqs.getChromosomeAllelicFrequencies().get(chromIndex)
+                                               .getAllelicFrequencies()[locus],
+                            otherParent.getChromosomes().get(chromIndex).getAllelicFrequency(locus),
+                            chrom.getHaplotypes()[haplotypePicked].targetPresent(locus)
+                    )){
                 
-                // check if currently considered option can lead to the desired allelic frequencies, if any
-                if(desiredAllelicFreqs == null
-                        || canYieldDesiredObservation(
-                                desiredAllelicFreqs.getChromosomeAllelicFrequencies().get(chromIndex)
-                                                   .getAllelicFrequencies()[locus],
-                                otherParent.getAllelicFrequencies().getChromosomeAllelicFrequencies()
-                                           .get(chromIndex).getAllelicFrequencies()[locus],
-                                chrom.getHaplotypes()[haplotypePicked].targetPresent(locus)
-                        )){
+                // extend current targets with the selected option
+                if(chrom.getHaplotypes()[haplotypePicked].targetPresent(locus)){
+                    curHaplotype[locus >>> 6] |= 1L << locus;
+                } else {
+                    curHaplotype[locus >>> 6] &= ~(1L << locus);
+                }
                 
-                    // extend current targets with the selected option
-                    curHaplotype.add(chrom.getHaplotypes()[haplotypePicked].targetPresent(locus));
-
-                    // update probability: depends on recombination factors
-                    double r, newP;
-                    // update number of crossovers
-                    int newNumCrossovers = (previousHaplotypePicked != -1 && previousHaplotypePicked != haplotypePicked) ? curNumCrossovers+1 : curNumCrossovers;
-
-                    if(previousHeterozygousLocus == -1){
-                        // first heterozygous locus in chromosome
-                        r = 0.5;
-                    } else {
-                        r = map.getRecombinationProbability(chromIndex, previousHeterozygousLocus, locus);
-                    }
-
-                    boolean prune;
-                    boolean newImprovementWrtUpperTarget, newImprovementWrtLowerTarget;
-                    boolean newConsistentImprovementWrtUpperTarget, newConsistentImprovementWrtLowerTarget;
-                    if(previousHaplotypePicked == haplotypePicked){
-                        // previous haplotype same as current choice (no crossover in between)
-                        newP = curP * (1-r);
-                        // never prune a non-crossover
-                        prune = false;
-                        // consistent improvements of previous stretches stay unchanged (current stretch is not yet complete)
-                        newConsistentImprovementWrtUpperTarget = consistentImprovementWrtUpperTarget;
-                        newConsistentImprovementWrtLowerTarget = consistentImprovementWrtLowerTarget;
-                        // update usefulness of current, extended stretch
-                        newImprovementWrtUpperTarget = curImprovementWrtUpperTarget || improvementWrtUpperHaplotype(chrom, ichrom, locus, haplotypePicked);
-                        newImprovementWrtLowerTarget = curImprovementWrtLowerTarget || improvementWrtLowerHaplotype(chrom, ichrom, locus, haplotypePicked);
-                    } else {
-                        // other haplotype picked (cross-over)
-                        newP = curP * r;
-                        // current stretch complete: update previous consistent improvement indicators
-                        // to include the currently completed stretch
-                        newConsistentImprovementWrtUpperTarget = consistentImprovementWrtUpperTarget && curImprovementWrtUpperTarget;
-                        newConsistentImprovementWrtLowerTarget = consistentImprovementWrtLowerTarget && curImprovementWrtLowerTarget;
-                        // pruning: first check if max number of crossovers exceeded
-                        prune = (maxNumCrossovers != GenestackerConstants.UNLIMITED_CROSSOVERS && newNumCrossovers > maxNumCrossovers);
-                        // if not exceeded: check pruning on improvement
-                        if(!prune){
-                            if(consistent){
-                                // check for consistent improvement on all stretches towards one of both target haplotypes
-                                prune = !(newConsistentImprovementWrtUpperTarget || newConsistentImprovementWrtLowerTarget);
-                            } else {
-                                // check for improvement of current stretch towards one of the targets
-                                prune = !(curImprovementWrtUpperTarget || curImprovementWrtLowerTarget);
-                            }
-                        }
-                        // set initial usefulness of new stretch started at this locus
-                        // (checks if improvement w.r.t same target as previous stretches,
-                        // including the one which was just completed in this step)
-                        newImprovementWrtUpperTarget = improvementWrtUpperHaplotype(chrom, ichrom, locus, haplotypePicked);
-                        newImprovementWrtLowerTarget = improvementWrtLowerHaplotype(chrom, ichrom, locus, haplotypePicked);
-                    }
-
+                // update probability: depends on recombination factors
+                double r, newP;
+                // update number of crossovers
+                int newNumCrossovers = (previousHaplotypePicked != -1 && previousHaplotypePicked != haplotypePicked) ? curNumCrossovers+1 : curNumCrossovers;
+                
+                if(previousHeterozygousLocus == -1){
+                    // first heterozygous locus in chromosome
+                    r = 0.5;
+                } else {
+                    r = map.getRecombinationProbability(chromIndex, previousHeterozygousLocus, locus);
+                }
+                
+                boolean prune;
+                boolean newImprovementWrtUpperTarget, newImprovementWrtLowerTarget;
+                boolean newConsistentImprovementWrtUpperTarget, newConsistentImprovementWrtLowerTarget;
+                if(previousHaplotypePicked == haplotypePicked){
+                    // previous haplotype same as current choice (no crossover in between)
+                    newP = curP * (1-r);
+                    // never prune a non-crossover
+                    prune = false;
+                    // consistent improvements of previous stretches stay unchanged (current stretch is not yet complete)
+                    newConsistentImprovementWrtUpperTarget = consistentImprovementWrtUpperTarget;
+                    newConsistentImprovementWrtLowerTarget = consistentImprovementWrtLowerTarget;
+                    // update usefulness of current, extended stretch
+                    newImprovementWrtUpperTarget = curImprovementWrtUpperTarget || improvementWrtUpperHaplotype(chrom, ichrom, locus, haplotypePicked);
+                    newImprovementWrtLowerTarget = curImprovementWrtLowerTarget || improvementWrtLowerHaplotype(chrom, ichrom, locus, haplotypePicked);
+                } else {
+                    // other haplotype picked (cross-over)
+                    newP = curP * r;
+                    // current stretch complete: update previous consistent improvement indicators
+                    // to include the currently completed stretch
+                    newConsistentImprovementWrtUpperTarget = consistentImprovementWrtUpperTarget && curImprovementWrtUpperTarget;
+                    newConsistentImprovementWrtLowerTarget = consistentImprovementWrtLowerTarget && curImprovementWrtLowerTarget;
+                    // pruning: first check if max number of crossovers exceeded
+                    prune = (maxNumCrossovers != GenestackerConstants.UNLIMITED_CROSSOVERS && newNumCrossovers > maxNumCrossovers);
+                    // if not exceeded: check pruning on improvement
                     if(!prune){
-                        // recursion
-                        genChromosomeGametes(parent, otherParent, desiredAllelicFreqs, chromIndex, haplotypes, curHaplotype, newP, locus+1, locus, haplotypePicked,
-                                newImprovementWrtUpperTarget, newConsistentImprovementWrtUpperTarget, newImprovementWrtLowerTarget, newConsistentImprovementWrtLowerTarget,
-                                newNumCrossovers);
+                        if(consistent){
+                            // check for consistent improvement on all stretches towards one of both target haplotypes
+                            prune = !(newConsistentImprovementWrtUpperTarget || newConsistentImprovementWrtLowerTarget);
+                        } else {
+                            // check for improvement of current stretch towards one of the targets
+                            prune = !(curImprovementWrtUpperTarget || curImprovementWrtLowerTarget);
+                        }
                     }
-
-                    // backtracking: remove last target
-                    curHaplotype.removeLast();
-                    
+                    // set initial usefulness of new stretch started at this locus
+                    // (checks if improvement w.r.t same target as previous stretches,
+                    // including the one which was just completed in this step)
+                    newImprovementWrtUpperTarget = improvementWrtUpperHaplotype(chrom, ichrom, locus, haplotypePicked);
+                    newImprovementWrtLowerTarget = improvementWrtLowerHaplotype(chrom, ichrom, locus, haplotypePicked);
                 }
                 
-            }
+                if(!prune){
+                    // recursion
+                    genChromosomeGametes(parent, otherParent, desiredAllelicFreqs, chromIndex, haplotypes, curHaplotype, newP, hetIndex+1, haplotypePicked,
+                            newImprovementWrtUpperTarget, newConsistentImprovementWrtUpperTarget, newImprovementWrtLowerTarget, newConsistentImprovementWrtLowerTarget,
+                            newNumCrossovers);
+                }
             
-        }
+            }
         
+        }
+    
     }
     
     /**
@@ -281,27 +271,145 @@ public class HeuristicSeedLotConstructor extends DefaultSeedLotConstructor {
                  && chrom.getHaplotypes()[1-haplotypePicked].targetPresent(locus) != ichrom.getHaplotypes()[1].targetPresent(locus));
     }
     
+    /**
+     * Creates the seed lot containing the heuristically generated genotypes. As the heuristic does not generate all
+     * gametes, the probabilities obtained when combining these gametes may be incomplete, and the generated genotypes
+     * do not cover the full genotype groups sharing the same allelic frequencies. Therefore, the exact probability of
+     * each generated genotype and the probability of its allelic frequencies are computed in closed form, chromosome
+     * by chromosome, so that linkage phase ambiguities are also computed correctly without enumerating the full
+     * genotype groups. Probabilities are computed only once for each distinct chromosome and chromosome allelic
+     * frequencies occurring among the generated genotypes.
+     * 
+     * @param parent1 parental genotype 1
+     * @param parent2 parental genotype 2
+     * @param genotypeProbs heuristically generated genotypes
+     * @return seed lot containing the heuristically generated genotypes
+     */
     @Override
     protected SeedLot genSeedLotFromGenotypes(Genotype parent1, Genotype parent2, Map<Genotype, Double> genotypeProbs){
-        try {
-            // after the interesting genotypes have been heuristically generated, apply
-            // the default seed lot construction to construct the full genotype groups of only
-            // those genotypes sharing their observation with one of the interesting genotypes,
-            // to allow for an accurate computation of group probabilities and especially linkage phase ambiguity
-            SeedLot sl = defaultConstructor.partialCross(parent1, parent2, genotypeProbs.keySet());
-            // now that computation of LPA/probabilities is complete, again filter the undesired genotypes
-            for(Genotype g : sl.getGenotypes()){
-                if(!genotypeProbs.containsKey(g)){
-                    // not desired
-                    sl.filterGenotype(g);
+        int n = genotypeProbs.size();
+        int nrOfChromosomes = parent1.nrOfChromosomes();
+        // probabilities of child chromosomes and observations, per chromosome index
+        List<Map<DiploidChromosome, Double>> chromProbs = new ArrayList<>(nrOfChromosomes);
+        List<Map<ChromosomeAllelicFrequencies, Double>> obsProbs = new ArrayList<>(nrOfChromosomes);
+        for(int c=0; c<nrOfChromosomes; c++){
+            chromProbs.add(new HashMap<DiploidChromosome, Double>());
+            obsProbs.add(new HashMap<ChromosomeAllelicFrequencies, Double>());
+        }
+        // flatten genotypes and compute exact probabilities
+        Genotype[] offspring = new Genotype[n];
+        double[] probs = new double[n];
+        double[] groupProbs = new double[n];
+        int i = 0;
+        for(Genotype g : genotypeProbs.keySet()){
+            double p = 1.0;
+            double obsP = 1.0;
+            for(int c=0; c<nrOfChromosomes; c++){
+                DiploidChromosome parentChrom1 = parent1.getChromosomes().get(c);
+                DiploidChromosome parentChrom2 = parent2.getChromosomes().get(c);
+                // probability of chromosome
+                DiploidChromosome chrom = g.getChromosomes().get(c);
+                Double chromP = chromProbs.get(c).get(chrom);
+                if(chromP == null){
+                    chromP = chromosomeProbability(parentChrom1, parentChrom2, c, chrom);
+                    chromProbs.get(c).put(chrom, chromP);
+                }
+                p *= chromP;
+                // probability of observation
+                ChromosomeAllelicFrequencies obs = chrom.getAllelicFrequencies();
+                Double chromObsP = obsProbs.get(c).get(obs);
+                if(chromObsP == null){
+                    chromObsP = observationProbability(parentChrom1, parentChrom2, c, obs);
+                    obsProbs.get(c).put(obs, chromObsP);
                 }
+                obsP *= chromObsP;
+            }
+            offspring[i] = g;
+            probs[i] = p;
+            groupProbs[i] = obsP;
+            i++;
+        }
+        // uniform seed lot if both parents are fully homozygous
+        boolean uniform = parent1.isHomozygousAtAllContainedLoci() && parent2.isHomozygousAtAllContainedLoci();
+        return new SeedLot(uniform, offspring, probs, groupProbs);
+    }
+    
+    @Override
+    protected SeedLot genSeedLotFromGenotypes(Genotype parent1, Genotype parent2, Map<Genotype, Double> genotypeProbs,
+                                                List<Map<DiploidChromosome, Double>> possibleChromosomes){
+        // heuristically generated chromosomes do not include all possible chromosomes, so that observation
+        // probabilities can not be inferred from them: compute them in closed form
+        return genSeedLotFromGenotypes(parent1, parent2, genotypeProbs);
+    }
+    
+    /**
+     * Computes the exact probabilities of the heuristically generated diploid chromosomes, which may be higher than the
+     * probabilities obtained by combining the heuristically generated gametes (e.g. for asymmetric parents, where some
+     * gametes are only generated for one of both parents). Pruning improbable offspring is then based on the same
+     * probabilities as those assigned to the genotypes in the constructed seed lot.
+     * 
+     * @param g1 genotype 1
+     * @param g2 genotype 2
+     * @param chromIndex chromosome index
+     * @param diploidChroms heuristically generated diploid chromosomes at the given index, with their probabilities
+     * @return exact probabilities of the generated diploid chromosomes
+     */
+    @Override
+    protected Map<DiploidChromosome, Double> getExactChromosomeProbabilities(Genotype g1, Genotype g2, int chromIndex,
+                                                                             Map<DiploidChromosome, Double> diploidChroms){
+        DiploidChromosome parentChrom1 = g1.getChromosomes().get(chromIndex);
+        DiploidChromosome parentChrom2 = g2.getChromosomes().get(chromIndex);
+        Map<DiploidChromosome, Double> exact = new HashMap<>();
+        for(DiploidChromosome chrom : diploidChroms.keySet()){
+            exact.put(chrom, chromosomeProbability(parentChrom1, parentChrom2, chromIndex, chrom));
+        }
+        return exact;
+    }
+    
+    /**
+     * Computes the probability of the given child genotype in agreement with the heuristic seed lot construction,
+     * i.e. the child is only considered to be obtainable if, at each chromosome index, one of both haplotypes of the
+     * child chromosome is among the heuristically generated gametes of the first parent, while the other haplotype
+     * can be produced by the second parent. If so, the probabilities are computed in
+     * exactly the same way as for the default seed lot constructor, as is also the case for heuristically
+     * constructed seed lots.
+     * 
+     * @param parent1 parental genotype 1
+     * @param parent2 parental genotype 2
+     * @param child child genotype
+     * @return probability and observation probability of the child genotype, or zero probabilities if the
+     *         child is not obtained when heuristically crossing the given parents
+     * @throws GenotypeException if the given genotypes are not compatible
+     */
+    @Override
+    public OffspringProbability probabilityOf(Genotype parent1, Genotype parent2, Genotype child) throws GenotypeException{
+        checkCompatibility(parent1, parent2);
+        checkCompatibility(parent1, child);
+        for(int c=0; c<child.nrOfChromosomes(); c++){
+            Map<Haplotype, Double> gametes = getChromosomeGametes(parent1, c);
+            DiploidChromosome chrom2 = parent2.getChromosomes().get(c);
+            Haplotype[] haps = child.getChromosomes().get(c).getHaplotypes();
+            // check whether one of both haplotypes is heuristically generated from parent 1
+            // while the complementary haplotype can be produced by parent 2
+            if(!(gametes.containsKey(haps[0]) && gameteProbability(chrom2, c, haps[1]) > 0.0)
+                    && !(gametes.containsKey(haps[1]) && gameteProbability(chrom2, c, haps[0]) > 0.0)){
+                // not generated by heuristic
+                return new OffspringProbability(0.0, 0.0);
             }
-            // return final seed lot
-            return sl;
-        } catch (GenotypeException shouldNotHappen) {
-            // should never happen as the same parents have already been successfully crossed
-            throw new RuntimeException("[SHOULD NOT HAPPEN] Error in heuristic seed lot generator (should never happen, this is a bug!)", shouldNotHappen);            
         }
+        return super.probabilityOf(parent1, parent2, child);
+    }
+    
+    /**
+     * Extends the default description with the maximum number of crossovers, the consistency requirement and
+     * the ideotype, which all affect the heuristically generated gametes.
+     * 
+     * @return description of the configuration of this constructor
+     */
+    @Override
+    public String describeConfiguration(){
+        return super.describeConfiguration() + "[maxNumCrossovers=" + maxNumCrossovers + ", consistent=" + consistent
+                                             + ", ideotype=" + ideotype + "]";
     }
 
 }
@@ -36,7 +36,8 @@ public class RestrictedHaplotypesSeedLotFilter implements SeedLotFilter {
     
     @Override
     public SeedLot filterSeedLot(SeedLot seedLot) {
-        for(Genotype g : seedLot.getGenotypes()){
+        for(int i = seedLot.nextGenotypeIndex(0); i >= 0; i = seedLot.nextGenotypeIndex(i+1)){
+            Genotype g = seedLot.getGenotype(i);
             // check chromosomes
             boolean filter = false;
             int c = 0;
@@ -49,7 +50,7 @@ public class RestrictedHaplotypesSeedLotFilter implements SeedLotFilter {
                 c++;
             }
             if(filter){
-                seedLot.filterGenotype(g);
+                seedLot.filterGenotype(i);
             }
         }
         return seedLot;
@@ -0,0 +1,242 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread safe map with primitive long keys, split into a fixed number of stripes, each of which is
+ * an open addressing hash table with linear probing (see {@link LongObjectHashMap}). Reads do not
+ * lock: each stripe publishes its table through a volatile reference, and slots are read and written
+ * atomically. Updates lock the affected stripe only, so that threads updating keys in different
+ * stripes do not block each other. Removed entries leave a marker in their slot until the table is
+ * rebuilt, so that concurrent readers never miss an entry that is not being removed. Null values
+ * are not allowed.
+ *
+ * @param <V> value type
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class ConcurrentLongObjectMap<V> {
+
+    // number of stripes (power of two)
+    private static final int NUM_STRIPES = 32;
+
+    // maximum fraction of occupied slots (including removed entries) before rebuilding a table
+    private static final double MAX_LOAD = 0.6;
+
+    // marks the slot of a removed entry
+    private static final Object REMOVED = new Object();
+
+    // stripes
+    private final Stripe[] stripes;
+
+    public ConcurrentLongObjectMap(){
+        stripes = new Stripe[NUM_STRIPES];
+        for(int i=0; i<NUM_STRIPES; i++){
+            stripes[i] = new Stripe();
+        }
+    }
+
+    // select stripe based on upper bits of the mixed key (lower bits are used within the stripe)
+    private Stripe stripe(long key){
+        return stripes[(int) (LongObjectHashMap.mix(key) >>> 59) & (NUM_STRIPES - 1)];
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key){
+        Table t = stripe(key).table;
+        int mask = t.capacity - 1;
+        int i = (int) LongObjectHashMap.mix(key) & mask;
+        Object v;
+        // the key of a slot is always written before its value
+        while((v = t.values.get(i)) != null){
+            if(t.keys.get(i) == key){
+                return v == REMOVED ? null : (V) v;
+            }
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    public V put(long key, V value){
+        return put(key, value, false);
+    }
+
+    /**
+     * Associate the given value with the given key, unless the key is already present.
+     *
+     * @param key key
+     * @param value value (not <code>null</code>)
+     * @return value that was already associated with the key, <code>null</code> if the
+     *         given value has been stored
+     */
+    public V putIfAbsent(long key, V value){
+        return put(key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private V put(long key, V value, boolean onlyIfAbsent){
+        if(value == null){
+            throw new NullPointerException("Null values are not allowed");
+        }
+        Stripe s = stripe(key);
+        synchronized(s){
+            Table t = s.table;
+            int i = t.slot(key);
+            Object prev = t.values.get(i);
+            if(prev == null){
+                // new slot: write key before value
+                t.keys.set(i, key);
+                t.values.set(i, value);
+                s.used++;
+                s.size++;
+                if(s.used > t.capacity * MAX_LOAD){
+                    s.rebuild();
+                }
+                return null;
+            } else if(prev == REMOVED){
+                // reuse slot of removed entry with the same key
+                t.values.set(i, value);
+                s.size++;
+                return null;
+            } else {
+                if(!onlyIfAbsent){
+                    t.values.set(i, value);
+                }
+                return (V) prev;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long key){
+        Stripe s = stripe(key);
+        synchronized(s){
+            Table t = s.table;
+            int i = t.slot(key);
+            Object prev = t.values.get(i);
+            if(prev == null || prev == REMOVED){
+                return null;
+            }
+            t.values.set(i, REMOVED);
+            s.size--;
+            return (V) prev;
+        }
+    }
+
+    /**
+     * Remove the entry with the given key, only if it is currently associated with the given value
+     * (compared by reference).
+     *
+     * @param key key
+     * @param value expected value
+     * @return <code>true</code> if the entry has been removed
+     */
+    public boolean remove(long key, V value){
+        Stripe s = stripe(key);
+        synchronized(s){
+            Table t = s.table;
+            int i = t.slot(key);
+            if(value == null || t.values.get(i) != value){
+                return false;
+            }
+            t.values.set(i, REMOVED);
+            s.size--;
+            return true;
+        }
+    }
+
+    public int size(){
+        int size = 0;
+        for(Stripe s : stripes){
+            size += s.size;
+        }
+        return size;
+    }
+
+    public void clear(){
+        for(Stripe s : stripes){
+            synchronized(s){
+                s.table = new Table(Table.MIN_CAPACITY);
+                s.used = 0;
+                s.size = 0;
+            }
+        }
+    }
+
+    // stripe of the map, locked when updated
+    private static final class Stripe {
+
+        // current table (replaced when rebuilt)
+        private volatile Table table = new Table(Table.MIN_CAPACITY);
+        // number of entries
+        private volatile int size = 0;
+        // number of occupied slots, including removed entries
+        private int used = 0;
+
+        // rebuild table without removed entries, doubling the capacity if required (called while holding the lock)
+        private void rebuild(){
+            Table old = table;
+            int capacity = Table.MIN_CAPACITY;
+            while(capacity * MAX_LOAD < 2 * size){
+                capacity *= 2;
+            }
+            Table t = new Table(capacity);
+            for(int i=0; i<old.capacity; i++){
+                Object v = old.values.get(i);
+                if(v != null && v != REMOVED){
+                    long key = old.keys.get(i);
+                    int j = t.slot(key);
+                    t.keys.set(j, key);
+                    t.values.set(j, v);
+                }
+            }
+            used = size;
+            // publish
+            table = t;
+        }
+
+    }
+
+    // hash table of a stripe (null value = empty slot)
+    private static final class Table {
+
+        private static final int MIN_CAPACITY = 16;
+
+        private final int capacity;
+        private final AtomicLongArray keys;
+        private final AtomicReferenceArray<Object> values;
+
+        public Table(int capacity){
+            this.capacity = capacity;
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicReferenceArray<>(capacity);
+        }
+
+        // find slot containing the given key (possibly removed), or the empty slot where it should be inserted
+        private int slot(long key){
+            int mask = capacity - 1;
+            int i = (int) LongObjectHashMap.mix(key) & mask;
+            while(values.get(i) != null && keys.get(i) != key){
+                i = (i + 1) & mask;
+            }
+            return i;
+        }
+
+    }
+
+}
@@ -0,0 +1,182 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.util;
+
+import java.util.Arrays;
+
+/**
+ * Hash map with primitive long keys, using open addressing with linear probing. Keys are stored
+ * in a plain long array so that no key objects or entry objects are created. Null values are not
+ * allowed (null indicates an empty slot). This implementation is not thread safe.
+ *
+ * @param <V> value type
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class LongObjectHashMap<V> {
+
+    // maximum fraction of occupied slots before resizing
+    private static final double MAX_LOAD = 0.6;
+
+    // keys and values (null value = empty slot)
+    private long[] keys;
+    private Object[] values;
+
+    // number of entries
+    private int size;
+
+    public LongObjectHashMap(){
+        this(16);
+    }
+
+    /**
+     * Create an empty map which can hold the given number of entries without resizing.
+     *
+     * @param expectedSize expected number of entries
+     */
+    public LongObjectHashMap(int expectedSize){
+        int capacity = 16;
+        while(capacity * MAX_LOAD < expectedSize){
+            capacity *= 2;
+        }
+        keys = new long[capacity];
+        values = new Object[capacity];
+        size = 0;
+    }
+
+    /**
+     * Mix bits of the key (finalizer of the 64-bit MurmurHash3 algorithm).
+     *
+     * @param key key
+     * @return mixed hash
+     */
+    public static long mix(long key){
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    // find slot containing the given key, or the empty slot where it should be inserted
+    private int slot(long key){
+        int mask = keys.length - 1;
+        int i = (int) mix(key) & mask;
+        while(values[i] != null && keys[i] != key){
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Get the value associated with the given key.
+     *
+     * @param key key
+     * @return associated value, <code>null</code> if none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key){
+        return (V) values[slot(key)];
+    }
+
+    public boolean containsKey(long key){
+        return values[slot(key)] != null;
+    }
+
+    /**
+     * Associate the given value with the given key.
+     *
+     * @param key key
+     * @param value value (not <code>null</code>)
+     * @return previous value associated with the key, <code>null</code> if none
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value){
+        if(value == null){
+            throw new NullPointerException("Null values are not allowed");
+        }
+        int i = slot(key);
+        V prev = (V) values[i];
+        keys[i] = key;
+        values[i] = value;
+        if(prev == null){
+            size++;
+            if(size > keys.length * MAX_LOAD){
+                resize(2 * keys.length);
+            }
+        }
+        return prev;
+    }
+
+    /**
+     * Remove the value associated with the given key, if any.
+     *
+     * @param key key
+     * @return removed value, <code>null</code> if none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key){
+        int mask = keys.length - 1;
+        int i = slot(key);
+        V prev = (V) values[i];
+        if(prev != null){
+            // shift subsequent entries of the probe sequence backwards to fill the gap
+            int gap = i;
+            int j = (gap + 1) & mask;
+            while(values[j] != null){
+                int home = (int) mix(keys[j]) & mask;
+                // move entry j to the gap if its home slot does not lie cyclically in (gap, j]
+                if(((j - home) & mask) >= ((j - gap) & mask)){
+                    keys[gap] = keys[j];
+                    values[gap] = values[j];
+                    gap = j;
+                }
+                j = (j + 1) & mask;
+            }
+            values[gap] = null;
+            size--;
+        }
+        return prev;
+    }
+
+    private void resize(int capacity){
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        for(int i=0; i<oldKeys.length; i++){
+            if(oldValues[i] != null){
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public void clear(){
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+}
@@ -14,6 +14,7 @@
 
 package org.ugent.caagt.genestacker;
 
+import java.util.Random;
 import junit.framework.TestCase;
 import org.junit.Test;
 import org.ugent.caagt.genestacker.exceptions.GenestackerException;
@@ -283,4 +284,72 @@ public class ChromosomeTest extends TestCase {
         assertFalse(chr3.getAllelicFrequencies().equals(chr1.getAllelicFrequencies()));
     }
     
+    @Test
+    public void testMayProduceGamete() throws GenestackerException{
+        
+        System.out.println("\n### MAY PRODUCE GAMETE ###\n");
+        
+        Random rg = new Random();
+        for(int n : new int[]{1, 5, 64, 65, 130}){
+            for(int t=0; t<20; t++){
+                boolean[] t1 = new boolean[n];
+                boolean[] t2 = new boolean[n];
+                boolean[] g = new boolean[n];
+                for(int l=0; l<n; l++){
+                    t1[l] = rg.nextBoolean();
+                    t2[l] = rg.nextBoolean();
+                    // mostly pick alleles from parent chromosome
+                    g[l] = rg.nextInt(50) == 0 ? rg.nextBoolean() : (rg.nextBoolean() ? t1[l] : t2[l]);
+                }
+                DiploidChromosome chrom = new DiploidChromosome(new Haplotype(t1), new Haplotype(t2));
+                Haplotype gamete = new Haplotype(g);
+                // compare with per-locus check
+                boolean expected = true;
+                for(int l=0; l<n; l++){
+                    AllelicFrequency f = chrom.getAllelicFrequencies().getAllelicFrequencies()[l];
+                    assertEquals(f, chrom.getAllelicFrequency(l));
+                    assertEquals(t1[l] == t2[l], chrom.isHomozygousAtLocus(l));
+                    expected = expected && (g[l] ? f != AllelicFrequency.NONE : f != AllelicFrequency.TWICE);
+                }
+                assertEquals(expected, chrom.mayProduceGamete(gamete));
+                // both haplotypes can always be produced
+                assertTrue(chrom.mayProduceGamete(chrom.getHaplotypes()[0]));
+                assertTrue(chrom.mayProduceGamete(chrom.getHaplotypes()[1]));
+            }
+        }
+    }
+    
+    @Test
+    public void testHeterozygousLoci() throws GenestackerException{
+        
+        System.out.println("\n### HETEROZYGOUS LOCI ###\n");
+        
+        Random rg = new Random();
+        for(int n : new int[]{1, 5, 64, 65, 130}){
+            for(int t=0; t<20; t++){
+                boolean[] t1 = new boolean[n];
+                boolean[] t2 = new boolean[n];
+                for(int l=0; l<n; l++){
+                    t1[l] = rg.nextBoolean();
+                    // mostly homozygous
+                    t2[l] = rg.nextInt(10) == 0 ? !t1[l] : t1[l];
+                }
+                DiploidChromosome chrom = new DiploidChromosome(new Haplotype(t1), new Haplotype(t2));
+                // compare with per-locus check
+                int[] het = chrom.getHeterozygousLoci();
+                assertEquals(het.length, chrom.nrOfHeterozygousLoci());
+                int j = 0;
+                for(int l=0; l<n; l++){
+                    if(chrom.isHeterozygousAtLocus(l)){
+                        assertEquals(l, het[j++]);
+                    }
+                    boolean homozygousTarget = (chrom.getHomozygousTargets(l >>> 6) & (1L << l)) != 0;
+                    assertEquals(chrom.getAllelicFrequency(l) == AllelicFrequency.TWICE, homozygousTarget);
+                }
+                assertEquals(het.length, j);
+                assertEquals(het.length == 0, chrom.isHomozygousAtAllContainedLoci());
+            }
+        }
+    }
+    
 }
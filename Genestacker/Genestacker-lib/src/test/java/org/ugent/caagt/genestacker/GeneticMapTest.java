@@ -16,6 +16,7 @@ package org.ugent.caagt.genestacker;
 
 import java.text.DecimalFormat;
 import java.util.Arrays;
+import java.util.Random;
 import junit.framework.TestCase;
 import org.junit.Test;
 
@@ -103,4 +104,55 @@ public class GeneticMapTest extends TestCase {
         assertEquals(0.0, map.getRecombinationProbability(2, 1, 1), precision);
         
     }
+    
+    @Test
+    public void testDenseGeneticMap(){
+        
+        System.out.println("\n### DENSE GENETIC MAP TEST ###\n");
+        
+        // dense map with many loci per chromosome
+        Random rg = new Random(42);
+        double[][] d = new double[3][];
+        for(int i=0; i<d.length; i++){
+            d[i] = new double[1000*(i+1)];
+            for(int j=0; j<d[i].length; j++){
+                d[i][j] = 0.5 * rg.nextDouble();
+            }
+        }
+        long start = System.currentTimeMillis();
+        GeneticMap map = new GeneticMap(d, new HaldaneMapFunction());
+        System.out.println("Constructed map with " + (d[0].length + d[1].length + d[2].length + 3)
+                            + " loci in " + (System.currentTimeMillis() - start) + " ms");
+        GeneticMap lazy = new GeneticMap(d, new HaldaneMapFunction(), true);
+        
+        // compare with direct summation of distances
+        double precision = 1e-12;
+        DistanceMapFunction haldane = new HaldaneMapFunction();
+        for(int t=0; t<1000; t++){
+            int c = rg.nextInt(d.length);
+            int l1 = rg.nextInt(d[c].length+1);
+            int l2 = rg.nextInt(d[c].length+1);
+            double dist = 0.0;
+            for(int l=Math.min(l1, l2); l<Math.max(l1, l2); l++){
+                dist += d[c][l];
+            }
+            double expected = l1 == l2 ? 0.0 : haldane.computeRecombinationFraction(dist);
+            assertEquals(expected, map.getRecombinationProbability(c, l1, l2), precision);
+            assertEquals(expected, lazy.getRecombinationProbability(c, l1, l2), precision);
+        }
+        
+        // changing the map function recomputes all probabilities
+        GeneticMap kosambi = new GeneticMap(d, new KosambiMapFunction());
+        map.setDistanceMapFunction(new KosambiMapFunction());
+        lazy.setDistanceMapFunction(new KosambiMapFunction());
+        for(int t=0; t<1000; t++){
+            int c = rg.nextInt(d.length);
+            int l1 = rg.nextInt(d[c].length+1);
+            int l2 = rg.nextInt(d[c].length+1);
+            assertEquals(kosambi.getRecombinationProbability(c, l1, l2), map.getRecombinationProbability(c, l1, l2));
+            assertEquals(kosambi.getRecombinationProbability(c, l1, l2), lazy.getRecombinationProbability(c, l1, l2));
+        }
+    
+    }
+
 }
@@ -15,16 +15,24 @@
 package org.ugent.caagt.genestacker;
 
 import java.text.DecimalFormat;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import junit.framework.TestCase;
 import org.junit.Test;
 import org.ugent.caagt.genestacker.exceptions.GenestackerException;
 import org.ugent.caagt.genestacker.exceptions.GenotypeException;
+import org.ugent.caagt.genestacker.search.bb.ChromosomeCache;
 import org.ugent.caagt.genestacker.search.bb.DefaultSeedLotConstructor;
+import org.ugent.caagt.genestacker.search.bb.OffspringProbability;
 import org.ugent.caagt.genestacker.search.bb.SeedLotConstructor;
+import org.ugent.caagt.genestacker.search.bb.heuristics.HeuristicSeedLotConstructor;
 
 /**
  *
@@ -457,6 +465,22 @@ public class GenotypeTest extends TestCase {
                 assertEquals(1.0, sum, precision);
             }
         }
+        
+        /*********************************************/
+        /* TOO MANY FREE HETEROZYGOUS LOCI: REJECTED */
+        /*********************************************/
+        
+        boolean[] top = new boolean[64];
+        boolean[] bottom = new boolean[64];
+        Arrays.fill(top, true);
+        Genotype het = new Genotype(Arrays.asList(new DiploidChromosome(new Haplotype(top), new Haplotype(bottom))));
+        seedLotConstructor = new DefaultSeedLotConstructor(genRandomGeneticMap(het));
+        try {
+            seedLotConstructor.genGametesPerChromosome(het);
+            fail("Gametes should not be enumerated for 64 free heterozygous loci");
+        } catch (GenotypeException ex){
+            // expected
+        }
 
     }
     
@@ -541,6 +565,408 @@ public class GenotypeTest extends TestCase {
         
     }
     
+    @Test
+    public void testIntern() throws GenestackerException{
+
+        System.out.println("\n### INTERN GENOTYPES ###\n");
+
+        GenotypePool pool = new GenotypePool();
+        for(int i=0; i<100; i++){
+            Genotype g = genRandomGenotype();
+            // deep copy
+            List<DiploidChromosome> chroms = new ArrayList<>();
+            for(DiploidChromosome c : g.getChromosomes()){
+                chroms.add(new DiploidChromosome(new Haplotype(c.getHaplotypes()[0]),
+                                                 new Haplotype(c.getHaplotypes()[1])));
+            }
+            Genotype copy = new Genotype(chroms);
+            // interning equal genotypes yields the same canonical instance
+            Genotype c1 = pool.intern(g);
+            Genotype c2 = pool.intern(copy);
+            assertSame(c1, c2);
+            assertSame(c1, pool.intern(c1));
+            // dense ids
+            assertTrue(pool.getId(c1) < pool.nrOfGenotypes());
+            assertSame(c1, pool.getGenotype(pool.getId(copy)));
+            // canonical instances still equal non-canonical ones
+            assertEquals(c1, g);
+            assertEquals(c1, copy);
+            assertEquals(copy, c1);
+            assertEquals(c1.hashCode(), copy.hashCode());
+            // chromosomes of canonical genotype are canonical as well
+            for(DiploidChromosome c : c1.getChromosomes()){
+                assertSame(c, pool.intern(c));
+            }
+        }
+
+        // distinct canonical genotypes are never equal
+        Genotype g1 = pool.intern(genRandomGenotype(2, new int[]{3,3}));
+        Genotype g2 = pool.intern(genRandomGenotype(2, new int[]{3,3}));
+        assertEquals(g1 == g2, g1.equals(g2));
+
+        // lookups do not intern genotypes
+        GenotypePool fresh = new GenotypePool();
+        Genotype g = genRandomGenotype();
+        assertEquals(-1, fresh.lookupId(g));
+        assertEquals(-1L, fresh.lookupPairKey(g, g1));
+        assertEquals(0, fresh.nrOfGenotypes());
+        int id = fresh.getId(g);
+        assertEquals(id, fresh.lookupId(g));
+        assertEquals(GenotypePool.pairKey(id, id), fresh.lookupPairKey(g, g));
+
+        // concurrent interning yields a single canonical instance per genotype, with a consistent id
+        final List<Genotype> genotypes = new ArrayList<>();
+        for(int i=0; i<200; i++){
+            genotypes.add(genRandomGenotype());
+        }
+        final GenotypePool shared = new GenotypePool();
+        final Genotype[][] interned = new Genotype[4][genotypes.size()];
+        Thread[] threads = new Thread[interned.length];
+        for(int t=0; t<threads.length; t++){
+            final int thread = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for(int i=0; i<genotypes.size(); i++){
+                        interned[thread][i] = shared.intern(genotypes.get(i));
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread t : threads){
+            try {
+                t.join();
+            } catch (InterruptedException ex){
+                fail("Interrupted while interning genotypes.");
+            }
+        }
+        for(int i=0; i<genotypes.size(); i++){
+            Genotype c = interned[0][i];
+            for(int t=1; t<threads.length; t++){
+                assertSame(c, interned[t][i]);
+            }
+            assertSame(c, shared.getGenotype(shared.getId(c)));
+            assertEquals(shared.getId(c), shared.lookupId(genotypes.get(i)));
+        }
+
+    }
+
+    @Test
+    public void testAllelicFrequencies() throws GenestackerException{
+
+        System.out.println("\n### ALLELIC FREQUENCIES ###\n");
+
+        for(int i=0; i<200; i++){
+            int[] numLoci = new int[]{rg.nextInt(40)+1, rg.nextInt(40)+1};
+            GenotypeAllelicFrequencies f1 = genRandomGenotype(2, numLoci).getAllelicFrequencies();
+            GenotypeAllelicFrequencies f2 = genRandomGenotype(2, numLoci).getAllelicFrequencies();
+            // packed key equality should agree with per-chromosome equality
+            boolean expected = f1.getChromosomeAllelicFrequencies().equals(f2.getChromosomeAllelicFrequencies());
+            assertEquals(expected, f1.equals(f2));
+            if(expected){
+                assertEquals(f1.hashCode(), f2.hashCode());
+            }
+        }
+
+        // same packed frequencies but different structure
+        Genotype g1 = new Genotype(Arrays.asList(
+                new DiploidChromosome(new Haplotype(new boolean[]{true, false}), new Haplotype(new boolean[]{true, true}))
+        ));
+        Genotype g2 = new Genotype(Arrays.asList(
+                new DiploidChromosome(new Haplotype(new boolean[]{true}), new Haplotype(new boolean[]{true})),
+                new DiploidChromosome(new Haplotype(new boolean[]{false}), new Haplotype(new boolean[]{true}))
+        ));
+        assertFalse(g1.getAllelicFrequencies().equals(g2.getAllelicFrequencies()));
+
+    }
+
+    @Test
+    public void testSeedLotViews() throws GenestackerException{
+
+        System.out.println("\n### SEED LOT VIEWS ###\n");
+
+        for(int t=0; t<20; t++){
+            Genotype g1 = genRandomGenotype(2, new int[]{3, 4});
+            Genotype g2 = genRandomGenotype(2, new int[]{3, 4});
+            SeedLot sl = new DefaultSeedLotConstructor(genRandomGeneticMap(g1)).cross(g1, g2);
+            // compare indexed iteration with set and group views
+            int n = 0;
+            double sum = 0.0;
+            for(int i = sl.nextGenotypeIndex(0); i >= 0; i = sl.nextGenotypeIndex(i+1)){
+                Genotype g = sl.getGenotype(i);
+                GenotypeGroupWithSameAllelicFrequencies group = sl.getGenotypeGroup(g.getAllelicFrequencies());
+                assertSame(group, sl.getGenotypeGroup(i));
+                assertTrue(sl.getGenotypes().contains(g));
+                assertTrue(group.getGenotypes().contains(g));
+                assertEquals(group.getProbabilityOfPhaseKnownGenotype(g), sl.getProbabilityOfPhaseKnownGenotype(i));
+                assertEquals(group.getLinkagePhaseAmbiguity(g), sl.getLinkagePhaseAmbiguity(i), 1e-12);
+                sum += sl.getProbabilityOfPhaseKnownGenotype(i);
+                n++;
+            }
+            assertEquals(sl.nrOfGenotypes(), n);
+            assertEquals(n, sl.getGenotypes().size());
+            assertEquals(1.0, sum, 1e-9);
+            // filter all genotypes from a view, without affecting the original seed lot
+            SeedLot view = sl.createView();
+            assertEquals(n, view.nrOfGenotypes());
+            for(Genotype g : view.getGenotypes()){
+                assertTrue(view.filterGenotype(g));
+            }
+            assertEquals(0, view.nrOfGenotypes());
+            assertTrue(view.getAllelicFrequencies().isEmpty());
+            assertEquals(n, sl.nrOfGenotypes());
+            // filter every other genotype while iterating over the set view
+            int k = 0;
+            int filtered = 0;
+            for(Genotype g : sl.getGenotypes()){
+                if(k++ % 2 == 0){
+                    assertTrue(sl.filterGenotype(g));
+                    assertFalse(sl.contains(g));
+                    assertFalse(sl.filterGenotype(g));
+                    filtered++;
+                }
+            }
+            assertEquals(n - filtered, sl.nrOfGenotypes());
+            int remaining = 0;
+            for(GenotypeAllelicFrequencies freqs : sl.getAllelicFrequencies()){
+                assertTrue(sl.nrOfGenotypes(freqs) > 0);
+                remaining += sl.getGenotypeGroup(freqs).getGenotypes().size();
+            }
+            assertEquals(n - filtered, remaining);
+        }
+
+    }
+
+    @Test
+    public void testParallelCross() throws GenestackerException{
+
+        System.out.println("\n### PARALLEL CROSS ###\n");
+
+        ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+        for(int t=0; t<5; t++){
+            Genotype g1 = genRandomGenotype(4, new int[]{3, 3, 3, 3});
+            Genotype g2 = genRandomGenotype(4, new int[]{3, 3, 3, 3});
+            GeneticMap map = genRandomGeneticMap(g1);
+            SeedLot sequential = new DefaultSeedLotConstructor(map).cross(g1, g2);
+            DefaultSeedLotConstructor parallelConstructor = new DefaultSeedLotConstructor(map);
+            parallelConstructor.setForkJoinPool(forkJoinPool);
+            SeedLot parallel = parallelConstructor.cross(g1, g2);
+            System.out.println("Offspring: " + sequential.nrOfGenotypes());
+            // compare both seed lots
+            assertEquals(sequential.nrOfGenotypes(), parallel.nrOfGenotypes());
+            assertEquals(sequential.getAllelicFrequencies(), parallel.getAllelicFrequencies());
+            for(int i = sequential.nextGenotypeIndex(0); i >= 0; i = sequential.nextGenotypeIndex(i+1)){
+                Genotype g = sequential.getGenotype(i);
+                GenotypeGroupWithSameAllelicFrequencies group = parallel.getGenotypeGroup(g.getAllelicFrequencies());
+                assertEquals(sequential.getProbabilityOfPhaseKnownGenotype(i), group.getProbabilityOfPhaseKnownGenotype(g), 1e-12);
+                assertEquals(sequential.getLinkagePhaseAmbiguity(i), group.getLinkagePhaseAmbiguity(g), 1e-12);
+            }
+        }
+        forkJoinPool.shutdown();
+
+    }
+
+    @Test
+    public void testEnumerateOffspring() throws GenestackerException{
+
+        System.out.println("\n### ENUMERATE OFFSPRING ###\n");
+
+        for(int t=0; t<10; t++){
+            Genotype g1 = genRandomGenotype(3, new int[]{3, 2, 3});
+            Genotype g2 = genRandomGenotype(3, new int[]{3, 2, 3});
+            SeedLotConstructor constructor = new DefaultSeedLotConstructor(genRandomGeneticMap(g1));
+            SeedLot sl = constructor.cross(g1, g2);
+            // enumerate all offspring in order of decreasing probability
+            Iterator<Map.Entry<Genotype, Double>> it = constructor.enumerateOffspring(g1, g2);
+            double prevP = 1.0;
+            int n = 0;
+            while(it.hasNext()){
+                Map.Entry<Genotype, Double> child = it.next();
+                assertTrue(child.getValue() <= prevP);
+                prevP = child.getValue();
+                int i = sl.indexOf(child.getKey());
+                assertTrue(i >= 0);
+                assertEquals(sl.getProbabilityOfPhaseKnownGenotype(i), child.getValue());
+                n++;
+            }
+            assertEquals(sl.nrOfGenotypes(), n);
+            // top 5
+            List<Map.Entry<Genotype, Double>> top = constructor.getMostProbableOffspring(g1, g2, 5);
+            assertEquals(Math.min(5, n), top.size());
+            for(int i = sl.nextGenotypeIndex(0); i >= 0; i = sl.nextGenotypeIndex(i+1)){
+                if(!top.contains(new AbstractMap.SimpleImmutableEntry<>(sl.getGenotype(i), sl.getProbabilityOfPhaseKnownGenotype(i)))){
+                    assertTrue(sl.getProbabilityOfPhaseKnownGenotype(i) <= top.get(top.size()-1).getValue());
+                }
+            }
+            // probability threshold
+            double minP = top.get(top.size()-1).getValue();
+            List<Map.Entry<Genotype, Double>> likely = constructor.getOffspringWithMinimumProbability(g1, g2, minP);
+            assertTrue(likely.size() >= top.size());
+            for(Map.Entry<Genotype, Double> child : likely){
+                assertTrue(child.getValue() >= minP);
+            }
+        }
+
+    }
+
+    @Test
+    public void testPrunedCross() throws GenestackerException{
+
+        System.out.println("\n### PRUNED CROSS ###\n");
+
+        for(int t=0; t<40; t++){
+            Genotype g1 = genRandomGenotype(3, new int[]{3, 2, 3});
+            Genotype g2 = genRandomGenotype(3, new int[]{3, 2, 3});
+            SeedLotConstructor constructor;
+            if(t < 10){
+                constructor = new DefaultSeedLotConstructor(genRandomGeneticMap(g1));
+            } else {
+                // heuristic constructor: pruning should be based on exact probabilities
+                Genotype ideotype = genRandomGenotype(3, new int[]{3, 2, 3});
+                constructor = new HeuristicSeedLotConstructor(genRandomGeneticMap(g1), ideotype, 2, t % 2 == 0);
+            }
+            SeedLot full = constructor.cross(g1, g2);
+            if(full.nrOfGenotypes() == 0){
+                continue;
+            }
+            // use median probability as threshold
+            double[] probs = new double[full.nrOfGenotypes()];
+            int n = 0;
+            for(int i = full.nextGenotypeIndex(0); i >= 0; i = full.nextGenotypeIndex(i+1)){
+                probs[n++] = full.getProbabilityOfPhaseKnownGenotype(i);
+            }
+            Arrays.sort(probs);
+            double minP = probs[probs.length/2];
+            SeedLot pruned = constructor.cross(g1, g2, minP);
+            // verify that exactly the genotypes with sufficient probability have been retained,
+            // with unchanged probabilities and linkage phase ambiguities
+            int retained = 0;
+            for(int i = full.nextGenotypeIndex(0); i >= 0; i = full.nextGenotypeIndex(i+1)){
+                int j = pruned.indexOf(full.getGenotype(i));
+                if(full.getProbabilityOfPhaseKnownGenotype(i) >= minP){
+                    assertTrue(j >= 0);
+                    assertEquals(full.getProbabilityOfPhaseKnownGenotype(i), pruned.getProbabilityOfPhaseKnownGenotype(j), 1e-12);
+                    assertEquals(full.getLinkagePhaseAmbiguity(i), pruned.getLinkagePhaseAmbiguity(j), 1e-12);
+                    retained++;
+                } else {
+                    assertTrue(j < 0);
+                }
+            }
+            assertEquals(retained, pruned.nrOfGenotypes());
+            System.out.println("Retained " + retained + "/" + full.nrOfGenotypes() + " genotypes");
+        }
+
+    }
+
+    @Test
+    public void testProbabilityOf() throws GenestackerException{
+
+        System.out.println("\n### PROBABILITY OF OFFSPRING ###\n");
+
+        for(int t=0; t<10; t++){
+            Genotype g1 = genRandomGenotype(3, new int[]{3, 2, 4});
+            Genotype g2 = genRandomGenotype(3, new int[]{3, 2, 4});
+            GeneticMap haldane = genRandomGeneticMap(g1);
+            GeneticMap kosambi = new GeneticMap(haldane.getDistances(), new KosambiMapFunction());
+            for(GeneticMap map : new GeneticMap[]{haldane, kosambi}){
+                SeedLotConstructor constructor = new DefaultSeedLotConstructor(map);
+                SeedLot sl = constructor.cross(g1, g2);
+                // compare with probabilities and linkage phase ambiguities in full seed lot
+                for(int i = sl.nextGenotypeIndex(0); i >= 0; i = sl.nextGenotypeIndex(i+1)){
+                    Genotype child = sl.getGenotype(i);
+                    OffspringProbability op = constructor.probabilityOf(g1, g2, child);
+                    assertTrue(op.isPossible());
+                    assertEquals(sl.getProbabilityOfPhaseKnownGenotype(i), op.getProbabilityOfPhaseKnownGenotype(), 1e-12);
+                    assertEquals(sl.getLinkagePhaseAmbiguity(i), op.getLinkagePhaseAmbiguity(), 1e-12);
+                    assertEquals(sl.getGenotypeGroup(i).getProbabilityOfGenotypeWithArbitraryLinkagePhase(),
+                                 constructor.observationProbability(g1, g2, child.getAllelicFrequencies()), 1e-12);
+                }
+                // genotypes not contained in the seed lot can not be obtained
+                for(int r=0; r<10; r++){
+                    Genotype child = genRandomGenotype(3, new int[]{3, 2, 4});
+                    OffspringProbability op = constructor.probabilityOf(g1, g2, child);
+                    assertEquals(sl.contains(child), op.isPossible());
+                    if(!sl.contains(child)){
+                        assertEquals(0.0, op.getProbabilityOfPhaseKnownGenotype());
+                        if(!sl.getAllelicFrequencies().contains(child.getAllelicFrequencies())){
+                            assertEquals(0.0, constructor.observationProbability(g1, g2, child.getAllelicFrequencies()));
+                        }
+                    }
+                }
+            }
+        }
+
+    }
+
+    @Test
+    public void testChromosomeCache() throws GenestackerException{
+
+        System.out.println("\n### CHROMOSOME CACHE ###\n");
+
+        // symmetric lookup of diploid chromosomes
+        GenotypePool pool = new GenotypePool();
+        ChromosomeCache cache = new ChromosomeCache(pool);
+        Genotype g1 = pool.intern(genRandomGenotype(2, new int[]{3, 3}));
+        Genotype g2 = pool.intern(genRandomGenotype(2, new int[]{3, 3}));
+        DiploidChromosome c1 = g1.getChromosomes().get(1);
+        DiploidChromosome c2 = g2.getChromosomes().get(1);
+        assertNull(cache.getCachedDiploidChromosomes(1, c1, c2));
+        Map<DiploidChromosome, Double> dipChroms = new HashMap<>();
+        assertSame(dipChroms, cache.cacheDiploidChromosomes(1, c1, c2, dipChroms));
+        assertSame(dipChroms, cache.getCachedDiploidChromosomes(1, c2, c1));
+        assertSame(dipChroms, cache.cacheDiploidChromosomes(1, c2, c1, new HashMap<DiploidChromosome, Double>()));
+        assertNull(cache.getCachedDiploidChromosomes(0, c1, c2));
+        cache.clear();
+        assertNull(cache.getCachedDiploidChromosomes(1, c1, c2));
+
+        // bounded cache: recently used entries are retained
+        cache = new ChromosomeCache(pool);
+        List<DiploidChromosome> cachedChroms = new ArrayList<>();
+        for(int i=0; i<20; i++){
+            cachedChroms.add(pool.intern(genRandomGenotype(1, new int[]{20}).getChromosomes().get(0)));
+            Map<Haplotype, Double> gametes = new HashMap<>();
+            gametes.put(cachedChroms.get(i).getHaplotypes()[0], 1.0);
+            cache.cacheGametes(0, cachedChroms.get(i), gametes);
+        }
+        assertEquals(20, cache.size());
+        long perEntry = cache.getMemoryUsage() / 20;
+        assertNotNull(cache.getCachedGametes(0, cachedChroms.get(0)));
+        cache.setMaxMemory(10 * perEntry);
+        assertTrue(cache.getMemoryUsage() <= 10 * perEntry);
+        assertEquals(10, cache.size());
+        assertNotNull(cache.getCachedGametes(0, cachedChroms.get(0)));
+        assertNull(cache.getCachedGametes(0, cachedChroms.get(1)));
+        assertNotNull(cache.getCachedGametes(0, cachedChroms.get(19)));
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMemoryUsage());
+
+        // crossing genotypes that share chromosomes with previously crossed genotypes
+        for(int t=0; t<10; t++){
+            g1 = genRandomGenotype(3, new int[]{3, 2, 3});
+            g2 = genRandomGenotype(3, new int[]{3, 2, 3});
+            GeneticMap map = genRandomGeneticMap(g1);
+            SeedLotConstructor constructor = new DefaultSeedLotConstructor(map);
+            constructor.cross(g1, g2);
+            // replace middle chromosome of g1
+            List<DiploidChromosome> chroms = new ArrayList<>(g1.getChromosomes());
+            chroms.set(1, genRandomGenotype(3, new int[]{3, 2, 3}).getChromosomes().get(1));
+            Genotype g3 = new Genotype(chroms);
+            // compare with seed lot constructed from scratch
+            SeedLot sl = constructor.cross(g2, g3);
+            SeedLot expected = new DefaultSeedLotConstructor(map).cross(g3, g2);
+            assertEquals(expected.nrOfGenotypes(), sl.nrOfGenotypes());
+            for(int i = expected.nextGenotypeIndex(0); i >= 0; i = expected.nextGenotypeIndex(i+1)){
+                int j = sl.indexOf(expected.getGenotype(i));
+                assertTrue(j >= 0);
+                assertEquals(expected.getProbabilityOfPhaseKnownGenotype(i), sl.getProbabilityOfPhaseKnownGenotype(j));
+                assertEquals(expected.getLinkagePhaseAmbiguity(i), sl.getLinkagePhaseAmbiguity(j));
+            }
+        }
+
+    }
+
     @Test
     public void testCrossWith() throws GenestackerException{
         
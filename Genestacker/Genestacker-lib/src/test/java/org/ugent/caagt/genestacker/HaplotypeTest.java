@@ -144,4 +144,46 @@ public class HaplotypeTest extends TestCase {
         assertTrue(hom4.compareTo(hom8) < 0);
         
     }
+    
+    @Test
+    public void testManyLoci() throws GenestackerException{
+        // haplotypes spanning multiple words
+        boolean[] targets1 = new boolean[150];
+        boolean[] targets2 = new boolean[150];
+        for(int i=0; i<150; i+=3){
+            targets1[i] = true;
+            targets2[i] = true;
+        }
+        Haplotype hom1 = new Haplotype(targets1);
+        Haplotype hom2 = new Haplotype(targets2);
+        assertEquals(150, hom1.nrOfLoci());
+        assertEquals(50, hom1.nrOfTargetsPresent());
+        assertEquals(hom1, hom2);
+        assertEquals(hom1.hashCode(), hom2.hashCode());
+        assertEquals(0, hom1.compareTo(hom2));
+        for(int i=0; i<150; i++){
+            assertEquals(targets1[i], hom1.targetPresent(i));
+        }
+        // differ at a locus in the last word only
+        hom2.setTargetPresent(130, true);
+        assertFalse(hom1.equals(hom2));
+        assertEquals(51, hom2.nrOfTargetsPresent());
+        assertTrue(hom1.compareTo(hom2) < 0);
+        assertTrue(hom2.compareTo(hom1) > 0);
+        // first differing locus determines the order
+        hom1.setTargetPresent(70, true);
+        assertTrue(hom1.compareTo(hom2) > 0);
+        // copy is independent
+        Haplotype hom3 = new Haplotype(hom1);
+        hom3.setTargetPresent(70, false);
+        assertTrue(hom1.targetPresent(70));
+        assertFalse(hom3.targetPresent(70));
+        // construct from packed words (unused bits are cleared)
+        long[] words = new long[]{hom1.getWord(0), hom1.getWord(1), hom1.getWord(2) | ~0L << 22};
+        Haplotype hom4 = new Haplotype(words, 150);
+        assertEquals(hom1, hom4);
+        assertEquals(hom1.hashCode(), hom4.hashCode());
+        words[0] = 0;
+        assertEquals(hom1, hom4);
+    }
 }
@@ -0,0 +1,93 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class GenericParetoFrontierTest extends TestCase {
+    
+    public GenericParetoFrontierTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+    
+    // points (x, y) where lower values are better
+    private static final DominatesRelation<int[]> MIN_XY = new DominatesRelation<int[]>() {
+        @Override
+        public boolean dominates(int[] o1, int[] o2) {
+            return o1[0] <= o2[0] && o1[1] <= o2[1] && (o1[0] < o2[0] || o1[1] < o2[1]);
+        }
+    };
+    
+    @Test
+    public void testRegister(){
+        
+        System.out.println("\n### TEST PARETO FRONTIER REGISTRATION ###\n");
+        
+        GenericParetoFrontierWithoutDescriptor<int[]> pf = new GenericParetoFrontierWithoutDescriptor<>(MIN_XY);
+        int[] a = {1, 5};
+        int[] b = {3, 3};
+        int[] c = {5, 1};
+        assertTrue(pf.registerAll(Arrays.asList(a, b, c)));
+        assertEquals(3, pf.getNumSchemes());
+        
+        // already contained or dominated
+        assertFalse(pf.register(b));
+        assertFalse(pf.register(new int[]{4, 4}));
+        assertEquals(3, pf.getNumSchemes());
+        assertTrue(pf.dominatedByRegisteredObject(new int[]{4, 4}));
+        assertFalse(pf.dominatedByRegisteredObject(new int[]{2, 2}));
+        
+        // snapshot is not affected by later updates
+        Set<int[]> before = pf.getFrontier();
+        int[] d = {2, 2};
+        assertTrue(pf.register(d));
+        assertEquals(3, before.size());
+        assertTrue(before.contains(b));
+        
+        // new object replaces dominated object
+        assertEquals(3, pf.getNumSchemes());
+        assertTrue(pf.contains(d));
+        assertFalse(pf.contains(b));
+        assertEquals(new HashSet<>(Arrays.asList(a, c, d)), pf.getFrontier());
+        
+        // snapshot can not be modified
+        try {
+            pf.getFrontier().clear();
+            fail("Frontier snapshot should not be modifiable.");
+        } catch (UnsupportedOperationException ex){
+            // expected
+        }
+    
+    }
+
+}
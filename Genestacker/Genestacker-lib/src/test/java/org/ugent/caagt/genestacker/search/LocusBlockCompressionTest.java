@@ -0,0 +1,194 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.ugent.caagt.genestacker.DiploidChromosome;
+import org.ugent.caagt.genestacker.GeneticMap;
+import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.Haplotype;
+import org.ugent.caagt.genestacker.Plant;
+import org.ugent.caagt.genestacker.exceptions.GenestackerException;
+import org.ugent.caagt.genestacker.io.GenestackerInput;
+import org.ugent.caagt.genestacker.search.bb.BranchAndBound;
+import org.ugent.caagt.genestacker.search.bb.DefaultSeedLotConstructor;
+import org.ugent.caagt.genestacker.search.bb.heuristics.Heuristic;
+import org.ugent.caagt.genestacker.search.bb.heuristics.Heuristics;
+import org.ugent.caagt.genestacker.search.bb.heuristics.SeedLotFilter;
+import org.ugent.caagt.genestacker.search.constraints.Constraint;
+import org.ugent.caagt.genestacker.search.constraints.MaxNumGenerations;
+import org.ugent.caagt.genestacker.util.GenestackerConstants;
+
+/**
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class LocusBlockCompressionTest extends TestCase {
+    
+    public LocusBlockCompressionTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+    
+    // create homozygous genotype with the given chromosomes
+    private Genotype homozygous(boolean[]... chromosomes) throws GenestackerException{
+        List<DiploidChromosome> chroms = new ArrayList<>();
+        for(boolean[] targets : chromosomes){
+            Haplotype hap = new Haplotype(targets);
+            chroms.add(new DiploidChromosome(hap, hap));
+        }
+        return new Genotype(chroms);
+    }
+    
+    private GenestackerInput createInput(double[][] distances, Genotype ideotype, Genotype... plants){
+        List<Plant> initialPlants = new ArrayList<>();
+        for(Genotype g : plants){
+            initialPlants.add(new Plant(g));
+        }
+        return new GenestackerInput(initialPlants, ideotype, new GeneticMap(distances));
+    }
+    
+    @Test
+    public void testCompression() throws GenestackerException{
+        
+        System.out.println("\n### TEST LOCUS BLOCK COMPRESSION ###\n");
+        
+        double[][] distances = new double[][]{
+            {0, 10, 0, 5},
+            {2}
+        };
+        Genotype p1 = homozygous(new boolean[]{true, true, false, false, true}, new boolean[]{true, true});
+        Genotype p2 = homozygous(new boolean[]{false, false, true, true, false}, new boolean[]{false, false});
+        Genotype ideotype = homozygous(new boolean[]{true, true, true, true, true}, new boolean[]{true, true});
+        GenestackerInput input = createInput(distances, ideotype, p1, p2);
+        
+        // exact compression: only loci at the same position are merged
+        LocusBlockCompression exact = new LocusBlockCompression(input, 0.0);
+        assertTrue(exact.isExact());
+        assertTrue(exact.isEffective());
+        assertEquals(7, exact.getNrOfOriginalLoci());
+        assertEquals(5, exact.getNrOfCompressedLoci());
+        GeneticMap map = exact.getCompressedInput().getGeneticMap();
+        assertEquals(3, map.nrOfLociOnChromosome(0));
+        assertEquals(2, map.nrOfLociOnChromosome(1));
+        assertTrue(Arrays.equals(new double[]{10, 5}, map.getDistances()[0]));
+        assertTrue(Arrays.equals(new double[]{2}, map.getDistances()[1]));
+        
+        // approximate compression: also merge loci of second chromosome
+        LocusBlockCompression approx = new LocusBlockCompression(input, 2.0);
+        assertFalse(approx.isExact());
+        assertEquals(4, approx.getNrOfCompressedLoci());
+        assertEquals(1, approx.getCompressedInput().getGeneticMap().nrOfLociOnChromosome(1));
+        
+        // blocks longer than the maximum length are not merged
+        LocusBlockCompression none = new LocusBlockCompression(createInput(new double[][]{{1, 1, 1, 1}, {2}}, ideotype, p1, p2), 0.5);
+        assertTrue(none.isExact());
+        assertFalse(none.isEffective());
+        
+        // round trip
+        for(LocusBlockCompression c : Arrays.asList(exact, approx)){
+            for(int i=0; i<input.getInitialPlants().size(); i++){
+                Genotype compressed = c.getCompressedInput().getInitialPlants().get(i).getGenotype();
+                assertEquals(input.getInitialPlants().get(i).getGenotype(), c.expand(compressed));
+            }
+            assertEquals(ideotype, c.expand(c.getCompressedInput().getIdeotype()));
+        }
+    
+    }
+    
+    @Test
+    public void testExpandSchemes() throws GenestackerException{
+        
+        System.out.println("\n### TEST LOCUS BLOCK COMPRESSION (EXPAND SCHEMES) ###\n");
+        
+        double[][] distances = new double[][]{
+            {0, 20, 0}
+        };
+        Genotype p1 = homozygous(new boolean[]{true, true, false, false});
+        Genotype p2 = homozygous(new boolean[]{false, false, true, true});
+        Genotype ideotype = homozygous(new boolean[]{true, true, true, true});
+        GenestackerInput input = createInput(distances, ideotype, p1, p2);
+        LocusBlockCompression compression = new LocusBlockCompression(input, 0.0);
+        assertEquals(2, compression.getNrOfCompressedLoci());
+        
+        // search original and compressed instance
+        ParetoFrontier original = search(input);
+        ParetoFrontier compressed = search(compression.getCompressedInput());
+        ParetoFrontier expanded = compression.expand(compressed, constraints(), null);
+        
+        // same Pareto frontier
+        assertTrue(original.getNumSchemes() > 0);
+        assertEquals(original.getNumSchemes(), expanded.getNumSchemes());
+        assertEquals(describe(original), describe(expanded));
+        for(CrossingScheme s : expanded.getFrontier()){
+            assertEquals(ideotype, s.getFinalPlantNode().getPlant().getGenotype());
+        }
+        
+        // expanded schemes that violate a constraint are discarded
+        int minGen = Integer.MAX_VALUE;
+        int numMinGen = 0;
+        for(CrossingScheme s : original.getFrontier()){
+            if(s.getNumGenerations() < minGen){
+                minGen = s.getNumGenerations();
+                numMinGen = 0;
+            }
+            if(s.getNumGenerations() == minGen){
+                numMinGen++;
+            }
+        }
+        List<Constraint> constraints = constraints();
+        constraints.set(0, new MaxNumGenerations(minGen));
+        assertEquals(numMinGen, compression.expand(compressed, constraints, null).getNumSchemes());
+    
+    }
+    
+    private ParetoFrontier search(GenestackerInput input) throws GenestackerException{
+        PopulationSizeTools popSizeTools = new DefaultPopulationSizeTools(0.95);
+        BranchAndBound bb = new BranchAndBound(input, popSizeTools, constraints(), null,
+                                               new Heuristics(new ArrayList<Heuristic>()), new ArrayList<SeedLotFilter>(),
+                                               null, new DefaultSeedLotConstructor(input.getGeneticMap()));
+        return bb.search(GenestackerConstants.NO_RUNTIME_LIMIT, 1);
+    }
+    
+    private List<Constraint> constraints(){
+        List<Constraint> constraints = new ArrayList<>();
+        constraints.add(new MaxNumGenerations(3));
+        return constraints;
+    }
+    
+    private Set<String> describe(ParetoFrontier frontier){
+        Set<String> descriptions = new HashSet<>();
+        for(CrossingScheme s : frontier.getFrontier()){
+            descriptions.add(s.getNumGenerations() + "/" + s.getTotalPopulationSize() + "/" + s.getLinkagePhaseAmbiguity());
+        }
+        return descriptions;
+    }
+
+}
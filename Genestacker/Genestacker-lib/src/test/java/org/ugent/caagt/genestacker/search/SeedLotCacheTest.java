@@ -0,0 +1,215 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.ugent.caagt.genestacker.DiploidChromosome;
+import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.GenotypePool;
+import org.ugent.caagt.genestacker.Haplotype;
+import org.ugent.caagt.genestacker.SeedLot;
+import org.ugent.caagt.genestacker.exceptions.GenestackerException;
+import org.ugent.caagt.genestacker.exceptions.GenotypeException;
+
+/**
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class SeedLotCacheTest extends TestCase {
+    
+    public SeedLotCacheTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+    
+    // create distinct homozygous genotypes with a single chromosome
+    private Genotype[] genGenotypes(GenotypePool pool, int n) throws GenestackerException{
+        Genotype[] genotypes = new Genotype[n];
+        for(int i=0; i<n; i++){
+            boolean[] targets = new boolean[8];
+            for(int l=0; l<8; l++){
+                targets[l] = ((i >> l) & 1) == 1;
+            }
+            Haplotype hap = new Haplotype(targets);
+            genotypes[i] = pool.intern(new Genotype(Arrays.asList(new DiploidChromosome(hap, hap))));
+        }
+        return genotypes;
+    }
+    
+    @Test
+    public void testLRU() throws GenestackerException{
+        
+        System.out.println("\n### TEST SEED LOT CACHE (LRU) ###\n");
+        
+        GenotypePool pool = new GenotypePool();
+        Genotype[] g = genGenotypes(pool, 5);
+        // seed lots of equal size
+        long size = new SeedLot(g[0]).estimateMemoryUsage();
+        SeedLotCache cache = new SeedLotCache(pool, 3*size, CacheEvictionPolicy.LRU);
+        
+        cache.cacheUnfiltered(g[0], g[0], new SeedLot(g[0]));
+        cache.cacheUnfiltered(g[1], g[1], new SeedLot(g[1]));
+        cache.cacheUnfiltered(g[2], g[2], new SeedLot(g[2]));
+        assertEquals(3, cache.size());
+        assertEquals(3*size, cache.getMemoryUsage());
+        // access first seed lot
+        assertNotNull(cache.getCachedUnfilteredSeedLot(g[0], g[0]));
+        // exceed budget: least recently used seed lot is evicted
+        cache.cacheUnfiltered(g[3], g[3], new SeedLot(g[3]));
+        assertEquals(3, cache.size());
+        assertNull(cache.getCachedUnfilteredSeedLot(g[1], g[1]));
+        assertNotNull(cache.getCachedUnfilteredSeedLot(g[0], g[0]));
+        assertEquals(1, cache.getNumEvictions());
+        assertEquals(2, cache.getNumHits());
+        assertEquals(1, cache.getNumMisses());
+        
+        // filtered seed lots are only cached together with the unfiltered seed lot
+        cache.cache(g[4], g[4], new SeedLot(g[4]).createView());
+        assertNull(cache.getCachedSeedLot(g[4], g[4]));
+        SeedLot view = cache.getCachedUnfilteredSeedLot(g[3], g[3]).createView();
+        cache.cache(g[3], g[3], view);
+        assertSame(view, cache.getCachedSeedLot(g[3], g[3]));
+        // budget exceeded: evict least recently used seed lot (obtained by crossing g[2])
+        assertTrue(cache.getMemoryUsage() > 2*size);
+        assertEquals(2, cache.size());
+        assertNull(cache.getCachedUnfilteredSeedLot(g[2], g[2]));
+        cache.clearFiltered();
+        assertNull(cache.getCachedSeedLot(g[3], g[3]));
+        assertEquals(2*size, cache.getMemoryUsage());
+        
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMemoryUsage());
+    
+    }
+    
+    @Test
+    public void testCostAware() throws GenestackerException{
+        
+        System.out.println("\n### TEST SEED LOT CACHE (COST AWARE) ###\n");
+        
+        GenotypePool pool = new GenotypePool();
+        Genotype[] g = genGenotypes(pool, 5);
+        long size = new SeedLot(g[0]).estimateMemoryUsage();
+        SeedLotCache cache = new SeedLotCache(pool, 3*size, CacheEvictionPolicy.COST_AWARE);
+        
+        cache.cacheUnfiltered(g[0], g[0], new SeedLot(g[0]), 100*size);
+        cache.cacheUnfiltered(g[1], g[1], new SeedLot(g[1]), size);
+        cache.cacheUnfiltered(g[2], g[2], new SeedLot(g[2]), 50*size);
+        // cheapest seed lot is evicted
+        cache.cacheUnfiltered(g[3], g[3], new SeedLot(g[3]), 10*size);
+        assertNull(cache.getCachedUnfilteredSeedLot(g[1], g[1]));
+        // next: cheapest remaining seed lot, taking into account aging
+        cache.cacheUnfiltered(g[4], g[4], new SeedLot(g[4]), 10*size);
+        assertNull(cache.getCachedUnfilteredSeedLot(g[3], g[3]));
+        assertNotNull(cache.getCachedUnfilteredSeedLot(g[0], g[0]));
+        assertNotNull(cache.getCachedUnfilteredSeedLot(g[2], g[2]));
+        assertNotNull(cache.getCachedUnfilteredSeedLot(g[4], g[4]));
+        assertEquals(2, cache.getNumEvictions());
+    
+    }
+    
+    @Test
+    public void testSingleFlight() throws Exception{
+        
+        System.out.println("\n### TEST SEED LOT CACHE (SINGLE FLIGHT) ###\n");
+        
+        GenotypePool pool = new GenotypePool();
+        final Genotype[] g = genGenotypes(pool, 2);
+        final SeedLotCache cache = new SeedLotCache(pool);
+        
+        final int numThreads = 8;
+        final AtomicInteger numComputed = new AtomicInteger(0);
+        final CountDownLatch start = new CountDownLatch(1);
+        final SeedLotCache.SeedLotComputation computation = new SeedLotCache.SeedLotComputation() {
+            @Override
+            public SeedLot compute() throws GenotypeException {
+                numComputed.incrementAndGet();
+                try {
+                    // give other threads the opportunity to request the same seed lot
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return new SeedLot(g[0]);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Future<SeedLot>> results = new ArrayList<>();
+            for(int t=0; t<numThreads; t++){
+                // request seed lot with both orders of the parents
+                final boolean swap = t % 2 == 1;
+                results.add(executor.submit(new Callable<SeedLot>() {
+                    @Override
+                    public SeedLot call() throws Exception {
+                        start.await();
+                        return swap ? cache.getOrComputeUnfiltered(g[1], g[0], computation)
+                                    : cache.getOrComputeUnfiltered(g[0], g[1], computation);
+                    }
+                }));
+            }
+            start.countDown();
+            SeedLot first = results.get(0).get();
+            for(Future<SeedLot> r : results){
+                assertSame(first, r.get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        // computed exactly once
+        assertEquals(1, numComputed.get());
+        assertEquals(1, cache.getNumMisses());
+        assertEquals(numThreads-1, cache.getNumHits());
+        assertEquals(1, cache.size());
+        
+        // failed computations are not cached
+        SeedLotCache.SeedLotComputation failing = new SeedLotCache.SeedLotComputation() {
+            @Override
+            public SeedLot compute() throws GenotypeException {
+                throw new GenotypeException("Test failure.");
+            }
+        };
+        try {
+            cache.getOrComputeUnfiltered(g[1], g[1], failing);
+            fail("Expected exception.");
+        } catch (GenotypeException ex){
+            // expected
+        }
+        assertNull(cache.getCachedUnfilteredSeedLot(g[1], g[1]));
+        assertSame(cache.getCachedUnfilteredSeedLot(g[1], g[0]), cache.getOrComputeUnfiltered(g[0], g[1], failing));
+    
+    }
+
+}
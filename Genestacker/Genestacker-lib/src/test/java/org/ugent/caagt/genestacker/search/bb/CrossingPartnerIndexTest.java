@@ -0,0 +1,133 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search.bb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.ugent.caagt.genestacker.DiploidChromosome;
+import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.Haplotype;
+import org.ugent.caagt.genestacker.Plant;
+import org.ugent.caagt.genestacker.SeedLot;
+import org.ugent.caagt.genestacker.exceptions.GenestackerException;
+import org.ugent.caagt.genestacker.search.CrossingScheme;
+import org.ugent.caagt.genestacker.search.CrossingSchemeAlternatives;
+import org.ugent.caagt.genestacker.search.DefaultDominatesRelation;
+import org.ugent.caagt.genestacker.search.DefaultPopulationSizeTools;
+import org.ugent.caagt.genestacker.search.PlantNode;
+import org.ugent.caagt.genestacker.search.PopulationSizeTools;
+import org.ugent.caagt.genestacker.search.SeedLotNode;
+import org.ugent.caagt.genestacker.search.bb.heuristics.Heuristic;
+import org.ugent.caagt.genestacker.search.bb.heuristics.Heuristics;
+import org.ugent.caagt.genestacker.search.constraints.Constraint;
+import org.ugent.caagt.genestacker.search.constraints.MaxNumGenerations;
+
+/**
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class CrossingPartnerIndexTest extends TestCase {
+    
+    public CrossingPartnerIndexTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+    
+    // create genotype with a single chromosome
+    private Genotype genotype(boolean[] hap1, boolean[] hap2) throws GenestackerException{
+        return new Genotype(Arrays.asList(new DiploidChromosome(new Haplotype(hap1), new Haplotype(hap2))));
+    }
+    
+    // create scheme consisting of a single initial plant
+    private CrossingSchemeAlternatives initialScheme(Genotype g, PopulationSizeTools popSizeTools){
+        SeedLotNode sln = new SeedLotNode(new SeedLot(g), 0);
+        PlantNode pn = new PlantNode(new Plant(g), 0, sln);
+        return new CrossingSchemeAlternatives(new CrossingScheme(popSizeTools, pn));
+    }
+    
+    // create solution manager with given maximum number of generations (if not null)
+    private BranchAndBoundSolutionManager createSolutionManager(Genotype ideotype, PopulationSizeTools popSizeTools, Integer maxNumGen)
+                                                                                                        throws GenestackerException{
+        List<Constraint> constraints = new ArrayList<>();
+        if(maxNumGen != null){
+            constraints.add(new MaxNumGenerations(maxNumGen));
+        }
+        return new BranchAndBoundSolutionManager(new DefaultDominatesRelation(), ideotype, popSizeTools, null,
+                                                 constraints, new Heuristics(new ArrayList<Heuristic>()), null, false);
+    }
+    
+    @Test
+    public void testCandidatePartners() throws GenestackerException{
+        
+        System.out.println("\n### TEST CROSSING PARTNER INDEX ###\n");
+        
+        PopulationSizeTools popSizeTools = new DefaultPopulationSizeTools(0.95);
+        boolean[] t = new boolean[]{true, true};
+        boolean[] tf = new boolean[]{true, false};
+        boolean[] ft = new boolean[]{false, true};
+        Genotype ideotype = genotype(t, t);
+        
+        CrossingSchemeAlternatives homIdeotype = initialScheme(ideotype, popSizeTools);
+        CrossingSchemeAlternatives hom10 = initialScheme(genotype(tf, tf), popSizeTools);
+        CrossingSchemeAlternatives het = initialScheme(genotype(tf, ft), popSizeTools);
+        CrossingSchemeAlternatives hom01 = initialScheme(genotype(ft, ft), popSizeTools);
+        List<CrossingSchemeAlternatives> all = Arrays.asList(hom10, homIdeotype, hom01, het);
+        
+        // no maximum number of generations: all schemes are candidates
+        CrossingPartnerIndex index = new CrossingPartnerIndex(createSolutionManager(ideotype, popSizeTools, null));
+        for(CrossingSchemeAlternatives s : all){
+            index.add(s);
+        }
+        assertEquals(4, index.size());
+        assertEquals(all, index.getCandidatePartners(hom10));
+        
+        // one generation left: ideotype should be obtainable from the crossing
+        index = new CrossingPartnerIndex(createSolutionManager(ideotype, popSizeTools, 1));
+        for(CrossingSchemeAlternatives s : all){
+            index.add(s);
+        }
+        assertEquals(Arrays.asList(homIdeotype, het), index.getCandidatePartners(het));
+        assertEquals(Arrays.asList(homIdeotype, het), index.getCandidatePartners(homIdeotype));
+        assertTrue(index.getCandidatePartners(hom10).isEmpty());
+        
+        // two generations left: no restrictions
+        index = new CrossingPartnerIndex(createSolutionManager(ideotype, popSizeTools, 2));
+        for(CrossingSchemeAlternatives s : all){
+            index.add(s);
+        }
+        assertEquals(all, index.getCandidatePartners(hom01));
+        
+        // maximum number of generations reached: no candidates
+        index = new CrossingPartnerIndex(createSolutionManager(ideotype, popSizeTools, 0));
+        for(CrossingSchemeAlternatives s : all){
+            index.add(s);
+        }
+        assertTrue(index.getCandidatePartners(het).isEmpty());
+    
+    }
+
+}
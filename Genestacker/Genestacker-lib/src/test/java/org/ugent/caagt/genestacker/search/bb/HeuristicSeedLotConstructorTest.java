@@ -16,12 +16,15 @@ package org.ugent.caagt.genestacker.search.bb;
 
 import org.ugent.caagt.genestacker.search.bb.heuristics.HeuristicSeedLotConstructor;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import junit.framework.TestCase;
 import org.junit.Test;
 import org.ugent.caagt.genestacker.DiploidChromosome;
 import org.ugent.caagt.genestacker.GeneticMap;
 import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.GenotypeGroupWithSameAllelicFrequencies;
+import org.ugent.caagt.genestacker.GenotypeTest;
 import org.ugent.caagt.genestacker.Haplotype;
 import org.ugent.caagt.genestacker.SeedLot;
 import org.ugent.caagt.genestacker.exceptions.GenestackerException;
@@ -228,5 +231,58 @@ public class HeuristicSeedLotConstructorTest extends TestCase {
         }
                 
     }
+    
+    /**
+     * Test probabilities and linkage phase ambiguities in heuristically constructed seed lots.
+     */
+    @Test
+    public void testSeedLotProbabilities() throws GenestackerException{
+        
+        System.out.println("\n### TEST HEURISTIC SEED LOT PROBABILITIES ###\n");
+        
+        for(int t=0; t<20; t++){
+            Genotype ideotype = GenotypeTest.genRandomGenotype(2, new int[]{4, 3});
+            Genotype g1 = GenotypeTest.genRandomGenotype(2, new int[]{4, 3});
+            Genotype g2 = GenotypeTest.genRandomGenotype(2, new int[]{4, 3});
+            GeneticMap map = GenotypeTest.genRandomGeneticMap(ideotype);
+            SeedLot sl = new HeuristicSeedLotConstructor(map, ideotype, 2, t % 2 == 0).cross(g1, g2);
+            SeedLot sl2 = new DefaultSeedLotConstructor(map).cross(g1, g2);
+            // heuristically generated genotypes have the same probabilities and linkage phase ambiguities
+            for(Genotype g : sl.getGenotypes()){
+                GenotypeGroupWithSameAllelicFrequencies group = sl.getGenotypeGroup(g.getAllelicFrequencies());
+                GenotypeGroupWithSameAllelicFrequencies group2 = sl2.getGenotypeGroup(g.getAllelicFrequencies());
+                assertEquals(group2.getProbabilityOfPhaseKnownGenotype(g), group.getProbabilityOfPhaseKnownGenotype(g), 1e-12);
+                assertEquals(group2.getLinkagePhaseAmbiguity(g), group.getLinkagePhaseAmbiguity(g), 1e-12);
+            }
+        }
+        
+    }
+    
+    /**
+     * Test direct computation of offspring probabilities with the heuristic seed lot constructor.
+     */
+    @Test
+    public void testProbabilityOf() throws GenestackerException{
+        
+        System.out.println("\n### TEST HEURISTIC PROBABILITY OF OFFSPRING ###\n");
+        
+        for(int t=0; t<20; t++){
+            Genotype ideotype = GenotypeTest.genRandomGenotype(2, new int[]{4, 3});
+            Genotype g1 = GenotypeTest.genRandomGenotype(2, new int[]{4, 3});
+            Genotype g2 = GenotypeTest.genRandomGenotype(2, new int[]{4, 3});
+            GeneticMap map = GenotypeTest.genRandomGeneticMap(ideotype);
+            SeedLotConstructor seedLotConstructor = new HeuristicSeedLotConstructor(map, ideotype, 2, t % 2 == 0);
+            // compare with partial seed lot containing the ideotype only
+            SeedLot sl = seedLotConstructor.partialCross(g1, g2, Collections.singleton(ideotype));
+            OffspringProbability op = seedLotConstructor.probabilityOf(g1, g2, ideotype);
+            assertEquals(sl.contains(ideotype), op.isPossible());
+            if(op.isPossible()){
+                GenotypeGroupWithSameAllelicFrequencies group = sl.getGenotypeGroup(ideotype.getAllelicFrequencies());
+                assertEquals(group.getProbabilityOfPhaseKnownGenotype(ideotype), op.getProbabilityOfPhaseKnownGenotype(), 1e-12);
+                assertEquals(group.getLinkagePhaseAmbiguity(ideotype), op.getLinkagePhaseAmbiguity(), 1e-12);
+            }
+        }
+        
+    }
 
 }
\ No newline at end of file
@@ -0,0 +1,221 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search.bb;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.ugent.caagt.genestacker.DiploidChromosome;
+import org.ugent.caagt.genestacker.GeneticMap;
+import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.Haplotype;
+import org.ugent.caagt.genestacker.Plant;
+import org.ugent.caagt.genestacker.SeedLot;
+import org.ugent.caagt.genestacker.exceptions.GenestackerException;
+import org.ugent.caagt.genestacker.io.GenestackerInput;
+import org.ugent.caagt.genestacker.search.CrossingScheme;
+import org.ugent.caagt.genestacker.search.CrossingSchemeAlternatives;
+import org.ugent.caagt.genestacker.search.DefaultDominatesRelation;
+import org.ugent.caagt.genestacker.search.DefaultPopulationSizeTools;
+import org.ugent.caagt.genestacker.search.ParetoFrontier;
+import org.ugent.caagt.genestacker.search.PlantNode;
+import org.ugent.caagt.genestacker.search.PopulationSizeTools;
+import org.ugent.caagt.genestacker.search.SeedLotNode;
+import org.ugent.caagt.genestacker.search.bb.heuristics.Heuristic;
+import org.ugent.caagt.genestacker.search.bb.heuristics.Heuristics;
+import org.ugent.caagt.genestacker.search.bb.heuristics.SeedLotFilter;
+import org.ugent.caagt.genestacker.search.constraints.Constraint;
+import org.ugent.caagt.genestacker.search.constraints.MaxNumGenerations;
+import org.ugent.caagt.genestacker.util.GenestackerConstants;
+
+/**
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class SchemeQueueTest extends TestCase {
+    
+    public SchemeQueueTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+    }
+    
+    // create homozygous genotype with a single chromosome
+    private Genotype homozygous(boolean... targets) throws GenestackerException{
+        Haplotype hap = new Haplotype(targets);
+        return new Genotype(Arrays.asList(new DiploidChromosome(hap, hap)));
+    }
+    
+    // create scheme consisting of a single initial plant
+    private CrossingSchemeAlternatives initialScheme(Genotype g, PopulationSizeTools popSizeTools){
+        SeedLotNode sln = new SeedLotNode(new SeedLot(g), 0);
+        PlantNode pn = new PlantNode(new Plant(g), 0, sln);
+        return new CrossingSchemeAlternatives(new CrossingScheme(popSizeTools, pn));
+    }
+    
+    @Test
+    public void testOrder() throws GenestackerException{
+        
+        System.out.println("\n### TEST SCHEME QUEUE ORDER ###\n");
+        
+        PopulationSizeTools popSizeTools = new DefaultPopulationSizeTools(0.95);
+        Genotype ideotype = homozygous(true, true, true);
+        BranchAndBoundSolutionManager solManager = new BranchAndBoundSolutionManager(new DefaultDominatesRelation(), ideotype,
+                                                        popSizeTools, null, null, new Heuristics(new ArrayList<Heuristic>()), null, false);
+        List<CrossingSchemeAlternatives> schemes = Arrays.asList(
+                initialScheme(homozygous(false, false, false), popSizeTools),
+                initialScheme(homozygous(true, true, false), popSizeTools),
+                initialScheme(homozygous(true, false, false), popSizeTools),
+                initialScheme(homozygous(false, true, true), popSizeTools)
+        );
+        
+        // FIFO: insertion order
+        SchemeQueue fifo = new SchemeQueue(SchemeQueuePolicy.FIFO, solManager);
+        for(CrossingSchemeAlternatives s : schemes){
+            fifo.add(s);
+        }
+        assertEquals(4, fifo.size());
+        for(CrossingSchemeAlternatives s : schemes){
+            assertSame(s, fifo.poll());
+        }
+        assertTrue(fifo.isEmpty());
+        assertNull(fifo.poll());
+        
+        // best-first: equal bounds for all initial plants, so insertion order
+        SchemeQueue best = new SchemeQueue(SchemeQueuePolicy.BEST_FIRST, solManager);
+        for(CrossingSchemeAlternatives s : schemes){
+            best.add(s);
+        }
+        for(CrossingSchemeAlternatives s : schemes){
+            assertSame(s, best.poll());
+        }
+        
+        // depth-first: closest to ideotype first, newest first in case of ties
+        SchemeQueue depth = new SchemeQueue(SchemeQueuePolicy.DEPTH_FIRST, solManager);
+        for(CrossingSchemeAlternatives s : schemes){
+            depth.add(s);
+        }
+        assertSame(schemes.get(3), depth.poll());
+        assertSame(schemes.get(1), depth.poll());
+        assertSame(schemes.get(2), depth.poll());
+        assertSame(schemes.get(0), depth.poll());
+        
+        // hybrid: alternate, every scheme polled exactly once
+        SchemeQueue hybrid = new SchemeQueue(SchemeQueuePolicy.HYBRID, solManager);
+        for(CrossingSchemeAlternatives s : schemes){
+            hybrid.add(s);
+        }
+        assertSame(schemes.get(0), hybrid.poll());
+        assertSame(schemes.get(3), hybrid.poll());
+        assertSame(schemes.get(1), hybrid.poll());
+        assertSame(schemes.get(2), hybrid.poll());
+        assertTrue(hybrid.isEmpty());
+    
+    }
+    
+    @Test
+    public void testSearch() throws GenestackerException{
+        
+        System.out.println("\n### TEST SCHEME QUEUE POLICIES (SEARCH) ###\n");
+        
+        List<Plant> plants = new ArrayList<>();
+        plants.add(new Plant(homozygous(true, false, false)));
+        plants.add(new Plant(homozygous(false, true, false)));
+        plants.add(new Plant(homozygous(false, false, true)));
+        Genotype ideotype = homozygous(true, true, true);
+        GeneticMap map = new GeneticMap(new double[][]{{20, 30}});
+        GenestackerInput input = new GenestackerInput(plants, ideotype, map);
+        
+        // all policies yield the same Pareto frontier
+        Set<String> fifo = null;
+        for(SchemeQueuePolicy policy : SchemeQueuePolicy.values()){
+            PopulationSizeTools popSizeTools = new DefaultPopulationSizeTools(0.95);
+            List<Constraint> constraints = new ArrayList<>();
+            constraints.add(new MaxNumGenerations(3));
+            BranchAndBound bb = new BranchAndBound(input, popSizeTools, constraints, null,
+                                                   new Heuristics(new ArrayList<Heuristic>()), new ArrayList<SeedLotFilter>(),
+                                                   null, new DefaultSeedLotConstructor(map));
+            bb.setSchemeQueuePolicy(policy);
+            ParetoFrontier frontier = bb.search(GenestackerConstants.NO_RUNTIME_LIMIT, 1);
+            Set<String> desc = describe(frontier);
+            System.out.println(policy + ": " + desc);
+            if(fifo == null){
+                assertFalse(desc.isEmpty());
+                fifo = desc;
+            } else {
+                assertEquals(fifo, desc);
+            }
+        }
+    
+    }
+    
+    @Test
+    public void testMultiThreadedSearch() throws GenestackerException{
+        
+        System.out.println("\n### TEST MULTI-THREADED SCHEME EXTENSION ###\n");
+        
+        List<Plant> plants = new ArrayList<>();
+        plants.add(new Plant(homozygous(true, false, false)));
+        plants.add(new Plant(homozygous(false, true, false)));
+        plants.add(new Plant(homozygous(false, false, true)));
+        Genotype ideotype = homozygous(true, true, true);
+        GeneticMap map = new GeneticMap(new double[][]{{20, 30}});
+        GenestackerInput input = new GenestackerInput(plants, ideotype, map);
+        
+        // same Pareto frontier regardless of the number of threads and the pipeline depth
+        Set<String> single = null;
+        for(int[] config : new int[][]{{1, 1}, {4, 1}, {4, 3}, {1, 8}}){
+            int numThreads = config[0];
+            int depth = config[1];
+            PopulationSizeTools popSizeTools = new DefaultPopulationSizeTools(0.95);
+            List<Constraint> constraints = new ArrayList<>();
+            constraints.add(new MaxNumGenerations(3));
+            BranchAndBound bb = new BranchAndBound(input, popSizeTools, constraints, null,
+                                                   new Heuristics(new ArrayList<Heuristic>()), new ArrayList<SeedLotFilter>(),
+                                                   null, new DefaultSeedLotConstructor(map));
+            bb.setPipelineDepth(depth);
+            Set<String> desc = describe(bb.search(GenestackerConstants.NO_RUNTIME_LIMIT, numThreads));
+            System.out.println(numThreads + " thread(s), pipeline depth " + depth + ": " + desc);
+            if(single == null){
+                assertFalse(desc.isEmpty());
+                single = desc;
+            } else {
+                assertEquals(single, desc);
+            }
+        }
+    
+    }
+    
+    private Set<String> describe(ParetoFrontier frontier){
+        Set<String> descriptions = new HashSet<>();
+        for(CrossingScheme s : frontier.getFrontier()){
+            descriptions.add(s.getNumGenerations() + "/" + s.getTotalPopulationSize() + "/" + s.getLinkagePhaseAmbiguity());
+        }
+        return descriptions;
+    }
+
+}
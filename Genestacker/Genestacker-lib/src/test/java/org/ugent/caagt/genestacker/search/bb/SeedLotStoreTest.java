@@ -0,0 +1,164 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.search.bb;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.ugent.caagt.genestacker.DiploidChromosome;
+import org.ugent.caagt.genestacker.GeneticMap;
+import org.ugent.caagt.genestacker.Genotype;
+import org.ugent.caagt.genestacker.Haplotype;
+import org.ugent.caagt.genestacker.KosambiMapFunction;
+import org.ugent.caagt.genestacker.SeedLot;
+import org.ugent.caagt.genestacker.exceptions.GenestackerException;
+import org.ugent.caagt.genestacker.search.bb.heuristics.HeuristicSeedLotConstructor;
+
+/**
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class SeedLotStoreTest extends TestCase {
+    
+    // cache directory
+    private File dir;
+    
+    public SeedLotStoreTest(String testName) {
+        super(testName);
+    }
+    
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        dir = Files.createTempDirectory("genestacker-store").toFile();
+    }
+    
+    @Override
+    protected void tearDown() throws Exception {
+        super.tearDown();
+        File[] files = dir.listFiles();
+        if(files != null){
+            for(File f : files){
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+    
+    private Genotype genotype(boolean[] c1hap1, boolean[] c1hap2, boolean[] c2hap1, boolean[] c2hap2) throws GenestackerException{
+        return new Genotype(Arrays.asList(
+                    new DiploidChromosome(new Haplotype(c1hap1), new Haplotype(c1hap2)),
+                    new DiploidChromosome(new Haplotype(c2hap1), new Haplotype(c2hap2))
+               ));
+    }
+    
+    @Test
+    public void testStore() throws GenestackerException, IOException{
+        
+        System.out.println("\n### TEST SEED LOT STORE ###\n");
+        
+        double[][] d = new double[][]{
+            {10, 20, 5},
+            {30}
+        };
+        GeneticMap map = new GeneticMap(d);
+        
+        Genotype g1 = genotype(new boolean[]{true, false, true, false}, new boolean[]{false, true, false, true},
+                               new boolean[]{true, false}, new boolean[]{false, true});
+        Genotype g2 = genotype(new boolean[]{true, true, false, false}, new boolean[]{false, false, true, true},
+                               new boolean[]{true, true}, new boolean[]{false, false});
+        double minProb = 0.001;
+        
+        // first run: store gametes and seed lot
+        DefaultSeedLotConstructor c1 = new DefaultSeedLotConstructor(map);
+        SeedLotStore store1 = new SeedLotStore(dir, c1);
+        assertTrue(store1.isWritable());
+        assertEquals(0, store1.size());
+        c1.setSeedLotStore(store1);
+        SeedLot full = c1.cross(g1, g2, minProb);
+        // gametes of 2 chromosomes of both parents
+        assertEquals(4, store1.size());
+        store1.storeSeedLot(g1, g2, minProb, full);
+        assertEquals(5, store1.size());
+        // not stored again for higher minimum probability
+        store1.storeSeedLot(g2, g1, 2*minProb, full);
+        assertEquals(5, store1.size());
+        store1.close();
+        
+        // second run: load stored data
+        DefaultSeedLotConstructor c2 = new DefaultSeedLotConstructor(map);
+        SeedLotStore store2 = new SeedLotStore(dir, c2);
+        assertEquals(store1.getFile(), store2.getFile());
+        assertEquals(5, store2.size());
+        
+        // gametes
+        Map<Haplotype, Double> gametes = store2.getGametes(0, g1.getChromosomes().get(0));
+        assertEquals(new DefaultSeedLotConstructor(map).genGametesPerChromosome(g1).get(0), gametes);
+        assertNull(store2.getGametes(1, g1.getChromosomes().get(0)));
+        
+        // seed lot (parents in any order)
+        SeedLot loaded = store2.getSeedLot(g2, g1, minProb);
+        assertNotNull(loaded);
+        assertEquals(full.nrOfGenotypes(), loaded.nrOfGenotypes());
+        for(int i = full.nextGenotypeIndex(0); i >= 0; i = full.nextGenotypeIndex(i+1)){
+            Genotype g = full.getGenotype(i);
+            assertTrue(loaded.contains(g));
+            assertEquals(full.getGenotypeGroup(i).getProbabilityOfPhaseKnownGenotype(g),
+                         loaded.getGenotypeGroup(g.getAllelicFrequencies()).getProbabilityOfPhaseKnownGenotype(g));
+            assertEquals(full.getGenotypeGroup(i).getLinkagePhaseAmbiguity(g),
+                         loaded.getGenotypeGroup(g.getAllelicFrequencies()).getLinkagePhaseAmbiguity(g));
+        }
+        // loaded genotypes are not interned in the pool of the constructor
+        for(Genotype g : loaded.getGenotypes()){
+            assertEquals(-1, c2.getGenotypePool().lookupId(g));
+        }
+        // higher minimum probability: improbable genotypes are omitted
+        SeedLot pruned = store2.getSeedLot(g1, g2, 10*minProb);
+        assertEquals(c1.cross(g1, g2, 10*minProb).nrOfGenotypes(), pruned.nrOfGenotypes());
+        // lower minimum probability: not available
+        assertNull(store2.getSeedLot(g1, g2, minProb/2));
+        
+        // stored gametes are used when crossing
+        c2.setSeedLotStore(store2);
+        long hits = store2.getNumHits();
+        assertEquals(full.nrOfGenotypes(), c2.cross(g1, g2, minProb).nrOfGenotypes());
+        assertEquals(hits+4, store2.getNumHits());
+        assertEquals(5, store2.size());
+        
+        // concurrently opened store is read-only
+        SeedLotStore store3 = new SeedLotStore(dir, new DefaultSeedLotConstructor(map));
+        assertFalse(store3.isWritable());
+        assertNotNull(store3.getSeedLot(g1, g2, minProb));
+        store3.close();
+        store2.close();
+        
+        // other map function or constructor: other store
+        GeneticMap kosambi = new GeneticMap(d, new KosambiMapFunction());
+        SeedLotStore store4 = new SeedLotStore(dir, new DefaultSeedLotConstructor(kosambi));
+        assertFalse(store4.getFile().equals(store1.getFile()));
+        assertEquals(0, store4.size());
+        store4.close();
+        SeedLotStore store5 = new SeedLotStore(dir, new HeuristicSeedLotConstructor(map, g1));
+        assertFalse(store5.getFile().equals(store1.getFile()));
+        assertEquals(0, store5.size());
+        store5.close();
+
+    }
+
+}
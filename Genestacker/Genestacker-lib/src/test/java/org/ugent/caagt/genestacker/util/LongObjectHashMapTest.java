@@ -0,0 +1,119 @@
+//  Copyright 2012 Herman De Beukelaer
+//
+//  Licensed under the Apache License, Version 2.0 (the "License");
+//  you may not use this file except in compliance with the License.
+//  You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+//  Unless required by applicable law or agreed to in writing, software
+//  distributed under the License is distributed on an "AS IS" BASIS,
+//  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+//  See the License for the specific language governing permissions and
+//  limitations under the License.
+
+package org.ugent.caagt.genestacker.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.AfterClass;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ *
+ * @author <a href="mailto:herman.debeukelaer@ugent.be">Herman De Beukelaer</a>
+ */
+public class LongObjectHashMapTest {
+
+    private Random rg = new Random();
+
+    public LongObjectHashMapTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Compare random sequence of put, get and remove operations with a java.util.HashMap.
+     */
+    @Test
+    public void testRandomOperations() {
+        LongObjectHashMap<Integer> map = new LongObjectHashMap<>();
+        Map<Long, Integer> expected = new HashMap<>();
+        for(int i=0; i<20000; i++){
+            // small key range to cause many collisions, updates and removals
+            long key = rg.nextInt(2000) - 1000;
+            int op = rg.nextInt(3);
+            if(op == 0){
+                assertEquals(expected.put(key, i), map.put(key, i));
+            } else if(op == 1){
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.get(key), map.get(key));
+                assertEquals(expected.containsKey(key), map.containsKey(key));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for(Map.Entry<Long, Integer> e : expected.entrySet()){
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(0));
+    }
+
+    /**
+     * Test of symmetric genotype pair keys stored in a concurrent map.
+     */
+    @Test
+    public void testConcurrentMap() {
+        ConcurrentLongObjectMap<String> map = new ConcurrentLongObjectMap<>();
+        for(int i=0; i<100; i++){
+            for(int j=i; j<100; j++){
+                assertNull(map.putIfAbsent(((long) i << 32) | j, i + "x" + j));
+            }
+        }
+        assertEquals(5050, map.size());
+        assertEquals("3x7", map.get((3L << 32) | 7));
+        assertEquals("3x7", map.putIfAbsent((3L << 32) | 7, "other"));
+        assertEquals("3x7", map.remove((3L << 32) | 7));
+        assertNull(map.get((3L << 32) | 7));
+        assertEquals(5049, map.size());
+        // reinsert removed key
+        assertNull(map.putIfAbsent((3L << 32) | 7, "again"));
+        assertEquals("again", map.get((3L << 32) | 7));
+        // remove and reinsert many keys (rebuilds tables)
+        for(int round=0; round<3; round++){
+            for(int i=0; i<100; i++){
+                assertNotNull(map.remove(((long) i << 32) | 99));
+            }
+            for(int i=0; i<100; i++){
+                assertNull(map.put(((long) i << 32) | 99, "r" + round));
+            }
+        }
+        assertEquals(5050, map.size());
+        assertEquals("r2", map.get((5L << 32) | 99));
+        assertEquals("0x1", map.get(1));
+        map.clear();
+        assertEquals(0, map.size());
+    }
+
+}